@@ -0,0 +1,85 @@
+package ru.saidgajiev.ormnext.cache.benchmarks;
+
+import ru.saidgadjiev.ormnext.core.field.DatabaseColumn;
+import ru.saidgajiev.ormnext.cache.Cacheable;
+
+import java.io.Serializable;
+
+/**
+ * Cached entity used by benchmarks.
+ *
+ * @author Said Gadjiev
+ */
+@Cacheable
+public class BenchmarkEntity implements Serializable {
+
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Entity id.
+     */
+    @DatabaseColumn(id = true)
+    private int id;
+
+    /**
+     * Entity name.
+     */
+    @DatabaseColumn
+    private String name;
+
+    /**
+     * Create a new instance.
+     */
+    public BenchmarkEntity() {
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param id   target id
+     * @param name target name
+     */
+    public BenchmarkEntity(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Return id.
+     *
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Set id.
+     *
+     * @param id target id
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Return name.
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Set name.
+     *
+     * @param name target name
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+}
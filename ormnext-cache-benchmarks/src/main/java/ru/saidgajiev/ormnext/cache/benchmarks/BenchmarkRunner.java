@@ -0,0 +1,52 @@
+package ru.saidgajiev.ormnext.cache.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks entry point. Runs benchmarks with several thread counts unless {@code -t} is given.
+ *
+ * @author Said Gadjiev
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Default thread counts.
+     */
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    /**
+     * Utility class.
+     */
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Run benchmarks.
+     *
+     * @param args JMH command line arguments
+     * @throws RunnerException if benchmark failed
+     * @throws CommandLineOptionException if arguments are invalid
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        if (commandLineOptions.getThreads().hasValue()) {
+            new Runner(commandLineOptions).run();
+
+            return;
+        }
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLineOptions)
+                    .threads(threads)
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package ru.saidgajiev.ormnext.cache.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.saidgadjiev.ormnext.core.cache.ObjectCache;
+import ru.saidgadjiev.ormnext.core.dao.DefaultDatabaseEngine;
+import ru.saidgadjiev.ormnext.core.dialect.H2Dialect;
+import ru.saidgadjiev.ormnext.core.query.criteria.impl.Criteria;
+import ru.saidgadjiev.ormnext.core.query.criteria.impl.Restrictions;
+import ru.saidgadjiev.ormnext.core.query.criteria.impl.SelectStatement;
+import ru.saidgadjiev.ormnext.core.table.internal.metamodel.MetaModel;
+import ru.saidgajiev.ormnext.cache.CacheLayer;
+import ru.saidgajiev.ormnext.cache.LRUObjectCache;
+import ru.saidgajiev.ormnext.cache.LongObjectCache;
+import ru.saidgajiev.ormnext.cache.OffHeapObjectCache;
+import ru.saidgajiev.ormnext.cache.ReferenceObjectCache;
+import ru.saidgajiev.ormnext.cache.TieredObjectCache;
+import ru.saidgajiev.ormnext.cache.TinyLfuObjectCache;
+import ru.saidgajiev.ormnext.cache.codec.CompactCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * {@link CacheLayer} hot paths benchmark. Cache is filled with {@code entityCount} entities,
+ * bounded object caches hold {@code capacityPercent} of them.
+ *
+ * @author Said Gadjiev
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheLayerBenchmark {
+
+    /**
+     * Cached list queries count.
+     */
+    private static final int QUERY_COUNT = 256;
+
+    /**
+     * Entities count in one cached list result.
+     */
+    private static final int LIST_SIZE = 10;
+
+    /**
+     * Percent base.
+     */
+    private static final int PERCENTS = 100;
+
+    /**
+     * Estimated encoded entity size in bytes, off heap cache capacity is derived from it.
+     */
+    private static final long ENTRY_BYTES = 64;
+
+    /**
+     * Min off heap cache capacity, one slab.
+     */
+    private static final long MIN_OFF_HEAP_CAPACITY = 1L << 20;
+
+    /**
+     * Disk tier segment size.
+     */
+    private static final long SEGMENT_SIZE = 1L << 26;
+
+    /**
+     * Object cache implementation.
+     */
+    @Param({"reference", "weak", "lru", "tinylfu", "offheap", "tiered", "long"})
+    private String cacheType;
+
+    /**
+     * Entities count.
+     */
+    @Param({"1000", "100000"})
+    private int entityCount;
+
+    /**
+     * Bounded object cache capacity in percents of entities count.
+     */
+    @Param({"10", "100"})
+    private int capacityPercent;
+
+    /**
+     * Keys distribution.
+     */
+    @Param({KeyGenerator.UNIFORM, KeyGenerator.ZIPFIAN})
+    private String skew;
+
+    /**
+     * Cache under test.
+     */
+    private CacheLayer cache;
+
+    /**
+     * Object cache under test.
+     */
+    private ObjectCache objectCache;
+
+    /**
+     * Disk tier directory or null if cache type has no disk tier.
+     */
+    private Path directory;
+
+    /**
+     * Entity key generator.
+     */
+    private KeyGenerator entityKeys;
+
+    /**
+     * Query key generator.
+     */
+    private KeyGenerator queryKeys;
+
+    /**
+     * Cached list statements.
+     */
+    private List<SelectStatement<BenchmarkEntity>> listStatements;
+
+    /**
+     * Cached long statements.
+     */
+    private List<SelectStatement<BenchmarkEntity>> longStatements;
+
+    /**
+     * Next id for create benchmark.
+     */
+    private AtomicInteger nextId;
+
+    /**
+     * Create and fill cache.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        MetaModel metaModel = new MetaModel(Collections.singletonList(BenchmarkEntity.class));
+
+        metaModel.init();
+        cache = new CacheLayer();
+        cache.init(metaModel, new DefaultDatabaseEngine(new H2Dialect()));
+        objectCache = createObjectCache();
+        cache.setCache(BenchmarkEntity.class, objectCache);
+
+        entityKeys = new KeyGenerator(skew, entityCount);
+        queryKeys = new KeyGenerator(skew, QUERY_COUNT);
+        nextId = new AtomicInteger(entityCount);
+
+        long generation = cache.getGeneration(BenchmarkEntity.class);
+        List<Object> entities = new ArrayList<>();
+
+        for (int i = 0; i < entityCount; i++) {
+            entities.add(new BenchmarkEntity(i, "name" + i));
+        }
+        cache.cacheQueryForAll(entities, generation);
+        cache.cacheCountOff(BenchmarkEntity.class, entityCount, generation);
+        if (!cache.queryForAll(BenchmarkEntity.class).isPresent()
+                || !cache.countOff(BenchmarkEntity.class).isPresent()) {
+            throw new IllegalStateException("Cache is not populated by warm up");
+        }
+
+        listStatements = new ArrayList<>();
+        longStatements = new ArrayList<>();
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            SelectStatement<BenchmarkEntity> listStatement = nameStatement(i);
+            List<Object> result = new ArrayList<>();
+
+            for (int j = 0; j < LIST_SIZE; j++) {
+                result.add(entities.get((i * LIST_SIZE + j) % entityCount));
+            }
+            cache.cacheList(listStatement, result, generation);
+            listStatements.add(listStatement);
+
+            SelectStatement<BenchmarkEntity> longStatement = nameStatement(i);
+
+            cache.cacheQueryForLong(longStatement, i, generation);
+            longStatements.add(longStatement);
+        }
+    }
+
+    /**
+     * Close disk tier and remove its directory.
+     *
+     * @throws IOException if directory can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (objectCache instanceof TieredObjectCache) {
+            ((TieredObjectCache) objectCache).close();
+        }
+        if (directory != null) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Benchmark query for id.
+     *
+     * @return cached object
+     */
+    @Benchmark
+    public Optional<Object> queryForId() {
+        return cache.queryForId(BenchmarkEntity.class, entityKeys.next());
+    }
+
+    /**
+     * Benchmark query for id by primitive id.
+     *
+     * @return cached object
+     */
+    @Benchmark
+    public Object queryForLongId() {
+        return cache.queryForLongId(BenchmarkEntity.class, entityKeys.next());
+    }
+
+    /**
+     * Benchmark list.
+     *
+     * @return cached objects
+     */
+    @Benchmark
+    public Optional<List<Object>> list() {
+        return cache.list(listStatements.get(queryKeys.next()));
+    }
+
+    /**
+     * Benchmark query for all.
+     *
+     * @return cached objects
+     */
+    @Benchmark
+    public Optional<List<Object>> queryForAll() {
+        return cache.queryForAll(BenchmarkEntity.class);
+    }
+
+    /**
+     * Benchmark query for long.
+     *
+     * @return cached long
+     */
+    @Benchmark
+    public Optional<Long> queryForLong() {
+        return cache.queryForLong(longStatements.get(queryKeys.next()));
+    }
+
+    /**
+     * Benchmark create.
+     */
+    @Benchmark
+    public void create() {
+        int id = nextId.getAndIncrement();
+
+        cache.create(new BenchmarkEntity(id, "name" + id));
+    }
+
+    /**
+     * Benchmark update.
+     */
+    @Benchmark
+    public void update() {
+        int id = entityKeys.next();
+
+        cache.update(new BenchmarkEntity(id, "name" + id));
+    }
+
+    /**
+     * Create object cache by benchmark param.
+     *
+     * @return object cache
+     */
+    private ObjectCache createObjectCache() {
+        int capacity = Math.max(1, entityCount * capacityPercent / PERCENTS);
+
+        switch (cacheType) {
+            case "reference":
+                return new ReferenceObjectCache();
+            case "weak":
+                return new ReferenceObjectCache(ReferenceObjectCache.ReferenceType.WEAK);
+            case "lru":
+                return new LRUObjectCache(capacity);
+            case "tinylfu":
+                return new TinyLfuObjectCache(capacity);
+            case "offheap":
+                return new OffHeapObjectCache(
+                        Math.max(MIN_OFF_HEAP_CAPACITY, capacity * ENTRY_BYTES),
+                        new CompactCodec()
+                );
+            case "tiered":
+                try {
+                    directory = Files.createTempDirectory("ormnext-cache-benchmark");
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+
+                return new TieredObjectCache(capacity, directory, SEGMENT_SIZE, new CompactCodec());
+            case "long":
+                return new LongObjectCache(capacity);
+            default:
+                throw new IllegalArgumentException("Unknown cache type " + cacheType);
+        }
+    }
+
+    /**
+     * Create statement which selects entities by name.
+     *
+     * @param index target name index
+     * @return select statement
+     */
+    private static SelectStatement<BenchmarkEntity> nameStatement(int index) {
+        SelectStatement<BenchmarkEntity> statement = new SelectStatement<>(BenchmarkEntity.class);
+
+        statement.where(new Criteria().add(Restrictions.eq("name", "name" + index)));
+
+        return statement;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.saidgajiev.ormnext.cache.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.saidgajiev.ormnext.cache.codec.CompactCodec;
+import ru.saidgajiev.ormnext.cache.codec.EntityCodec;
+import ru.saidgajiev.ormnext.cache.codec.SerializableCodec;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntityCodec} benchmark. Encoded size of entity is reported as secondary result of encode benchmark.
+ *
+ * @author Said Gadjiev
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    /**
+     * Entity id.
+     */
+    private static final int ID = 123456;
+
+    /**
+     * Codec implementation.
+     */
+    @Param({"java", "compact"})
+    private String codecType;
+
+    /**
+     * Codec under test.
+     */
+    private EntityCodec codec;
+
+    /**
+     * Entity to encode.
+     */
+    private BenchmarkEntity entity;
+
+    /**
+     * Encoded entity to decode.
+     */
+    private byte[] encoded;
+
+    /**
+     * Create codec and encode entity.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (codecType) {
+            case "java":
+                codec = new SerializableCodec();
+                break;
+            case "compact":
+                codec = new CompactCodec();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec type " + codecType);
+        }
+        entity = new BenchmarkEntity(ID, "name" + ID);
+        encoded = codec.encode(entity);
+    }
+
+    /**
+     * Benchmark encode.
+     *
+     * @param size target encoded size counter
+     * @return encoded bytes
+     */
+    @Benchmark
+    public byte[] encode(EncodedSize size) {
+        byte[] bytes = codec.encode(entity);
+
+        size.encodedBytes = bytes.length;
+
+        return bytes;
+    }
+
+    /**
+     * Benchmark decode.
+     *
+     * @return decoded entity
+     */
+    @Benchmark
+    public Object decode() {
+        return codec.decode(BenchmarkEntity.class, encoded);
+    }
+
+    /**
+     * Encoded entity size counter.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+
+        /**
+         * Encoded entity size in bytes.
+         */
+        public long encodedBytes;
+    }
+}
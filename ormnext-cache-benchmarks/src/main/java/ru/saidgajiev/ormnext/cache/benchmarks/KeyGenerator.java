@@ -0,0 +1,110 @@
+package ru.saidgajiev.ormnext.cache.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates keys in range [0, count) with uniform or Zipfian distribution.
+ * Zipfian generation follows Gray et al. "Quickly generating billion-record synthetic databases".
+ *
+ * @author Said Gadjiev
+ */
+public final class KeyGenerator {
+
+    /**
+     * Uniform distribution name.
+     */
+    public static final String UNIFORM = "uniform";
+
+    /**
+     * Zipfian distribution name.
+     */
+    public static final String ZIPFIAN = "zipfian";
+
+    /**
+     * Zipfian skew.
+     */
+    private static final double THETA = 0.99;
+
+    /**
+     * Keys count.
+     */
+    private final int count;
+
+    /**
+     * Is zipfian distribution.
+     */
+    private final boolean zipfian;
+
+    /**
+     * Zeta of keys count.
+     */
+    private final double zetaN;
+
+    /**
+     * Zipfian alpha.
+     */
+    private final double alpha;
+
+    /**
+     * Zipfian eta.
+     */
+    private final double eta;
+
+    /**
+     * Create a new instance.
+     *
+     * @param distribution target distribution name
+     * @param count        target keys count
+     */
+    public KeyGenerator(String distribution, int count) {
+        this.count = count;
+        this.zipfian = ZIPFIAN.equals(distribution);
+
+        if (!zipfian && !UNIFORM.equals(distribution)) {
+            throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+        zetaN = zeta(count);
+        alpha = 1.0 / (1.0 - THETA);
+        eta = (1 - Math.pow(2.0 / count, 1 - THETA)) / (1 - zeta(2) / zetaN);
+    }
+
+    /**
+     * Return next key.
+     *
+     * @return next key
+     */
+    public int next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (!zipfian) {
+            return random.nextInt(count);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, THETA)) {
+            return 1;
+        }
+
+        return Math.min(count - 1, (int) (count * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    /**
+     * Return zeta function value.
+     *
+     * @param n target n
+     * @return zeta value
+     */
+    private static double zeta(int n) {
+        double sum = 0;
+
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, THETA);
+        }
+
+        return sum;
+    }
+}
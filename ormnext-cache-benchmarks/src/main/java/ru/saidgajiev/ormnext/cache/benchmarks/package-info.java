@@ -0,0 +1,7 @@
+/**
+ * This package contains JMH benchmarks of cache hot paths.
+ * Build with {@code mvn package} and run {@code java -jar target/benchmarks.jar}, arguments are passed to JMH.
+ * {@link ru.saidgajiev.ormnext.cache.benchmarks.BenchmarkRunner} runs every benchmark with 1, 4, 16 and 64 threads
+ * unless {@code -t} is given.
+ */
+package ru.saidgajiev.ormnext.cache.benchmarks;
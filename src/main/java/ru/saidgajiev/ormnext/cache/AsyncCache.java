@@ -0,0 +1,345 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgadjiev.ormnext.core.query.criteria.impl.SelectStatement;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Non blocking facade of {@link CacheLayer}. Lookups and population run on the given executor and return
+ * {@link CompletableFuture}, so tiers which hit disk or decode entities do not block caller threads. On JDK 21 and
+ * later virtual threads executor fits well.
+ * <p>
+ * Population of lookup miss must carry entity generation taken before the database was queried, as generation
+ * observed by synchronous lookups is thread local and lookups of this facade do not keep it. Loading methods do it
+ * themselves.
+ *
+ * @author Said Gadjiev
+ */
+public class AsyncCache {
+
+    /**
+     * Cache layer.
+     */
+    private final CacheLayer cacheLayer;
+
+    /**
+     * Executor of cache calls.
+     */
+    private final Executor executor;
+
+    /**
+     * Create a new instance.
+     *
+     * @param cacheLayer target cache layer
+     * @param executor   target executor of cache calls
+     */
+    public AsyncCache(CacheLayer cacheLayer, Executor executor) {
+        this.cacheLayer = cacheLayer;
+        this.executor = executor;
+    }
+
+    /**
+     * Return cache layer.
+     *
+     * @return cache layer
+     */
+    public CacheLayer getCacheLayer() {
+        return cacheLayer;
+    }
+
+    /**
+     * Return entity write generation. Take it before query and pass to population.
+     *
+     * @param entityType target entity type
+     * @return current generation
+     */
+    public long getGeneration(Class<?> entityType) {
+        return cacheLayer.getGeneration(entityType);
+    }
+
+    /**
+     * Retrieve cached object.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @return future of cached object
+     */
+    public CompletableFuture<Optional<Object>> queryForId(Class<?> tClass, Object id) {
+        return CompletableFuture.supplyAsync(() -> lookup(() -> cacheLayer.queryForId(tClass, id)), executor);
+    }
+
+    /**
+     * Retrieve cached objects by ids.
+     *
+     * @param tClass target entity type
+     * @param ids    target ids
+     * @return future of found objects and missing ids
+     */
+    public CompletableFuture<QueryForIdsResult> queryForIds(Class<?> tClass, Collection<?> ids) {
+        return CompletableFuture.supplyAsync(() -> lookup(() -> cacheLayer.queryForIds(tClass, ids)), executor);
+    }
+
+    /**
+     * Retrieve cached query for all result.
+     *
+     * @param tClass target entity type
+     * @return future of cached objects
+     */
+    public CompletableFuture<Optional<List<Object>>> queryForAll(Class<?> tClass) {
+        return CompletableFuture.supplyAsync(() -> lookup(() -> cacheLayer.queryForAll(tClass)), executor);
+    }
+
+    /**
+     * Retrieve cached count off result.
+     *
+     * @param tClass target entity type
+     * @return future of cached count
+     */
+    public CompletableFuture<Optional<Long>> countOff(Class<?> tClass) {
+        return CompletableFuture.supplyAsync(() -> lookup(() -> cacheLayer.countOff(tClass)), executor);
+    }
+
+    /**
+     * Retrieve cached exist result.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @return future of cached exist result
+     */
+    public CompletableFuture<Optional<Boolean>> exist(Class<?> tClass, Object id) {
+        return CompletableFuture.supplyAsync(() -> cacheLayer.exist(tClass, id), executor);
+    }
+
+    /**
+     * Retrieve cached list result.
+     *
+     * @param selectStatement target select statement
+     * @return future of cached objects
+     */
+    public CompletableFuture<Optional<List<Object>>> list(SelectStatement<?> selectStatement) {
+        return CompletableFuture.supplyAsync(() -> lookup(() -> cacheLayer.list(selectStatement)), executor);
+    }
+
+    /**
+     * Retrieve cached long result.
+     *
+     * @param selectStatement target select statement
+     * @return future of cached long
+     */
+    public CompletableFuture<Optional<Long>> queryForLong(SelectStatement<?> selectStatement) {
+        return CompletableFuture.supplyAsync(() -> lookup(() -> cacheLayer.queryForLong(selectStatement)), executor);
+    }
+
+    /**
+     * Cache object queried at entity generation.
+     *
+     * @param id         target id
+     * @param data       target object
+     * @param generation target generation taken before query
+     * @return future completed when object is cached or discarded
+     */
+    public CompletableFuture<Void> cacheQueryForId(Object id, Object data, long generation) {
+        return CompletableFuture.runAsync(() -> cacheLayer.cacheQueryForId(id, data, generation), executor);
+    }
+
+    /**
+     * Cache query for all result queried at entity generation.
+     *
+     * @param objects    target objects
+     * @param generation target generation taken before query
+     * @return future completed when result is cached or discarded
+     */
+    public CompletableFuture<Void> cacheQueryForAll(Collection<Object> objects, long generation) {
+        return CompletableFuture.runAsync(() -> cacheLayer.cacheQueryForAll(objects, generation), executor);
+    }
+
+    /**
+     * Cache count off result queried at entity generation.
+     *
+     * @param tClass     target entity type
+     * @param count      target count
+     * @param generation target generation taken before query
+     * @return future completed when result is cached or discarded
+     */
+    public CompletableFuture<Void> cacheCountOff(Class<?> tClass, long count, long generation) {
+        return CompletableFuture.runAsync(() -> cacheLayer.cacheCountOff(tClass, count, generation), executor);
+    }
+
+    /**
+     * Cache exist result.
+     *
+     * @param tClass target entity type
+     * @param object target object
+     * @param exist  target exist result
+     * @return future completed when result is cached
+     */
+    public CompletableFuture<Void> cacheExist(Class<?> tClass, Object object, Boolean exist) {
+        return CompletableFuture.runAsync(() -> cacheLayer.cacheExist(tClass, object, exist), executor);
+    }
+
+    /**
+     * Cache list result queried at entity generation.
+     *
+     * @param selectStatement target select statement
+     * @param objects         target objects
+     * @param generation      target generation taken before query
+     * @return future completed when result is cached or discarded
+     */
+    public CompletableFuture<Void> cacheList(SelectStatement<?> selectStatement, List<Object> objects,
+                                             long generation) {
+        return CompletableFuture.runAsync(() -> cacheLayer.cacheList(selectStatement, objects, generation), executor);
+    }
+
+    /**
+     * Cache long result queried at entity generation.
+     *
+     * @param selectStatement target select statement
+     * @param result          target long result
+     * @param generation      target generation taken before query
+     * @return future completed when result is cached or discarded
+     */
+    public CompletableFuture<Void> cacheQueryForLong(SelectStatement<?> selectStatement, long result,
+                                                     long generation) {
+        return CompletableFuture.runAsync(
+                () -> cacheLayer.cacheQueryForLong(selectStatement, result, generation),
+                executor
+        );
+    }
+
+    /**
+     * Return cached object or load and cache it.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @param loader target asynchronous loader, it may complete with null
+     * @return future of object or null
+     */
+    public CompletableFuture<Object> queryForId(Class<?> tClass, Object id,
+                                                Supplier<? extends CompletionStage<Object>> loader) {
+        return load(
+                tClass,
+                () -> cacheLayer.queryForId(tClass, id),
+                loader,
+                (object, generation) -> cacheLayer.cacheQueryForId(id, object, generation)
+        );
+    }
+
+    /**
+     * Return cached query for all result or load and cache it.
+     *
+     * @param tClass target entity type
+     * @param loader target asynchronous loader, it may complete with null
+     * @return future of objects or null
+     */
+    public CompletableFuture<List<Object>> queryForAll(Class<?> tClass,
+                                                       Supplier<? extends CompletionStage<List<Object>>> loader) {
+        return load(tClass, () -> cacheLayer.queryForAll(tClass), loader, cacheLayer::cacheQueryForAll);
+    }
+
+    /**
+     * Return cached count off result or load and cache it.
+     *
+     * @param tClass target entity type
+     * @param loader target asynchronous loader, it may complete with null
+     * @return future of count or null
+     */
+    public CompletableFuture<Long> countOff(Class<?> tClass, Supplier<? extends CompletionStage<Long>> loader) {
+        return load(
+                tClass,
+                () -> cacheLayer.countOff(tClass),
+                loader,
+                (count, generation) -> cacheLayer.cacheCountOff(tClass, count, generation)
+        );
+    }
+
+    /**
+     * Return cached list result or load and cache it.
+     *
+     * @param selectStatement target select statement
+     * @param loader          target asynchronous loader, it may complete with null
+     * @return future of objects or null
+     */
+    public CompletableFuture<List<Object>> list(SelectStatement<?> selectStatement,
+                                                Supplier<? extends CompletionStage<List<Object>>> loader) {
+        return load(
+                selectStatement.getEntityClass(),
+                () -> cacheLayer.list(selectStatement),
+                loader,
+                (objects, generation) -> cacheLayer.cacheList(selectStatement, objects, generation)
+        );
+    }
+
+    /**
+     * Return cached long result or load and cache it.
+     *
+     * @param selectStatement target select statement
+     * @param loader          target asynchronous loader, it may complete with null
+     * @return future of long result or null
+     */
+    public CompletableFuture<Long> queryForLong(SelectStatement<?> selectStatement,
+                                                Supplier<? extends CompletionStage<Long>> loader) {
+        return load(
+                selectStatement.getEntityClass(),
+                () -> cacheLayer.queryForLong(selectStatement),
+                loader,
+                (result, generation) -> cacheLayer.cacheQueryForLong(selectStatement, result, generation)
+        );
+    }
+
+    /**
+     * Run synchronous lookup on executor thread. Generations remembered by its miss are forgotten, as asynchronous
+     * population carries generation explicitly and pooled threads must not keep them.
+     *
+     * @param lookup target lookup
+     * @param <T>    result type
+     * @return lookup result
+     */
+    private <T> T lookup(Supplier<T> lookup) {
+        try {
+            return lookup.get();
+        } finally {
+            cacheLayer.forgetObservedGenerations();
+        }
+    }
+
+    /**
+     * Lookup value and on miss load and populate it with generation taken before load. Null value is returned but
+     * not cached.
+     *
+     * @param entityType target entity type
+     * @param lookup     target lookup
+     * @param loader     target asynchronous loader
+     * @param populator  target populator which accepts value and generation
+     * @param <T>        value type
+     * @return future of value
+     */
+    private <T> CompletableFuture<T> load(Class<?> entityType,
+                                          Supplier<Optional<T>> lookup,
+                                          Supplier<? extends CompletionStage<T>> loader,
+                                          ObjLongConsumer<T> populator) {
+        return CompletableFuture.supplyAsync(() -> {
+            Optional<T> cached = lookup(lookup);
+
+            if (cached.isPresent()) {
+                return CompletableFuture.completedFuture(cached.get());
+            }
+            long generation = cacheLayer.getGeneration(entityType);
+
+            return loader.get().thenApplyAsync(value -> {
+                if (value != null) {
+                    populator.accept(value, generation);
+                }
+
+                return value;
+            }, executor);
+        }, executor).thenCompose(Function.identity());
+    }
+}
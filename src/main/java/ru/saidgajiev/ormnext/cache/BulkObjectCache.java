@@ -0,0 +1,71 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgadjiev.ormnext.core.cache.ObjectCache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Object cache with bulk lookup and population. Implementations resolve entity cache once per call instead of
+ * once per id. Plain {@link ObjectCache} implementations get the same behavior from default methods.
+ *
+ * @author Said Gadjiev
+ */
+public interface BulkObjectCache extends ObjectCache {
+
+    /**
+     * Retrieve cached objects by ids.
+     *
+     * @param tClass target entity type
+     * @param ids    target ids
+     * @return found objects by id, missing ids are absent
+     */
+    default Map<Object, Object> getAll(Class<?> tClass, Collection<?> ids) {
+        Map<Object, Object> result = new HashMap<>();
+
+        for (Object id : ids) {
+            Object object = get(tClass, id);
+
+            if (object != null) {
+                result.put(id, object);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Put objects to cache.
+     *
+     * @param tClass  target entity type
+     * @param objects target objects by id
+     */
+    default void putAll(Class<?> tClass, Map<?, ?> objects) {
+        for (Map.Entry<?, ?> entry : objects.entrySet()) {
+            put(tClass, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Invalidate object if it is still cached under id, so eviction of stale entry keeps newer object.
+     * Object which is not known anymore is not cached by heap caches, so nothing is invalidated.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @param data   target evicted object or null if it is garbage collected
+     */
+    default void invalidate(Class<?> tClass, Object id, Object data) {
+        if (data != null && get(tClass, id) == data) {
+            invalidate(tClass, id);
+        }
+    }
+
+    /**
+     * Set listener of entries which cache removes on its own. Caches which never do it ignore listener.
+     *
+     * @param listener target listener
+     */
+    default void setEvictionListener(EvictionListener listener) {
+    }
+}
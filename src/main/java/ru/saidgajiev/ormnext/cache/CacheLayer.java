@@ -11,9 +11,22 @@ import ru.saidgadjiev.ormnext.core.query.criteria.impl.Query;
 import ru.saidgadjiev.ormnext.core.query.criteria.impl.SelectStatement;
 import ru.saidgadjiev.ormnext.core.query.criteria.impl.UpdateStatement;
 import ru.saidgadjiev.ormnext.core.table.internal.metamodel.MetaModel;
-
+import ru.saidgajiev.ormnext.cache.codec.EntityCodec;
+import ru.saidgajiev.ormnext.cache.commons.ColumnValues;
+import ru.saidgajiev.ormnext.cache.commons.CountingBloomFilter;
+import ru.saidgajiev.ormnext.cache.commons.QueryKey;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * Cache layer.
@@ -22,6 +35,11 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class CacheLayer implements Cache {
 
+    /**
+     * Exist filter capacity multiplier of table count.
+     */
+    private static final int EXIST_FILTER_GROWTH = 2;
+
     /**
      * Meta model.
      */
@@ -58,26 +76,89 @@ public class CacheLayer implements Cache {
     private CacheEvict cacheEvict;
 
     /**
-     * Cacheable entities.
+     * Cacheable entity descriptors. Built once on init.
+     */
+    private Map<Class<?>, CacheRegion> regions = Collections.emptyMap();
+
+    /**
+     * In flight loads.
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * Entity write generations.
+     */
+    private final Generations generations = new Generations();
+
+    /**
+     * Entries expiration.
+     */
+    private final ExpiryHelper expiryHelper = new ExpiryHelper(System::nanoTime);
+
+    /**
+     * Memory budget of all sub caches. Null if caches are unbounded.
      */
-    private Collection<Class<?>> cacheableEntities = new ArrayList<>();
+    private volatile MemoryBudget memoryBudget;
+
+    /**
+     * Refresh ahead of hot results. Null if refresh ahead is disabled.
+     */
+    private volatile RefreshAhead refreshAhead;
+
+    /**
+     * Statistics.
+     */
+    private volatile CacheStats stats;
+
+    /**
+     * Invalidation bus. Null if writes are not published to other nodes.
+     */
+    private volatile InvalidationBus invalidationBus;
+
+    /**
+     * Snapshot file. Null if snapshot is disabled.
+     */
+    private volatile Path snapshotFile;
+
+    /**
+     * Snapshot entity codec.
+     */
+    private volatile EntityCodec snapshotCodec;
 
     @Override
     public void init(MetaModel metaModel, DatabaseEngine<?> databaseEngine) {
         this.metaModel = metaModel;
         selectStatementCache = new SelectStatementCache(metaModel, databaseEngine);
 
+        Map<Class<?>, CacheRegion> cacheRegions = new IdentityHashMap<>();
+
         for (Class<?> entityType : metaModel.getPersistentClasses()) {
             if (entityType.isAnnotationPresent(Cacheable.class)) {
-                cacheableEntities.add(entityType);
+                Cacheable cacheable = entityType.getAnnotation(Cacheable.class);
+                Map<Object, Boolean> entityExistCache = new ConcurrentHashMap<>();
+
+                existCache.put(entityType, entityExistCache);
+                cacheRegions.put(entityType, new CacheRegion(
+                        entityType,
+                        metaModel.getPersister(entityType).getMetadata().getPrimaryKeyColumnType(),
+                        entityExistCache,
+                        cacheable.incrementalAggregates()
+                ));
+                expiryHelper.setPolicy(entityType, ExpirationPolicy.of(cacheable));
+                if (cacheable.binaryCollation()) {
+                    selectStatementCache.setBinaryCollation(entityType, true);
+                }
             }
         }
+        regions = Collections.unmodifiableMap(cacheRegions);
         cacheEvict = new EvictHelper(
                 objectCacheMap,
                 queryForAllCache,
                 countOffCache,
                 existCache,
-                selectStatementCache
+                selectStatementCache,
+                regions,
+                generations
         );
     }
 
@@ -92,31 +173,56 @@ public class CacheLayer implements Cache {
             return;
         }
         Class<?> entityType = objects.iterator().next().getClass();
+        CacheRegion region = regions.get(entityType);
 
-        if (isCacheable(entityType)) {
-            //Очищаем кэши
+        if (region != null) {
+            generations.advance(entityType);
 
-            //Удаляем кэш для list
-            evictApi().evictList(entityType);
+            boolean incremental = region.isIncrementalAggregates();
 
-            //Удаляем кэш для запросов с limit offset
-            evictApi().evictLimitedList(entityType);
+            //Очищаем кэши
 
-            //Кэш countOff по таблице
-            evictApi().evictCountOff(entityType);
+            if (incremental) {
+                //Новые записи увеличивают countOff
+                updateAggregate(region, SubCache.COUNT_OFF, countOffCache, count -> count + objects.size());
+            } else {
+                //Кэш countOff по таблице
+                evictApi().evictCountOff(entityType);
 
-            //Кэш по long начению по запросу
-            evictApi().evictQueryForLong(entityType);
+                //Кэш с SELECT *
+                evictApi().evictQueryForAll(entityType);
+            }
 
-            //Кэш с SELECT *
-            evictApi().evictQueryForAll(entityType);
+            List<Object> createdIds = new ArrayList<>(objects.size());
 
             for (Object object : objects) {
                 Object id = extractId(object);
+                Map<String, Object> row = ColumnValues.read(object);
+
+                //Удаляем только те list, limit offset и long запросы, в результат которых может попасть запись
+                forget(SubCache.LIST, entityType, selectStatementCache.evictAffectedList(entityType, row, null));
+                forget(
+                        SubCache.LIMITED_LIST,
+                        entityType,
+                        selectStatementCache.evictAffectedLimitedList(entityType, row, null)
+                );
+                forget(SubCache.LONG, entityType, selectStatementCache.evictAffectedLong(entityType, row));
 
                 //Добавляем в exist
+                region.addToExistFilter(id);
                 addToExistCache(entityType, id, true);
-                objectCacheMap.get(entityType).put(entityType, id, object);
+                putObject(entityType, id, object);
+                publish(entityType, id);
+                createdIds.add(id);
+            }
+            if (incremental) {
+                //Дописываем все id в кэш SELECT * одним обновлением
+                updateAggregate(
+                        region,
+                        SubCache.QUERY_FOR_ALL,
+                        queryForAllCache,
+                        ids -> region.appendIds(ids, createdIds)
+                );
             }
         }
     }
@@ -139,34 +245,192 @@ public class CacheLayer implements Cache {
 
             ids.add(id);
             addToExistCache(entityType, id, true);
-            objectCacheMap.get(entityType).put(entityType, id, object);
+            putObject(entityType, id, object);
         }
+        CacheRegion region = regions.get(entityType);
 
-        return ids;
+        return region == null ? ids : region.compactIds(ids);
     }
 
     @Override
     public void putToCache(Object id, Object data) {
         if (isCacheable(data.getClass())) {
             addToExistCache(data.getClass(), id, true);
-            objectCacheMap.get(data.getClass()).put(data.getClass(), id, data);
+            putObject(data.getClass(), id, data);
         }
     }
 
     @Override
     public void cacheQueryForId(Object id, Object data) {
-        putToCache(id, data);
+        CacheRegion region = regions.get(data.getClass());
+        Object key = region == null ? id : observedId(region, id);
+
+        cacheQueryForId(id, data, generations.take(new EntryKey(SubCache.OBJECT, data.getClass(), key)));
+    }
+
+    /**
+     * Cache object queried at entity generation. Object is discarded if entity was written since.
+     *
+     * @param id         target id
+     * @param data       target object
+     * @param generation target generation observed before query
+     */
+    public void cacheQueryForId(Object id, Object data, long generation) {
+        Class<?> entityType = data.getClass();
+
+        populate(entityType, generation, () -> {
+            putToCache(id, data);
+
+            //Во время заполнения была запись, объект может быть устаревшим
+            if (generations.current(entityType) != generation) {
+                discardObjects(entityType, Collections.singletonList(id));
+            }
+        });
     }
 
     @Override
     public Optional<Object> queryForId(Class<?> tClass, Object id) {
-        if (isCacheable(tClass)) {
-            return Optional.ofNullable(objectCacheMap.get(tClass).get(tClass, id));
+        CacheRegion region = regions.get(tClass);
+
+        if (region != null) {
+            long start = startTimer();
+
+            return onLookup(
+                    SubCache.OBJECT,
+                    tClass,
+                    observedId(region, id),
+                    start,
+                    Optional.ofNullable(getObject(region, id))
+            );
         }
 
         return Optional.empty();
     }
 
+    /**
+     * Retrieve cached object by numeric id. If entity objects are stored in {@link LongObjectCache} and they are
+     * neither expiring nor weighed by memory budget, lookup boxes neither id nor result. Otherwise it is same as
+     * {@link #queryForId(Class, Object)} with id boxed to primary key type.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @return object or null
+     */
+    public Object queryForLongId(Class<?> tClass, long id) {
+        CacheRegion region = regions.get(tClass);
+
+        if (region == null) {
+            return null;
+        }
+        ObjectCache objectCache = region.getObjectCache();
+
+        if (!(objectCache instanceof LongObjectCache)
+                || memoryBudget != null
+                || expiryHelper.getPolicy(tClass) != null) {
+            return queryForId(tClass, region.boxId(id)).orElse(null);
+        }
+        long start = startTimer();
+        Object object = ((LongObjectCache) objectCache).get(tClass, id);
+
+        if (object == null) {
+            generations.observe(new EntryKey(SubCache.OBJECT, tClass, region.boxId(id)));
+        }
+        recordLookup(SubCache.OBJECT, tClass, start, object != null);
+
+        return object;
+    }
+
+    /**
+     * Retrieve cached objects by ids in one pass. Missing ids are reported, so they can be queried at once
+     * and cached by {@link #cacheQueryForIds(Class, Collection)}.
+     *
+     * @param tClass target entity type
+     * @param ids    target ids
+     * @return found objects and missing ids
+     */
+    public QueryForIdsResult queryForIds(Class<?> tClass, Collection<?> ids) {
+        Set<Object> missingIds = new LinkedHashSet<>(ids);
+        CacheRegion region = regions.get(tClass);
+
+        if (region == null || ids.isEmpty()) {
+            return new QueryForIdsResult(new HashMap<>(), missingIds);
+        }
+        long start = startTimer();
+        List<Object> liveIds = new ArrayList<>(ids.size());
+
+        for (Object id : missingIds) {
+            if (!isExpired(SubCache.OBJECT, tClass, id)) {
+                liveIds.add(id);
+            }
+        }
+        ObjectCache objectCache = region.getObjectCache();
+        Map<Object, Object> hits;
+
+        if (objectCache instanceof BulkObjectCache) {
+            hits = ((BulkObjectCache) objectCache).getAll(tClass, liveIds);
+        } else {
+            hits = new HashMap<>();
+            for (Object id : liveIds) {
+                Object object = objectCache.get(tClass, id);
+
+                if (object != null) {
+                    hits.put(id, object);
+                }
+            }
+        }
+        missingIds.removeAll(hits.keySet());
+        if (!missingIds.isEmpty()) {
+            generations.observe(new EntryKey(SubCache.OBJECT, tClass, tClass));
+        }
+        CacheStats current = stats;
+
+        if (current != null) {
+            current.recordLookup(System.nanoTime() - start);
+            current.recordHits(SubCache.OBJECT, tClass, hits.size());
+            current.recordMisses(SubCache.OBJECT, tClass, missingIds.size());
+        }
+
+        return new QueryForIdsResult(hits, missingIds);
+    }
+
+    /**
+     * Cache objects queried by ids in one pass. Objects are discarded if entity was written since lookup.
+     *
+     * @param tClass  target entity type
+     * @param objects target queried objects
+     */
+    public void cacheQueryForIds(Class<?> tClass, Collection<?> objects) {
+        long generation = generations.take(new EntryKey(SubCache.OBJECT, tClass, tClass));
+        CacheRegion region = regions.get(tClass);
+
+        if (objects.isEmpty() || region == null) {
+            return;
+        }
+        Map<Object, Object> byId = new LinkedHashMap<>();
+
+        for (Object object : objects) {
+            byId.put(region.extractId(object), object);
+        }
+        populate(tClass, generation, () -> {
+            ObjectCache objectCache = region.getObjectCache();
+
+            if (objectCache instanceof BulkObjectCache) {
+                ((BulkObjectCache) objectCache).putAll(tClass, byId);
+            } else {
+                byId.forEach((id, object) -> objectCache.put(tClass, id, object));
+            }
+            byId.forEach((id, object) -> {
+                addToExistCache(tClass, id, true);
+                onObjectWrite(tClass, id, object);
+            });
+
+            //Во время заполнения была запись, объекты могут быть устаревшими
+            if (generations.current(tClass) != generation) {
+                discardObjects(tClass, byId.keySet());
+            }
+        });
+    }
+
     @Override
     public void cacheQueryForAll(Collection<Object> collection) {
         if (collection.isEmpty()) {
@@ -174,30 +438,72 @@ public class CacheLayer implements Cache {
         }
         Class<?> entityType = collection.iterator().next().getClass();
 
-        if (isCacheable(entityType)) {
-            queryForAllCache.putIfAbsent(entityType, putToCache(collection));
+        EntryKey key = new EntryKey(SubCache.QUERY_FOR_ALL, entityType, entityType);
+
+        cacheQueryForAll(collection, generations.take(key));
+    }
+
+    /**
+     * Cache query for all result queried at entity generation. Result is discarded if entity was written since.
+     *
+     * @param collection target result objects
+     * @param generation target generation observed before query
+     */
+    public void cacheQueryForAll(Collection<Object> collection, long generation) {
+        if (collection.isEmpty()) {
+            return;
         }
+        Class<?> entityType = collection.iterator().next().getClass();
+
+        populate(entityType, generation, () -> {
+            CacheRegion region = regions.get(entityType);
+            List<Object> ids = putToCache(collection);
+
+            queryForAllCache.put(entityType, ids);
+            onWrite(
+                    SubCache.QUERY_FOR_ALL,
+                    entityType,
+                    entityType,
+                    ids,
+                    () -> removeAggregate(region, SubCache.QUERY_FOR_ALL, queryForAllCache, ids)
+            );
+
+            //Фильтр полон, только если все записи таблицы проходят через кэш
+            CountingBloomFilter filter = region.isIncrementalAggregates() ? createExistFilter(entityType, ids) : null;
+
+            region.setExistFilter(filter);
+
+            //Во время заполнения была запись, результат может быть устаревшим
+            if (generations.current(entityType) != generation) {
+                region.dropExistFilter(filter);
+                queryForAllCache.remove(entityType, ids);
+                forgetEntry(SubCache.QUERY_FOR_ALL, entityType, entityType);
+                recordEviction(SubCache.QUERY_FOR_ALL, entityType, EvictionCause.STALE, 1);
+                discardObjects(entityType, ids);
+            }
+        });
     }
 
     @Override
     public Optional<List<Object>> queryForAll(Class<?> tClass) {
         if (isCacheable(tClass)) {
-            List<Object> ids = queryForAllCache.get(tClass);
-
-            if (ids == null) {
-                return Optional.empty();
-            }
-            List<Object> results = new ArrayList<>();
-
-            for (Object id : ids) {
-                Object result = objectCacheMap.get(tClass).get(tClass, id);
+            long start = startTimer();
 
-                if (result != null) {
-                    results.add(result);
-                }
+            if (isExpired(SubCache.QUERY_FOR_ALL, tClass, tClass)) {
+                return onLookup(SubCache.QUERY_FOR_ALL, tClass, tClass, start, Optional.empty());
             }
 
-            return Optional.of(results);
+            CacheRegion region = regions.get(tClass);
+            long stamp = region.startRead();
+            List<Object> objects = getObjects(tClass, queryForAllCache.get(tClass));
+
+            return onLookup(
+                    SubCache.QUERY_FOR_ALL,
+                    tClass,
+                    tClass,
+                    start,
+                    Optional.ofNullable(region.validateRead(stamp) ? objects : null)
+            );
         }
 
         return Optional.empty();
@@ -208,31 +514,65 @@ public class CacheLayer implements Cache {
         if (isCacheable(o.getClass())) {
             Class<?> entityType = o.getClass();
 
-            //Очищаем все кеши в selectstatement
-            evictApi().evictList(entityType);
-            evictApi().evictLimitedList(entityType);
+            generations.advance(entityType);
+
+            Object id = extractId(o);
+            Map<String, Object> row = ColumnValues.read(o);
+
+            //Очищаем list запросы, которые содержат запись или в которые она может попасть
+            forget(SubCache.LIST, entityType, selectStatementCache.evictAffectedList(entityType, row, id));
+            forget(
+                    SubCache.LIMITED_LIST,
+                    entityType,
+                    selectStatementCache.evictAffectedLimitedList(entityType, row, id)
+            );
+
+            //Прежнее значение записи неизвестно, поэтому long кеш очищаем целиком
             evictApi().evictQueryForLong(entityType);
 
-            objectCacheMap.get(o.getClass()).put(entityType, extractId(o), o);
+            putObject(entityType, id, o);
+            publish(entityType, id);
         }
     }
 
     @Override
     public void deleteById(Class<?> entityType, Object id) {
-        if (isCacheable(entityType)) {
+        CacheRegion region = regions.get(entityType);
+
+        if (region != null) {
+            generations.advance(entityType);
+
+            boolean persisted = region.isIncrementalAggregates() && isKnownPersisted(region, id);
+
             //Удаляем запись из кеша объектов
             evictApi().evict(entityType, id);
 
             //Очищаем кеш long результатов
             evictApi().evictQueryForLong(entityType);
 
-            //Кэш count off
-            evictApi().evictCountOff(entityType);
+            if (persisted) {
+                //Запись точно была в таблице, поэтому уменьшаем countOff и убираем id из SELECT *
+                updateAggregate(region, SubCache.COUNT_OFF, countOffCache, count -> count - 1);
+                updateAggregate(region, SubCache.QUERY_FOR_ALL, queryForAllCache, ids -> {
+                    List<Object> result = region.removeId(ids, id);
+
+                    //Из фильтра убираем только id, который точно был в него добавлен
+                    if (result != ids) {
+                        region.removeFromExistFilter(id);
+                    }
+
+                    return result;
+                });
+            } else {
+                //Кэш count off
+                evictApi().evictCountOff(entityType);
 
-            //Кэш SELECT *
-            evictApi().evictQueryForAll(entityType);
+                //Кэш SELECT *
+                evictApi().evictQueryForAll(entityType);
+            }
 
             addToExistCache(entityType, id, false);
+            publish(entityType, id);
         }
     }
 
@@ -249,27 +589,56 @@ public class CacheLayer implements Cache {
     @Override
     public void delete(DeleteStatement deleteStatement) {
         if (isCacheable(deleteStatement.getEntityClass())) {
+            generations.advance(deleteStatement.getEntityClass());
             evictApi().evictAll(deleteStatement.getEntityClass());
+            publish(deleteStatement.getEntityClass(), null);
         }
     }
 
     @Override
     public void update(UpdateStatement updateStatement) {
         if (isCacheable(updateStatement.getEntityClass())) {
+            generations.advance(updateStatement.getEntityClass());
             evictApi().evictAll(updateStatement.getEntityClass());
+            publish(updateStatement.getEntityClass(), null);
         }
     }
 
     @Override
     public void cacheCountOff(Class<?> aClass, long l) {
-        if (isCacheable(aClass)) {
+        cacheCountOff(aClass, l, generations.take(new EntryKey(SubCache.COUNT_OFF, aClass, aClass)));
+    }
+
+    /**
+     * Cache count off result queried at entity generation. Result is discarded if entity was written since.
+     *
+     * @param aClass     target entity type
+     * @param l          target count
+     * @param generation target generation observed before query
+     */
+    public void cacheCountOff(Class<?> aClass, long l, long generation) {
+        populate(aClass, generation, () -> {
             countOffCache.put(aClass, l);
-        }
+            onWrite(SubCache.COUNT_OFF, aClass, aClass, l, () -> countOffCache.remove(aClass, l));
+
+            //Во время заполнения была запись, результат может быть устаревшим
+            if (generations.current(aClass) != generation) {
+                countOffCache.remove(aClass, l);
+                forgetEntry(SubCache.COUNT_OFF, aClass, aClass);
+                recordEviction(SubCache.COUNT_OFF, aClass, EvictionCause.STALE, 1);
+            }
+        });
     }
 
     @Override
     public Optional<Long> countOff(Class<?> aClass) {
-        return Optional.ofNullable(countOffCache.get(aClass));
+        long start = startTimer();
+
+        if (isExpired(SubCache.COUNT_OFF, aClass, aClass)) {
+            return onLookup(SubCache.COUNT_OFF, aClass, aClass, start, Optional.empty());
+        }
+
+        return onLookup(SubCache.COUNT_OFF, aClass, aClass, start, Optional.ofNullable(countOffCache.get(aClass)));
     }
 
     @Override
@@ -281,50 +650,138 @@ public class CacheLayer implements Cache {
 
     @Override
     public Optional<Boolean> exist(Class<?> aClass, Object o) {
+        long start = startTimer();
+        boolean expired = isExpired(SubCache.EXIST, aClass, o);
+        CountingBloomFilter filter = getLiveExistFilter(aClass);
+
+        //Фильтр содержит все id таблицы, поэтому отсутствие в нём точное
+        if (filter != null && !filter.mightContain(o)) {
+            recordLookup(SubCache.EXIST, aClass, start, true);
+
+            return Optional.of(false);
+        }
+        if (expired) {
+            recordLookup(SubCache.EXIST, aClass, start, false);
+
+            return Optional.empty();
+        }
         Map<Object, Boolean> cache = existCache.get(aClass);
+        Optional<Boolean> result = cache == null ? Optional.empty() : Optional.ofNullable(cache.get(o));
+
+        recordLookup(SubCache.EXIST, aClass, start, result.isPresent());
 
-        return cache == null ? Optional.empty() : Optional.ofNullable(cache.get(o));
+        return result;
     }
 
     @Override
     public void cacheList(SelectStatement<?> selectStatement, List<Object> list) {
-        if (isCacheable(selectStatement.getEntityClass())) {
+        SubCache subCache = isLimitedQuery(selectStatement) ? SubCache.LIMITED_LIST : SubCache.LIST;
+        QueryKey queryKey = digest(selectStatement);
+
+        cacheList(
+                selectStatement,
+                queryKey,
+                list,
+                generations.take(new EntryKey(subCache, selectStatement.getEntityClass(), queryKey))
+        );
+    }
+
+    /**
+     * Cache list result queried at entity generation. Result is discarded if entity was written since.
+     *
+     * @param selectStatement target select statement
+     * @param list            target result objects
+     * @param generation      target generation observed before query
+     */
+    public void cacheList(SelectStatement<?> selectStatement, List<Object> list, long generation) {
+        cacheList(selectStatement, digest(selectStatement), list, generation);
+    }
+
+    /**
+     * Cache list result of digested statement queried at entity generation.
+     *
+     * @param selectStatement target select statement
+     * @param queryKey        target statement query key
+     * @param list            target result objects
+     * @param generation      target generation observed before query
+     */
+    private void cacheList(SelectStatement<?> selectStatement,
+                           QueryKey queryKey,
+                           List<Object> list,
+                           long generation) {
+        Class<?> entityType = selectStatement.getEntityClass();
+
+        populate(entityType, generation, () -> {
+            List<Object> ids = putToCache(list);
+
             if (isLimitedQuery(selectStatement)) {
-                selectStatementCache.putLimitedList(selectStatement, putToCache(list));
+                selectStatementCache.putLimitedList(queryKey, ids);
+                onWrite(
+                        SubCache.LIMITED_LIST,
+                        queryKey.getEntityType(),
+                        queryKey,
+                        ids,
+                        () -> selectStatementCache.evictLimitedList(queryKey, ids)
+                );
             } else {
-                selectStatementCache.putList(selectStatement, putToCache(list));
+                selectStatementCache.putList(queryKey, ids);
+                onWrite(
+                        SubCache.LIST,
+                        queryKey.getEntityType(),
+                        queryKey,
+                        ids,
+                        () -> selectStatementCache.evictList(queryKey, ids)
+                );
             }
-        }
+
+            //Во время заполнения была запись, результат может быть устаревшим
+            if (generations.current(entityType) != generation) {
+                if (isLimitedQuery(selectStatement)) {
+                    selectStatementCache.evictLimitedList(queryKey);
+                    forgetEntry(SubCache.LIMITED_LIST, entityType, queryKey);
+                    recordEviction(SubCache.LIMITED_LIST, entityType, EvictionCause.STALE, 1);
+                } else {
+                    selectStatementCache.evictList(queryKey);
+                    forgetEntry(SubCache.LIST, entityType, queryKey);
+                    recordEviction(SubCache.LIST, entityType, EvictionCause.STALE, 1);
+                }
+                discardObjects(entityType, ids);
+            }
+        });
     }
 
     @Override
     public Optional<List<Object>> list(SelectStatement<?> selectStatement) {
         if (isCacheable(selectStatement.getEntityClass())) {
+            long start = startTimer();
+            QueryKey queryKey = digest(selectStatement);
+            CacheRegion region = regions.get(selectStatement.getEntityClass());
+            long stamp = region.startRead();
             List<Object> ids;
 
+            SubCache subCache;
+
             if (isLimitedQuery(selectStatement)) {
-                ids = selectStatementCache.getLimitedList(selectStatement);
+                subCache = SubCache.LIMITED_LIST;
+                ids = isExpired(subCache, queryKey.getEntityType(), queryKey)
+                        ? null
+                        : selectStatementCache.getLimitedList(queryKey);
             } else {
-                ids = selectStatementCache.getList(selectStatement);
-            }
-
-            if (ids == null) {
-                return Optional.empty();
+                subCache = SubCache.LIST;
+                ids = isExpired(subCache, queryKey.getEntityType(), queryKey)
+                        ? null
+                        : selectStatementCache.getList(queryKey);
             }
-            List<Object> objects = new ArrayList<>();
-
-            for (Object id : ids) {
-                Object object = objectCacheMap.get(selectStatement.getEntityClass()).get(
-                        selectStatement.getEntityClass(),
-                        id
-                );
 
-                if (object != null) {
-                    objects.add(object);
-                }
-            }
+            List<Object> objects = getObjects(selectStatement.getEntityClass(), ids);
 
-            return Optional.of(objects);
+            return onLookup(
+                    subCache,
+                    queryKey.getEntityType(),
+                    queryKey,
+                    start,
+                    Optional.ofNullable(region.validateRead(stamp) ? objects : null)
+            );
         }
 
         return Optional.empty();
@@ -332,90 +789,1387 @@ public class CacheLayer implements Cache {
 
     @Override
     public void cacheQueryForLong(SelectStatement<?> selectStatement, long l) {
-        if (isCacheable(selectStatement.getEntityClass())) {
-            selectStatementCache.putLong(selectStatement, l);
-        }
-    }
+        QueryKey queryKey = digest(selectStatement);
 
-    @Override
-    public Optional<Long> queryForLong(SelectStatement<?> selectStatement) {
-        return Optional.ofNullable(selectStatementCache.getLong(selectStatement));
+        cacheQueryForLong(
+                queryKey,
+                l,
+                generations.take(new EntryKey(SubCache.LONG, selectStatement.getEntityClass(), queryKey))
+        );
     }
 
-    @Override
-    public void enableDefaultCache() {
-        for (Class<?> entityType : cacheableEntities) {
-            ObjectCache objectCache = new ReferenceObjectCache();
+    /**
+     * Cache long result queried at entity generation. Result is discarded if entity was written since.
+     *
+     * @param selectStatement target select statement
+     * @param l               target long result
+     * @param generation      target generation observed before query
+     */
+    public void cacheQueryForLong(SelectStatement<?> selectStatement, long l, long generation) {
+        cacheQueryForLong(digest(selectStatement), l, generation);
+    }
 
-            objectCache.registerClass(entityType);
-            objectCacheMap.put(entityType, objectCache);
-        }
+    /**
+     * Cache long result of digested statement queried at entity generation.
+     *
+     * @param queryKey   target statement query key
+     * @param l          target long result
+     * @param generation target generation observed before query
+     */
+    private void cacheQueryForLong(QueryKey queryKey, long l, long generation) {
+        Class<?> entityType = queryKey.getEntityType();
+
+        populate(entityType, generation, () -> {
+            selectStatementCache.putLong(queryKey, l);
+            onWrite(
+                    SubCache.LONG,
+                    queryKey.getEntityType(),
+                    queryKey,
+                    l,
+                    () -> selectStatementCache.evictLong(queryKey, l)
+            );
+
+            //Во время заполнения была запись, результат может быть устаревшим
+            if (generations.current(entityType) != generation) {
+                selectStatementCache.evictLong(queryKey);
+                forgetEntry(SubCache.LONG, entityType, queryKey);
+                recordEviction(SubCache.LONG, entityType, EvictionCause.STALE, 1);
+            }
+        });
     }
 
     @Override
-    public void setCache(Class<?> entityType, ObjectCache objectCache) {
-        if (!cacheableEntities.contains(entityType)) {
-            throw new IllegalArgumentException("Entity " + entityType + " not annotated with " + Cacheable.class);
+    public Optional<Long> queryForLong(SelectStatement<?> selectStatement) {
+        long start = startTimer();
+        QueryKey queryKey = digest(selectStatement);
+
+        if (isExpired(SubCache.LONG, queryKey.getEntityType(), queryKey)) {
+            return onLookup(SubCache.LONG, queryKey.getEntityType(), queryKey, start, Optional.empty());
         }
 
-        objectCache.registerClass(entityType);
-        objectCacheMap.put(entityType, objectCache);
+        return onLookup(
+                SubCache.LONG,
+                queryKey.getEntityType(),
+                queryKey,
+                start,
+                Optional.ofNullable(selectStatementCache.getLong(queryKey))
+        );
     }
 
-    @Override
-    public void setCache(Class<?>[] entityTypes, ObjectCache objectCache) {
-        for (Class<?> entityType : entityTypes) {
-            objectCache.registerClass(entityType);
-            objectCacheMap.put(entityType, objectCache);
+    /**
+     * Return cached object or load and cache it. Concurrent misses of the same id wait for one load.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @param loader target loader which queries object, it may return null
+     * @return object or null
+     */
+    public Object queryForId(Class<?> tClass, Object id, Supplier<Object> loader) {
+        Optional<Object> cached = queryForId(tClass, id);
+
+        if (cached.isPresent()) {
+            return cached.get();
         }
-    }
+        if (!isCacheable(tClass)) {
+            return loader.get();
+        }
+        EntryKey key = new EntryKey(SubCache.OBJECT, tClass, id);
+        long generation = generations.take(key);
 
-    @Override
-    public ObjectCache getCache(Class<?> entityType) {
-        return objectCacheMap.get(entityType);
-    }
+        return singleFlight.load(key, generation, () -> {
+            Object object = load(SubCache.OBJECT, tClass, loader);
 
-    @Override
-    public CacheEvict evictApi() {
-        return cacheEvict;
-    }
+            if (object != null) {
+                cacheQueryForId(id, object, generation);
+            }
 
-    @Override
-    public void close() {
-        objectCacheMap.values().forEach(ObjectCache::invalidateAll);
+            return object;
+        });
     }
 
-    @Override
-    public Optional<DatabaseResults> query(Query query) {
-        return Optional.empty();
-    }
+    /**
+     * Return cached query for all result or load and cache it. Concurrent misses wait for one load.
+     *
+     * @param tClass target entity type
+     * @param loader target loader which queries all objects
+     * @return objects
+     */
+    public List<Object> queryForAll(Class<?> tClass, Supplier<List<Object>> loader) {
+        Optional<List<Object>> cached = queryForAll(tClass);
 
-    @Override
-    public void cacheQuery(Query query, DatabaseResults results) {
+        if (cached.isPresent()) {
+            refreshAhead(SubCache.QUERY_FOR_ALL, tClass, tClass, () -> {
+                long generation = generations.current(tClass);
+
+                cacheQueryForAll(load(SubCache.QUERY_FOR_ALL, tClass, loader), generation);
+            });
+
+            return cached.get();
+        }
+        if (!isCacheable(tClass)) {
+            return loader.get();
+        }
+        EntryKey key = new EntryKey(SubCache.QUERY_FOR_ALL, tClass, tClass);
+        long generation = generations.take(key);
+
+        return singleFlight.load(key, generation, () -> {
+            List<Object> objects = load(SubCache.QUERY_FOR_ALL, tClass, loader);
+
+            cacheQueryForAll(objects, generation);
 
+            return objects;
+        });
     }
 
     /**
-     * Add object to exist cache.
+     * Return cached count off result or load and cache it. Concurrent misses wait for one load.
      *
-     * @param entityType target entity type
-     * @param id         target entity id
-     * @param exist      target exist
+     * @param tClass target entity type
+     * @param loader target loader which counts objects
+     * @return count
      */
-    private void addToExistCache(Class<?> entityType, Object id, boolean exist) {
-        existCache.putIfAbsent(entityType, new ConcurrentHashMap<>());
-        existCache.get(entityType).put(id, exist);
+    public long countOff(Class<?> tClass, LongSupplier loader) {
+        Optional<Long> cached = countOff(tClass);
+
+        if (cached.isPresent()) {
+            refreshAhead(SubCache.COUNT_OFF, tClass, tClass, () -> {
+                long generation = generations.current(tClass);
+
+                cacheCountOff(tClass, load(SubCache.COUNT_OFF, tClass, loader::getAsLong), generation);
+            });
+
+            return cached.get();
+        }
+        if (!isCacheable(tClass)) {
+            return loader.getAsLong();
+        }
+        EntryKey key = new EntryKey(SubCache.COUNT_OFF, tClass, tClass);
+        long generation = generations.take(key);
+
+        return singleFlight.load(key, generation, () -> {
+            long count = load(SubCache.COUNT_OFF, tClass, loader::getAsLong);
+
+            cacheCountOff(tClass, count, generation);
+
+            return count;
+        });
     }
 
     /**
-     * Extract id from object.
+     * Return cached list result or load and cache it. Concurrent misses of the same query wait for one load.
      *
-     * @param object target object
-     * @return id
+     * @param selectStatement target select statement
+     * @param loader          target loader which executes statement
+     * @return objects
      */
-    private Object extractId(Object object) {
-        DatabaseColumnType primaryKeyColumnType = metaModel
-                .getPersister(object.getClass())
+    public List<Object> list(SelectStatement<?> selectStatement, Supplier<List<Object>> loader) {
+        Optional<List<Object>> cached = list(selectStatement);
+        Class<?> entityType = selectStatement.getEntityClass();
+        SubCache subCache = isLimitedQuery(selectStatement) ? SubCache.LIMITED_LIST : SubCache.LIST;
+
+        if (cached.isPresent()) {
+            if (refreshAhead != null) {
+                refreshAhead(subCache, entityType, digest(selectStatement), () -> {
+                    long generation = generations.current(entityType);
+
+                    cacheList(selectStatement, load(subCache, entityType, loader), generation);
+                });
+            }
+
+            return cached.get();
+        }
+        if (!isCacheable(entityType)) {
+            return loader.get();
+        }
+        QueryKey queryKey = digest(selectStatement);
+        EntryKey key = new EntryKey(subCache, entityType, queryKey);
+        long generation = generations.take(key);
+
+        return singleFlight.load(key, generation, () -> {
+            List<Object> objects = load(subCache, entityType, loader);
+
+            cacheList(selectStatement, queryKey, objects, generation);
+
+            return objects;
+        });
+    }
+
+    /**
+     * Return cached long result or load and cache it. Concurrent misses of the same query wait for one load.
+     *
+     * @param selectStatement target select statement
+     * @param loader          target loader which executes statement
+     * @return long result
+     */
+    public long queryForLong(SelectStatement<?> selectStatement, LongSupplier loader) {
+        Class<?> entityType = selectStatement.getEntityClass();
+
+        if (!isCacheable(entityType)) {
+            return loader.getAsLong();
+        }
+        Optional<Long> cached = queryForLong(selectStatement);
+
+        if (cached.isPresent()) {
+            if (refreshAhead != null) {
+                refreshAhead(SubCache.LONG, entityType, digest(selectStatement), () -> {
+                    long generation = generations.current(entityType);
+
+                    cacheQueryForLong(selectStatement, load(SubCache.LONG, entityType, loader::getAsLong), generation);
+                });
+            }
+
+            return cached.get();
+        }
+        QueryKey queryKey = digest(selectStatement);
+        EntryKey key = new EntryKey(SubCache.LONG, entityType, queryKey);
+        long generation = generations.take(key);
+
+        return singleFlight.load(key, generation, () -> {
+            long result = load(SubCache.LONG, entityType, loader::getAsLong);
+
+            cacheQueryForLong(queryKey, result, generation);
+
+            return result;
+        });
+    }
+
+    @Override
+    public void enableDefaultCache() {
+        for (CacheRegion region : regions.values()) {
+            ObjectCache objectCache = new ReferenceObjectCache();
+
+            registerObjectCache(region.getEntityType(), objectCache);
+            region.setObjectCache(objectCache);
+        }
+    }
+
+    @Override
+    public void setCache(Class<?> entityType, ObjectCache objectCache) {
+        CacheRegion region = requireRegion(entityType);
+
+        registerObjectCache(entityType, objectCache);
+        region.setObjectCache(objectCache);
+    }
+
+    @Override
+    public void setCache(Class<?>[] entityTypes, ObjectCache objectCache) {
+        for (Class<?> entityType : entityTypes) {
+            registerObjectCache(entityType, objectCache);
+
+            CacheRegion region = regions.get(entityType);
+
+            if (region != null) {
+                region.setObjectCache(objectCache);
+            }
+        }
+    }
+
+    /**
+     * Set entity entries expiration policy. It overrides policy from {@link Cacheable} attributes.
+     *
+     * @param entityType target entity type
+     * @param policy     target policy, null disables expiration
+     */
+    public void setExpirationPolicy(Class<?> entityType, ExpirationPolicy policy) {
+        requireRegion(entityType);
+        expiryHelper.setPolicy(entityType, policy);
+    }
+
+    /**
+     * Return entity write generation. Pass it to populating methods to discard results queried before a write.
+     *
+     * @param entityType target entity type
+     * @return current generation
+     */
+    public long getGeneration(Class<?> entityType) {
+        return generations.current(entityType);
+    }
+
+    /**
+     * Forget generations which lookup misses of current thread remembered for following population.
+     */
+    void forgetObservedGenerations() {
+        generations.forget();
+    }
+
+    /**
+     * Enable or disable incremental maintenance of query for all and count off results. When enabled creates
+     * append to cached query for all ids and increment count off, deletes by id of rows known to be persisted
+     * prune and decrement them. It overrides {@link Cacheable#incrementalAggregates()}.
+     *
+     * @param entityType  target entity type
+     * @param incremental target incremental flag
+     */
+    public void setIncrementalAggregates(Class<?> entityType, boolean incremental) {
+        CacheRegion region = requireRegion(entityType);
+
+        region.setIncrementalAggregates(incremental);
+        if (!incremental) {
+            region.setExistFilter(null);
+        }
+    }
+
+    /**
+     * Declare that entity table strings compare as binary values, so string conditions of cached queries may exclude
+     * written rows. Cached query results of entity are evicted. It overrides {@link Cacheable#binaryCollation()}.
+     *
+     * @param entityType target entity type
+     * @param binary     target binary collation flag
+     */
+    public void setBinaryCollation(Class<?> entityType, boolean binary) {
+        requireRegion(entityType);
+        selectStatementCache.setBinaryCollation(entityType, binary);
+    }
+
+    /**
+     * Set memory budget which all sub caches respect. Entries cached before are not accounted.
+     *
+     * @param memoryBudget target memory budget, null makes caches unbounded
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        ((EvictHelper) cacheEvict).setMemoryBudget(memoryBudget);
+    }
+
+    /**
+     * Return memory budget.
+     *
+     * @return memory budget or null
+     */
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set statistics which lookups, loading methods and evictions record. Counters of cached entity types are
+     * created at once, so they are visible in {@link CacheStats#registerMBeans(String)}.
+     *
+     * @param stats target statistics, null disables statistics
+     */
+    public void setStats(CacheStats stats) {
+        if (stats != null) {
+            for (Class<?> entityType : regions.keySet()) {
+                stats.register(entityType);
+            }
+        }
+        this.stats = stats;
+    }
+
+    /**
+     * Return statistics.
+     *
+     * @return statistics or null
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Set invalidation bus. Writes are published to cache layers of other nodes and their writes evict this cache
+     * layer entries. Bus is set once after {@link #init(MetaModel, DatabaseEngine)}, it is owned and closed by caller.
+     *
+     * @param bus target invalidation bus
+     */
+    public void setInvalidationBus(InvalidationBus bus) {
+        bus.bind(regions.keySet(), new InvalidationBus.Invalidator() {
+            @Override
+            public void invalidate(Class<?> entityType, Object id) {
+                invalidateRemote(entityType, id);
+            }
+
+            @Override
+            public void invalidateAll(Class<?> entityType) {
+                invalidateRemoteAll(entityType);
+            }
+
+            @Override
+            public void invalidateAll() {
+                regions.keySet().forEach(entityType -> invalidateRemoteAll(entityType));
+            }
+        });
+        this.invalidationBus = bus;
+    }
+
+    /**
+     * Set refresh ahead policy of results cached by loading methods.
+     *
+     * @param policy target policy, null disables refresh ahead
+     */
+    public void setRefreshAheadPolicy(RefreshAheadPolicy policy) {
+        RefreshAhead prior = refreshAhead;
+
+        refreshAhead = policy == null ? null : new RefreshAhead(policy);
+        if (prior != null) {
+            prior.shutdown();
+        }
+    }
+
+    /**
+     * Enable snapshot. Cached objects and query results are saved to file on {@link #close()} and restored by
+     * {@link #restoreSnapshot()}, so a restarted application starts with warm cache.
+     *
+     * @param file  target snapshot file, null disables snapshot
+     * @param codec target entity codec
+     */
+    public void setSnapshot(Path file, EntityCodec codec) {
+        this.snapshotCodec = codec;
+        this.snapshotFile = file;
+    }
+
+    /**
+     * Save cached objects and query results of entities with object cache to snapshot file.
+     *
+     * @throws IllegalStateException if snapshot is disabled
+     * @throws UncheckedIOException  if file can't be written
+     */
+    public void saveSnapshot() {
+        Path file = requireSnapshotFile();
+        EntityCodec codec = snapshotCodec;
+        Map<Class<?>, byte[]> sections = new LinkedHashMap<>();
+
+        for (CacheRegion region : regions.values()) {
+            if (region.getObjectCache() != null) {
+                sections.put(region.getEntityType(), createSnapshotSection(region).encode(codec));
+            }
+        }
+        CacheSnapshot.write(file, CacheSnapshot.fingerprint(regions.keySet(), codec), sections);
+    }
+
+    /**
+     * Restore snapshot saved by previous run. Entity sections are restored in parallel, objects cache of entity
+     * must be set before. Snapshot of changed entity definitions is ignored. Snapshot file is deleted after restore,
+     * so it is never restored twice. Entity written during restore drops its restored entries. Restored entries
+     * keep their age increased by time passed since save, entries which expired meanwhile are skipped.
+     *
+     * @return true if snapshot was restored
+     * @throws IllegalStateException if snapshot is disabled
+     * @throws UncheckedIOException  if file can't be read
+     */
+    public boolean restoreSnapshot() {
+        Path file = requireSnapshotFile();
+        EntityCodec codec = snapshotCodec;
+        Map<String, Class<?>> entityTypes = new HashMap<>();
+
+        regions.keySet().forEach(entityType -> entityTypes.put(entityType.getName(), entityType));
+
+        CacheSnapshot.Contents contents = CacheSnapshot.read(
+                file,
+                CacheSnapshot.fingerprint(regions.keySet(), codec),
+                entityTypes
+        );
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't delete snapshot " + file, ex);
+        }
+        if (contents == null) {
+            return false;
+        }
+        long elapsed = contents.getElapsed();
+
+        contents.getSections().entrySet().parallelStream().forEach(section -> {
+            CacheRegion region = regions.get(section.getKey());
+
+            if (region.getObjectCache() != null) {
+                restoreSnapshotSection(
+                        region,
+                        CacheSnapshot.Section.decode(section.getKey(), section.getValue(), codec, elapsed)
+                );
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public ObjectCache getCache(Class<?> entityType) {
+        return objectCacheMap.get(entityType);
+    }
+
+    @Override
+    public CacheEvict evictApi() {
+        return cacheEvict;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (snapshotFile != null) {
+                saveSnapshot();
+            }
+        } finally {
+            invalidateOnClose();
+        }
+    }
+
+    /**
+     * Invalidate object caches on close.
+     */
+    private void invalidateOnClose() {
+        objectCacheMap.values().forEach(ObjectCache::invalidateAll);
+
+        MemoryBudget budget = memoryBudget;
+
+        if (budget != null) {
+            budget.removeAll(SubCache.OBJECT);
+        }
+    }
+
+    @Override
+    public Optional<DatabaseResults> query(Query query) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void cacheQuery(Query query, DatabaseResults results) {
+
+    }
+
+    /**
+     * Start expiration and budget accounting of written entry.
+     *
+     * @param subCache    target sub cache
+     * @param entityType  target entity type
+     * @param key         target entry key
+     * @param value       target entry value
+     * @param evictAction target action which removes entry from sub cache
+     */
+    private void onWrite(SubCache subCache, Class<?> entityType, Object key, Object value, Runnable evictAction) {
+        track(subCache, entityType, key, value, evictAction, false, 0);
+    }
+
+    /**
+     * Start expiration and budget accounting of entry restored from snapshot. Entry keeps its remaining life.
+     *
+     * @param subCache    target sub cache
+     * @param entityType  target entity type
+     * @param key         target entry key
+     * @param value       target entry value
+     * @param evictAction target action which removes entry from sub cache
+     * @param age         target nanos since entry was cached
+     */
+    private void onRestore(SubCache subCache,
+                           Class<?> entityType,
+                           Object key,
+                           Object value,
+                           Runnable evictAction,
+                           long age) {
+        track(subCache, entityType, key, value, evictAction, false, age);
+    }
+
+    /**
+     * Move expiration and budget accounting of entry updated in place to its new value. Entry keeps its deadline.
+     *
+     * @param subCache    target sub cache
+     * @param entityType  target entity type
+     * @param key         target entry key
+     * @param value       target new entry value
+     * @param evictAction target action which removes new value from sub cache
+     */
+    private void onUpdate(SubCache subCache, Class<?> entityType, Object key, Object value, Runnable evictAction) {
+        track(subCache, entityType, key, value, evictAction, true, 0);
+    }
+
+    /**
+     * Register entry in expiry helper and memory budget. Evict actions remove entry only if its value is not
+     * replaced, because budget runs them after its lock is released.
+     *
+     * @param subCache    target sub cache
+     * @param entityType  target entity type
+     * @param key         target entry key
+     * @param value       target entry value
+     * @param evictAction target action which removes entry from sub cache
+     * @param update      true if entry is updated in place and keeps its deadline
+     * @param age         target nanos since new entry was cached
+     */
+    private void track(SubCache subCache,
+                       Class<?> entityType,
+                       Object key,
+                       Object value,
+                       Runnable evictAction,
+                       boolean update,
+                       long age) {
+        MemoryBudget budget = memoryBudget;
+        EntryKey entryKey = budget == null ? null : new EntryKey(subCache, entityType, key);
+        Runnable expireAction = () -> {
+            evictAction.run();
+            if (budget != null) {
+                budget.remove(entryKey);
+            }
+            recordEviction(subCache, entityType, EvictionCause.EXPIRED, 1);
+        };
+
+        if (!update) {
+            expiryHelper.onWrite(subCache, entityType, key, expireAction, age);
+        } else if (!expiryHelper.onUpdate(subCache, entityType, key, expireAction)) {
+            return;
+        }
+        if (budget != null) {
+            budget.onWrite(entryKey, value, () -> {
+                evictAction.run();
+                expiryHelper.remove(subCache, entityType, key);
+                recordEviction(subCache, entityType, EvictionCause.BUDGET, 1);
+            });
+        }
+    }
+
+    /**
+     * Update query for all ids or count off in place. Update holds region population lock, so it does not
+     * interleave with eviction.
+     *
+     * @param region   target entity region
+     * @param subCache target sub cache
+     * @param cache    target results by entity type
+     * @param update   target function of current result to new result
+     * @param <V>      result type
+     */
+    private <V> void updateAggregate(CacheRegion region,
+                                     SubCache subCache,
+                                     Map<Class<?>, V> cache,
+                                     UnaryOperator<V> update) {
+        Class<?> entityType = region.getEntityType();
+        long stamp = region.lockPopulation();
+
+        try {
+            V value = cache.computeIfPresent(entityType, (k, current) -> update.apply(current));
+
+            if (value != null) {
+                onUpdate(
+                        subCache,
+                        entityType,
+                        entityType,
+                        value,
+                        () -> removeAggregate(region, subCache, cache, value)
+                );
+            }
+        } finally {
+            region.unlock(stamp);
+        }
+    }
+
+    /**
+     * Remove evicted or expired aggregate result. Ids filter built from query for all result is dropped with it.
+     *
+     * @param region   target entity region
+     * @param subCache target aggregate sub cache
+     * @param cache    target aggregate cache
+     * @param value    target evicted value
+     * @param <V>      value type
+     */
+    private <V> void removeAggregate(CacheRegion region, SubCache subCache, Map<Class<?>, V> cache, V value) {
+        if (cache.remove(region.getEntityType(), value) && subCache == SubCache.QUERY_FOR_ALL) {
+            region.setExistFilter(null);
+        }
+    }
+
+    /**
+     * Run population under entity region lock, so it does not interleave with eviction. Population is skipped
+     * if entity was written since generation.
+     *
+     * @param entityType target entity type
+     * @param generation target generation observed before query
+     * @param population target population
+     */
+    private void populate(Class<?> entityType, long generation, Runnable population) {
+        CacheRegion region = regions.get(entityType);
+
+        if (region == null || generations.current(entityType) != generation) {
+            return;
+        }
+        long stamp = region.lockPopulation();
+
+        try {
+            if (generations.current(entityType) == generation) {
+                population.run();
+            }
+        } finally {
+            region.unlock(stamp);
+        }
+    }
+
+    /**
+     * Publish entity write to other nodes.
+     *
+     * @param entityType target entity type
+     * @param id         target written id, null if many rows could be written
+     */
+    private void publish(Class<?> entityType, Object id) {
+        InvalidationBus bus = invalidationBus;
+
+        if (bus == null) {
+            return;
+        }
+        if (id == null) {
+            bus.publishAll(entityType);
+        } else {
+            bus.publish(entityType, id);
+        }
+    }
+
+    /**
+     * Evict entity id written on other node.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     */
+    private void invalidateRemote(Class<?> entityType, Object id) {
+        CacheRegion region = regions.get(entityType);
+
+        if (region == null) {
+            return;
+        }
+        generations.advance(entityType);
+        evictApi().evict(entityType, id);
+        region.setExistFilter(null);
+        region.getExistCache().remove(id);
+        forgetEntry(SubCache.EXIST, entityType, id);
+
+        //Значения записи неизвестны, поэтому результаты запросов очищаем целиком
+        evictApi().evictList(entityType);
+        evictApi().evictLimitedList(entityType);
+        evictApi().evictQueryForLong(entityType);
+        evictApi().evictCountOff(entityType);
+        evictApi().evictQueryForAll(entityType);
+    }
+
+    /**
+     * Evict entity type written on other node.
+     *
+     * @param entityType target entity type
+     */
+    private void invalidateRemoteAll(Class<?> entityType) {
+        if (isCacheable(entityType)) {
+            generations.advance(entityType);
+            evictApi().evictAll(entityType);
+        }
+    }
+
+    /**
+     * Record hit of result loaded by loading method and refresh it in background if it is hot and near expiry.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     * @param refresh    target action which reloads and caches result
+     */
+    private void refreshAhead(SubCache subCache, Class<?> entityType, Object key, Runnable refresh) {
+        RefreshAhead current = refreshAhead;
+
+        if (current != null) {
+            current.onHit(
+                    new EntryKey(subCache, entityType, key),
+                    expiryHelper.remaining(subCache, entityType, key),
+                    refresh
+            );
+        }
+    }
+
+    /**
+     * Collect entity cached objects and query results which are not expired.
+     *
+     * @param region target entity region
+     * @return snapshot section
+     */
+    private CacheSnapshot.Section createSnapshotSection(CacheRegion region) {
+        Class<?> entityType = region.getEntityType();
+        CacheSnapshot.Section section = new CacheSnapshot.Section();
+
+        for (Object object : new ArrayList<>(region.getObjectCache().getAll(entityType))) {
+            Object id = region.extractId(object);
+
+            if (!expiryHelper.isExpired(SubCache.OBJECT, entityType, id)) {
+                section.getObjects().put(
+                        id,
+                        new CacheSnapshot.Aged<>(object, expiryHelper.age(SubCache.OBJECT, entityType, id))
+                );
+            }
+        }
+        List<Object> queryForAll = queryForAllCache.get(entityType);
+
+        if (queryForAll != null && !expiryHelper.isExpired(SubCache.QUERY_FOR_ALL, entityType, entityType)) {
+            section.setQueryForAll(new CacheSnapshot.Aged<>(
+                    queryForAll,
+                    expiryHelper.age(SubCache.QUERY_FOR_ALL, entityType, entityType)
+            ));
+        }
+        Long countOff = countOffCache.get(entityType);
+
+        if (countOff != null && !expiryHelper.isExpired(SubCache.COUNT_OFF, entityType, entityType)) {
+            section.setCountOff(new CacheSnapshot.Aged<>(
+                    countOff,
+                    expiryHelper.age(SubCache.COUNT_OFF, entityType, entityType)
+            ));
+        }
+        selectStatementCache.getLists(entityType).forEach((queryKey, ids) -> {
+            if (!expiryHelper.isExpired(SubCache.LIST, entityType, queryKey)) {
+                section.getLists().add(snapshotQuery(SubCache.LIST, queryKey, ids));
+            }
+        });
+        selectStatementCache.getLimitedLists(entityType).forEach((queryKey, ids) -> {
+            if (!expiryHelper.isExpired(SubCache.LIMITED_LIST, entityType, queryKey)) {
+                section.getLimitedLists().add(snapshotQuery(SubCache.LIMITED_LIST, queryKey, ids));
+            }
+        });
+        selectStatementCache.getLongs(entityType).forEach((queryKey, l) -> {
+            if (!expiryHelper.isExpired(SubCache.LONG, entityType, queryKey)) {
+                section.getLongs().add(snapshotQuery(SubCache.LONG, queryKey, l));
+            }
+        });
+
+        return section;
+    }
+
+    /**
+     * Create snapshot query result with its age.
+     *
+     * @param subCache target sub cache
+     * @param queryKey target query key
+     * @param result   target result
+     * @param <T>      result type
+     * @return snapshot query result
+     */
+    private <T> CacheSnapshot.Query<T> snapshotQuery(SubCache subCache, QueryKey queryKey, T result) {
+        return new CacheSnapshot.Query<>(
+                queryKey.getQuery(),
+                queryKey.getArgs(),
+                result,
+                expiryHelper.age(subCache, queryKey.getEntityType(), queryKey)
+        );
+    }
+
+    /**
+     * Put snapshot section to caches. Entries expired since save are skipped.
+     *
+     * @param region  target entity region
+     * @param section target snapshot section
+     */
+    private void restoreSnapshotSection(CacheRegion region, CacheSnapshot.Section section) {
+        Class<?> entityType = region.getEntityType();
+        long generation = generations.current(entityType);
+
+        section.getObjects().forEach((id, object) -> {
+            if (!expiryHelper.isExpired(entityType, object.getAge())) {
+                addToExistCache(entityType, id, true);
+                putObject(entityType, id, object.getValue(), object.getAge());
+            }
+        });
+        CacheSnapshot.Aged<List<Object>> restoredQueryForAll = section.getQueryForAll();
+
+        if (restoredQueryForAll != null && !expiryHelper.isExpired(entityType, restoredQueryForAll.getAge())) {
+            List<Object> queryForAll = region.compactIds(restoredQueryForAll.getValue());
+
+            queryForAllCache.put(entityType, queryForAll);
+            onRestore(SubCache.QUERY_FOR_ALL, entityType, entityType, queryForAll,
+                    () -> removeAggregate(region, SubCache.QUERY_FOR_ALL, queryForAllCache, queryForAll),
+                    restoredQueryForAll.getAge());
+        }
+        CacheSnapshot.Aged<Long> countOff = section.getCountOff();
+
+        if (countOff != null && !expiryHelper.isExpired(entityType, countOff.getAge())) {
+            countOffCache.put(entityType, countOff.getValue());
+            onRestore(SubCache.COUNT_OFF, entityType, entityType, countOff.getValue(),
+                    () -> countOffCache.remove(entityType, countOff.getValue()), countOff.getAge());
+        }
+        for (CacheSnapshot.Query<List<Object>> query : section.getLists()) {
+            if (expiryHelper.isExpired(entityType, query.getAge())) {
+                continue;
+            }
+            QueryKey queryKey = new QueryKey(entityType, query.getQuery(), query.getArgs());
+
+            List<Object> ids = region.compactIds(query.getResult());
+
+            selectStatementCache.putList(queryKey, ids);
+            onRestore(SubCache.LIST, entityType, queryKey, ids,
+                    () -> selectStatementCache.evictList(queryKey, ids), query.getAge());
+        }
+        for (CacheSnapshot.Query<List<Object>> query : section.getLimitedLists()) {
+            if (expiryHelper.isExpired(entityType, query.getAge())) {
+                continue;
+            }
+            QueryKey queryKey = new QueryKey(entityType, query.getQuery(), query.getArgs());
+
+            List<Object> ids = region.compactIds(query.getResult());
+
+            selectStatementCache.putLimitedList(queryKey, ids);
+            onRestore(SubCache.LIMITED_LIST, entityType, queryKey, ids,
+                    () -> selectStatementCache.evictLimitedList(queryKey, ids), query.getAge());
+        }
+        for (CacheSnapshot.Query<Long> query : section.getLongs()) {
+            if (expiryHelper.isExpired(entityType, query.getAge())) {
+                continue;
+            }
+            QueryKey queryKey = new QueryKey(entityType, query.getQuery(), query.getArgs());
+
+            selectStatementCache.putLong(queryKey, query.getResult());
+            onRestore(SubCache.LONG, entityType, queryKey, query.getResult(),
+                    () -> selectStatementCache.evictLong(queryKey, query.getResult()), query.getAge());
+        }
+
+        //Во время восстановления была запись, снимок может быть устаревшим
+        if (generations.current(entityType) != generation) {
+            cacheEvict.evictAll(entityType);
+        }
+    }
+
+    /**
+     * Return snapshot file.
+     *
+     * @return snapshot file
+     * @throws IllegalStateException if snapshot is disabled
+     */
+    private Path requireSnapshotFile() {
+        Path file = snapshotFile;
+
+        if (file == null) {
+            throw new IllegalStateException("Snapshot is disabled");
+        }
+
+        return file;
+    }
+
+    /**
+     * Check if row is known to be persisted by cached objects, query for all ids or exist results.
+     *
+     * @param region target entity region
+     * @param id     target row id
+     * @return true if row surely exists in table
+     */
+    private boolean isKnownPersisted(CacheRegion region, Object id) {
+        Boolean exist = region.getExistCache().get(id);
+
+        if (exist != null) {
+            return exist;
+        }
+        ObjectCache objectCache = region.getObjectCache();
+
+        if (objectCache != null && objectCache.contains(region.getEntityType(), id)) {
+            return true;
+        }
+        List<Object> ids = queryForAllCache.get(region.getEntityType());
+
+        return ids != null && ids.contains(id);
+    }
+
+    /**
+     * Stop expiration and budget accounting of evicted query results.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param queryKeys  target evicted query keys
+     */
+    private void forget(SubCache subCache, Class<?> entityType, Collection<QueryKey> queryKeys) {
+        for (QueryKey queryKey : queryKeys) {
+            forgetEntry(subCache, entityType, queryKey);
+        }
+    }
+
+    /**
+     * Box numeric id to primary key type, so lookup and population with ids of other boxed type share observation.
+     *
+     * @param region target entity region
+     * @param id     target id
+     * @return id boxed to primary key type if it is integer or long
+     */
+    private Object observedId(CacheRegion region, Object id) {
+        return id instanceof Integer || id instanceof Long ? region.boxId(((Number) id).longValue()) : id;
+    }
+
+    /**
+     * Stop expiration and budget accounting of removed entry.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     */
+    private void forgetEntry(SubCache subCache, Class<?> entityType, Object key) {
+        MemoryBudget budget = memoryBudget;
+
+        expiryHelper.remove(subCache, entityType, key);
+        if (budget != null) {
+            budget.remove(new EntryKey(subCache, entityType, key));
+        }
+    }
+
+    /**
+     * Remove objects and their exist results put by discarded population.
+     *
+     * @param entityType target entity type
+     * @param ids        target object ids
+     */
+    private void discardObjects(Class<?> entityType, Collection<Object> ids) {
+        CacheRegion region = regions.get(entityType);
+
+        for (Object id : ids) {
+            region.getObjectCache().invalidate(entityType, id);
+            forgetEntry(SubCache.OBJECT, entityType, id);
+            region.getExistCache().remove(id);
+            forgetEntry(SubCache.EXIST, entityType, id);
+        }
+        recordEviction(SubCache.OBJECT, entityType, EvictionCause.STALE, ids.size());
+    }
+
+    /**
+     * Record lookup statistics and remember entity generation on lookup miss of cacheable entity, so following
+     * population of the entry can detect concurrent writes.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     * @param start      target lookup start time from {@link #startTimer()}
+     * @param result     target lookup result
+     * @param <T>        result type
+     * @return lookup result
+     */
+    private <T> Optional<T> onLookup(SubCache subCache,
+                                     Class<?> entityType,
+                                     Object key,
+                                     long start,
+                                     Optional<T> result) {
+        if (!result.isPresent() && regions.containsKey(entityType)) {
+            generations.observe(new EntryKey(subCache, entityType, key));
+        }
+        recordLookup(subCache, entityType, start, result.isPresent());
+
+        return result;
+    }
+
+    /**
+     * Return lookup start time if statistics are enabled.
+     *
+     * @return nano time or zero
+     */
+    private long startTimer() {
+        return stats == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record lookup hit or miss and latency.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param start      target lookup start time from {@link #startTimer()}
+     * @param hit        true if lookup hit
+     */
+    private void recordLookup(SubCache subCache, Class<?> entityType, long start, boolean hit) {
+        CacheStats current = stats;
+
+        if (current == null) {
+            return;
+        }
+        if (start != 0) {
+            current.recordLookup(System.nanoTime() - start);
+        }
+        if (hit) {
+            current.recordHits(subCache, entityType, 1);
+        } else {
+            current.recordMisses(subCache, entityType, 1);
+        }
+    }
+
+    /**
+     * Record evictions if statistics are enabled.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param cause      target eviction cause
+     * @param count      target evictions count
+     */
+    private void recordEviction(SubCache subCache, Class<?> entityType, EvictionCause cause, long count) {
+        CacheStats current = stats;
+
+        if (current != null && count > 0) {
+            current.recordEvictions(subCache, entityType, cause, count);
+        }
+    }
+
+    /**
+     * Digest select statement and record digest latency.
+     *
+     * @param selectStatement target select statement
+     * @return query key
+     */
+    private QueryKey digest(SelectStatement<?> selectStatement) {
+        CacheStats current = stats;
+
+        if (current == null) {
+            return selectStatementCache.digest(selectStatement);
+        }
+        long start = System.nanoTime();
+        QueryKey queryKey = selectStatementCache.digest(selectStatement);
+
+        current.recordDigest(System.nanoTime() - start);
+
+        return queryKey;
+    }
+
+    /**
+     * Run loader and record load time.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param loader     target loader
+     * @param <T>        result type
+     * @return loaded result
+     */
+    private <T> T load(SubCache subCache, Class<?> entityType, Supplier<T> loader) {
+        CacheStats current = stats;
+
+        if (current == null) {
+            return loader.get();
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+
+        try {
+            T result = loader.get();
+
+            success = true;
+
+            return result;
+        } finally {
+            current.recordLoad(subCache, entityType, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Check entry expiration and record access of live entry.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     * @return true if entry is expired
+     */
+    private boolean isExpired(SubCache subCache, Class<?> entityType, Object key) {
+        if (expiryHelper.isExpired(subCache, entityType, key)) {
+            return true;
+        }
+        MemoryBudget budget = memoryBudget;
+
+        if (budget != null) {
+            budget.onRead(new EntryKey(subCache, entityType, key));
+        }
+
+        return false;
+    }
+
+    /**
+     * Return ids filter if query for all result it is built from is not expired.
+     *
+     * @param entityType target entity type
+     * @return filter or null
+     */
+    private CountingBloomFilter getLiveExistFilter(Class<?> entityType) {
+        CacheRegion region = regions.get(entityType);
+
+        if (region == null || region.getExistFilter() == null) {
+            return null;
+        }
+        //Истёкший SELECT * удаляет и построенный по нему фильтр
+        if (isExpired(SubCache.QUERY_FOR_ALL, entityType, entityType)) {
+            return null;
+        }
+
+        return region.getExistFilter();
+    }
+
+    /**
+     * Add object to exist cache.
+     *
+     * @param entityType target entity type
+     * @param id         target entity id
+     * @param exist      target exist
+     */
+    private void addToExistCache(Class<?> entityType, Object id, boolean exist) {
+        CacheRegion region = regions.get(entityType);
+        CountingBloomFilter filter = region.getExistFilter();
+
+        //Отсутствие id, которого нет в фильтре, не храним: фильтр и так отвечает на exist
+        if (!exist && filter != null && !filter.mightContain(id)) {
+            return;
+        }
+        Map<Object, Boolean> cache = region.getExistCache();
+
+        cache.put(id, exist);
+        onWrite(SubCache.EXIST, entityType, id, exist, () -> cache.remove(id, exist));
+    }
+
+    /**
+     * Create filter of all entity ids. It is sized from table count with room for rows created later.
+     *
+     * @param entityType target entity type
+     * @param ids        target all table ids
+     * @return filter
+     */
+    private CountingBloomFilter createExistFilter(Class<?> entityType, List<Object> ids) {
+        Long count = countOffCache.get(entityType);
+        CountingBloomFilter filter = new CountingBloomFilter(
+                Math.max(ids.size(), count == null ? 0 : count) * EXIST_FILTER_GROWTH
+        );
+
+        for (Object id : ids) {
+            filter.add(id);
+        }
+
+        return filter;
+    }
+
+    /**
+     * Put object to object cache.
+     *
+     * @param entityType target entity type
+     * @param id         target entity id
+     * @param object     target object
+     */
+    private void putObject(Class<?> entityType, Object id, Object object) {
+        putObject(entityType, id, object, 0);
+    }
+
+    /**
+     * Put object cached age nanos ago to object cache.
+     *
+     * @param entityType target entity type
+     * @param id         target entity id
+     * @param object     target object
+     * @param age        target nanos since object was cached
+     */
+    private void putObject(Class<?> entityType, Object id, Object object, long age) {
+        regions.get(entityType).getObjectCache().put(entityType, id, object);
+        onObjectWrite(entityType, id, object, age);
+    }
+
+    /**
+     * Start expiration and budget accounting of object put to object cache.
+     *
+     * @param entityType target entity type
+     * @param id         target entity id
+     * @param object     target object
+     */
+    private void onObjectWrite(Class<?> entityType, Object id, Object object) {
+        onObjectWrite(entityType, id, object, 0);
+    }
+
+    /**
+     * Start expiration and budget accounting of object cached age nanos ago.
+     *
+     * @param entityType target entity type
+     * @param id         target entity id
+     * @param object     target object
+     * @param age        target nanos since object was cached
+     */
+    private void onObjectWrite(Class<?> entityType, Object id, Object object, long age) {
+        CacheRegion region = regions.get(entityType);
+        Reference<Object> reference = new WeakReference<>(object);
+
+        track(SubCache.OBJECT, entityType, id, object, () -> invalidateObject(region, id, reference.get()), false,
+                age);
+    }
+
+    /**
+     * Remove evicted object from object cache unless newer object replaced it.
+     *
+     * @param region target entity region
+     * @param id     target entity id
+     * @param object target evicted object or null if it is garbage collected
+     */
+    private void invalidateObject(CacheRegion region, Object id, Object object) {
+        ObjectCache objectCache = region.getObjectCache();
+
+        if (objectCache instanceof BulkObjectCache) {
+            ((BulkObjectCache) objectCache).invalidate(region.getEntityType(), id, object);
+        } else {
+            objectCache.invalidate(region.getEntityType(), id);
+        }
+    }
+
+    /**
+     * Stop expiration and budget accounting of object removed by object cache on its own.
+     *
+     * @param entityType target entity type
+     * @param id         target entity id
+     */
+    private void onObjectEviction(Class<?> entityType, Object id) {
+        CacheRegion region = regions.get(entityType);
+
+        if (region == null) {
+            return;
+        }
+        //LongObjectCache сообщает id как long, приводим к типу первичного ключа
+        Object key = id instanceof Long ? region.boxId((Long) id) : id;
+
+        forgetEntry(SubCache.OBJECT, entityType, key);
+    }
+
+    /**
+     * Register object cache of entity.
+     *
+     * @param entityType  target entity type
+     * @param objectCache target object cache
+     */
+    private void registerObjectCache(Class<?> entityType, ObjectCache objectCache) {
+        objectCache.registerClass(entityType);
+        objectCacheMap.put(entityType, objectCache);
+        if (objectCache instanceof BulkObjectCache) {
+            ((BulkObjectCache) objectCache).setEvictionListener(this::onObjectEviction);
+        }
+    }
+
+    /**
+     * Retrieve object from object cache.
+     *
+     * @param region target entity region
+     * @param id     target entity id
+     * @return object or null
+     */
+    private Object getObject(CacheRegion region, Object id) {
+        if (isExpired(SubCache.OBJECT, region.getEntityType(), id)) {
+            return null;
+        }
+
+        return region.getObjectCache().get(region.getEntityType(), id);
+    }
+
+    /**
+     * Resolve cached ids to objects. Result is incomplete if some object was evicted or expired,
+     * so null is returned in this case.
+     *
+     * @param entityType target entity type
+     * @param ids        target ids
+     * @return objects or null
+     */
+    private List<Object> getObjects(Class<?> entityType, List<Object> ids) {
+        if (ids == null) {
+            return null;
+        }
+        CacheRegion region = regions.get(entityType);
+        List<Object> objects = new ArrayList<>(ids.size());
+
+        for (Object id : ids) {
+            Object object = getObject(region, id);
+
+            if (object == null) {
+                return null;
+            }
+            objects.add(object);
+        }
+
+        return objects;
+    }
+
+    /**
+     * Extract id from object.
+     *
+     * @param object target object
+     * @return id
+     */
+    private Object extractId(Object object) {
+        CacheRegion region = regions.get(object.getClass());
+
+        if (region != null) {
+            return region.extractId(object);
+        }
+        DatabaseColumnType primaryKeyColumnType = metaModel
+                .getPersister(object.getClass())
                 .getMetadata()
                 .getPrimaryKeyColumnType();
 
@@ -429,7 +2183,24 @@ public class CacheLayer implements Cache {
      * @return true if entity type is cacheable
      */
     private boolean isCacheable(Class<?> entityType) {
-        return cacheableEntities.contains(entityType);
+        return regions.containsKey(entityType);
+    }
+
+    /**
+     * Return region of cacheable entity.
+     *
+     * @param entityType target entity type
+     * @return entity region
+     * @throws IllegalArgumentException if entity is not cacheable
+     */
+    private CacheRegion requireRegion(Class<?> entityType) {
+        CacheRegion region = regions.get(entityType);
+
+        if (region == null) {
+            throw new IllegalArgumentException("Entity " + entityType + " not annotated with " + Cacheable.class);
+        }
+
+        return region;
     }
 
     /**
@@ -0,0 +1,292 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgadjiev.ormnext.core.cache.ObjectCache;
+import ru.saidgajiev.ormnext.cache.commons.ColumnValues;
+import ru.saidgajiev.ormnext.cache.commons.CountingBloomFilter;
+import ru.saidgajiev.ormnext.cache.commons.IdList;
+import ru.saidgadjiev.ormnext.core.field.fieldtype.DatabaseColumnType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cacheable entity descriptor resolved by {@link CacheLayer} on init. It holds everything hot paths need about
+ * the entity, so each call does a single lookup.
+ * <p>
+ * Region lock makes entity eviction atomic: eviction holds write lock, populations hold read lock, so they never
+ * interleave, and lookups which read several caches validate optimistic read stamp.
+ *
+ * @author Said Gadjiev
+ */
+final class CacheRegion {
+
+    /**
+     * Entity type.
+     */
+    private final Class<?> entityType;
+
+    /**
+     * Primary key column type.
+     */
+    private final DatabaseColumnType primaryKey;
+
+    /**
+     * Primary key type or null if it is unknown.
+     */
+    private final Class<?> idType;
+
+    /**
+     * Exist results of entity.
+     */
+    private final Map<Object, Boolean> existCache;
+
+    /**
+     * Filter of all persisted ids or null if ids are not known.
+     */
+    private final AtomicReference<CountingBloomFilter> existFilter = new AtomicReference<>();
+
+    /**
+     * Object cache or null if it is not set yet.
+     */
+    private volatile ObjectCache objectCache;
+
+    /**
+     * Query for all and count off results are maintained incrementally.
+     */
+    private volatile boolean incrementalAggregates;
+
+    /**
+     * Eviction lock.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Create a new instance.
+     *
+     * @param entityType            target entity type
+     * @param primaryKey            target primary key column type
+     * @param existCache            target entity exist results
+     * @param incrementalAggregates target incremental aggregates flag
+     */
+    CacheRegion(Class<?> entityType,
+                DatabaseColumnType primaryKey,
+                Map<Object, Boolean> existCache,
+                boolean incrementalAggregates) {
+        this.entityType = entityType;
+        this.primaryKey = primaryKey;
+        this.idType = ColumnValues.idType(entityType);
+        this.existCache = existCache;
+        this.incrementalAggregates = incrementalAggregates;
+    }
+
+    /**
+     * Return entity type.
+     *
+     * @return entity type
+     */
+    Class<?> getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * Extract entity id.
+     *
+     * @param entity target entity
+     * @return id
+     */
+    Object extractId(Object entity) {
+        return primaryKey.access(entity);
+    }
+
+    /**
+     * Pack result ids to primitive storage of primary key type.
+     *
+     * @param ids target ids
+     * @return packed ids or target ids if primary key is not int or long
+     */
+    List<Object> compactIds(List<Object> ids) {
+        return IdList.compact(ids, idType);
+    }
+
+    /**
+     * Append ids to result ids without packing them again.
+     *
+     * @param ids   target result ids
+     * @param added target appended ids
+     * @return result ids with appended ids
+     */
+    List<Object> appendIds(List<Object> ids, Collection<Object> added) {
+        return IdList.append(ids, added, idType);
+    }
+
+    /**
+     * Remove first occurrence of id from result ids without packing them again.
+     *
+     * @param ids target result ids
+     * @param id  target removed id
+     * @return result ids without id or target ids if they do not contain it
+     */
+    List<Object> removeId(List<Object> ids, Object id) {
+        return IdList.remove(ids, id, idType);
+    }
+
+    /**
+     * Box numeric id to primary key type.
+     *
+     * @param id target id
+     * @return integer id if primary key is int, long id otherwise
+     */
+    Object boxId(long id) {
+        return idType == int.class || idType == Integer.class ? (Object) (int) id : (Object) id;
+    }
+
+    /**
+     * Return entity exist results.
+     *
+     * @return exist results by id
+     */
+    Map<Object, Boolean> getExistCache() {
+        return existCache;
+    }
+
+    /**
+     * Return filter of all persisted ids.
+     *
+     * @return filter or null if ids are not known
+     */
+    CountingBloomFilter getExistFilter() {
+        return existFilter.get();
+    }
+
+    /**
+     * Set filter of all persisted ids.
+     *
+     * @param filter target filter
+     */
+    void setExistFilter(CountingBloomFilter filter) {
+        existFilter.set(filter);
+    }
+
+    /**
+     * Remove filter if it is still set.
+     *
+     * @param filter target filter
+     */
+    void dropExistFilter(CountingBloomFilter filter) {
+        existFilter.compareAndSet(filter, null);
+    }
+
+    /**
+     * Add persisted id to filter. Overloaded filter is dropped, because its false positive rate grows.
+     *
+     * @param id target id
+     */
+    void addToExistFilter(Object id) {
+        CountingBloomFilter filter = existFilter.get();
+
+        if (filter != null) {
+            filter.add(id);
+            if (filter.isOverloaded()) {
+                dropExistFilter(filter);
+            }
+        }
+    }
+
+    /**
+     * Remove id of deleted row from filter.
+     *
+     * @param id target id which was added to filter
+     */
+    void removeFromExistFilter(Object id) {
+        CountingBloomFilter filter = existFilter.get();
+
+        if (filter != null) {
+            filter.remove(id);
+        }
+    }
+
+    /**
+     * Return object cache.
+     *
+     * @return object cache or null
+     */
+    ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    /**
+     * Set object cache.
+     *
+     * @param objectCache target object cache
+     */
+    void setObjectCache(ObjectCache objectCache) {
+        this.objectCache = objectCache;
+    }
+
+    /**
+     * Lock region for eviction. Waits for running populations.
+     *
+     * @return stamp
+     */
+    long lockEviction() {
+        return lock.writeLock();
+    }
+
+    /**
+     * Lock region for population. Waits for running eviction.
+     *
+     * @return stamp
+     */
+    long lockPopulation() {
+        return lock.readLock();
+    }
+
+    /**
+     * Unlock region.
+     *
+     * @param stamp target stamp returned by lock method
+     */
+    void unlock(long stamp) {
+        lock.unlock(stamp);
+    }
+
+    /**
+     * Start optimistic read.
+     *
+     * @return stamp, zero if eviction is running
+     */
+    long startRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    /**
+     * Check that no eviction started since optimistic read started.
+     *
+     * @param stamp target stamp returned by {@link #startRead()}
+     * @return true if read values are consistent
+     */
+    boolean validateRead(long stamp) {
+        return lock.validate(stamp);
+    }
+
+    /**
+     * Return true if query for all and count off results are maintained incrementally.
+     *
+     * @return incremental aggregates flag
+     */
+    boolean isIncrementalAggregates() {
+        return incrementalAggregates;
+    }
+
+    /**
+     * Set incremental aggregates flag.
+     *
+     * @param incrementalAggregates target incremental aggregates flag
+     */
+    void setIncrementalAggregates(boolean incrementalAggregates) {
+        this.incrementalAggregates = incrementalAggregates;
+    }
+}
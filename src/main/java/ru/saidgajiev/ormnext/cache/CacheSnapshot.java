@@ -0,0 +1,746 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgadjiev.ormnext.core.field.DatabaseColumn;
+import ru.saidgajiev.ormnext.cache.codec.ByteReader;
+import ru.saidgajiev.ormnext.cache.codec.ByteWriter;
+import ru.saidgajiev.ormnext.cache.codec.EntityCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache snapshot file. File starts with magic, format version, schema fingerprint and save time followed by one
+ * section per entity type, so sections are decoded in parallel on restore. Snapshot with other version or
+ * fingerprint is ignored. Every entry keeps its age, restored entry is aged by time passed since save, so it
+ * expires when it would without restart.
+ * <p>
+ * Layout is {@code [int magic][int version][long fingerprint][long savedAtMillis][int sectionCount]} and
+ * {@code [int nameLength][entity class name][int bodyLength][body]} per section. Section body is written by
+ * {@link ByteWriter}: ids and query arguments are tagged values, ages are nanos varints.
+ *
+ * @author Said Gadjiev
+ */
+final class CacheSnapshot {
+
+    /**
+     * File magic, "ORMC".
+     */
+    private static final int MAGIC = 0x4F524D43;
+
+    /**
+     * Format version.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * File header size.
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * Utility class.
+     */
+    private CacheSnapshot() {
+    }
+
+    /**
+     * Compute schema fingerprint. It changes if entity set, any column definition or codec changes.
+     *
+     * @param entityTypes target cacheable entity types
+     * @param codec       target entity codec
+     * @return fingerprint
+     */
+    static long fingerprint(Collection<Class<?>> entityTypes, EntityCodec codec) {
+        StringBuilder schema = new StringBuilder(codec.getClass().getName());
+        List<Class<?>> sorted = new ArrayList<>(entityTypes);
+
+        sorted.sort(Comparator.comparing(Class::getName));
+        for (Class<?> entityType : sorted) {
+            schema.append('|').append(entityType.getName());
+            for (Class<?> current = entityType; current != null; current = current.getSuperclass()) {
+                Field[] fields = current.getDeclaredFields();
+
+                Arrays.sort(fields, Comparator.comparing(Field::getName));
+                for (Field field : fields) {
+                    DatabaseColumn column = field.getAnnotation(DatabaseColumn.class);
+
+                    if (column != null) {
+                        schema.append(';').append(field.getName())
+                                .append(':').append(field.getGenericType().getTypeName())
+                                .append(column);
+                    }
+                }
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            return ByteBuffer.wrap(digest.digest(schema.toString().getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Write snapshot. File is written next to target and moved over it, so readers never see a partial file.
+     *
+     * @param file        target snapshot file
+     * @param fingerprint target schema fingerprint
+     * @param sections    target encoded sections by entity type
+     * @throws UncheckedIOException if write failed
+     */
+    static void write(Path file, long fingerprint, Map<Class<?>, byte[]> sections) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(fingerprint)
+                    .putLong(System.currentTimeMillis())
+                    .putInt(sections.size())
+                    .flip();
+            writeFully(channel, header);
+            for (Map.Entry<Class<?>, byte[]> section : sections.entrySet()) {
+                byte[] name = section.getKey().getName().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer sectionHeader = ByteBuffer.allocate(Integer.BYTES + name.length + Integer.BYTES);
+
+                sectionHeader.putInt(name.length).put(name).putInt(section.getValue().length).flip();
+                writeFully(channel, sectionHeader);
+                writeFully(channel, ByteBuffer.wrap(section.getValue()));
+            }
+            channel.force(true);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't write snapshot " + file, ex);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't write snapshot " + file, ex);
+        }
+    }
+
+    /**
+     * Read snapshot sections.
+     *
+     * @param file        target snapshot file
+     * @param fingerprint target expected schema fingerprint
+     * @param entityTypes target entity types by name, sections of other types are skipped
+     * @return snapshot contents or null if file is absent, malformed or stale
+     * @throws UncheckedIOException if read failed
+     */
+    static Contents read(Path file, long fingerprint, Map<String, Class<?>> entityTypes) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION
+                    || buffer.getLong() != fingerprint) {
+                return null;
+            }
+            long savedAt = buffer.getLong();
+            int count = buffer.getInt();
+            Map<Class<?>, byte[]> sections = new LinkedHashMap<>();
+
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buffer.getInt()];
+
+                buffer.get(name);
+
+                byte[] body = new byte[buffer.getInt()];
+
+                buffer.get(body);
+
+                Class<?> entityType = entityTypes.get(new String(name, StandardCharsets.UTF_8));
+
+                if (entityType != null) {
+                    sections.put(entityType, body);
+                }
+            }
+
+            return new Contents(savedAt, sections);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't read snapshot " + file, ex);
+        }
+    }
+
+    /**
+     * Write buffer to channel.
+     *
+     * @param channel target channel
+     * @param buffer  target buffer
+     * @throws IOException if write failed
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Check if all values can be written as tagged values.
+     *
+     * @param values target values
+     * @return true if every value is supported by {@link ByteWriter#writeValue(Object)}
+     */
+    private static boolean isValues(Object... values) {
+        for (Object value : values) {
+            if (!ByteWriter.isValue(value)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read snapshot file contents.
+     */
+    static final class Contents {
+
+        /**
+         * Save time in milliseconds.
+         */
+        private final long savedAt;
+
+        /**
+         * Encoded sections by entity type.
+         */
+        private final Map<Class<?>, byte[]> sections;
+
+        /**
+         * Create a new instance.
+         *
+         * @param savedAt  target save time in milliseconds
+         * @param sections target encoded sections by entity type
+         */
+        private Contents(long savedAt, Map<Class<?>, byte[]> sections) {
+            this.savedAt = savedAt;
+            this.sections = sections;
+        }
+
+        /**
+         * Return nanos passed since snapshot was saved.
+         *
+         * @return nanos, zero if clock went back
+         */
+        long getElapsed() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - savedAt));
+        }
+
+        /**
+         * Return encoded sections.
+         *
+         * @return encoded sections by entity type
+         */
+        Map<Class<?>, byte[]> getSections() {
+            return sections;
+        }
+    }
+
+    /**
+     * Cached results of one entity type.
+     */
+    static final class Section {
+
+        /**
+         * Objects by id.
+         */
+        private final Map<Object, Aged<Object>> objects = new LinkedHashMap<>();
+
+        /**
+         * List result ids by query.
+         */
+        private final List<Query<List<Object>>> lists = new ArrayList<>();
+
+        /**
+         * Limited list result ids by query.
+         */
+        private final List<Query<List<Object>>> limitedLists = new ArrayList<>();
+
+        /**
+         * Long results by query.
+         */
+        private final List<Query<Long>> longs = new ArrayList<>();
+
+        /**
+         * Query for all ids or null.
+         */
+        private Aged<List<Object>> queryForAll;
+
+        /**
+         * Count off or null.
+         */
+        private Aged<Long> countOff;
+
+        /**
+         * Return objects by id.
+         *
+         * @return objects
+         */
+        Map<Object, Aged<Object>> getObjects() {
+            return objects;
+        }
+
+        /**
+         * Return list results.
+         *
+         * @return list results
+         */
+        List<Query<List<Object>>> getLists() {
+            return lists;
+        }
+
+        /**
+         * Return limited list results.
+         *
+         * @return limited list results
+         */
+        List<Query<List<Object>>> getLimitedLists() {
+            return limitedLists;
+        }
+
+        /**
+         * Return long results.
+         *
+         * @return long results
+         */
+        List<Query<Long>> getLongs() {
+            return longs;
+        }
+
+        /**
+         * Return query for all ids.
+         *
+         * @return ids or null
+         */
+        Aged<List<Object>> getQueryForAll() {
+            return queryForAll;
+        }
+
+        /**
+         * Set query for all ids.
+         *
+         * @param queryForAll target ids
+         */
+        void setQueryForAll(Aged<List<Object>> queryForAll) {
+            this.queryForAll = queryForAll;
+        }
+
+        /**
+         * Return count off.
+         *
+         * @return count or null
+         */
+        Aged<Long> getCountOff() {
+            return countOff;
+        }
+
+        /**
+         * Set count off.
+         *
+         * @param countOff target count
+         */
+        void setCountOff(Aged<Long> countOff) {
+            this.countOff = countOff;
+        }
+
+        /**
+         * Encode section. Objects which codec can't encode and results with ids or arguments which can't be
+         * written as tagged values are skipped.
+         *
+         * @param codec target entity codec
+         * @return encoded section
+         */
+        byte[] encode(EntityCodec codec) {
+            ByteWriter writer = new ByteWriter();
+            List<Object> ids = new ArrayList<>();
+            List<byte[]> values = new ArrayList<>();
+
+            for (Map.Entry<Object, Aged<Object>> object : objects.entrySet()) {
+                byte[] value = isValues(object.getKey()) ? tryEncode(codec, object.getValue().value) : null;
+
+                if (value != null) {
+                    ids.add(object.getKey());
+                    values.add(value);
+                }
+            }
+            writer.writeVarLong(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                writer.writeValue(ids.get(i));
+                writer.writeVarLong(objects.get(ids.get(i)).age);
+                writer.writeBytes(values.get(i));
+            }
+            boolean hasQueryForAll = queryForAll != null && isValues(queryForAll.value.toArray());
+
+            writer.writeByte(hasQueryForAll ? 1 : 0);
+            if (hasQueryForAll) {
+                writer.writeVarLong(queryForAll.age);
+                writeIds(writer, queryForAll.value);
+            }
+            writer.writeByte(countOff != null ? 1 : 0);
+            if (countOff != null) {
+                writer.writeVarLong(countOff.age);
+                writer.writeZigZag(countOff.value);
+            }
+            writeLists(writer, lists);
+            writeLists(writer, limitedLists);
+
+            List<Query<Long>> supportedLongs = new ArrayList<>();
+
+            for (Query<Long> query : longs) {
+                if (isValues(query.args)) {
+                    supportedLongs.add(query);
+                }
+            }
+            writer.writeVarLong(supportedLongs.size());
+            for (Query<Long> query : supportedLongs) {
+                writeQuery(writer, query);
+                writer.writeZigZag(query.result);
+            }
+
+            return writer.toByteArray();
+        }
+
+        /**
+         * Decode section. Ages are increased by time passed since save.
+         *
+         * @param entityType target entity type
+         * @param body       target encoded section
+         * @param codec      target entity codec
+         * @param elapsed    target nanos passed since save
+         * @return section
+         * @throws IllegalArgumentException if section is malformed
+         */
+        static Section decode(Class<?> entityType, byte[] body, EntityCodec codec, long elapsed) {
+            Section section = new Section();
+            ByteReader reader = new ByteReader(body);
+
+            try {
+                long objectCount = reader.readVarLong();
+
+                for (long i = 0; i < objectCount; i++) {
+                    Object id = reader.readValue();
+                    long age = reader.readVarLong() + elapsed;
+
+                    section.objects.put(id, new Aged<>(codec.decode(entityType, reader.readBytes()), age));
+                }
+                if (reader.readByte() != 0) {
+                    long age = reader.readVarLong() + elapsed;
+
+                    section.queryForAll = new Aged<>(readIds(reader), age);
+                }
+                if (reader.readByte() != 0) {
+                    long age = reader.readVarLong() + elapsed;
+
+                    section.countOff = new Aged<>(reader.readZigZag(), age);
+                }
+                readLists(reader, section.lists, elapsed);
+                readLists(reader, section.limitedLists, elapsed);
+
+                long longCount = reader.readVarLong();
+
+                for (long i = 0; i < longCount; i++) {
+                    String query = (String) reader.readValue();
+                    Object[] args = readArgs(reader);
+                    long age = reader.readVarLong() + elapsed;
+
+                    section.longs.add(new Query<>(query, args, reader.readZigZag(), age));
+                }
+                if (!reader.isExhausted()) {
+                    throw new IllegalArgumentException("Trailing bytes");
+                }
+            } catch (IllegalArgumentException | ClassCastException ex) {
+                throw new IllegalArgumentException("Malformed snapshot section of " + entityType, ex);
+            }
+
+            return section;
+        }
+
+        /**
+         * Encode object.
+         *
+         * @param codec  target entity codec
+         * @param object target object
+         * @return encoded object or null if codec can't encode it
+         */
+        private static byte[] tryEncode(EntityCodec codec, Object object) {
+            try {
+                return codec.encode(object);
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * Write list results with supported ids and arguments.
+         *
+         * @param writer  target writer
+         * @param queries target list results
+         */
+        private static void writeLists(ByteWriter writer, List<Query<List<Object>>> queries) {
+            List<Query<List<Object>>> supported = new ArrayList<>();
+
+            for (Query<List<Object>> query : queries) {
+                if (isValues(query.args) && isValues(query.result.toArray())) {
+                    supported.add(query);
+                }
+            }
+            writer.writeVarLong(supported.size());
+            for (Query<List<Object>> query : supported) {
+                writeQuery(writer, query);
+                writeIds(writer, query.result);
+            }
+        }
+
+        /**
+         * Write query sql, arguments and age.
+         *
+         * @param writer target writer
+         * @param query  target query
+         */
+        private static void writeQuery(ByteWriter writer, Query<?> query) {
+            writer.writeValue(query.query);
+            writer.writeVarLong(query.args.length);
+            for (Object arg : query.args) {
+                writer.writeValue(arg);
+            }
+            writer.writeVarLong(query.age);
+        }
+
+        /**
+         * Write ids list.
+         *
+         * @param writer target writer
+         * @param ids    target ids
+         */
+        private static void writeIds(ByteWriter writer, List<Object> ids) {
+            writer.writeVarLong(ids.size());
+            for (Object id : ids) {
+                writer.writeValue(id);
+            }
+        }
+
+        /**
+         * Read list results.
+         *
+         * @param reader  target reader
+         * @param queries target list results to fill
+         * @param elapsed target nanos passed since save
+         */
+        private static void readLists(ByteReader reader, List<Query<List<Object>>> queries, long elapsed) {
+            long count = reader.readVarLong();
+
+            for (long i = 0; i < count; i++) {
+                String query = (String) reader.readValue();
+                Object[] args = readArgs(reader);
+                long age = reader.readVarLong() + elapsed;
+
+                queries.add(new Query<>(query, args, readIds(reader), age));
+            }
+        }
+
+        /**
+         * Read query arguments.
+         *
+         * @param reader target reader
+         * @return arguments
+         */
+        private static Object[] readArgs(ByteReader reader) {
+            Object[] args = new Object[readCount(reader)];
+
+            for (int i = 0; i < args.length; i++) {
+                args[i] = reader.readValue();
+            }
+
+            return args;
+        }
+
+        /**
+         * Read ids list.
+         *
+         * @param reader target reader
+         * @return ids
+         */
+        private static List<Object> readIds(ByteReader reader) {
+            int count = readCount(reader);
+            List<Object> ids = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                ids.add(reader.readValue());
+            }
+
+            return ids;
+        }
+
+        /**
+         * Read count of tagged values. Every value takes at least one byte, so count is bounded by unread bytes.
+         *
+         * @param reader target reader
+         * @return count
+         * @throws IllegalArgumentException if count exceeds unread bytes
+         */
+        private static int readCount(ByteReader reader) {
+            long count = reader.readVarLong();
+
+            if (count < 0 || count > reader.remaining()) {
+                throw new IllegalArgumentException("Malformed count " + count);
+            }
+
+            return (int) count;
+        }
+    }
+
+    /**
+     * Cached value with its age.
+     *
+     * @param <T> value type
+     */
+    static final class Aged<T> {
+
+        /**
+         * Value.
+         */
+        private final T value;
+
+        /**
+         * Nanos since value was cached.
+         */
+        private final long age;
+
+        /**
+         * Create a new instance.
+         *
+         * @param value target value
+         * @param age   target nanos since value was cached
+         */
+        Aged(T value, long age) {
+            this.value = value;
+            this.age = age;
+        }
+
+        /**
+         * Return value.
+         *
+         * @return value
+         */
+        T getValue() {
+            return value;
+        }
+
+        /**
+         * Return nanos since value was cached.
+         *
+         * @return nanos
+         */
+        long getAge() {
+            return age;
+        }
+    }
+
+    /**
+     * Cached query result.
+     *
+     * @param <T> result type
+     */
+    static final class Query<T> {
+
+        /**
+         * Query sql.
+         */
+        private final String query;
+
+        /**
+         * Query arguments.
+         */
+        private final Object[] args;
+
+        /**
+         * Query result.
+         */
+        private final T result;
+
+        /**
+         * Nanos since result was cached.
+         */
+        private final long age;
+
+        /**
+         * Create a new instance.
+         *
+         * @param query  target query sql
+         * @param args   target query arguments
+         * @param result target query result
+         * @param age    target nanos since result was cached
+         */
+        Query(String query, Object[] args, T result, long age) {
+            this.query = query;
+            this.args = args;
+            this.result = result;
+            this.age = age;
+        }
+
+        /**
+         * Return query sql.
+         *
+         * @return sql
+         */
+        String getQuery() {
+            return query;
+        }
+
+        /**
+         * Return query arguments.
+         *
+         * @return arguments
+         */
+        Object[] getArgs() {
+            return args;
+        }
+
+        /**
+         * Return query result.
+         *
+         * @return result
+         */
+        T getResult() {
+            return result;
+        }
+
+        /**
+         * Return nanos since result was cached.
+         *
+         * @return nanos
+         */
+        long getAge() {
+            return age;
+        }
+    }
+}
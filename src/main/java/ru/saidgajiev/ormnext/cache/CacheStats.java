@@ -0,0 +1,521 @@
+package ru.saidgajiev.ormnext.cache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of {@link CacheLayer}. Hits, misses, loads and evictions are counted per entity type and
+ * {@link SubCache} with {@link LongAdder}, so recording does not contend on hot paths. Digest and lookup
+ * latencies are kept in {@link LatencyHistogram}. Statistics are read by snapshots or exposed as JMX MXBeans.
+ *
+ * @author Said Gadjiev
+ */
+public final class CacheStats {
+
+    /**
+     * JMX domain.
+     */
+    private static final String JMX_DOMAIN = "ru.saidgajiev.ormnext.cache";
+
+    /**
+     * Median quantile.
+     */
+    private static final double MEDIAN = 0.5;
+
+    /**
+     * 99th percentile quantile.
+     */
+    private static final double P99 = 0.99;
+
+    /**
+     * Counters by entity type, indexed by sub cache ordinal.
+     */
+    private final Map<Class<?>, Counters[]> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Select statement digest latencies.
+     */
+    private final LatencyHistogram digestLatency = new LatencyHistogram();
+
+    /**
+     * Lookup latencies.
+     */
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+
+    /**
+     * Registered MBean names.
+     */
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+
+    /**
+     * Record hits.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param count      target hits count
+     */
+    public void recordHits(SubCache subCache, Class<?> entityType, long count) {
+        counters(subCache, entityType).hits.add(count);
+    }
+
+    /**
+     * Record misses.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param count      target misses count
+     */
+    public void recordMisses(SubCache subCache, Class<?> entityType, long count) {
+        counters(subCache, entityType).misses.add(count);
+    }
+
+    /**
+     * Record load.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param nanos      target load time
+     * @param success    true if load returned value
+     */
+    public void recordLoad(SubCache subCache, Class<?> entityType, long nanos, boolean success) {
+        Counters entityCounters = counters(subCache, entityType);
+
+        if (success) {
+            entityCounters.loadSuccesses.increment();
+        } else {
+            entityCounters.loadFailures.increment();
+        }
+        entityCounters.loadNanos.add(nanos);
+    }
+
+    /**
+     * Record evictions.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param cause      target eviction cause
+     * @param count      target evictions count
+     */
+    public void recordEvictions(SubCache subCache, Class<?> entityType, EvictionCause cause, long count) {
+        counters(subCache, entityType).evictions[cause.ordinal()].add(count);
+    }
+
+    /**
+     * Record select statement digest latency.
+     *
+     * @param nanos target latency
+     */
+    public void recordDigest(long nanos) {
+        digestLatency.record(nanos);
+    }
+
+    /**
+     * Record lookup latency.
+     *
+     * @param nanos target latency
+     */
+    public void recordLookup(long nanos) {
+        lookupLatency.record(nanos);
+    }
+
+    /**
+     * Return entity types which have statistics.
+     *
+     * @return entity types
+     */
+    public Set<Class<?>> getEntityTypes() {
+        return counters.keySet();
+    }
+
+    /**
+     * Return sub cache statistics of entity type.
+     *
+     * @param entityType target entity type
+     * @param subCache   target sub cache
+     * @return statistics snapshot
+     */
+    public StatsSnapshot snapshot(Class<?> entityType, SubCache subCache) {
+        Counters[] entityCounters = counters.get(entityType);
+
+        return entityCounters == null ? Counters.EMPTY : entityCounters[subCache.ordinal()].snapshot();
+    }
+
+    /**
+     * Return all sub caches statistics sum of entity type.
+     *
+     * @param entityType target entity type
+     * @return statistics snapshot
+     */
+    public StatsSnapshot snapshot(Class<?> entityType) {
+        StatsSnapshot sum = Counters.EMPTY;
+
+        for (SubCache subCache : SubCache.values()) {
+            sum = sum.plus(snapshot(entityType, subCache));
+        }
+
+        return sum;
+    }
+
+    /**
+     * Return all entity types statistics sum.
+     *
+     * @return statistics snapshot
+     */
+    public StatsSnapshot snapshot() {
+        StatsSnapshot sum = Counters.EMPTY;
+
+        for (Class<?> entityType : counters.keySet()) {
+            sum = sum.plus(snapshot(entityType));
+        }
+
+        return sum;
+    }
+
+    /**
+     * Return select statement digest latencies.
+     *
+     * @return histogram snapshot
+     */
+    public LatencyHistogram.Snapshot getDigestLatency() {
+        return digestLatency.snapshot();
+    }
+
+    /**
+     * Return lookup latencies.
+     *
+     * @return histogram snapshot
+     */
+    public LatencyHistogram.Snapshot getLookupLatency() {
+        return lookupLatency.snapshot();
+    }
+
+    /**
+     * Register sub cache statistics MXBeans of known entity types and latency MXBeans in platform MBean server.
+     * Statistics names have keys type=CacheStats, name, entity and subCache, latency names have keys
+     * type=CacheLatency, name and operation which is digest or lookup.
+     *
+     * @param name target name which distinguishes cache layers
+     * @throws JMException if MXBean can't be registered
+     */
+    public synchronized void registerMBeans(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String quotedName = ObjectName.quote(name);
+
+        for (Class<?> entityType : counters.keySet()) {
+            for (SubCache subCache : SubCache.values()) {
+                register(
+                        server,
+                        new ObjectName(JMX_DOMAIN + ":type=CacheStats,name=" + quotedName
+                                + ",entity=" + entityType.getName() + ",subCache=" + subCache.name()),
+                        new SubCacheStatsBean(this, entityType, subCache)
+                );
+            }
+        }
+        register(
+                server,
+                new ObjectName(JMX_DOMAIN + ":type=CacheLatency,name=" + quotedName + ",operation=digest"),
+                new LatencyBean(digestLatency)
+        );
+        register(
+                server,
+                new ObjectName(JMX_DOMAIN + ":type=CacheLatency,name=" + quotedName + ",operation=lookup"),
+                new LatencyBean(lookupLatency)
+        );
+    }
+
+    /**
+     * Unregister MXBeans registered by {@link #registerMBeans(String)}.
+     *
+     * @throws JMException if MXBean can't be unregistered
+     */
+    public synchronized void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName objectName : registeredNames) {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    /**
+     * Create counters of entity type ahead of first recording, so its MXBeans are registered.
+     *
+     * @param entityType target entity type
+     */
+    void register(Class<?> entityType) {
+        counters(SubCache.OBJECT, entityType);
+    }
+
+    /**
+     * Register MXBean and remember its name.
+     *
+     * @param server     target MBean server
+     * @param objectName target name
+     * @param bean       target MXBean
+     * @throws JMException if MXBean can't be registered
+     */
+    private void register(MBeanServer server, ObjectName objectName, Object bean) throws JMException {
+        server.registerMBean(bean, objectName);
+        registeredNames.add(objectName);
+    }
+
+    /**
+     * Return counters of entity sub cache.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @return counters
+     */
+    private Counters counters(SubCache subCache, Class<?> entityType) {
+        Counters[] entityCounters = counters.get(entityType);
+
+        if (entityCounters == null) {
+            entityCounters = counters.computeIfAbsent(entityType, k -> Counters.create());
+        }
+
+        return entityCounters[subCache.ordinal()];
+    }
+
+    /**
+     * Counters of entity sub cache.
+     */
+    private static final class Counters {
+
+        /**
+         * Empty statistics.
+         */
+        private static final StatsSnapshot EMPTY = new StatsSnapshot(
+                0,
+                0,
+                0,
+                0,
+                0,
+                new EnumMap<>(EvictionCause.class)
+        );
+
+        /**
+         * Hits count.
+         */
+        private final LongAdder hits = new LongAdder();
+
+        /**
+         * Misses count.
+         */
+        private final LongAdder misses = new LongAdder();
+
+        /**
+         * Successful loads count.
+         */
+        private final LongAdder loadSuccesses = new LongAdder();
+
+        /**
+         * Failed loads count.
+         */
+        private final LongAdder loadFailures = new LongAdder();
+
+        /**
+         * Total load nanoseconds.
+         */
+        private final LongAdder loadNanos = new LongAdder();
+
+        /**
+         * Eviction counts indexed by cause ordinal.
+         */
+        private final LongAdder[] evictions = new LongAdder[EvictionCause.values().length];
+
+        /**
+         * Create a new instance.
+         */
+        private Counters() {
+            int i = 0;
+
+            while (i < evictions.length) {
+                evictions[i] = new LongAdder();
+                ++i;
+            }
+        }
+
+        /**
+         * Create counters of every sub cache.
+         *
+         * @return counters indexed by sub cache ordinal
+         */
+        private static Counters[] create() {
+            Counters[] result = new Counters[SubCache.values().length];
+            int i = 0;
+
+            while (i < result.length) {
+                result[i] = new Counters();
+                ++i;
+            }
+
+            return result;
+        }
+
+        /**
+         * Return current counts.
+         *
+         * @return statistics snapshot
+         */
+        private StatsSnapshot snapshot() {
+            Map<EvictionCause, Long> evictionCounts = new EnumMap<>(EvictionCause.class);
+
+            for (EvictionCause cause : EvictionCause.values()) {
+                evictionCounts.put(cause, evictions[cause.ordinal()].sum());
+            }
+
+            return new StatsSnapshot(
+                    hits.sum(),
+                    misses.sum(),
+                    loadSuccesses.sum(),
+                    loadFailures.sum(),
+                    loadNanos.sum(),
+                    evictionCounts
+            );
+        }
+    }
+
+    /**
+     * Sub cache statistics MXBean.
+     */
+    private static final class SubCacheStatsBean implements SubCacheStatsMXBean {
+
+        /**
+         * Statistics.
+         */
+        private final CacheStats stats;
+
+        /**
+         * Entity type.
+         */
+        private final Class<?> entityType;
+
+        /**
+         * Sub cache.
+         */
+        private final SubCache subCache;
+
+        /**
+         * Create a new instance.
+         *
+         * @param stats      target statistics
+         * @param entityType target entity type
+         * @param subCache   target sub cache
+         */
+        private SubCacheStatsBean(CacheStats stats, Class<?> entityType, SubCache subCache) {
+            this.stats = stats;
+            this.entityType = entityType;
+            this.subCache = subCache;
+        }
+
+        @Override
+        public long getHitCount() {
+            return snapshot().getHitCount();
+        }
+
+        @Override
+        public long getMissCount() {
+            return snapshot().getMissCount();
+        }
+
+        @Override
+        public double getHitRate() {
+            return snapshot().getHitRate();
+        }
+
+        @Override
+        public long getLoadSuccessCount() {
+            return snapshot().getLoadSuccessCount();
+        }
+
+        @Override
+        public long getLoadFailureCount() {
+            return snapshot().getLoadFailureCount();
+        }
+
+        @Override
+        public double getAverageLoadPenaltyNanos() {
+            return snapshot().getAverageLoadPenaltyNanos();
+        }
+
+        @Override
+        public long getExpiredCount() {
+            return snapshot().getEvictionCount(EvictionCause.EXPIRED);
+        }
+
+        @Override
+        public long getBudgetEvictionCount() {
+            return snapshot().getEvictionCount(EvictionCause.BUDGET);
+        }
+
+        @Override
+        public long getStaleCount() {
+            return snapshot().getEvictionCount(EvictionCause.STALE);
+        }
+
+        /**
+         * Return current statistics.
+         *
+         * @return statistics snapshot
+         */
+        private StatsSnapshot snapshot() {
+            return stats.snapshot(entityType, subCache);
+        }
+    }
+
+    /**
+     * Latency histogram MXBean.
+     */
+    private static final class LatencyBean implements LatencyMXBean {
+
+        /**
+         * Histogram.
+         */
+        private final LatencyHistogram histogram;
+
+        /**
+         * Create a new instance.
+         *
+         * @param histogram target histogram
+         */
+        private LatencyBean(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.snapshot().getCount();
+        }
+
+        @Override
+        public double getMeanNanos() {
+            return histogram.snapshot().getMeanNanos();
+        }
+
+        @Override
+        public long getP50Nanos() {
+            return histogram.snapshot().getPercentileNanos(MEDIAN);
+        }
+
+        @Override
+        public long getP99Nanos() {
+            return histogram.snapshot().getPercentileNanos(P99);
+        }
+
+        @Override
+        public long getMaxNanos() {
+            return histogram.snapshot().getPercentileNanos(1);
+        }
+    }
+}
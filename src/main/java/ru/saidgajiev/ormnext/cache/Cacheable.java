@@ -4,6 +4,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Annotate entity classes with this annotation for caching.
@@ -11,4 +12,40 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Cacheable {
+
+    /**
+     * Time after write when cached entries of this entity expire. Non positive value disables it.
+     *
+     * @return expire after write duration in {@link #timeUnit()}
+     */
+    long expireAfterWrite() default -1;
+
+    /**
+     * Time after last access when cached entries of this entity expire. Non positive value disables it.
+     *
+     * @return expire after access duration in {@link #timeUnit()}
+     */
+    long expireAfterAccess() default -1;
+
+    /**
+     * Time unit of expiration durations.
+     *
+     * @return time unit
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * Keep cached query for all ids and count off valid through creates and deletes by id instead of evicting them.
+     *
+     * @return true if aggregates are maintained incrementally
+     */
+    boolean incrementalAggregates() default false;
+
+    /**
+     * Table strings compare as binary values. Otherwise string conditions of cached queries never exclude a
+     * written row, because database collation may treat different strings as equal.
+     *
+     * @return true if string collation is binary
+     */
+    boolean binaryCollation() default false;
 }
@@ -0,0 +1,94 @@
+package ru.saidgajiev.ormnext.cache;
+
+/**
+ * Key of {@link CacheLayer} entry. Consist of sub cache, entity type and entry key inside sub cache.
+ *
+ * @author Said Gadjiev
+ */
+final class EntryKey {
+
+    /**
+     * Hash multiplier.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * Sub cache.
+     */
+    private final SubCache subCache;
+
+    /**
+     * Entity type.
+     */
+    private final Class<?> entityType;
+
+    /**
+     * Entry key.
+     */
+    private final Object key;
+
+    /**
+     * Create a new instance.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     */
+    EntryKey(SubCache subCache, Class<?> entityType, Object key) {
+        this.subCache = subCache;
+        this.entityType = entityType;
+        this.key = key;
+    }
+
+    /**
+     * Return sub cache.
+     *
+     * @return sub cache
+     */
+    SubCache getSubCache() {
+        return subCache;
+    }
+
+    /**
+     * Return entity type.
+     *
+     * @return entity type
+     */
+    Class<?> getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * Return entry key.
+     *
+     * @return entry key
+     */
+    Object getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        EntryKey entryKey = (EntryKey) o;
+
+        return subCache == entryKey.subCache
+                && entityType == entryKey.entityType
+                && key.equals(entryKey.key);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = subCache.hashCode();
+
+        result = HASH_MULTIPLIER * result + entityType.hashCode();
+        result = HASH_MULTIPLIER * result + key.hashCode();
+
+        return result;
+    }
+}
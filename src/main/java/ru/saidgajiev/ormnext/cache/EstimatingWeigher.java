@@ -0,0 +1,89 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.commons.IdList;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Weigher which estimates entry weight in bytes. Object weight is configured per entity type,
+ * id lists weigh a reference and a boxed id per element unless they are packed to {@link IdList}, scalar results
+ * weigh a map node with a box.
+ *
+ * @author Said Gadjiev
+ */
+public class EstimatingWeigher implements Weigher {
+
+    /**
+     * Default estimated entity object size in bytes.
+     */
+    private static final long DEFAULT_OBJECT_WEIGHT = 256;
+
+    /**
+     * Map node, key and box overhead.
+     */
+    private static final long ENTRY_OVERHEAD = 64;
+
+    /**
+     * Id list element weight: reference and boxed id.
+     */
+    private static final long ID_WEIGHT = 24;
+
+    /**
+     * Object weights by entity type.
+     */
+    private final Map<Class<?>, Long> objectWeights = new ConcurrentHashMap<>();
+
+    /**
+     * Default object weight.
+     */
+    private final long defaultObjectWeight;
+
+    /**
+     * Create a new instance with default object weight.
+     */
+    public EstimatingWeigher() {
+        this(DEFAULT_OBJECT_WEIGHT);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param defaultObjectWeight target default estimated entity object size in bytes
+     */
+    public EstimatingWeigher(long defaultObjectWeight) {
+        this.defaultObjectWeight = defaultObjectWeight;
+    }
+
+    /**
+     * Set estimated object size of entity type.
+     *
+     * @param entityType   target entity type
+     * @param objectWeight target estimated object size in bytes
+     * @return this weigher
+     */
+    public EstimatingWeigher objectWeight(Class<?> entityType, long objectWeight) {
+        objectWeights.put(entityType, objectWeight);
+
+        return this;
+    }
+
+    @Override
+    public long weigh(SubCache subCache, Class<?> entityType, Object key, Object value) {
+        switch (subCache) {
+            case OBJECT:
+                return ENTRY_OVERHEAD + objectWeights.getOrDefault(entityType, defaultObjectWeight);
+            case LIST:
+            case LIMITED_LIST:
+            case QUERY_FOR_ALL:
+                if (value instanceof IdList) {
+                    return ENTRY_OVERHEAD + ((IdList) value).getByteSize();
+                }
+
+                return ENTRY_OVERHEAD + ID_WEIGHT * ((Collection<?>) value).size();
+            default:
+                return ENTRY_OVERHEAD;
+        }
+    }
+}
@@ -8,7 +8,8 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Evict api implementation.
+ * Evict api implementation. Entity evictions run under entity {@link CacheRegion} lock and advance entity
+ * generation, so concurrent populations can't resurrect evicted entries.
  *
  * @author Said Gadjiev
  */
@@ -39,6 +40,21 @@ public class EvictHelper implements CacheEvict {
      */
     private SelectStatementCache selectStatementCache;
 
+    /**
+     * Cacheable entity regions.
+     */
+    private final Map<Class<?>, CacheRegion> regions;
+
+    /**
+     * Entity write generations.
+     */
+    private final Generations generations;
+
+    /**
+     * Memory budget. Null if caches are unbounded.
+     */
+    private volatile MemoryBudget memoryBudget;
+
     /**
      * Create a new instance.
      *
@@ -47,116 +63,244 @@ public class EvictHelper implements CacheEvict {
      * @param countOffCache target count off cache
      * @param existCache target exist cache
      * @param selectStatementCache target select statement cache
+     * @param regions target cacheable entity regions
+     * @param generations target entity write generations
      */
     EvictHelper(Map<Class<?>, ObjectCache> objectCacheMap,
                        Map<Class<?>, List<Object>> queryForAllCache,
                        Map<Class<?>, Long> countOffCache,
                        Map<Class<?>, Map<Object, Boolean>> existCache,
-                       SelectStatementCache selectStatementCache
+                       SelectStatementCache selectStatementCache,
+                       Map<Class<?>, CacheRegion> regions,
+                       Generations generations
     ) {
         this.objectCacheMap = objectCacheMap;
         this.queryForAllCache = queryForAllCache;
         this.countOffCache = countOffCache;
         this.existCache = existCache;
         this.selectStatementCache = selectStatementCache;
+        this.regions = regions;
+        this.generations = generations;
+    }
+
+    /**
+     * Set memory budget which tracks cached entries.
+     *
+     * @param memoryBudget target memory budget or null
+     */
+    void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
     }
 
     @Override
     public void evictList(Class<?> entityType) {
-        selectStatementCache.evictList(entityType);
+        evictAtomically(entityType, () -> removeList(entityType));
     }
 
     @Override
     public void evictList() {
-        selectStatementCache.evictList();
+        regions.keySet().forEach(this::evictList);
     }
 
     @Override
     public void evictQueryForLong(Class<?> entityType) {
-        selectStatementCache.evictLong(entityType);
+        evictAtomically(entityType, () -> {
+            selectStatementCache.evictLong(entityType);
+            forget(SubCache.LONG, entityType);
+        });
     }
 
     @Override
     public void evictQueryForLong() {
-        selectStatementCache.evictLong();
+        regions.keySet().forEach(this::evictQueryForLong);
     }
 
     @Override
     public void evictCountOff(Class<?> entityType) {
-        countOffCache.remove(entityType);
+        evictAtomically(entityType, () -> {
+            countOffCache.remove(entityType);
+            forget(SubCache.COUNT_OFF, entityType);
+        });
     }
 
     @Override
     public void evictCountOff() {
-        countOffCache.clear();
+        regions.keySet().forEach(this::evictCountOff);
     }
 
     @Override
     public void evictExist(Class<?> entityType) {
-        existCache.remove(entityType);
+        evictAtomically(entityType, () -> {
+            clearExist(entityType);
+            forget(SubCache.EXIST, entityType);
+        });
     }
 
     @Override
     public void evictExist() {
-        existCache.clear();
+        regions.keySet().forEach(this::evictExist);
     }
 
     @Override
     public void evictQueryForAll(Class<?> entityType) {
-        queryForAllCache.remove(entityType);
+        evictAtomically(entityType, () -> removeQueryForAll(entityType));
     }
 
     @Override
     public void evictQueryForAll() {
-        queryForAllCache.clear();
+        regions.keySet().forEach(this::evictQueryForAll);
     }
 
     @Override
     public void evictLimitedList(Class<?> entityType) {
-        selectStatementCache.evictLimitedList(entityType);
+        evictAtomically(entityType, () -> {
+            selectStatementCache.evictLimitedList(entityType);
+            forget(SubCache.LIMITED_LIST, entityType);
+        });
     }
 
     @Override
     public void evictLimitedList() {
-        selectStatementCache.evictLimitedList();
+        regions.keySet().forEach(this::evictLimitedList);
     }
 
     @Override
     public void evict(Class<?> entityType, Object id) {
-        objectCacheMap.get(entityType).invalidate(entityType, id);
+        evictAtomically(entityType, () -> {
+            objectCacheMap.get(entityType).invalidate(entityType, id);
+
+            MemoryBudget budget = memoryBudget;
+
+            if (budget != null) {
+                budget.remove(new EntryKey(SubCache.OBJECT, entityType, id));
+            }
+        });
     }
 
     @Override
     public void evict(Class<?> entityType) {
-        objectCacheMap.get(entityType).invalidateAll(entityType);
-        evictList(entityType);
-        evictQueryForAll(entityType);
+        evictAtomically(entityType, () -> {
+            objectCacheMap.get(entityType).invalidateAll(entityType);
+            forget(SubCache.OBJECT, entityType);
+            removeList(entityType);
+            removeQueryForAll(entityType);
+        });
     }
 
     @Override
     public void evict() {
-        objectCacheMap.forEach((aClass, objectCache) -> {
-            objectCache.invalidateAll(aClass);
-            evictList(aClass);
-            evictQueryForAll(aClass);
-        });
+        objectCacheMap.keySet().forEach(this::evict);
     }
 
     @Override
     public void evictAll(Class<?> entityType) {
-        selectStatementCache.evictAll(entityType);
-        queryForAllCache.remove(entityType);
-        objectCacheMap.get(entityType).invalidateAll(entityType);
-        countOffCache.remove(entityType);
-        existCache.remove(entityType);
+        evictAtomically(entityType, () -> {
+            ObjectCache objectCache = objectCacheMap.get(entityType);
+
+            selectStatementCache.evictAll(entityType);
+            queryForAllCache.remove(entityType);
+            if (objectCache != null) {
+                objectCache.invalidateAll(entityType);
+            }
+            countOffCache.remove(entityType);
+            clearExist(entityType);
+
+            MemoryBudget budget = memoryBudget;
+
+            if (budget != null) {
+                budget.removeAll(entityType);
+            }
+        });
     }
 
     @Override
     public void flush() {
-        queryForAllCache.clear();
-        selectStatementCache.flush();
-        objectCacheMap.forEach((aClass, objectCache) -> objectCache.invalidateAll(aClass));
-        countOffCache.clear();
-        existCache.clear();
+        regions.keySet().forEach(this::evictAll);
+        objectCacheMap.forEach((entityType, objectCache) -> {
+            if (!regions.containsKey(entityType)) {
+                objectCache.invalidateAll(entityType);
+            }
+        });
+    }
+
+    /**
+     * Run eviction under entity region lock and advance entity generation, so running populations finish before
+     * eviction and populations of results queried before eviction are discarded.
+     *
+     * @param entityType target entity type
+     * @param eviction   target eviction
+     */
+    private void evictAtomically(Class<?> entityType, Runnable eviction) {
+        CacheRegion region = regions.get(entityType);
+
+        if (region == null) {
+            eviction.run();
+
+            return;
+        }
+        long stamp = region.lockEviction();
+
+        try {
+            generations.advance(entityType);
+            eviction.run();
+        } finally {
+            region.unlock(stamp);
+        }
+    }
+
+    /**
+     * Remove entity list results.
+     *
+     * @param entityType target entity type
+     */
+    private void removeList(Class<?> entityType) {
+        selectStatementCache.evictList(entityType);
+        forget(SubCache.LIST, entityType);
+    }
+
+    /**
+     * Remove entity query for all result and ids filter built from it.
+     *
+     * @param entityType target entity type
+     */
+    private void removeQueryForAll(Class<?> entityType) {
+        CacheRegion region = regions.get(entityType);
+
+        queryForAllCache.remove(entityType);
+        forget(SubCache.QUERY_FOR_ALL, entityType);
+        if (region != null) {
+            region.setExistFilter(null);
+        }
+    }
+
+    /**
+     * Clear entity exist results in place, cache layer keeps reference to them, and drop entity ids filter.
+     *
+     * @param entityType target entity type
+     */
+    private void clearExist(Class<?> entityType) {
+        Map<Object, Boolean> exists = existCache.get(entityType);
+        CacheRegion region = regions.get(entityType);
+
+        if (exists != null) {
+            exists.clear();
+        }
+        if (region != null) {
+            region.setExistFilter(null);
+        }
+    }
+
+    /**
+     * Forget entity type entries evicted from sub cache in memory budget.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     */
+    private void forget(SubCache subCache, Class<?> entityType) {
+        MemoryBudget budget = memoryBudget;
+
+        if (budget != null) {
+            budget.removeAll(subCache, entityType);
+        }
     }
 }
@@ -0,0 +1,24 @@
+package ru.saidgajiev.ormnext.cache;
+
+/**
+ * Causes of {@link CacheLayer} entry eviction counted by {@link CacheStats}.
+ *
+ * @author Said Gadjiev
+ */
+public enum EvictionCause {
+
+    /**
+     * Entry expired by {@link ExpirationPolicy}.
+     */
+    EXPIRED,
+
+    /**
+     * Entry evicted to fit {@link MemoryBudget}.
+     */
+    BUDGET,
+
+    /**
+     * Entry discarded because entity was written while it was populated.
+     */
+    STALE
+}
@@ -0,0 +1,19 @@
+package ru.saidgajiev.ormnext.cache;
+
+/**
+ * Listener of entries which object cache removes on its own: by its size policy or because garbage collector
+ * cleared them. Explicit invalidations are not reported.
+ *
+ * @author Said Gadjiev
+ */
+@FunctionalInterface
+public interface EvictionListener {
+
+    /**
+     * Called when entry is removed. It may be called under object cache lock, so it must not call the cache.
+     *
+     * @param entityType target entity type
+     * @param id         target entity id
+     */
+    void onEviction(Class<?> entityType, Object id);
+}
@@ -0,0 +1,172 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity cache entries expiration policy. Entries expire after write, after last access or after
+ * whichever comes first if both are set.
+ *
+ * @author Said Gadjiev
+ */
+public final class ExpirationPolicy {
+
+    /**
+     * Expire after write nanos. Non positive value means disabled.
+     */
+    private final long expireAfterWriteNanos;
+
+    /**
+     * Expire after access nanos. Non positive value means disabled.
+     */
+    private final long expireAfterAccessNanos;
+
+    /**
+     * Create a new instance.
+     *
+     * @param expireAfterWriteNanos  target expire after write nanos
+     * @param expireAfterAccessNanos target expire after access nanos
+     */
+    private ExpirationPolicy(long expireAfterWriteNanos, long expireAfterAccessNanos) {
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+        this.expireAfterAccessNanos = expireAfterAccessNanos;
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Create policy from annotation.
+     *
+     * @param cacheable target annotation
+     * @return policy or null if expiration is not configured
+     */
+    static ExpirationPolicy of(Cacheable cacheable) {
+        ExpirationPolicy policy = builder()
+                .expireAfterWrite(cacheable.expireAfterWrite(), cacheable.timeUnit())
+                .expireAfterAccess(cacheable.expireAfterAccess(), cacheable.timeUnit())
+                .build();
+
+        return policy.isExpiring() ? policy : null;
+    }
+
+    /**
+     * Return true if any expiration is enabled.
+     *
+     * @return true if any expiration is enabled
+     */
+    public boolean isExpiring() {
+        return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+    }
+
+    /**
+     * Return true if expire after access is enabled.
+     *
+     * @return true if expire after access is enabled
+     */
+    public boolean isExpireAfterAccess() {
+        return expireAfterAccessNanos > 0;
+    }
+
+    /**
+     * Return expire after write nanos.
+     *
+     * @return expire after write nanos, non positive if disabled
+     */
+    public long getExpireAfterWriteNanos() {
+        return expireAfterWriteNanos;
+    }
+
+    /**
+     * Return expire after access nanos.
+     *
+     * @return expire after access nanos, non positive if disabled
+     */
+    public long getExpireAfterAccessNanos() {
+        return expireAfterAccessNanos;
+    }
+
+    /**
+     * Return entry deadline. Must be called only for expiring policy. Deadlines are compared by difference
+     * as {@link System#nanoTime()} values may overflow.
+     *
+     * @param writeTime  target entry write time nanos
+     * @param accessTime target entry last access time nanos
+     * @return deadline nanos
+     */
+    long deadline(long writeTime, long accessTime) {
+        long writeDeadline = writeTime + expireAfterWriteNanos;
+        long accessDeadline = accessTime + expireAfterAccessNanos;
+
+        if (expireAfterAccessNanos <= 0) {
+            return writeDeadline;
+        }
+        if (expireAfterWriteNanos <= 0) {
+            return accessDeadline;
+        }
+
+        return writeDeadline - accessDeadline < 0 ? writeDeadline : accessDeadline;
+    }
+
+    /**
+     * Expiration policy builder.
+     */
+    public static final class Builder {
+
+        /**
+         * Expire after write nanos.
+         */
+        private long expireAfterWriteNanos = -1;
+
+        /**
+         * Expire after access nanos.
+         */
+        private long expireAfterAccessNanos = -1;
+
+        /**
+         * Create a new instance.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Expire entries after write.
+         *
+         * @param duration target duration, non positive disables it
+         * @param timeUnit target duration unit
+         * @return this builder
+         */
+        public Builder expireAfterWrite(long duration, TimeUnit timeUnit) {
+            this.expireAfterWriteNanos = duration > 0 ? timeUnit.toNanos(duration) : -1;
+
+            return this;
+        }
+
+        /**
+         * Expire entries after last access.
+         *
+         * @param duration target duration, non positive disables it
+         * @param timeUnit target duration unit
+         * @return this builder
+         */
+        public Builder expireAfterAccess(long duration, TimeUnit timeUnit) {
+            this.expireAfterAccessNanos = duration > 0 ? timeUnit.toNanos(duration) : -1;
+
+            return this;
+        }
+
+        /**
+         * Build policy.
+         *
+         * @return policy
+         */
+        public ExpirationPolicy build() {
+            return new ExpirationPolicy(expireAfterWriteNanos, expireAfterAccessNanos);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.commons.TimingWheel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks expiration of {@link CacheLayer} entries. Each written entry of expiring entity gets a timer in
+ * {@link TimingWheel}, the wheel is advanced on writes and fires evict actions of expired entries.
+ * Reads check entry deadline directly, so expired entry is never returned even if the wheel is behind.
+ *
+ * @author Said Gadjiev
+ */
+class ExpiryHelper {
+
+    /**
+     * Expiration policies by entity type.
+     */
+    private final Map<Class<?>, ExpirationPolicy> policies = new ConcurrentHashMap<>();
+
+    /**
+     * Current expirations by entry.
+     */
+    private final Map<EntryKey, Expiration> expirations = new ConcurrentHashMap<>();
+
+    /**
+     * Timing wheel lock.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Time source.
+     */
+    private final LongSupplier ticker;
+
+    /**
+     * Timing wheel.
+     */
+    private final TimingWheel timingWheel;
+
+    /**
+     * Create a new instance.
+     *
+     * @param ticker target nanos time source
+     */
+    ExpiryHelper(LongSupplier ticker) {
+        this.ticker = ticker;
+        this.timingWheel = new TimingWheel(ticker.getAsLong());
+    }
+
+    /**
+     * Set entity expiration policy.
+     *
+     * @param entityType target entity type
+     * @param policy     target policy, null or not expiring policy disables expiration
+     */
+    void setPolicy(Class<?> entityType, ExpirationPolicy policy) {
+        if (policy == null || !policy.isExpiring()) {
+            policies.remove(entityType);
+        } else {
+            policies.put(entityType, policy);
+        }
+    }
+
+    /**
+     * Return entity expiration policy.
+     *
+     * @param entityType target entity type
+     * @return policy or null
+     */
+    ExpirationPolicy getPolicy(Class<?> entityType) {
+        return policies.get(entityType);
+    }
+
+    /**
+     * Start entry expiration after write.
+     *
+     * @param subCache    target sub cache
+     * @param entityType  target entity type
+     * @param key         target entry key
+     * @param evictAction target action which evicts entry
+     */
+    void onWrite(SubCache subCache, Class<?> entityType, Object key, Runnable evictAction) {
+        onWrite(subCache, entityType, key, evictAction, 0);
+    }
+
+    /**
+     * Start expiration of entry written age nanos ago, entry restored from snapshot keeps its remaining life.
+     *
+     * @param subCache    target sub cache
+     * @param entityType  target entity type
+     * @param key         target entry key
+     * @param evictAction target action which evicts entry
+     * @param age         target nanos since entry was written
+     */
+    void onWrite(SubCache subCache, Class<?> entityType, Object key, Runnable evictAction, long age) {
+        ExpirationPolicy policy = policies.get(entityType);
+
+        if (policy == null) {
+            return;
+        }
+        long now = ticker.getAsLong();
+        EntryKey entryKey = new EntryKey(subCache, entityType, key);
+        Expiration expiration = new Expiration(entryKey, policy, now - age, evictAction);
+
+        lock.lock();
+        try {
+            Expiration prior = expirations.put(entryKey, expiration);
+
+            if (prior != null) {
+                timingWheel.deschedule(prior.timer);
+            }
+            timingWheel.schedule(expiration.timer);
+            timingWheel.advance(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace evict action of entry updated in place. Entry keeps its write time and deadline, so the update does
+     * not extend its life. Entry which is not tracked anymore, because it expired meanwhile, is evicted at once.
+     *
+     * @param subCache    target sub cache
+     * @param entityType  target entity type
+     * @param key         target entry key
+     * @param evictAction target action which evicts updated entry
+     * @return false if entry is evicted
+     */
+    boolean onUpdate(SubCache subCache, Class<?> entityType, Object key, Runnable evictAction) {
+        ExpirationPolicy policy = policies.get(entityType);
+
+        if (policy == null) {
+            return true;
+        }
+        EntryKey entryKey = new EntryKey(subCache, entityType, key);
+        boolean expired;
+
+        lock.lock();
+        try {
+            Expiration prior = expirations.get(entryKey);
+            Expiration expiration = prior == null ? null : new Expiration(prior, evictAction);
+
+            expired = expiration == null || !expirations.replace(entryKey, prior, expiration);
+            if (!expired) {
+                timingWheel.deschedule(prior.timer);
+                timingWheel.schedule(expiration.timer);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (expired) {
+            evictAction.run();
+        }
+
+        return !expired;
+    }
+
+    /**
+     * Check entry on read. Expired entry is evicted, live entry with expire after access gets new deadline.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     * @return true if entry is expired
+     */
+    boolean isExpired(SubCache subCache, Class<?> entityType, Object key) {
+        ExpirationPolicy policy = policies.get(entityType);
+
+        if (policy == null) {
+            return false;
+        }
+        Expiration expiration = expirations.get(new EntryKey(subCache, entityType, key));
+
+        if (expiration == null) {
+            return false;
+        }
+        long now = ticker.getAsLong();
+
+        if (expiration.timer.getDeadline() - now <= 0) {
+            expiration.expire();
+
+            return true;
+        }
+        if (policy.isExpireAfterAccess()) {
+            expiration.timer.setDeadline(policy.deadline(expiration.writeTime, now));
+        }
+
+        return false;
+    }
+
+    /**
+     * Return nanos until entry expires.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     * @return nanos or {@link Long#MAX_VALUE} if entry does not expire
+     */
+    long remaining(SubCache subCache, Class<?> entityType, Object key) {
+        if (!policies.containsKey(entityType)) {
+            return Long.MAX_VALUE;
+        }
+        Expiration expiration = expirations.get(new EntryKey(subCache, entityType, key));
+
+        return expiration == null ? Long.MAX_VALUE : expiration.timer.getDeadline() - ticker.getAsLong();
+    }
+
+    /**
+     * Return nanos since entry was written.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     * @return nanos or zero if entry does not expire
+     */
+    long age(SubCache subCache, Class<?> entityType, Object key) {
+        if (!policies.containsKey(entityType)) {
+            return 0;
+        }
+        Expiration expiration = expirations.get(new EntryKey(subCache, entityType, key));
+
+        return expiration == null ? 0 : Math.max(0, ticker.getAsLong() - expiration.writeTime);
+    }
+
+    /**
+     * Check if entry written age nanos ago is already expired.
+     *
+     * @param entityType target entity type
+     * @param age        target nanos since entry was written
+     * @return true if entry is expired
+     */
+    boolean isExpired(Class<?> entityType, long age) {
+        ExpirationPolicy policy = policies.get(entityType);
+
+        if (policy == null) {
+            return false;
+        }
+        long now = ticker.getAsLong();
+
+        return policy.deadline(now - age, now - age) - now <= 0;
+    }
+
+    /**
+     * Stop entry expiration. Its timer stays in the wheel and is ignored when fired.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     */
+    void remove(SubCache subCache, Class<?> entityType, Object key) {
+        if (policies.containsKey(entityType)) {
+            expirations.remove(new EntryKey(subCache, entityType, key));
+        }
+    }
+
+    /**
+     * Fire expired timers if no other thread does it.
+     */
+    void cleanUp() {
+        if (lock.tryLock()) {
+            try {
+                timingWheel.advance(ticker.getAsLong());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Entry expiration.
+     */
+    private final class Expiration {
+
+        /**
+         * Entry key.
+         */
+        private final EntryKey key;
+
+        /**
+         * Write time nanos.
+         */
+        private final long writeTime;
+
+        /**
+         * Evict action.
+         */
+        private final Runnable evictAction;
+
+        /**
+         * Timer.
+         */
+        private final TimingWheel.Timer timer;
+
+        /**
+         * Create a new instance.
+         *
+         * @param key         target entry key
+         * @param policy      target policy
+         * @param writeTime   target write time nanos
+         * @param evictAction target evict action
+         */
+        private Expiration(EntryKey key, ExpirationPolicy policy, long writeTime, Runnable evictAction) {
+            this.key = key;
+            this.writeTime = writeTime;
+            this.evictAction = evictAction;
+            this.timer = new TimingWheel.Timer(this::expire);
+            this.timer.setDeadline(policy.deadline(writeTime, writeTime));
+        }
+
+        /**
+         * Create a new instance with prior expiration deadline.
+         *
+         * @param prior       target prior expiration
+         * @param evictAction target evict action
+         */
+        private Expiration(Expiration prior, Runnable evictAction) {
+            this.key = prior.key;
+            this.writeTime = prior.writeTime;
+            this.evictAction = evictAction;
+            this.timer = new TimingWheel.Timer(this::expire);
+            this.timer.setDeadline(prior.timer.getDeadline());
+        }
+
+        /**
+         * Evict entry if this expiration is still current.
+         */
+        private void expire() {
+            if (expirations.remove(key, this)) {
+                evictAction.run();
+            }
+        }
+    }
+}
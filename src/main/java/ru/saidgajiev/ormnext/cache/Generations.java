@@ -0,0 +1,116 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per entity write generations. Every write path advances the entity generation, so a result queried at an older
+ * generation may be stale and must not be cached. Lookup misses remember the generation per thread and entry key,
+ * so the following population of the same entry through {@link ru.saidgadjiev.ormnext.core.cache.Cache} methods
+ * carries the generation observed before the database was queried. Population without observation of its entry
+ * falls back to the last generation of entity observed by thread, or to current generation if thread did not observe
+ * entity at all, so direct population and warm up are cached. Callers which can race with writes should pass
+ * generation taken before query explicitly.
+ *
+ * @author Said Gadjiev
+ */
+class Generations {
+
+    /**
+     * Max observations per thread. Least recently observed are dropped, so misses which are never populated
+     * do not accumulate on pooled threads.
+     */
+    private static final int MAX_OBSERVED = 64;
+
+    /**
+     * Observations map initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Observations map load factor.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Generation counters by entity type.
+     */
+    private final Map<Class<?>, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Generations observed on lookup misses by current thread.
+     */
+    private final ThreadLocal<Map<EntryKey, Long>> observed = ThreadLocal.withInitial(
+            () -> new LinkedHashMap<EntryKey, Long>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<EntryKey, Long> eldest) {
+                    return size() > MAX_OBSERVED;
+                }
+            }
+    );
+
+    /**
+     * Last generations observed on lookup misses by current thread per entity type.
+     */
+    private final ThreadLocal<Map<Class<?>, Long>> observedTypes = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Return current entity generation.
+     *
+     * @param entityType target entity type
+     * @return current generation
+     */
+    long current(Class<?> entityType) {
+        AtomicLong counter = counters.get(entityType);
+
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Advance entity generation on write.
+     *
+     * @param entityType target entity type
+     */
+    void advance(Class<?> entityType) {
+        counters.computeIfAbsent(entityType, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Remember current generation for following population of entry by current thread.
+     *
+     * @param key target entry key
+     */
+    void observe(EntryKey key) {
+        long generation = current(key.getEntityType());
+
+        observed.get().put(key, generation);
+        observedTypes.get().put(key.getEntityType(), generation);
+    }
+
+    /**
+     * Take generation remembered by current thread for entry.
+     *
+     * @param key target entry key
+     * @return observed generation of entry, otherwise last observed generation of entity or current generation
+     */
+    long take(EntryKey key) {
+        Long generation = observed.get().remove(key);
+
+        if (generation == null) {
+            generation = observedTypes.get().get(key.getEntityType());
+        }
+
+        return generation == null ? current(key.getEntityType()) : generation;
+    }
+
+    /**
+     * Forget all generations remembered by current thread.
+     */
+    void forget() {
+        observed.remove();
+        observedTypes.remove();
+    }
+}
@@ -0,0 +1,544 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bus which carries {@link CacheLayer} write invalidations to cache layers of other nodes over
+ * {@link InvalidationTransport}. Written ids are collected and sent in batches: repeated ids are coalesced and
+ * an entity type with too many written ids is sent as whole type eviction. Every batch has sender sequence number,
+ * idle sender sends heartbeats with the last sequence, so a receiver which missed a batch detects the gap and
+ * evicts all its caches.
+ * <p>
+ * Only {@link Integer}, {@link Long} and {@link String} ids are sent, writes of other ids evict whole entity type
+ * on peers. Bus is owned by caller, it is not closed by {@link CacheLayer#close()}.
+ *
+ * @author Said Gadjiev
+ */
+public class InvalidationBus implements Closeable {
+
+    /**
+     * Message magic.
+     */
+    private static final int MAGIC = 0x4F4E4942;
+
+    /**
+     * Default flush interval millis.
+     */
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+    /**
+     * Default heartbeat interval millis.
+     */
+    private static final long DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Default max ids of entity type in batch.
+     */
+    private static final int DEFAULT_MAX_IDS_PER_TYPE = 256;
+
+    /**
+     * Int id tag.
+     */
+    private static final byte INT_ID = 'I';
+
+    /**
+     * Long id tag.
+     */
+    private static final byte LONG_ID = 'J';
+
+    /**
+     * String id tag.
+     */
+    private static final byte STRING_ID = 'S';
+
+    /**
+     * Transport.
+     */
+    private final InvalidationTransport transport;
+
+    /**
+     * This node id.
+     */
+    private final long nodeId = UUID.randomUUID().getMostSignificantBits();
+
+    /**
+     * Flush interval nanos.
+     */
+    private final long flushIntervalNanos;
+
+    /**
+     * Heartbeat interval nanos.
+     */
+    private final long heartbeatIntervalNanos;
+
+    /**
+     * Max ids of entity type in batch.
+     */
+    private final int maxIdsPerType;
+
+    /**
+     * Pending written ids by entity type. Guarded by itself.
+     */
+    private final Map<Class<?>, Set<Object>> pendingIds = new LinkedHashMap<>();
+
+    /**
+     * Pending whole entity type evictions. Guarded by pending ids.
+     */
+    private final Set<Class<?>> pendingAll = new LinkedHashSet<>();
+
+    /**
+     * Last received sequence by sender node id. Guarded by itself.
+     */
+    private final Map<Long, Long> lastSequences = new HashMap<>();
+
+    /**
+     * Entity types by name. Empty until bound.
+     */
+    private volatile Map<String, Class<?>> entityTypes = new ConcurrentHashMap<>();
+
+    /**
+     * Invalidation target. Null until bound.
+     */
+    private volatile Invalidator target;
+
+    /**
+     * Flush scheduler. Null until bound.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Last sent sequence. Guarded by this.
+     */
+    private long sequence;
+
+    /**
+     * Last send time. Guarded by this.
+     */
+    private long lastSendNanos = System.nanoTime();
+
+    /**
+     * Detected sequence gaps count.
+     */
+    private final LongAdder gapCount = new LongAdder();
+
+    /**
+     * Messages which failed to apply count.
+     */
+    private final LongAdder receiveFailureCount = new LongAdder();
+
+    /**
+     * Scheduled flushes which failed to send count.
+     */
+    private final LongAdder sendFailureCount = new LongAdder();
+
+    /**
+     * Create a new instance.
+     *
+     * @param transport         target transport
+     * @param flushInterval     target interval of batch sending
+     * @param heartbeatInterval target interval of idle heartbeats
+     * @param unit              target intervals unit
+     * @param maxIdsPerType     target max ids of entity type in batch, more ids are sent as whole type eviction
+     */
+    public InvalidationBus(InvalidationTransport transport,
+                           long flushInterval,
+                           long heartbeatInterval,
+                           TimeUnit unit,
+                           int maxIdsPerType) {
+        if (flushInterval <= 0 || heartbeatInterval <= 0 || maxIdsPerType <= 0) {
+            throw new IllegalArgumentException("Intervals and max ids must be positive");
+        }
+        this.transport = transport;
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+        this.heartbeatIntervalNanos = unit.toNanos(heartbeatInterval);
+        this.maxIdsPerType = maxIdsPerType;
+    }
+
+    /**
+     * Create a new instance with 10 ms flush interval, 1 s heartbeat interval and 256 max ids per type.
+     *
+     * @param transport target transport
+     */
+    public InvalidationBus(InvalidationTransport transport) {
+        this(
+                transport,
+                DEFAULT_FLUSH_INTERVAL_MILLIS,
+                DEFAULT_HEARTBEAT_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS,
+                DEFAULT_MAX_IDS_PER_TYPE
+        );
+    }
+
+    /**
+     * Return detected sequence gaps count. Every gap evicted all caches.
+     *
+     * @return gaps count
+     */
+    public long getGapCount() {
+        return gapCount.sum();
+    }
+
+    /**
+     * Return count of received messages which failed to apply. Every failure evicted all caches.
+     *
+     * @return failures count
+     */
+    public long getReceiveFailureCount() {
+        return receiveFailureCount.sum();
+    }
+
+    /**
+     * Return count of scheduled flushes which failed to send.
+     *
+     * @return failures count
+     */
+    public long getSendFailureCount() {
+        return sendFailureCount.sum();
+    }
+
+    /**
+     * Send pending invalidations now, or heartbeat if nothing is pending and heartbeat interval passed.
+     *
+     * @throws UncheckedIOException if message can't be sent
+     */
+    public synchronized void flush() {
+        Map<Class<?>, Set<Object>> ids;
+        Set<Class<?>> all;
+
+        synchronized (pendingIds) {
+            ids = new LinkedHashMap<>(pendingIds);
+            all = new LinkedHashSet<>(pendingAll);
+            pendingIds.clear();
+            pendingAll.clear();
+        }
+        boolean heartbeat = ids.isEmpty() && all.isEmpty();
+
+        if (heartbeat && System.nanoTime() - lastSendNanos < heartbeatIntervalNanos) {
+            return;
+        }
+        long messageSequence = heartbeat ? sequence : sequence + 1;
+
+        try {
+            byte[] message = encode(messageSequence, ids, all);
+
+            if (message.length > transport.getMaxMessageSize()) {
+                all.addAll(ids.keySet());
+                message = encode(messageSequence, new HashMap<>(), all);
+            }
+            transport.send(message);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            sequence = messageSequence;
+            lastSendNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stop flushing, send pending invalidations and close transport.
+     *
+     * @throws IOException if transport can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+        }
+        try {
+            flush();
+        } finally {
+            transport.close();
+        }
+    }
+
+    /**
+     * Bind bus to invalidation target and start receiving and flushing.
+     *
+     * @param types       target cached entity types
+     * @param invalidator target which applies received invalidations
+     * @throws UncheckedIOException if transport can't be started
+     */
+    synchronized void bind(Collection<Class<?>> types, Invalidator invalidator) {
+        if (target != null) {
+            throw new IllegalStateException("Invalidation bus is already bound");
+        }
+        Map<String, Class<?>> byName = new ConcurrentHashMap<>();
+
+        for (Class<?> type : types) {
+            byName.put(type.getName(), type);
+        }
+        entityTypes = byName;
+        target = invalidator;
+        try {
+            transport.start(this::receive);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ormnext-invalidation-flush");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(
+                this::scheduledFlush,
+                flushIntervalNanos,
+                flushIntervalNanos,
+                TimeUnit.NANOSECONDS
+        );
+    }
+
+    /**
+     * Publish written entity id.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     */
+    void publish(Class<?> entityType, Object id) {
+        if (!(id instanceof Integer || id instanceof Long || id instanceof String)) {
+            publishAll(entityType);
+
+            return;
+        }
+        synchronized (pendingIds) {
+            if (pendingAll.contains(entityType)) {
+                return;
+            }
+            Set<Object> ids = pendingIds.computeIfAbsent(entityType, k -> new LinkedHashSet<>());
+
+            ids.add(id);
+            if (ids.size() > maxIdsPerType) {
+                pendingIds.remove(entityType);
+                pendingAll.add(entityType);
+            }
+        }
+    }
+
+    /**
+     * Publish write of whole entity type.
+     *
+     * @param entityType target entity type
+     */
+    void publishAll(Class<?> entityType) {
+        synchronized (pendingIds) {
+            pendingIds.remove(entityType);
+            pendingAll.add(entityType);
+        }
+    }
+
+    /**
+     * Apply received message. Malformed message or failure of invalidation target evicts all caches, as the
+     * message could be applied partially.
+     *
+     * @param message target message
+     */
+    void receive(byte[] message) {
+        Invalidator invalidator = target;
+
+        if (invalidator == null) {
+            return;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(message));
+
+            if (input.readInt() != MAGIC) {
+                return;
+            }
+            long sender = input.readLong();
+            long messageSequence = input.readLong();
+            int typeCount = input.readInt();
+
+            if (sender == nodeId) {
+                return;
+            }
+            if (isGap(sender, messageSequence, typeCount == 0)) {
+                gapCount.increment();
+                invalidator.invalidateAll();
+            }
+            int i = 0;
+
+            while (i < typeCount) {
+                Class<?> entityType = entityTypes.get(input.readUTF());
+                boolean all = input.readBoolean();
+                int idCount = input.readInt();
+
+                if (entityType != null && all) {
+                    invalidator.invalidateAll(entityType);
+                }
+                int j = 0;
+
+                while (j < idCount) {
+                    Object id = readId(input);
+
+                    if (entityType != null && !all) {
+                        invalidator.invalidate(entityType, id);
+                    }
+                    ++j;
+                }
+                ++i;
+            }
+        } catch (IOException | RuntimeException ex) {
+            receiveFailureCount.increment();
+            invalidator.invalidateAll();
+        }
+    }
+
+    /**
+     * Remember sender sequence and check if messages were missed.
+     *
+     * @param sender          target sender node id
+     * @param messageSequence target message sequence
+     * @param heartbeat       true if message is heartbeat which repeats last sequence
+     * @return true if messages were missed
+     */
+    private boolean isGap(long sender, long messageSequence, boolean heartbeat) {
+        synchronized (lastSequences) {
+            long last = lastSequences.getOrDefault(sender, 0L);
+            long expected = heartbeat ? last : last + 1;
+
+            if (messageSequence > last) {
+                lastSequences.put(sender, messageSequence);
+            }
+
+            return messageSequence > expected;
+        }
+    }
+
+    /**
+     * Flush from scheduler. Send failure is counted and retried by following heartbeat with a greater sequence,
+     * any failure is caught as it would cancel further flushes.
+     */
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            sendFailureCount.increment();
+        }
+    }
+
+    /**
+     * Encode message.
+     *
+     * @param messageSequence target sequence
+     * @param ids             target written ids by entity type
+     * @param all             target whole written entity types, disjoint with ids types
+     * @return message
+     * @throws IOException if message can't be encoded
+     */
+    private byte[] encode(long messageSequence,
+                          Map<Class<?>, Set<Object>> ids,
+                          Set<Class<?>> all) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        output.writeInt(MAGIC);
+        output.writeLong(nodeId);
+        output.writeLong(messageSequence);
+        output.writeInt(all.size() + ids.size());
+        for (Class<?> entityType : all) {
+            output.writeUTF(entityType.getName());
+            output.writeBoolean(true);
+            output.writeInt(0);
+        }
+        for (Map.Entry<Class<?>, Set<Object>> entry : ids.entrySet()) {
+            output.writeUTF(entry.getKey().getName());
+            output.writeBoolean(false);
+            output.writeInt(entry.getValue().size());
+            for (Object id : entry.getValue()) {
+                writeId(output, id);
+            }
+        }
+        output.flush();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write tagged id.
+     *
+     * @param output target output
+     * @param id     target id
+     * @throws IOException if write failed
+     */
+    private static void writeId(DataOutputStream output, Object id) throws IOException {
+        if (id instanceof Integer) {
+            output.writeByte(INT_ID);
+            output.writeInt((Integer) id);
+        } else if (id instanceof Long) {
+            output.writeByte(LONG_ID);
+            output.writeLong((Long) id);
+        } else {
+            output.writeByte(STRING_ID);
+            output.writeUTF((String) id);
+        }
+    }
+
+    /**
+     * Read tagged id.
+     *
+     * @param input target input
+     * @return id
+     * @throws IOException if id is malformed
+     */
+    private static Object readId(DataInputStream input) throws IOException {
+        byte tag = input.readByte();
+
+        switch (tag) {
+            case INT_ID:
+                return input.readInt();
+            case LONG_ID:
+                return input.readLong();
+            case STRING_ID:
+                return input.readUTF();
+            default:
+                throw new IOException("Unknown id tag " + tag);
+        }
+    }
+
+    /**
+     * Target of received invalidations.
+     */
+    interface Invalidator {
+
+        /**
+         * Invalidate entity id.
+         *
+         * @param entityType target entity type
+         * @param id         target id
+         */
+        void invalidate(Class<?> entityType, Object id);
+
+        /**
+         * Invalidate whole entity type.
+         *
+         * @param entityType target entity type
+         */
+        void invalidateAll(Class<?> entityType);
+
+        /**
+         * Invalidate all entity types.
+         */
+        void invalidateAll();
+    }
+}
@@ -0,0 +1,37 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Transport of {@link InvalidationBus} messages between nodes. Delivery may be unreliable, lost messages are
+ * detected by bus sequence numbers.
+ *
+ * @author Said Gadjiev
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * Start receiving messages. Messages sent by this node may be received too.
+     *
+     * @param receiver target messages receiver
+     * @throws IOException if transport can't be started
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Send message to peers.
+     *
+     * @param message target message
+     * @throws IOException if message can't be sent
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * Return max message size.
+     *
+     * @return max message size in bytes
+     */
+    int getMaxMessageSize();
+}
@@ -1,18 +1,18 @@
 package ru.saidgajiev.ormnext.cache;
 
-import ru.saidgadjiev.ormnext.core.cache.ObjectCache;
-
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Cache with LRU caching algorithm.
  *
  * @author Said Gadjiev
  */
-public class LRUObjectCache implements ObjectCache {
+public class LRUObjectCache implements BulkObjectCache {
 
     /**
      * Default cache size.
@@ -29,6 +29,16 @@ public class LRUObjectCache implements ObjectCache {
      */
     private int maxSize;
 
+    /**
+     * Evicted by size entries count.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Evicted by size entries listener.
+     */
+    private volatile EvictionListener evictionListener = (entityType, id) -> { };
+
     /**
      * Create a new instance.
      *
@@ -47,7 +57,7 @@ public class LRUObjectCache implements ObjectCache {
 
     @Override
     public void registerClass(Class<?> tClass) {
-        cache.computeIfAbsent(tClass, k -> createLRUMap(maxSize));
+        cache.computeIfAbsent(tClass, k -> createLRUMap(tClass, maxSize));
     }
 
     @Override
@@ -75,6 +85,34 @@ public class LRUObjectCache implements ObjectCache {
         return cache.get(aClass).values();
     }
 
+    @Override
+    public Map<Object, Object> getAll(Class<?> tClass, Collection<?> ids) {
+        Map<Object, Object> objectCache = cache.get(tClass);
+        Map<Object, Object> result = new HashMap<>();
+
+        if (objectCache == null) {
+            return result;
+        }
+        for (Object id : ids) {
+            Object object = objectCache.get(id);
+
+            if (object != null) {
+                result.put(id, object);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(Class<?> tClass, Map<?, ?> objects) {
+        Map<Object, Object> objectCache = cache.get(tClass);
+
+        if (objectCache != null) {
+            objectCache.putAll(objects);
+        }
+    }
+
     @Override
     public boolean contains(Class<?> tClass, Object id) {
         Map<Object, Object> objectCache = cache.get(tClass);
@@ -118,17 +156,39 @@ public class LRUObjectCache implements ObjectCache {
         return objectCache.size();
     }
 
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Return evicted by size entries count.
+     *
+     * @return evicted entries count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
     /**
      * Create a new LRU map.
      *
+     * @param tClass  target entity type
      * @param maxSize target max size
      * @return created map with LRU remove algorithm
      */
-    private Map<Object, Object> createLRUMap(int maxSize) {
+    private Map<Object, Object> createLRUMap(Class<?> tClass, int maxSize) {
         return new LinkedHashMap<Object, Object>() {
             @Override
             protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
-                return size() > maxSize;
+                if (size() > maxSize) {
+                    evictionCount.increment();
+                    evictionListener.onEviction(tClass, eldest.getKey());
+
+                    return true;
+                }
+
+                return false;
             }
         };
     }
@@ -0,0 +1,168 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with power of two buckets. Bucket {@code i} counts latencies in
+ * {@code [2^(i - 1), 2^i)} nanoseconds, so recording is one {@link LongAdder} increment and percentiles
+ * are accurate within factor of two.
+ *
+ * @author Said Gadjiev
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Buckets count, one for zero and one per bit length of positive long.
+     */
+    private static final int BUCKETS = Long.SIZE;
+
+    /**
+     * Latency counts by bucket.
+     */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    /**
+     * Total recorded nanoseconds.
+     */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Create a new instance.
+     */
+    public LatencyHistogram() {
+        int i = 0;
+
+        while (i < BUCKETS) {
+            buckets[i] = new LongAdder();
+            ++i;
+        }
+    }
+
+    /**
+     * Record latency.
+     *
+     * @param nanos target latency in nanoseconds, negative is recorded as zero
+     */
+    public void record(long nanos) {
+        long latency = Math.max(0, nanos);
+
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(latency)].increment();
+        totalNanos.add(latency);
+    }
+
+    /**
+     * Return current counts.
+     *
+     * @return histogram snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        int i = 0;
+
+        while (i < BUCKETS) {
+            counts[i] = buckets[i].sum();
+            ++i;
+        }
+
+        return new Snapshot(counts, totalNanos.sum());
+    }
+
+    /**
+     * Point in time histogram counts.
+     */
+    public static final class Snapshot {
+
+        /**
+         * Latency counts by bucket.
+         */
+        private final long[] counts;
+
+        /**
+         * Total recorded nanoseconds.
+         */
+        private final long totalNanos;
+
+        /**
+         * Recorded latencies count.
+         */
+        private final long count;
+
+        /**
+         * Create a new instance.
+         *
+         * @param counts     target counts by bucket
+         * @param totalNanos target total nanoseconds
+         */
+        private Snapshot(long[] counts, long totalNanos) {
+            long sum = 0;
+
+            for (long bucketCount : counts) {
+                sum += bucketCount;
+            }
+            this.counts = counts;
+            this.totalNanos = totalNanos;
+            this.count = sum;
+        }
+
+        /**
+         * Return recorded latencies count.
+         *
+         * @return count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Return total recorded nanoseconds.
+         *
+         * @return total nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Return mean latency.
+         *
+         * @return mean nanoseconds or zero if nothing was recorded
+         */
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /**
+         * Return upper bound of bucket which holds latency at quantile.
+         *
+         * @param quantile target quantile in [0, 1]
+         * @return latency upper bound in nanoseconds or zero if nothing was recorded
+         */
+        public long getPercentileNanos(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Quantile must be in [0, 1]");
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            int i = 0;
+
+            while (i < counts.length) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return (1L << i) - 1;
+                }
+                ++i;
+            }
+
+            return 0;
+        }
+
+        /**
+         * Return latency counts by bucket.
+         *
+         * @return copy of counts
+         */
+        public long[] getCounts() {
+            return counts.clone();
+        }
+    }
+}
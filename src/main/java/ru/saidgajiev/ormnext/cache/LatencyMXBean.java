@@ -0,0 +1,44 @@
+package ru.saidgajiev.ormnext.cache;
+
+/**
+ * JMX view of {@link LatencyHistogram}.
+ *
+ * @author Said Gadjiev
+ */
+public interface LatencyMXBean {
+
+    /**
+     * Return recorded latencies count.
+     *
+     * @return count
+     */
+    long getCount();
+
+    /**
+     * Return mean latency.
+     *
+     * @return mean nanoseconds
+     */
+    double getMeanNanos();
+
+    /**
+     * Return median latency upper bound.
+     *
+     * @return nanoseconds
+     */
+    long getP50Nanos();
+
+    /**
+     * Return 99th percentile latency upper bound.
+     *
+     * @return nanoseconds
+     */
+    long getP99Nanos();
+
+    /**
+     * Return max latency upper bound.
+     *
+     * @return nanoseconds
+     */
+    long getMaxNanos();
+}
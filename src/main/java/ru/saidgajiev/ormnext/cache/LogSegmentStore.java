@@ -0,0 +1,887 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Disk store of encoded entities. Records are appended to log segments, an in memory index keeps the location of
+ * the latest record of every id. Full segments are sealed and read through memory mapping. Sealed segments with
+ * less than half of live bytes are compacted by {@link #compact()}: their live records are copied to the active
+ * segment and the file is deleted. Writes do not compact, so the owner runs compaction off the request path.
+ * <p>
+ * On open segments are replayed to rebuild the index only if replay max age is positive, otherwise they are deleted.
+ * Segments of other format version are deleted, records older than max age or written with other schema
+ * fingerprint of their entity type are dropped, and a torn record at the tail is truncated.
+ * <p>
+ * Segment starts with {@code [int magic][int version]}. Record layout is {@code [int bodyLength][int crc32][body]},
+ * body is entity class name, {@code [long fingerprint][long writtenAtMillis]}, tagged id and
+ * {@code [int valueLength][value]}, negative value length marks a removed id.
+ *
+ * @author Said Gadjiev
+ */
+final class LogSegmentStore implements Closeable {
+
+    /**
+     * Record header size.
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Segment header magic.
+     */
+    private static final int MAGIC = 0x4F524D53;
+
+    /**
+     * Segment format version.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Segment header size.
+     */
+    private static final int SEGMENT_HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Value length of removed id record.
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * Segment file name prefix.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * Segment file name suffix.
+     */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Integer id tag.
+     */
+    private static final byte INT_ID = 'I';
+
+    /**
+     * Long id tag.
+     */
+    private static final byte LONG_ID = 'J';
+
+    /**
+     * String id tag.
+     */
+    private static final byte STRING_ID = 'S';
+
+    /**
+     * Serialized id tag.
+     */
+    private static final byte OBJECT_ID = 'O';
+
+    /**
+     * Store directory.
+     */
+    private final Path directory;
+
+    /**
+     * Segment size after which active segment is sealed.
+     */
+    private final long maxSegmentSize;
+
+    /**
+     * Schema fingerprint of entity type.
+     */
+    private final ToLongFunction<Class<?>> fingerprint;
+
+    /**
+     * Memoized schema fingerprints.
+     */
+    private final Map<Class<?>, Long> fingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * Record locations by entity type and id.
+     */
+    private final Map<Class<?>, Map<Object, Location>> index = new ConcurrentHashMap<>();
+
+    /**
+     * Segments by id. Guarded by lock.
+     */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    /**
+     * Reads hold read lock, writes and compaction hold write lock.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Active segment. Guarded by lock.
+     */
+    private Segment active;
+
+    /**
+     * Open store and replay its segments.
+     *
+     * @param directory      target store directory
+     * @param maxSegmentSize target segment size after which segment is sealed
+     * @param replayMaxAge   target max age in milliseconds of replayed records, non positive deletes segments
+     * @param fingerprint    target schema fingerprint of entity type
+     * @throws UncheckedIOException if store can't be opened
+     */
+    LogSegmentStore(Path directory,
+                    long maxSegmentSize,
+                    long replayMaxAge,
+                    ToLongFunction<Class<?>> fingerprint) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.fingerprint = fingerprint;
+
+        try {
+            Files.createDirectories(directory);
+            String pattern = SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX;
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, pattern)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long id = Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())
+                    );
+
+                    if (replayMaxAge <= 0) {
+                        Files.delete(file);
+                        continue;
+                    }
+                    Segment segment = new Segment(id, file);
+
+                    if (segment.valid) {
+                        segments.put(id, segment);
+                    } else {
+                        segment.delete();
+                    }
+                }
+            }
+            long oldest = System.currentTimeMillis() - replayMaxAge;
+
+            for (Segment segment : segments.values()) {
+                replay(segment, oldest);
+            }
+            if (segments.isEmpty() || segments.lastEntry().getValue().size >= maxSegmentSize) {
+                roll();
+            } else {
+                active = segments.lastEntry().getValue();
+            }
+            for (Segment segment : segments.values()) {
+                if (segment != active) {
+                    segment.seal();
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't open store " + directory, ex);
+        }
+    }
+
+    /**
+     * Return location of latest record.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     * @return location or null
+     */
+    Location locate(Class<?> entityType, Object id) {
+        Map<Object, Location> locations = index.get(entityType);
+
+        return locations == null ? null : locations.get(id);
+    }
+
+    /**
+     * Check if store has id.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     * @return true if store has record of id
+     */
+    boolean contains(Class<?> entityType, Object id) {
+        return locate(entityType, id) != null;
+    }
+
+    /**
+     * Return stored ids of entity type.
+     *
+     * @param entityType target entity type
+     * @return ids view
+     */
+    Set<Object> ids(Class<?> entityType) {
+        Map<Object, Location> locations = index.get(entityType);
+
+        return locations == null ? Collections.emptySet() : locations.keySet();
+    }
+
+    /**
+     * Read value at location.
+     *
+     * @param location target location
+     * @return value or null if segment was compacted
+     */
+    byte[] read(Location location) {
+        lock.readLock().lock();
+        try {
+            if (location.segment.channel == null) {
+                return null;
+            }
+
+            return location.segment.read(location.valueOffset, location.valueLength);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't read " + location.segment.file, ex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append value of id.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     * @param value      target value
+     */
+    void write(Class<?> entityType, Object id, byte[] value) {
+        lock.writeLock().lock();
+        try {
+            append(entityType, id, value, System.currentTimeMillis());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't write " + active.file, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append remove record if store has id.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     */
+    void remove(Class<?> entityType, Object id) {
+        if (!contains(entityType, id)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            append(entityType, id, null, System.currentTimeMillis());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't write " + active.file, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append remove records of all ids of entity type.
+     *
+     * @param entityType target entity type
+     */
+    void removeAll(Class<?> entityType) {
+        lock.writeLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+
+            for (Object id : new ArrayList<>(ids(entityType))) {
+                append(entityType, id, null, now);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't write " + active.file, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Delete all segments.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.delete();
+            }
+            segments.clear();
+            index.clear();
+            roll();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can't clear store " + directory, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compact sealed segments with less than half of live bytes. Write lock is held per compacted segment, so
+     * reads interleave with long compaction.
+     *
+     * @throws UncheckedIOException if compaction failed
+     */
+    void compact() {
+        while (true) {
+            lock.writeLock().lock();
+            try {
+                Segment candidate = null;
+
+                for (Segment segment : segments.values()) {
+                    if (segment != active && segment.liveBytes * 2 < segment.size) {
+                        candidate = segment;
+                        break;
+                    }
+                }
+                if (candidate == null) {
+                    return;
+                }
+                compact(candidate);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Can't compact store " + directory, ex);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Return total segments size.
+     *
+     * @return size in bytes
+     */
+    long getDiskSize() {
+        lock.readLock().lock();
+        try {
+            return segments.values().stream().mapToLong(segment -> segment.size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            active.channel.force(false);
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append record and update index. Guarded by write lock.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     * @param value      target value or null to remove id
+     * @param writtenAt  target time in milliseconds when value was written first
+     * @throws IOException if write failed
+     */
+    private void append(Class<?> entityType, Object id, byte[] value, long writtenAt) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(body);
+
+        output.writeUTF(entityType.getName());
+        output.writeLong(fingerprint(entityType));
+        output.writeLong(writtenAt);
+        writeId(output, id);
+        output.writeInt(value == null ? TOMBSTONE : value.length);
+        int valueStart = output.size();
+
+        if (value != null) {
+            output.write(value);
+        }
+        output.flush();
+
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+
+        crc.update(bytes);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+
+        record.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+
+        Segment segment = active;
+        long offset = segment.append(record);
+
+        apply(entityType, id, value == null
+                ? null
+                : new Location(segment, offset, HEADER_SIZE + bytes.length, offset + HEADER_SIZE + valueStart,
+                value.length, writtenAt));
+        if (segment.size >= maxSegmentSize) {
+            segment.seal();
+            roll();
+        }
+    }
+
+    /**
+     * Point index to new record and account replaced record as dead.
+     *
+     * @param entityType target entity type
+     * @param id         target id
+     * @param location   target location or null if id is removed
+     */
+    private void apply(Class<?> entityType, Object id, Location location) {
+        Map<Object, Location> locations = index.computeIfAbsent(entityType, k -> new ConcurrentHashMap<>());
+        Location prior = location == null ? locations.remove(id) : locations.put(id, location);
+
+        if (prior != null) {
+            prior.segment.liveBytes -= prior.recordLength;
+        }
+        if (location != null) {
+            location.segment.liveBytes += location.recordLength;
+        }
+    }
+
+    /**
+     * Copy live records of sealed segment to active segment and delete it. Guarded by write lock.
+     *
+     * @param segment target segment
+     * @throws IOException if compaction failed
+     */
+    private void compact(Segment segment) throws IOException {
+        boolean oldest = segments.firstKey() == segment.id;
+
+        segment.scan((entityType, id, location, recordFingerprint, writtenAt) -> {
+            if (location != null) {
+                if (location.isSame(locate(entityType, id))) {
+                    append(
+                            entityType,
+                            id,
+                            segment.read(location.valueOffset, location.valueLength),
+                            writtenAt
+                    );
+                }
+            } else if (!oldest && !contains(entityType, id)) {
+                append(entityType, id, null, writtenAt);
+            }
+        });
+        segments.remove(segment.id);
+        segment.delete();
+    }
+
+    /**
+     * Replay segment records to index. Records of other schema fingerprint or older than limit remove their id.
+     *
+     * @param segment target segment
+     * @param oldest  target min write time in milliseconds of replayed record
+     * @throws IOException if read failed
+     */
+    private void replay(Segment segment, long oldest) throws IOException {
+        segment.scan((entityType, id, location, recordFingerprint, writtenAt) -> {
+            boolean valid = recordFingerprint == fingerprint(entityType) && writtenAt >= oldest;
+
+            apply(entityType, id, valid ? location : null);
+        });
+    }
+
+    /**
+     * Return memoized schema fingerprint of entity type.
+     *
+     * @param entityType target entity type
+     * @return fingerprint
+     */
+    private long fingerprint(Class<?> entityType) {
+        return fingerprints.computeIfAbsent(entityType, fingerprint::applyAsLong);
+    }
+
+    /**
+     * Open new active segment. Guarded by write lock.
+     *
+     * @throws IOException if segment can't be created
+     */
+    private void roll() throws IOException {
+        long id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        String name = String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+        Segment segment = new Segment(id, directory.resolve(name));
+
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    /**
+     * Write tagged id.
+     *
+     * @param output target output
+     * @param id     target id
+     * @throws IOException if write failed
+     */
+    private static void writeId(DataOutputStream output, Object id) throws IOException {
+        if (id instanceof Integer) {
+            output.writeByte(INT_ID);
+            output.writeInt((Integer) id);
+        } else if (id instanceof Long) {
+            output.writeByte(LONG_ID);
+            output.writeLong((Long) id);
+        } else if (id instanceof String) {
+            output.writeByte(STRING_ID);
+            output.writeUTF((String) id);
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            try (ObjectOutputStream objectOutput = new ObjectOutputStream(bytes)) {
+                objectOutput.writeObject(id);
+            }
+            output.writeByte(OBJECT_ID);
+            output.writeInt(bytes.size());
+            bytes.writeTo(output);
+        }
+    }
+
+    /**
+     * Read tagged id.
+     *
+     * @param input target input
+     * @return id
+     * @throws IOException if id is malformed
+     */
+    private static Object readId(DataInputStream input) throws IOException {
+        byte tag = input.readByte();
+
+        switch (tag) {
+            case INT_ID:
+                return input.readInt();
+            case LONG_ID:
+                return input.readLong();
+            case STRING_ID:
+                return input.readUTF();
+            case OBJECT_ID:
+                byte[] bytes = new byte[input.readInt()];
+
+                input.readFully(bytes);
+                try (ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return objectInput.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException(ex);
+                }
+            default:
+                throw new IOException("Unknown id tag " + tag);
+        }
+    }
+
+    /**
+     * Record visitor.
+     */
+    @FunctionalInterface
+    private interface RecordVisitor {
+
+        /**
+         * Visit record.
+         *
+         * @param entityType  record entity type
+         * @param id          record id
+         * @param location    record location or null if record removes id
+         * @param fingerprint record entity schema fingerprint
+         * @param writtenAt   record value write time in milliseconds
+         * @throws IOException if visitor failed
+         */
+        void visit(Class<?> entityType, Object id, Location location, long fingerprint, long writtenAt)
+                throws IOException;
+    }
+
+    /**
+     * Location of record value.
+     */
+    static final class Location {
+
+        /**
+         * Segment.
+         */
+        private final Segment segment;
+
+        /**
+         * Record offset.
+         */
+        private final long recordOffset;
+
+        /**
+         * Record length with header.
+         */
+        private final int recordLength;
+
+        /**
+         * Value offset.
+         */
+        private final long valueOffset;
+
+        /**
+         * Value length.
+         */
+        private final int valueLength;
+
+        /**
+         * Value write time in milliseconds.
+         */
+        private final long writtenAt;
+
+        /**
+         * Create a new instance.
+         *
+         * @param segment      target segment
+         * @param recordOffset target record offset
+         * @param recordLength target record length
+         * @param valueOffset  target value offset
+         * @param valueLength  target value length
+         * @param writtenAt    target value write time
+         */
+        private Location(Segment segment,
+                         long recordOffset,
+                         int recordLength,
+                         long valueOffset,
+                         int valueLength,
+                         long writtenAt) {
+            this.segment = segment;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.writtenAt = writtenAt;
+        }
+
+        /**
+         * Check if other location points to the same record.
+         *
+         * @param other target other location
+         * @return true if record is the same
+         */
+        private boolean isSame(Location other) {
+            return other != null && other.segment == segment && other.recordOffset == recordOffset;
+        }
+    }
+
+    /**
+     * Log segment file.
+     */
+    private static final class Segment {
+
+        /**
+         * Segment id, segments are replayed in id order.
+         */
+        private final long id;
+
+        /**
+         * Segment file.
+         */
+        private final Path file;
+
+        /**
+         * File channel or null if segment is deleted.
+         */
+        private FileChannel channel;
+
+        /**
+         * Mapped file or null if segment is active.
+         */
+        private MappedByteBuffer mapped;
+
+        /**
+         * Valid bytes.
+         */
+        private long size;
+
+        /**
+         * Bytes of records index points to.
+         */
+        private long liveBytes;
+
+        /**
+         * Segment has header of current format version.
+         */
+        private final boolean valid;
+
+        /**
+         * Open segment. Header is written to a new file.
+         *
+         * @param id   target segment id
+         * @param file target segment file
+         * @throws IOException if file can't be opened
+         */
+        private Segment(long id, Path file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.size = channel.size();
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                append(header);
+                this.valid = true;
+            } else if (size >= SEGMENT_HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.wrap(read(0, SEGMENT_HEADER_SIZE));
+
+                this.valid = header.getInt() == MAGIC && header.getInt() == VERSION;
+            } else {
+                this.valid = false;
+            }
+        }
+
+        /**
+         * Append record.
+         *
+         * @param record target record
+         * @return record offset
+         * @throws IOException if write failed
+         */
+        private long append(ByteBuffer record) throws IOException {
+            long offset = size;
+
+            while (record.hasRemaining()) {
+                size += channel.write(record, size);
+            }
+
+            return offset;
+        }
+
+        /**
+         * Read bytes.
+         *
+         * @param offset target offset
+         * @param length target length
+         * @return bytes
+         * @throws IOException if read failed
+         */
+        private byte[] read(long offset, int length) throws IOException {
+            byte[] bytes = new byte[length];
+
+            if (mapped != null) {
+                ByteBuffer buffer = mapped.duplicate();
+
+                buffer.position((int) offset);
+                buffer.get(bytes);
+
+                return bytes;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+
+            return bytes;
+        }
+
+        /**
+         * Visit valid records. Records after first invalid one are truncated.
+         *
+         * @param visitor target visitor
+         * @throws IOException if read failed
+         */
+        private void scan(RecordVisitor visitor) throws IOException {
+            long offset = SEGMENT_HEADER_SIZE;
+
+            while (offset + HEADER_SIZE <= size) {
+                ByteBuffer header = ByteBuffer.wrap(read(offset, HEADER_SIZE));
+                int bodyLength = header.getInt();
+                int checksum = header.getInt();
+
+                if (bodyLength < 0 || offset + HEADER_SIZE + bodyLength > size) {
+                    break;
+                }
+                byte[] body = read(offset + HEADER_SIZE, bodyLength);
+                CRC32 crc = new CRC32();
+
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+                String className = input.readUTF();
+                long recordFingerprint = input.readLong();
+                long writtenAt = input.readLong();
+                Object recordId = readId(input);
+                int valueLength = input.readInt();
+                Location location = valueLength < 0
+                        ? null
+                        : new Location(this, offset, HEADER_SIZE + bodyLength,
+                        offset + HEADER_SIZE + bodyLength - valueLength, valueLength, writtenAt);
+                Class<?> entityType = resolve(className);
+
+                if (entityType != null) {
+                    visitor.visit(entityType, recordId, location, recordFingerprint, writtenAt);
+                }
+                offset += HEADER_SIZE + bodyLength;
+            }
+            if (offset < size) {
+                size = offset;
+                channel.truncate(offset);
+            }
+        }
+
+        /**
+         * Map segment for reads. Sealed segment is not written anymore.
+         *
+         * @throws IOException if map failed
+         */
+        private void seal() throws IOException {
+            channel.force(false);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        /**
+         * Close segment channel.
+         *
+         * @throws IOException if close failed
+         */
+        private void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                mapped = null;
+            }
+        }
+
+        /**
+         * Close and delete segment file.
+         *
+         * @throws IOException if delete failed
+         */
+        private void delete() throws IOException {
+            close();
+            Files.deleteIfExists(file);
+        }
+
+        /**
+         * Resolve entity type.
+         *
+         * @param className target class name
+         * @return entity type or null if class is absent
+         */
+        private static Class<?> resolve(String className) {
+            try {
+                return Class.forName(className, false, LogSegmentStore.class.getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cache for entities with int or long primary key. Entries are stored in open addressing table with primitive
+ * long keys and linear probing, so {@link #get(Class, long)} neither boxes id nor calls equals and hash code.
+ * Reads are optimistic and don't block, writes hold table write lock. When table is full the entry found by
+ * CLOCK hand which was not read since last sweep is evicted.
+ * <p>
+ * Only {@link Long}, {@link Integer}, {@link Short} and {@link Byte} ids are supported, ids of same value are
+ * equal regardless of their box type.
+ *
+ * @author Said Gadjiev
+ */
+public class LongObjectCache implements BulkObjectCache {
+
+    /**
+     * Default cache size.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 16;
+
+    /**
+     * Initial table capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Max table load numerator, load factor is 3/4.
+     */
+    private static final int LOAD_NUMERATOR = 3;
+
+    /**
+     * Max table load denominator.
+     */
+    private static final int LOAD_DENOMINATOR = 4;
+
+    /**
+     * Fibonacci hashing multiplier.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Cached classes map.
+     */
+    private final Map<Class<?>, LongTable> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Max cache size per class.
+     */
+    private final int maxSize;
+
+    /**
+     * Evicted by size entries count.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Evicted by size entries listener.
+     */
+    private volatile EvictionListener evictionListener = (entityType, id) -> { };
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxSize target max size
+     */
+    public LongObjectCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Create a new instance with default max size.
+     */
+    public LongObjectCache() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    @Override
+    public void registerClass(Class<?> tClass) {
+        cache.computeIfAbsent(tClass, LongTable::new);
+    }
+
+    @Override
+    public void put(Class<?> tClass, Object id, Object data) {
+        LongTable table = cache.get(tClass);
+
+        if (table != null) {
+            table.put(toKey(id), data);
+        }
+    }
+
+    @Override
+    public Object get(Class<?> tClass, Object id) {
+        LongTable table = cache.get(tClass);
+
+        if (table == null || !isIntegral(id)) {
+            return null;
+        }
+
+        return table.get(((Number) id).longValue());
+    }
+
+    /**
+     * Retrieve cached object by primitive id.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @return object or null
+     */
+    public Object get(Class<?> tClass, long id) {
+        LongTable table = cache.get(tClass);
+
+        if (table == null) {
+            return null;
+        }
+
+        return table.get(id);
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Class<?> tClass, Collection<?> ids) {
+        LongTable table = cache.get(tClass);
+        Map<Object, Object> result = new HashMap<>();
+
+        if (table == null) {
+            return result;
+        }
+        for (Object id : ids) {
+            Object object = isIntegral(id) ? table.get(((Number) id).longValue()) : null;
+
+            if (object != null) {
+                result.put(id, object);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Collection<Object> getAll(Class<?> tClass) {
+        LongTable table = cache.get(tClass);
+
+        if (table == null) {
+            return null;
+        }
+
+        return table.values();
+    }
+
+    @Override
+    public boolean contains(Class<?> tClass, Object id) {
+        return get(tClass, id) != null;
+    }
+
+    @Override
+    public void invalidate(Class<?> tClass, Object id) {
+        LongTable table = cache.get(tClass);
+
+        if (table != null && isIntegral(id)) {
+            table.remove(((Number) id).longValue());
+        }
+    }
+
+    @Override
+    public void invalidateAll(Class<?> tClass) {
+        LongTable table = cache.get(tClass);
+
+        if (table != null) {
+            table.clear();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.forEach((key, value) -> value.clear());
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public long size(Class<?> tClass) {
+        LongTable table = cache.get(tClass);
+
+        if (table == null) {
+            return 0;
+        }
+
+        return table.size();
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Return evicted by size entries count.
+     *
+     * @return evicted entries count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Return true if id is integral box.
+     *
+     * @param id target id
+     * @return true if id is long, int, short or byte
+     */
+    private static boolean isIntegral(Object id) {
+        return id instanceof Long || id instanceof Integer || id instanceof Short || id instanceof Byte;
+    }
+
+    /**
+     * Convert id to table key.
+     *
+     * @param id target id
+     * @return key
+     */
+    private static long toKey(Object id) {
+        if (!isIntegral(id)) {
+            throw new IllegalArgumentException("Id " + id + " is not integral");
+        }
+
+        return ((Number) id).longValue();
+    }
+
+    /**
+     * Open addressing table of one entity type.
+     */
+    private final class LongTable {
+
+        /**
+         * Entity type.
+         */
+        private final Class<?> entityType;
+
+        /**
+         * Table lock.
+         */
+        private final StampedLock lock = new StampedLock();
+
+        /**
+         * Slot keys.
+         */
+        private long[] keys;
+
+        /**
+         * Slot values, null marks free slot.
+         */
+        private Object[] values;
+
+        /**
+         * Slot was read since CLOCK hand passed it.
+         */
+        private boolean[] referenced;
+
+        /**
+         * Entries count.
+         */
+        private int size;
+
+        /**
+         * CLOCK hand slot.
+         */
+        private int hand;
+
+        /**
+         * Create a new instance.
+         *
+         * @param entityType target entity type
+         */
+        private LongTable(Class<?> entityType) {
+            this.entityType = entityType;
+            allocate(INITIAL_CAPACITY);
+        }
+
+        /**
+         * Retrieve value. Optimistic read is retried under read lock if a write interleaved.
+         *
+         * @param key target key
+         * @return value or null
+         */
+        private Object get(long key) {
+            long stamp = lock.tryOptimisticRead();
+
+            if (stamp != 0) {
+                long[] currentKeys = keys;
+                Object[] currentValues = values;
+                boolean[] currentReferenced = referenced;
+
+                if (currentKeys.length == currentValues.length && currentKeys.length == currentReferenced.length) {
+                    int slot = find(currentKeys, currentValues, key);
+                    Object value = slot < 0 ? null : currentValues[slot];
+
+                    if (lock.validate(stamp)) {
+                        if (value != null) {
+                            currentReferenced[slot] = true;
+                        }
+
+                        return value;
+                    }
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                int slot = find(keys, values, key);
+
+                if (slot < 0) {
+                    return null;
+                }
+                referenced[slot] = true;
+
+                return values[slot];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Put value.
+         *
+         * @param key   target key
+         * @param value target value
+         */
+        private void put(long key, Object value) {
+            long stamp = lock.writeLock();
+
+            try {
+                int slot = find(keys, values, key);
+
+                if (slot >= 0) {
+                    values[slot] = value;
+
+                    return;
+                }
+                if (size >= maxSize) {
+                    evict();
+                } else if ((size + 1) * LOAD_DENOMINATOR > keys.length * LOAD_NUMERATOR) {
+                    resize();
+                }
+                insert(key, value);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Remove value.
+         *
+         * @param key target key
+         */
+        private void remove(long key) {
+            long stamp = lock.writeLock();
+
+            try {
+                int slot = find(keys, values, key);
+
+                if (slot >= 0) {
+                    delete(slot);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Return values copy.
+         *
+         * @return values
+         */
+        private List<Object> values() {
+            long stamp = lock.readLock();
+
+            try {
+                List<Object> result = new ArrayList<>(size);
+
+                for (Object value : values) {
+                    if (value != null) {
+                        result.add(value);
+                    }
+                }
+
+                return result;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Return entries count.
+         *
+         * @return entries count
+         */
+        private int size() {
+            long stamp = lock.readLock();
+
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Remove all values.
+         */
+        private void clear() {
+            long stamp = lock.writeLock();
+
+            try {
+                allocate(INITIAL_CAPACITY);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Find key slot. Probes are bounded by capacity, so inconsistent optimistic read terminates.
+         *
+         * @param tableKeys   target keys
+         * @param tableValues target values
+         * @param key         target key
+         * @return slot or -1
+         */
+        private int find(long[] tableKeys, Object[] tableValues, long key) {
+            int mask = tableKeys.length - 1;
+            int slot = slot(key, mask);
+            int probes = 0;
+
+            while (probes < tableKeys.length && tableValues[slot] != null) {
+                if (tableKeys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+                ++probes;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Insert absent key to free slot.
+         *
+         * @param key   target key
+         * @param value target value
+         * @return slot
+         */
+        private int insert(long key, Object value) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            referenced[slot] = false;
+            ++size;
+
+            return slot;
+        }
+
+        /**
+         * Free slot and shift back following entries of probe sequence, so lookups need no tombstones.
+         *
+         * @param slot target slot
+         */
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            int free = slot;
+            int next = (free + 1) & mask;
+
+            while (values[next] != null) {
+                int home = slot(keys[next], mask);
+
+                //Запись можно сдвинуть, если свободный слот лежит между её домашним слотом и текущим
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    keys[free] = keys[next];
+                    values[free] = values[next];
+                    referenced[free] = referenced[next];
+                    free = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[free] = null;
+            referenced[free] = false;
+            --size;
+        }
+
+        /**
+         * Evict entry which was not read since CLOCK hand passed it.
+         */
+        private void evict() {
+            int mask = keys.length - 1;
+
+            while (true) {
+                int slot = hand;
+
+                hand = (hand + 1) & mask;
+                if (values[slot] != null) {
+                    if (referenced[slot]) {
+                        referenced[slot] = false;
+                    } else {
+                        long key = keys[slot];
+
+                        delete(slot);
+                        evictionCount.increment();
+                        evictionListener.onEviction(entityType, key);
+
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Double table capacity.
+         */
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            boolean[] oldReferenced = referenced;
+            int i = 0;
+
+            allocate(oldKeys.length * 2);
+            while (i < oldKeys.length) {
+                if (oldValues[i] != null) {
+                    referenced[insert(oldKeys[i], oldValues[i])] = oldReferenced[i];
+                }
+                ++i;
+            }
+        }
+
+        /**
+         * Allocate empty table.
+         *
+         * @param capacity target power of two capacity
+         */
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            referenced = new boolean[capacity];
+            size = 0;
+            hand = 0;
+        }
+
+        /**
+         * Return home slot of key.
+         *
+         * @param key  target key
+         * @param mask target table mask
+         * @return slot
+         */
+        private int slot(long key, int mask) {
+            long hash = key * HASH_MULTIPLIER;
+
+            return (int) (hash ^ (hash >>> Integer.SIZE)) & mask;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In process {@link InvalidationTransport}. Members created by {@link #join()} share one channel, a message sent
+ * by a member is delivered to the others in sender thread. Useful for several cache layers in one JVM and tests.
+ *
+ * @author Said Gadjiev
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+    /**
+     * Channel members.
+     */
+    private final List<LoopbackTransport> members;
+
+    /**
+     * Messages receiver. Null until started.
+     */
+    private volatile Consumer<byte[]> receiver;
+
+    /**
+     * Create a new instance on a new channel.
+     */
+    public LoopbackTransport() {
+        this(new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * Create a new instance on channel.
+     *
+     * @param members target channel members
+     */
+    private LoopbackTransport(List<LoopbackTransport> members) {
+        this.members = members;
+        members.add(this);
+    }
+
+    /**
+     * Create a new member on the same channel.
+     *
+     * @return new member
+     */
+    public LoopbackTransport join() {
+        return new LoopbackTransport(members);
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void send(byte[] message) {
+        for (LoopbackTransport member : members) {
+            Consumer<byte[]> memberReceiver = member.receiver;
+
+            if (member != this && memberReceiver != null) {
+                memberReceiver.accept(message.clone());
+            }
+        }
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void close() {
+        members.remove(this);
+        receiver = null;
+    }
+}
@@ -0,0 +1,348 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memory budget shared by all {@link CacheLayer} sub caches. Entries are weighed by {@link Weigher} and kept
+ * in one access ordered list, when total weight exceeds max weight least recently used entries of any
+ * sub cache are evicted. Reads are recorded to striped lossy buffers and replayed under the budget lock before
+ * entries are evicted, so they never block and hot entries keep their recency under contention.
+ *
+ * @author Said Gadjiev
+ */
+public class MemoryBudget {
+
+    /**
+     * Entries map initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Entries map load factor.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Max total weight.
+     */
+    private final long maxWeight;
+
+    /**
+     * Entries weigher.
+     */
+    private final Weigher weigher;
+
+    /**
+     * Budget lock.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Read entry keys not yet applied to access order.
+     */
+    private final ReadBuffer<EntryKey> readBuffer = new ReadBuffer<>();
+
+    /**
+     * Entries in access order. Guarded by lock.
+     */
+    private final LinkedHashMap<EntryKey, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /**
+     * Entry keys by entity type and sub cache. Guarded by lock.
+     */
+    private final Map<Class<?>, Map<SubCache, Set<EntryKey>>> index = new HashMap<>();
+
+    /**
+     * Evicted by budget entries count.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Current total weight. Guarded by lock.
+     */
+    private long weight;
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxWeight target max total weight
+     * @param weigher   target entries weigher
+     */
+    public MemoryBudget(long maxWeight, Weigher weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Max weight must be positive");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Create a new instance with {@link EstimatingWeigher}.
+     *
+     * @param maxBytes target max estimated bytes
+     */
+    public MemoryBudget(long maxBytes) {
+        this(maxBytes, new EstimatingWeigher());
+    }
+
+    /**
+     * Return max total weight.
+     *
+     * @return max total weight
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Return current total weight.
+     *
+     * @return current total weight
+     */
+    public long getWeight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return evicted by budget entries count.
+     *
+     * @return evicted entries count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Account written entry and evict least recently used entries over budget.
+     * Evict actions are run after the budget lock is released, so entry may be written again meanwhile and
+     * actions must remove entry only if its value is not replaced.
+     *
+     * @param key         target entry key
+     * @param value       target entry value
+     * @param evictAction target action which removes entry from its sub cache
+     */
+    void onWrite(EntryKey key, Object value, Runnable evictAction) {
+        long entryWeight = weigher.weigh(key.getSubCache(), key.getEntityType(), key.getKey(), value);
+        List<Runnable> evicted = new ArrayList<>();
+
+        lock.lock();
+        try {
+            drainReads();
+
+            Entry prior = entries.put(key, new Entry(entryWeight, evictAction));
+
+            if (prior == null) {
+                index.computeIfAbsent(key.getEntityType(), k -> new EnumMap<>(SubCache.class))
+                        .computeIfAbsent(key.getSubCache(), k -> new HashSet<>())
+                        .add(key);
+            } else {
+                weight -= prior.weight;
+            }
+            weight += entryWeight;
+
+            Iterator<Map.Entry<EntryKey, Entry>> iterator = entries.entrySet().iterator();
+
+            while (weight > maxWeight && iterator.hasNext()) {
+                Map.Entry<EntryKey, Entry> eldest = iterator.next();
+
+                iterator.remove();
+                unindex(eldest.getKey());
+                weight -= eldest.getValue().weight;
+                evicted.add(eldest.getValue().evictAction);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Runnable action : evicted) {
+            evictionCount.increment();
+            action.run();
+        }
+    }
+
+    /**
+     * Record entry access. Full read buffer is drained if budget lock is free, otherwise its holder drains it.
+     *
+     * @param key target entry key
+     */
+    void onRead(EntryKey key) {
+        if (!readBuffer.offer(key) && lock.tryLock()) {
+            try {
+                drainReads();
+                entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Forget entry removed from its sub cache.
+     *
+     * @param key target entry key
+     */
+    void remove(EntryKey key) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(key);
+
+            if (entry != null) {
+                unindex(key);
+                weight -= entry.weight;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget entries of entity type removed from sub cache.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     */
+    void removeAll(SubCache subCache, Class<?> entityType) {
+        lock.lock();
+        try {
+            Map<SubCache, Set<EntryKey>> subCaches = index.get(entityType);
+
+            if (subCaches != null) {
+                removeEntries(subCaches.remove(subCache));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget entries removed from sub cache.
+     *
+     * @param subCache target sub cache
+     */
+    void removeAll(SubCache subCache) {
+        lock.lock();
+        try {
+            for (Map<SubCache, Set<EntryKey>> subCaches : index.values()) {
+                removeEntries(subCaches.remove(subCache));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget all entries of entity type.
+     *
+     * @param entityType target entity type
+     */
+    void removeAll(Class<?> entityType) {
+        lock.lock();
+        try {
+            Map<SubCache, Set<EntryKey>> subCaches = index.remove(entityType);
+
+            if (subCaches != null) {
+                subCaches.values().forEach(this::removeEntries);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget all entries.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            index.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply buffered reads to access order. Guarded by lock.
+     */
+    private void drainReads() {
+        readBuffer.drainTo(entries::get);
+    }
+
+    /**
+     * Remove entries without touching index. Guarded by lock.
+     *
+     * @param keys target entry keys, may be null
+     */
+    private void removeEntries(Set<EntryKey> keys) {
+        if (keys == null) {
+            return;
+        }
+        for (EntryKey key : keys) {
+            Entry entry = entries.remove(key);
+
+            if (entry != null) {
+                weight -= entry.weight;
+            }
+        }
+    }
+
+    /**
+     * Remove key from index. Guarded by lock.
+     *
+     * @param key target entry key
+     */
+    private void unindex(EntryKey key) {
+        Map<SubCache, Set<EntryKey>> subCaches = index.get(key.getEntityType());
+
+        if (subCaches == null) {
+            return;
+        }
+        Set<EntryKey> keys = subCaches.get(key.getSubCache());
+
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Budget entry.
+     */
+    private static final class Entry {
+
+        /**
+         * Entry weight.
+         */
+        private final long weight;
+
+        /**
+         * Evict action.
+         */
+        private final Runnable evictAction;
+
+        /**
+         * Create a new instance.
+         *
+         * @param weight      target weight
+         * @param evictAction target evict action
+         */
+        private Entry(long weight, Runnable evictAction) {
+            this.weight = weight;
+            this.evictAction = evictAction;
+        }
+    }
+}
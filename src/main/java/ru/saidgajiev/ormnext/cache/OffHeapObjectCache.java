@@ -0,0 +1,751 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.codec.EntityCodec;
+import ru.saidgajiev.ormnext.cache.codec.SerializableCodec;
+import ru.saidgajiev.ormnext.cache.commons.FrequencySketch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cache which keeps entities serialized by {@link EntityCodec} in direct memory, so cached entities do not
+ * occupy heap. Memory is allocated in slabs which are split into chunks of power of two size classes, each entry
+ * takes the smallest chunk it fits. When memory is exhausted a chunk of the same size class is reclaimed by clock
+ * eviction. A size class without chunks takes over the least recently used slab of another size class, evicting
+ * its entries, so a shift of entity sizes does not make puts fail. Only the id index stays on heap. Every get
+ * decodes a fresh copy of the entity.
+ * Reads copy bytes under optimistic {@link StampedLock} read and fall back to a read lock if a write interleaved.
+ *
+ * @author Said Gadjiev
+ */
+public class OffHeapObjectCache implements BulkObjectCache {
+
+    /**
+     * Default capacity, 64 MiB.
+     */
+    private static final long DEFAULT_CAPACITY = 1L << 26;
+
+    /**
+     * Slab size, 1 MiB.
+     */
+    private static final int SLAB_SIZE = 1 << 20;
+
+    /**
+     * Smallest chunk size.
+     */
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    /**
+     * Chunk header with encoded length.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    /**
+     * Id index by entity type.
+     */
+    private final Map<Class<?>, Map<Object, Entry>> index = new ConcurrentHashMap<>();
+
+    /**
+     * Size classes from {@link #MIN_CHUNK_SIZE} to {@link #SLAB_SIZE}. Guarded by lock.
+     */
+    private final SizeClass[] sizeClasses;
+
+    /**
+     * Max slabs count.
+     */
+    private final int maxSlabs;
+
+    /**
+     * Entity codec.
+     */
+    private final EntityCodec codec;
+
+    /**
+     * Memory lock. Writes hold write lock, reads validate optimistic stamp.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Evicted entries count.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Puts which were not cached, because entry is bigger than slab or no chunk could be allocated.
+     */
+    private final LongAdder rejectedPutCount = new LongAdder();
+
+    /**
+     * Slabs moved between size classes.
+     */
+    private final LongAdder slabReassignmentCount = new LongAdder();
+
+    /**
+     * Evicted entries listener.
+     */
+    private volatile EvictionListener evictionListener = (entityType, id) -> { };
+
+    /**
+     * Allocated slabs count. Guarded by lock.
+     */
+    private int slabCount;
+
+    /**
+     * Create a new instance.
+     *
+     * @param capacity target max direct memory in bytes
+     * @param codec    target entity codec
+     */
+    public OffHeapObjectCache(long capacity, EntityCodec codec) {
+        if (capacity < SLAB_SIZE) {
+            throw new IllegalArgumentException("Capacity must be at least " + SLAB_SIZE + " bytes");
+        }
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, capacity / SLAB_SIZE);
+        this.codec = codec;
+        this.sizeClasses = new SizeClass[Integer.numberOfTrailingZeros(SLAB_SIZE / MIN_CHUNK_SIZE) + 1];
+        resetSizeClasses();
+    }
+
+    /**
+     * Create a new instance with default capacity and {@link SerializableCodec}.
+     */
+    public OffHeapObjectCache() {
+        this(DEFAULT_CAPACITY, new SerializableCodec());
+    }
+
+    /**
+     * Return allocated direct memory in bytes.
+     *
+     * @return allocated bytes
+     */
+    public long getAllocatedBytes() {
+        long stamp = lock.readLock();
+
+        try {
+            return (long) slabCount * SLAB_SIZE;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Return evicted entries count.
+     *
+     * @return evicted entries count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Return count of puts which were not cached.
+     *
+     * @return rejected puts count
+     */
+    public long getRejectedPutCount() {
+        return rejectedPutCount.sum();
+    }
+
+    /**
+     * Return count of slabs which were moved to another size class.
+     *
+     * @return slab reassignments count
+     */
+    public long getSlabReassignmentCount() {
+        return slabReassignmentCount.sum();
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Invalidate object unconditionally. Cache keeps serialized copies, so cached object can't be compared with
+     * evicted one.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @param data   target evicted object, ignored
+     */
+    @Override
+    public void invalidate(Class<?> tClass, Object id, Object data) {
+        invalidate(tClass, id);
+    }
+
+    @Override
+    public void registerClass(Class<?> tClass) {
+        index.computeIfAbsent(tClass, k -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void put(Class<?> tClass, Object id, Object data) {
+        Map<Object, Entry> entries = index.get(tClass);
+
+        if (entries == null) {
+            return;
+        }
+        byte[] bytes = codec.encode(data);
+        long stamp = lock.writeLock();
+
+        try {
+            Entry prior = entries.remove(id);
+
+            if (prior != null) {
+                prior.sizeClass.release(prior);
+            }
+            if (index.get(tClass) != entries) {
+                return;
+            }
+            if (bytes.length > SLAB_SIZE - HEADER_SIZE) {
+                rejectedPutCount.increment();
+
+                return;
+            }
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, FrequencySketch.ceilingPowerOfTwo(bytes.length + HEADER_SIZE));
+            SizeClass sizeClass = sizeClasses[Integer.numberOfTrailingZeros(chunkSize / MIN_CHUNK_SIZE)];
+            Entry entry = sizeClass.allocate(tClass, entries, id);
+
+            if (entry == null) {
+                rejectedPutCount.increment();
+
+                return;
+            }
+            ByteBuffer buffer = entry.slab.buffer.duplicate();
+
+            buffer.putInt(entry.offset, bytes.length);
+            buffer.position(entry.offset + HEADER_SIZE);
+            buffer.put(bytes);
+            entries.put(id, entry);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Object get(Class<?> tClass, Object id) {
+        Map<Object, Entry> entries = index.get(tClass);
+        Entry entry = entries == null ? null : entries.get(id);
+
+        if (entry == null) {
+            return null;
+        }
+        byte[] bytes = read(entry);
+
+        if (bytes == null) {
+            return null;
+        }
+        entry.referenced = true;
+        entry.slab.lastAccess = System.nanoTime();
+
+        return codec.decode(tClass, bytes);
+    }
+
+    @Override
+    public Collection<Object> getAll(Class<?> tClass) {
+        Map<Object, Entry> entries = index.get(tClass);
+        List<Object> result = new ArrayList<>();
+
+        if (entries == null) {
+            return result;
+        }
+        for (Entry entry : entries.values()) {
+            byte[] bytes = read(entry);
+
+            if (bytes != null) {
+                result.add(codec.decode(tClass, bytes));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean contains(Class<?> tClass, Object id) {
+        Map<Object, Entry> entries = index.get(tClass);
+
+        return entries != null && entries.containsKey(id);
+    }
+
+    @Override
+    public void invalidate(Class<?> tClass, Object id) {
+        Map<Object, Entry> entries = index.get(tClass);
+
+        if (entries == null) {
+            return;
+        }
+        long stamp = lock.writeLock();
+
+        try {
+            Entry entry = entries.remove(id);
+
+            if (entry != null) {
+                entry.sizeClass.release(entry);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void invalidateAll(Class<?> tClass) {
+        Map<Object, Entry> entries = index.get(tClass);
+
+        if (entries == null) {
+            return;
+        }
+        long stamp = lock.writeLock();
+
+        try {
+            releaseAll(entries);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        long stamp = lock.writeLock();
+
+        try {
+            index.values().forEach(this::releaseAll);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+
+        try {
+            for (Map<Object, Entry> entries : index.values()) {
+                entries.values().forEach(entry -> entry.removed = true);
+            }
+            index.clear();
+            resetSizeClasses();
+            slabCount = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long size(Class<?> tClass) {
+        Map<Object, Entry> entries = index.get(tClass);
+
+        return entries == null ? 0 : entries.size();
+    }
+
+    /**
+     * Create empty size classes. Guarded by lock.
+     */
+    private void resetSizeClasses() {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(MIN_CHUNK_SIZE << i);
+        }
+    }
+
+    /**
+     * Take least recently used slab of other size classes. Size classes with more than one slab are preferred.
+     * Guarded by lock.
+     *
+     * @param requester target size class which needs a slab
+     * @return slab with evicted entries or null if other size classes have no slabs
+     */
+    private Slab reclaimSlab(SizeClass requester) {
+        SizeClass donor = null;
+        int donorSlab = -1;
+        boolean donorShared = false;
+
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass == requester || sizeClass.liveSlabs == 0) {
+                continue;
+            }
+            boolean shared = sizeClass.liveSlabs > 1;
+
+            if (donorShared && !shared) {
+                continue;
+            }
+            for (int i = 0; i < sizeClass.slabs.size(); i++) {
+                Slab slab = sizeClass.slabs.get(i);
+
+                if (slab == null) {
+                    continue;
+                }
+                if (donor == null
+                        || shared && !donorShared
+                        || slab.lastAccess < donor.slabs.get(donorSlab).lastAccess) {
+                    donor = sizeClass;
+                    donorSlab = i;
+                    donorShared = shared;
+                }
+            }
+        }
+        if (donor == null) {
+            return null;
+        }
+        slabReassignmentCount.increment();
+
+        return donor.takeSlab(donorSlab);
+    }
+
+    /**
+     * Release all entries of entity type. Guarded by lock.
+     *
+     * @param entries target entity entries
+     */
+    private void releaseAll(Map<Object, Entry> entries) {
+        for (Entry entry : entries.values()) {
+            entry.sizeClass.release(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Copy entry bytes. Optimistic read is validated, on conflict bytes are copied under read lock.
+     *
+     * @param entry target entry
+     * @return bytes or null if entry was removed
+     */
+    private byte[] read(Entry entry) {
+        long stamp = lock.tryOptimisticRead();
+
+        if (stamp != 0) {
+            byte[] bytes = copy(entry);
+
+            if (lock.validate(stamp) && bytes != null) {
+                return entry.removed ? null : bytes;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return entry.removed ? null : copy(entry);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Copy entry bytes without lock. Result is garbage if chunk was reused concurrently.
+     *
+     * @param entry target entry
+     * @return bytes or null if stored length is out of chunk
+     */
+    private static byte[] copy(Entry entry) {
+        ByteBuffer buffer = entry.slab.buffer.duplicate();
+        int length = buffer.getInt(entry.offset);
+
+        if (length < 0 || length > entry.sizeClass.chunkSize - HEADER_SIZE) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+
+        buffer.position(entry.offset + HEADER_SIZE);
+        buffer.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Chunks of one size. Guarded by cache lock.
+     */
+    private final class SizeClass {
+
+        /**
+         * Chunk size.
+         */
+        private final int chunkSize;
+
+        /**
+         * Chunks count in slab.
+         */
+        private final int chunksPerSlab;
+
+        /**
+         * Slabs of this size class, null for slab taken by another size class.
+         */
+        private final List<Slab> slabs = new ArrayList<>();
+
+        /**
+         * Chunk owners by chunk number, null for free chunk.
+         */
+        private final List<Entry> owners = new ArrayList<>();
+
+        /**
+         * Free chunk numbers.
+         */
+        private final Deque<Integer> free = new ArrayDeque<>();
+
+        /**
+         * Clock hand.
+         */
+        private int hand;
+
+        /**
+         * Slabs count, not counting taken ones.
+         */
+        private int liveSlabs;
+
+        /**
+         * Create a new instance.
+         *
+         * @param chunkSize target chunk size
+         */
+        private SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+            this.chunksPerSlab = SLAB_SIZE / chunkSize;
+        }
+
+        /**
+         * Allocate chunk for entry. Free chunk is taken first, then new slab, then clock victim, then slab of
+         * another size class.
+         *
+         * @param entityType target entity type
+         * @param entries    target owner entries
+         * @param id         target entry id
+         * @return entry or null if memory is exhausted and no size class has chunks
+         */
+        private Entry allocate(Class<?> entityType, Map<Object, Entry> entries, Object id) {
+            Integer chunk = free.poll();
+
+            if (chunk == null && slabCount < maxSlabs) {
+                grow(new Slab(ByteBuffer.allocateDirect(SLAB_SIZE)));
+                ++slabCount;
+                chunk = free.poll();
+            }
+            if (chunk == null) {
+                chunk = evict();
+            }
+            if (chunk == null) {
+                Slab slab = reclaimSlab(this);
+
+                if (slab != null) {
+                    grow(slab);
+                    chunk = free.poll();
+                }
+            }
+            if (chunk == null) {
+                return null;
+            }
+            Slab slab = slabs.get(chunk / chunksPerSlab);
+
+            slab.lastAccess = System.nanoTime();
+            Entry entry = new Entry(
+                    entityType,
+                    entries,
+                    id,
+                    this,
+                    chunk,
+                    slab,
+                    (chunk % chunksPerSlab) * chunkSize
+            );
+
+            owners.set(chunk, entry);
+
+            return entry;
+        }
+
+        /**
+         * Return entry chunk to free list.
+         *
+         * @param entry target entry
+         */
+        private void release(Entry entry) {
+            entry.removed = true;
+            owners.set(entry.chunk, null);
+            free.push(entry.chunk);
+        }
+
+        /**
+         * Add slab and split it to free chunks. Slot of taken slab is reused first.
+         *
+         * @param slab target slab
+         */
+        private void grow(Slab slab) {
+            int slot = slabs.indexOf(null);
+
+            if (slot < 0) {
+                slot = slabs.size();
+                slabs.add(slab);
+                for (int i = 0; i < chunksPerSlab; i++) {
+                    owners.add(null);
+                }
+            } else {
+                slabs.set(slot, slab);
+            }
+            ++liveSlabs;
+            for (int i = 0; i < chunksPerSlab; i++) {
+                free.add(slot * chunksPerSlab + i);
+            }
+        }
+
+        /**
+         * Evict entries of slab and give it away.
+         *
+         * @param slot target slab number
+         * @return slab
+         */
+        private Slab takeSlab(int slot) {
+            int first = slot * chunksPerSlab;
+
+            for (int chunk = first; chunk < first + chunksPerSlab; chunk++) {
+                Entry entry = owners.get(chunk);
+
+                if (entry != null) {
+                    evictEntry(entry);
+                }
+            }
+            free.removeIf(chunk -> chunk / chunksPerSlab == slot);
+            --liveSlabs;
+
+            return slabs.set(slot, null);
+        }
+
+        /**
+         * Remove entry from index and report its eviction.
+         *
+         * @param entry target entry
+         */
+        private void evictEntry(Entry entry) {
+            entry.entries.remove(entry.id, entry);
+            entry.removed = true;
+            owners.set(entry.chunk, null);
+            evictionCount.increment();
+            evictionListener.onEviction(entry.entityType, entry.id);
+        }
+
+        /**
+         * Find clock victim and take its chunk. Recently read entries get a second chance.
+         *
+         * @return chunk number or null if size class has no chunks
+         */
+        private Integer evict() {
+            int size = owners.size();
+
+            for (int i = 0; i < 2 * size; i++) {
+                Entry entry = owners.get(hand);
+
+                hand = (hand + 1) % size;
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    continue;
+                }
+                evictEntry(entry);
+
+                return entry.chunk;
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Slab of direct memory.
+     */
+    private static final class Slab {
+
+        /**
+         * Slab memory.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Nano time of last allocation or read in slab. Races are benign.
+         */
+        private volatile long lastAccess;
+
+        /**
+         * Create a new instance.
+         *
+         * @param buffer target slab memory
+         */
+        private Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Cached entry location.
+     */
+    private static final class Entry {
+
+        /**
+         * Entity type.
+         */
+        private final Class<?> entityType;
+
+        /**
+         * Owner entries.
+         */
+        private final Map<Object, Entry> entries;
+
+        /**
+         * Entity id.
+         */
+        private final Object id;
+
+        /**
+         * Size class.
+         */
+        private final SizeClass sizeClass;
+
+        /**
+         * Chunk number in size class.
+         */
+        private final int chunk;
+
+        /**
+         * Slab.
+         */
+        private final Slab slab;
+
+        /**
+         * Chunk offset in slab.
+         */
+        private final int offset;
+
+        /**
+         * Entry was read since clock hand passed it.
+         */
+        private volatile boolean referenced;
+
+        /**
+         * Entry chunk was released.
+         */
+        private volatile boolean removed;
+
+        /**
+         * Create a new instance.
+         *
+         * @param entityType target entity type
+         * @param entries    target owner entries
+         * @param id         target entity id
+         * @param sizeClass  target size class
+         * @param chunk      target chunk number
+         * @param slab       target slab
+         * @param offset     target chunk offset
+         */
+        private Entry(Class<?> entityType, Map<Object, Entry> entries, Object id, SizeClass sizeClass, int chunk,
+                      Slab slab, int offset) {
+            this.entityType = entityType;
+            this.entries = entries;
+            this.id = id;
+            this.sizeClass = sizeClass;
+            this.chunk = chunk;
+            this.slab = slab;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.commons.QueryKey;
+import ru.saidgajiev.ormnext.cache.commons.QueryPredicate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Dependency index of cached queries. It records where clause predicate of each cached query key, so
+ * a written row invalidates only queries it may belong to. Queries with equality condition are indexed
+ * by its column and value, the rest are checked on each write. Query keys of list results are also indexed
+ * by result ids, so an update finds lists which contain the row without scanning them. Predicates are parsed
+ * once per sql template.
+ *
+ * @author Said Gadjiev
+ */
+class QueryDependencies {
+
+    /**
+     * Max memoized predicates per entity type.
+     */
+    private static final int MAX_PREDICATES = 1024;
+
+    /**
+     * Predicates map initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Predicates map load factor.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Dependencies by entity type.
+     */
+    private final Map<Class<?>, Region> regions = new ConcurrentHashMap<>();
+
+    /**
+     * Tells if entity table strings have binary collation.
+     */
+    private final Predicate<Class<?>> binaryCollation;
+
+    /**
+     * Create a new instance.
+     *
+     * @param binaryCollation target binary collation flag by entity type
+     */
+    QueryDependencies(Predicate<Class<?>> binaryCollation) {
+        this.binaryCollation = binaryCollation;
+    }
+
+    /**
+     * Record query key dependencies.
+     *
+     * @param queryKey target query key
+     */
+    void add(QueryKey queryKey) {
+        add(queryKey, null);
+    }
+
+    /**
+     * Record query key dependencies and result ids.
+     *
+     * @param queryKey target query key
+     * @param ids      target result ids or null
+     */
+    void add(QueryKey queryKey, Collection<?> ids) {
+        regions.computeIfAbsent(queryKey.getEntityType(), k -> new Region(binaryCollation.test(k)))
+                .add(queryKey, ids);
+    }
+
+    /**
+     * Forget query key dependencies.
+     *
+     * @param queryKey target query key
+     */
+    void remove(QueryKey queryKey) {
+        Region region = regions.get(queryKey.getEntityType());
+
+        if (region != null) {
+            region.remove(queryKey);
+        }
+    }
+
+    /**
+     * Forget query keys of entity type.
+     *
+     * @param entityType target entity type
+     */
+    void removeAll(Class<?> entityType) {
+        regions.remove(entityType);
+    }
+
+    /**
+     * Forget all query keys.
+     */
+    void clear() {
+        regions.clear();
+    }
+
+    /**
+     * Find and forget query keys whose result row may belong to.
+     *
+     * @param entityType target entity type
+     * @param row        target row values by lower case column name
+     * @return affected query keys
+     */
+    Collection<QueryKey> removeAffected(Class<?> entityType, Map<String, Object> row) {
+        Region region = regions.get(entityType);
+
+        if (region == null) {
+            return new ArrayList<>();
+        }
+
+        return region.removeAffected(row);
+    }
+
+    /**
+     * Find and forget query keys whose result contains id.
+     *
+     * @param entityType target entity type
+     * @param id         target row id
+     * @return query keys
+     */
+    Collection<QueryKey> removeContaining(Class<?> entityType, Object id) {
+        Region region = regions.get(entityType);
+
+        if (region == null) {
+            return new ArrayList<>();
+        }
+
+        return region.removeContaining(id);
+    }
+
+    /**
+     * Check if value may be indexed. Equals of these types agrees with their comparison.
+     *
+     * @param value target normalized value
+     * @return true if value may be indexed
+     */
+    private static boolean isIndexable(Object value) {
+        return value instanceof BigDecimal || value instanceof String || value instanceof Boolean;
+    }
+
+    /**
+     * Query key dependency.
+     */
+    private static final class Dependency {
+
+        /**
+         * Query where predicate.
+         */
+        private final QueryPredicate predicate;
+
+        /**
+         * Indexed column or null.
+         */
+        private final String column;
+
+        /**
+         * Indexed normalized value or null.
+         */
+        private final Object value;
+
+        /**
+         * Result ids or null.
+         */
+        private final Collection<?> ids;
+
+        /**
+         * Create a new instance.
+         *
+         * @param predicate target predicate
+         * @param column    target indexed column
+         * @param value     target indexed value
+         * @param ids       target result ids
+         */
+        private Dependency(QueryPredicate predicate, String column, Object value, Collection<?> ids) {
+            this.predicate = predicate;
+            this.column = column;
+            this.value = value;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Dependencies of one entity type.
+     */
+    private static final class Region {
+
+        /**
+         * Dependencies by query key.
+         */
+        private final Map<QueryKey, Dependency> dependencies = new HashMap<>();
+
+        /**
+         * Query keys by result id.
+         */
+        private final Map<Object, Set<QueryKey>> byId = new HashMap<>();
+
+        /**
+         * Parsed predicates by sql template, least recently used are dropped.
+         */
+        private final Map<String, QueryPredicate> predicates = new LinkedHashMap<String, QueryPredicate>(
+                INITIAL_CAPACITY,
+                LOAD_FACTOR,
+                true
+        ) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryPredicate> eldest) {
+                return size() > MAX_PREDICATES;
+            }
+        };
+
+        /**
+         * Entity table strings have binary collation.
+         */
+        private final boolean binaryCollation;
+
+        /**
+         * Query keys by equality column, value type and value.
+         */
+        private final Map<String, Map<Class<?>, Map<Object, Set<QueryKey>>>> index = new HashMap<>();
+
+        /**
+         * Query keys without indexable equality condition.
+         */
+        private final Set<QueryKey> unindexed = new HashSet<>();
+
+        /**
+         * Create a new instance.
+         *
+         * @param binaryCollation target binary collation flag
+         */
+        private Region(boolean binaryCollation) {
+            this.binaryCollation = binaryCollation;
+        }
+
+        /**
+         * Record query key.
+         *
+         * @param queryKey target query key
+         * @param ids      target result ids or null
+         */
+        private synchronized void add(QueryKey queryKey, Collection<?> ids) {
+            remove(queryKey);
+
+            QueryPredicate predicate = predicates.computeIfAbsent(
+                    queryKey.getQuery(),
+                    sql -> QueryPredicate.parse(sql, binaryCollation)
+            );
+            String column = predicate.getIndexColumn();
+            Object value = column == null ? null : predicate.getIndexValue(queryKey.getArgs());
+
+            if (isIndexable(value)) {
+                index.computeIfAbsent(column, k -> new HashMap<>())
+                        .computeIfAbsent(value.getClass(), k -> new HashMap<>())
+                        .computeIfAbsent(value, k -> new HashSet<>())
+                        .add(queryKey);
+                dependencies.put(queryKey, new Dependency(predicate, column, value, ids));
+            } else {
+                unindexed.add(queryKey);
+                dependencies.put(queryKey, new Dependency(predicate, null, null, ids));
+            }
+            if (ids != null) {
+                for (Object id : ids) {
+                    byId.computeIfAbsent(id, k -> new HashSet<>()).add(queryKey);
+                }
+            }
+        }
+
+        /**
+         * Forget query key.
+         *
+         * @param queryKey target query key
+         */
+        private synchronized void remove(QueryKey queryKey) {
+            Dependency dependency = dependencies.remove(queryKey);
+
+            if (dependency == null) {
+                return;
+            }
+            if (dependency.ids != null) {
+                for (Object id : dependency.ids) {
+                    Set<QueryKey> keys = byId.get(id);
+
+                    if (keys != null && keys.remove(queryKey) && keys.isEmpty()) {
+                        byId.remove(id);
+                    }
+                }
+            }
+            if (dependency.column == null) {
+                unindexed.remove(queryKey);
+
+                return;
+            }
+            Map<Class<?>, Map<Object, Set<QueryKey>>> types = index.get(dependency.column);
+            Map<Object, Set<QueryKey>> values = types.get(dependency.value.getClass());
+            Set<QueryKey> keys = values.get(dependency.value);
+
+            keys.remove(queryKey);
+            if (keys.isEmpty()) {
+                values.remove(dependency.value);
+                if (values.isEmpty()) {
+                    types.remove(dependency.value.getClass());
+                    if (types.isEmpty()) {
+                        index.remove(dependency.column);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Find and forget query keys whose result row may belong to.
+         *
+         * @param row target row values
+         * @return affected query keys
+         */
+        private synchronized Collection<QueryKey> removeAffected(Map<String, Object> row) {
+            List<QueryKey> candidates = new ArrayList<>(unindexed);
+
+            for (Map.Entry<String, Map<Class<?>, Map<Object, Set<QueryKey>>>> entry : index.entrySet()) {
+                if (!row.containsKey(entry.getKey())) {
+                    entry.getValue().values().forEach(values -> values.values().forEach(candidates::addAll));
+
+                    continue;
+                }
+                Object value = QueryPredicate.normalize(row.get(entry.getKey()));
+
+                if (value == null) {
+                    continue;
+                }
+                for (Map.Entry<Class<?>, Map<Object, Set<QueryKey>>> typeEntry : entry.getValue().entrySet()) {
+                    if (typeEntry.getKey() == value.getClass()) {
+                        Set<QueryKey> keys = typeEntry.getValue().get(value);
+
+                        if (keys != null) {
+                            candidates.addAll(keys);
+                        }
+                    } else {
+                        typeEntry.getValue().values().forEach(candidates::addAll);
+                    }
+                }
+            }
+            List<QueryKey> affected = new ArrayList<>();
+
+            for (QueryKey queryKey : candidates) {
+                Dependency dependency = dependencies.get(queryKey);
+
+                if (dependency.predicate.mayMatch(queryKey.getArgs(), row)) {
+                    affected.add(queryKey);
+                }
+            }
+            affected.forEach(this::remove);
+
+            return affected;
+        }
+
+        /**
+         * Find and forget query keys whose result contains id.
+         *
+         * @param id target row id
+         * @return query keys
+         */
+        private synchronized Collection<QueryKey> removeContaining(Object id) {
+            Set<QueryKey> keys = byId.get(id);
+            List<QueryKey> affected = keys == null ? new ArrayList<>() : new ArrayList<>(keys);
+
+            affected.forEach(this::remove);
+
+            return affected;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of bulk lookup by ids. Missing ids keep request order, so they can be passed to one IN (...) query.
+ *
+ * @author Said Gadjiev
+ */
+public final class QueryForIdsResult {
+
+    /**
+     * Found objects by id.
+     */
+    private final Map<Object, Object> hits;
+
+    /**
+     * Ids not found in cache.
+     */
+    private final Set<Object> missingIds;
+
+    /**
+     * Create a new instance.
+     *
+     * @param hits       target found objects by id
+     * @param missingIds target missing ids
+     */
+    QueryForIdsResult(Map<Object, Object> hits, Set<Object> missingIds) {
+        this.hits = Collections.unmodifiableMap(hits);
+        this.missingIds = Collections.unmodifiableSet(missingIds);
+    }
+
+    /**
+     * Return found objects by id.
+     *
+     * @return found objects
+     */
+    public Map<Object, Object> getHits() {
+        return hits;
+    }
+
+    /**
+     * Return ids not found in cache.
+     *
+     * @return missing ids
+     */
+    public Set<Object> getMissingIds() {
+        return missingIds;
+    }
+
+    /**
+     * Check if all ids were found.
+     *
+     * @return true if nothing is missing
+     */
+    public boolean isComplete() {
+        return missingIds.isEmpty();
+    }
+}
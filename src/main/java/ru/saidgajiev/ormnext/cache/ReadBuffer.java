@@ -0,0 +1,150 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.commons.FrequencySketch;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped lossy bounded buffer of read events. Many producers, single consumer which holds owner lock. Producers
+ * offer to stripe picked by thread, so they rarely contend, and event is dropped only if its stripe is contended.
+ *
+ * @param <E> event type
+ * @author Said Gadjiev
+ */
+final class ReadBuffer<E> {
+
+    /**
+     * Stripe capacity.
+     */
+    private static final int STRIPE_SIZE = 16;
+
+    /**
+     * Stripe index mask.
+     */
+    private static final int MASK = STRIPE_SIZE - 1;
+
+    /**
+     * Stripes count.
+     */
+    private static final int STRIPES = FrequencySketch.ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Thread probe multiplier.
+     */
+    private static final int PROBE = 0x9E3779B9;
+
+    /**
+     * Stripes.
+     */
+    private final Stripe<E>[] stripes;
+
+    /**
+     * Create a new instance.
+     */
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Record event to current thread stripe. Event is dropped on contention.
+     *
+     * @param event target event
+     * @return false if stripe is full and buffer should be drained
+     */
+    boolean offer(E event) {
+        return stripes[probe()].offer(event);
+    }
+
+    /**
+     * Drain published events of all stripes. Must be called by single consumer.
+     *
+     * @param consumer target events consumer
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    /**
+     * Return stripe index for current thread.
+     *
+     * @return stripe index
+     */
+    private static int probe() {
+        int hash = (int) Thread.currentThread().getId() * PROBE;
+
+        return (hash ^ (hash >>> (Integer.SIZE / 2))) & (STRIPES - 1);
+    }
+
+    /**
+     * Lossy bounded buffer of one stripe.
+     *
+     * @param <E> event type
+     */
+    private static final class Stripe<E> {
+
+        /**
+         * Buffer slots.
+         */
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+
+        /**
+         * Producers counter.
+         */
+        private final AtomicLong writeCounter = new AtomicLong();
+
+        /**
+         * Consumer counter.
+         */
+        private final AtomicLong readCounter = new AtomicLong();
+
+        /**
+         * Record event. Event is dropped on contention.
+         *
+         * @param event target event
+         * @return false if buffer is full and should be drained
+         */
+        private boolean offer(E event) {
+            long head = readCounter.get();
+            long tail = writeCounter.get();
+
+            if (tail - head >= STRIPE_SIZE) {
+                return false;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & MASK), event);
+            }
+
+            return true;
+        }
+
+        /**
+         * Drain published events.
+         *
+         * @param consumer target events consumer
+         */
+        private void drainTo(Consumer<E> consumer) {
+            long head = readCounter.get();
+            long tail = writeCounter.get();
+
+            for (; head < tail; head++) {
+                int index = (int) (head & MASK);
+                E event = buffer.get(index);
+
+                if (event == null) {
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(event);
+            }
+            readCounter.lazySet(head);
+        }
+    }
+}
@@ -1,41 +1,80 @@
 package ru.saidgajiev.ormnext.cache;
 
-import ru.saidgadjiev.ormnext.core.cache.ObjectCache;
-
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * This cache implementation use {@link SoftReference} for cached values.
+ * This cache implementation use {@link SoftReference} or {@link WeakReference} for cached values.
+ * References cleared by garbage collector are enqueued to {@link ReferenceQueue} and their entries
+ * are purged in batches on writes, so dead entries do not accumulate.
  *
  * @author Said Gadjiev
  */
-public class ReferenceObjectCache implements ObjectCache {
+public class ReferenceObjectCache implements BulkObjectCache {
+
+    /**
+     * Max cleared references purged on one write.
+     */
+    private static final int PURGE_BATCH_SIZE = 64;
 
     /**
      * Map for cache values.
      */
-    private Map<Class<?>, Map<Object, SoftReference<Object>>> cache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<Object, Reference<Object>>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Queue of cleared references.
+     */
+    private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * Reference type.
+     */
+    private final ReferenceType referenceType;
+
+    /**
+     * Collected entries listener.
+     */
+    private volatile EvictionListener evictionListener = (entityType, id) -> { };
+
+    /**
+     * Create a new instance with soft references.
+     */
+    public ReferenceObjectCache() {
+        this(ReferenceType.SOFT);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param referenceType target reference type
+     */
+    public ReferenceObjectCache(ReferenceType referenceType) {
+        this.referenceType = referenceType;
+    }
 
     @Override
     public void registerClass(Class<?> tClass) {
-        cache.computeIfAbsent(tClass, k -> new HashMap<>());
+        cache.computeIfAbsent(tClass, k -> new ConcurrentHashMap<>());
     }
 
     @Override
     public void put(Class<?> tClass, Object id, Object data) {
-        Map<Object, SoftReference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
 
         if (objectCache != null) {
-            objectCache.put(id, new SoftReference<>(data));
+            objectCache.put(id, createReference(tClass, objectCache, id, data));
         }
+        purge(PURGE_BATCH_SIZE);
     }
 
     @Override
     public Object get(Class<?> tClass, Object id) {
-        Map<Object, SoftReference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
 
         if (objectCache == null) {
             return null;
@@ -48,7 +87,7 @@ public class ReferenceObjectCache implements ObjectCache {
         Object obj = ref.get();
 
         if (obj == null) {
-            objectCache.remove(id);
+            removeCleared(tClass, objectCache, id, ref);
 
             return null;
         } else {
@@ -56,17 +95,58 @@ public class ReferenceObjectCache implements ObjectCache {
         }
     }
 
+    @Override
+    public Map<Object, Object> getAll(Class<?> tClass, Collection<?> ids) {
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Object> result = new HashMap<>();
+
+        if (objectCache == null) {
+            return result;
+        }
+        for (Object id : ids) {
+            Reference<Object> ref = objectCache.get(id);
+            Object obj = ref == null ? null : ref.get();
+
+            if (obj != null) {
+                result.put(id, obj);
+            } else if (ref != null) {
+                removeCleared(tClass, objectCache, id, ref);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(Class<?> tClass, Map<?, ?> objects) {
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
+
+        if (objectCache != null) {
+            for (Map.Entry<?, ?> entry : objects.entrySet()) {
+                objectCache.put(
+                        entry.getKey(),
+                        createReference(tClass, objectCache, entry.getKey(), entry.getValue())
+                );
+            }
+        }
+        purge(PURGE_BATCH_SIZE);
+    }
+
     @Override
     public Collection<Object> getAll(Class<?> tClass) {
-        Map<Object, SoftReference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
 
         if (objectCache == null) {
             return null;
         }
         List<Object> result = new ArrayList<>();
 
-        for (Object id: objectCache.keySet()) {
-            result.add(get(tClass, id));
+        for (Reference<Object> ref : objectCache.values()) {
+            Object obj = ref.get();
+
+            if (obj != null) {
+                result.add(obj);
+            }
         }
 
         return result;
@@ -74,24 +154,29 @@ public class ReferenceObjectCache implements ObjectCache {
 
     @Override
     public boolean contains(Class<?> tClass, Object id) {
-        Map<Object, SoftReference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
+
+        if (objectCache == null) {
+            return false;
+        }
+        Reference<Object> ref = objectCache.get(id);
 
-        return objectCache != null && objectCache.containsKey(id);
+        return ref != null && ref.get() != null;
     }
 
     @Override
     public void invalidate(Class<?> tClass, Object id) {
-        Map<Object, SoftReference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
 
-        if (objectCache == null) {
-            return;
+        if (objectCache != null) {
+            objectCache.remove(id);
         }
-        objectCache.remove(id);
+        purge(PURGE_BATCH_SIZE);
     }
 
     @Override
     public void invalidateAll(Class<?> tClass) {
-        Map<Object, SoftReference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
 
         if (objectCache == null) {
             return;
@@ -109,14 +194,230 @@ public class ReferenceObjectCache implements ObjectCache {
         cache.clear();
     }
 
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
     @Override
     public long size(Class<?> tClass) {
-        Map<Object, SoftReference<Object>> objectCache = cache.get(tClass);
+        Map<Object, Reference<Object>> objectCache = cache.get(tClass);
 
         if (objectCache == null) {
             return 0;
         }
+        purge(Integer.MAX_VALUE);
 
         return objectCache.size();
     }
+
+    /**
+     * Remove entries of cleared references.
+     *
+     * @param maxCount max references to purge
+     */
+    private void purge(int maxCount) {
+        for (int i = 0; i < maxCount; i++) {
+            Reference<?> ref = referenceQueue.poll();
+
+            if (ref == null) {
+                return;
+            }
+            KeyedReference keyed = (KeyedReference) ref;
+
+            removeCleared(keyed.getEntityType(), keyed.getOwner(), keyed.getKey(), ref);
+        }
+    }
+
+    /**
+     * Remove entry of cleared reference unless it is replaced and notify listener.
+     *
+     * @param tClass      target entity type
+     * @param objectCache target owner map
+     * @param id          target id
+     * @param ref         target cleared reference
+     */
+    private void removeCleared(Class<?> tClass,
+                               Map<Object, Reference<Object>> objectCache,
+                               Object id,
+                               Reference<?> ref) {
+        if (objectCache.remove(id, ref)) {
+            evictionListener.onEviction(tClass, id);
+        }
+    }
+
+    /**
+     * Create reference registered in reference queue.
+     *
+     * @param tClass      target entity type
+     * @param objectCache target owner map
+     * @param id          target id
+     * @param data        target referent
+     * @return reference
+     */
+    private Reference<Object> createReference(Class<?> tClass,
+                                              Map<Object, Reference<Object>> objectCache,
+                                              Object id,
+                                              Object data) {
+        if (referenceType == ReferenceType.WEAK) {
+            return new KeyedWeakReference(data, referenceQueue, tClass, objectCache, id);
+        }
+
+        return new KeyedSoftReference(data, referenceQueue, tClass, objectCache, id);
+    }
+
+    /**
+     * Reference types.
+     */
+    public enum ReferenceType {
+
+        /**
+         * Values are cleared on memory pressure.
+         */
+        SOFT,
+
+        /**
+         * Values are cleared when they are not strongly reachable.
+         */
+        WEAK
+    }
+
+    /**
+     * Reference which knows its entry.
+     */
+    private interface KeyedReference {
+
+        /**
+         * Return entity type.
+         *
+         * @return entity type
+         */
+        Class<?> getEntityType();
+
+        /**
+         * Return owner map.
+         *
+         * @return owner map
+         */
+        Map<Object, Reference<Object>> getOwner();
+
+        /**
+         * Return entry key.
+         *
+         * @return entry key
+         */
+        Object getKey();
+    }
+
+    /**
+     * Soft reference which knows its entry.
+     */
+    private static final class KeyedSoftReference extends SoftReference<Object> implements KeyedReference {
+
+        /**
+         * Entity type.
+         */
+        private final Class<?> entityType;
+
+        /**
+         * Owner map.
+         */
+        private final Map<Object, Reference<Object>> owner;
+
+        /**
+         * Entry key.
+         */
+        private final Object key;
+
+        /**
+         * Create a new instance.
+         *
+         * @param referent   target referent
+         * @param queue      target reference queue
+         * @param entityType target entity type
+         * @param owner      target owner map
+         * @param key        target entry key
+         */
+        private KeyedSoftReference(Object referent,
+                                   ReferenceQueue<Object> queue,
+                                   Class<?> entityType,
+                                   Map<Object, Reference<Object>> owner,
+                                   Object key) {
+            super(referent, queue);
+            this.entityType = entityType;
+            this.owner = owner;
+            this.key = key;
+        }
+
+        @Override
+        public Class<?> getEntityType() {
+            return entityType;
+        }
+
+        @Override
+        public Map<Object, Reference<Object>> getOwner() {
+            return owner;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Weak reference which knows its entry.
+     */
+    private static final class KeyedWeakReference extends WeakReference<Object> implements KeyedReference {
+
+        /**
+         * Entity type.
+         */
+        private final Class<?> entityType;
+
+        /**
+         * Owner map.
+         */
+        private final Map<Object, Reference<Object>> owner;
+
+        /**
+         * Entry key.
+         */
+        private final Object key;
+
+        /**
+         * Create a new instance.
+         *
+         * @param referent   target referent
+         * @param queue      target reference queue
+         * @param entityType target entity type
+         * @param owner      target owner map
+         * @param key        target entry key
+         */
+        private KeyedWeakReference(Object referent,
+                                   ReferenceQueue<Object> queue,
+                                   Class<?> entityType,
+                                   Map<Object, Reference<Object>> owner,
+                                   Object key) {
+            super(referent, queue);
+            this.entityType = entityType;
+            this.owner = owner;
+            this.key = key;
+        }
+
+        @Override
+        public Class<?> getEntityType() {
+            return entityType;
+        }
+
+        @Override
+        public Map<Object, Reference<Object>> getOwner() {
+            return owner;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+    }
 }
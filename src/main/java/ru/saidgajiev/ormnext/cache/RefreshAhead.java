@@ -0,0 +1,148 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.commons.FrequencySketch;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules background refresh of hot results near expiry by {@link RefreshAheadPolicy}. Accesses are counted in
+ * {@link FrequencySketch}, a key is refreshed by at most one task at a time.
+ *
+ * @author Said Gadjiev
+ */
+class RefreshAhead {
+
+    /**
+     * Default executor threads.
+     */
+    private static final int DEFAULT_THREADS = 2;
+
+    /**
+     * Default executor queue capacity.
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * Default executor idle thread keep alive seconds.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Policy.
+     */
+    private final RefreshAheadPolicy policy;
+
+    /**
+     * Access frequencies. Guarded by lock.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * Sketch lock. Accesses are not counted while it is held by other thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Keys being refreshed.
+     */
+    private final Set<EntryKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Refresh executor.
+     */
+    private final Executor executor;
+
+    /**
+     * Default executor owned by this instance or null.
+     */
+    private final ExecutorService ownExecutor;
+
+    /**
+     * Create a new instance.
+     *
+     * @param policy target policy
+     */
+    RefreshAhead(RefreshAheadPolicy policy) {
+        this.policy = policy;
+        this.sketch = new FrequencySketch(policy.getExpectedKeys());
+        if (policy.getExecutor() != null) {
+            this.executor = policy.getExecutor();
+            this.ownExecutor = null;
+        } else {
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                    DEFAULT_THREADS,
+                    DEFAULT_THREADS,
+                    KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "ormnext-cache-refresh");
+
+                        thread.setDaemon(true);
+
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy()
+            );
+
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            this.executor = threadPoolExecutor;
+            this.ownExecutor = threadPoolExecutor;
+        }
+    }
+
+    /**
+     * Record hit and schedule refresh if key is hot and expires within refresh window.
+     *
+     * @param key            target entry key
+     * @param remainingNanos target nanos until entry expires
+     * @param refresh        target action which reloads and caches entry
+     */
+    void onHit(EntryKey key, long remainingNanos, Runnable refresh) {
+        int frequency;
+
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(key);
+            frequency = sketch.frequency(key);
+        } finally {
+            lock.unlock();
+        }
+        if (remainingNanos > policy.getRefreshWindowNanos() || frequency < policy.getMinFrequency()) {
+            return;
+        }
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh.run();
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * Stop default executor.
+     */
+    void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+}
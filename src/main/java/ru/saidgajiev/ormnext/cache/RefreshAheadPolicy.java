@@ -0,0 +1,204 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh ahead policy of query results. A hit on a hot result which expires within refresh window reloads it in
+ * background, while callers keep getting the current value. Only results loaded through {@link CacheLayer} loading
+ * methods are refreshed, as only they have a loader.
+ *
+ * @author Said Gadjiev
+ */
+public final class RefreshAheadPolicy {
+
+    /**
+     * Refresh window nanos.
+     */
+    private final long refreshWindowNanos;
+
+    /**
+     * Min estimated access frequency of refreshed key.
+     */
+    private final int minFrequency;
+
+    /**
+     * Expected count of hot keys.
+     */
+    private final int expectedKeys;
+
+    /**
+     * Refresh executor or null for default bounded executor.
+     */
+    private final Executor executor;
+
+    /**
+     * Create a new instance.
+     *
+     * @param refreshWindowNanos target refresh window nanos
+     * @param minFrequency       target min access frequency
+     * @param expectedKeys       target expected count of hot keys
+     * @param executor           target refresh executor or null
+     */
+    private RefreshAheadPolicy(long refreshWindowNanos, int minFrequency, int expectedKeys, Executor executor) {
+        this.refreshWindowNanos = refreshWindowNanos;
+        this.minFrequency = minFrequency;
+        this.expectedKeys = expectedKeys;
+        this.executor = executor;
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Return refresh window nanos.
+     *
+     * @return refresh window nanos
+     */
+    public long getRefreshWindowNanos() {
+        return refreshWindowNanos;
+    }
+
+    /**
+     * Return min estimated access frequency of refreshed key.
+     *
+     * @return min frequency
+     */
+    public int getMinFrequency() {
+        return minFrequency;
+    }
+
+    /**
+     * Return expected count of hot keys.
+     *
+     * @return expected keys
+     */
+    public int getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    /**
+     * Return refresh executor.
+     *
+     * @return executor or null if default one is used
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Refresh ahead policy builder.
+     */
+    public static final class Builder {
+
+        /**
+         * Default min access frequency.
+         */
+        private static final int DEFAULT_MIN_FREQUENCY = 2;
+
+        /**
+         * Default expected count of hot keys.
+         */
+        private static final int DEFAULT_EXPECTED_KEYS = 1024;
+
+        /**
+         * Max estimated frequency.
+         */
+        private static final int MAX_FREQUENCY = 15;
+
+        /**
+         * Refresh window nanos.
+         */
+        private long refreshWindowNanos;
+
+        /**
+         * Min access frequency.
+         */
+        private int minFrequency = DEFAULT_MIN_FREQUENCY;
+
+        /**
+         * Expected count of hot keys.
+         */
+        private int expectedKeys = DEFAULT_EXPECTED_KEYS;
+
+        /**
+         * Refresh executor.
+         */
+        private Executor executor;
+
+        /**
+         * Create a new instance.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Refresh results which expire within window.
+         *
+         * @param duration target window duration
+         * @param timeUnit target duration unit
+         * @return this builder
+         */
+        public Builder refreshWindow(long duration, TimeUnit timeUnit) {
+            this.refreshWindowNanos = timeUnit.toNanos(duration);
+
+            return this;
+        }
+
+        /**
+         * Refresh only results accessed at least this many times recently. Frequency is estimated up to 15.
+         *
+         * @param minFrequency target min access frequency
+         * @return this builder
+         */
+        public Builder minFrequency(int minFrequency) {
+            this.minFrequency = Math.max(0, Math.min(minFrequency, MAX_FREQUENCY));
+
+            return this;
+        }
+
+        /**
+         * Set expected count of hot keys. It sizes access frequency sketch.
+         *
+         * @param expectedKeys target expected keys
+         * @return this builder
+         */
+        public Builder expectedKeys(int expectedKeys) {
+            this.expectedKeys = expectedKeys;
+
+            return this;
+        }
+
+        /**
+         * Set refresh executor. It should be bounded, rejected refreshes are skipped.
+         *
+         * @param executor target executor
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+
+            return this;
+        }
+
+        /**
+         * Build policy.
+         *
+         * @return policy
+         * @throws IllegalArgumentException if refresh window is not positive
+         */
+        public RefreshAheadPolicy build() {
+            if (refreshWindowNanos <= 0) {
+                throw new IllegalArgumentException("Refresh window must be positive");
+            }
+
+            return new RefreshAheadPolicy(refreshWindowNanos, minFrequency, expectedKeys, executor);
+        }
+    }
+}
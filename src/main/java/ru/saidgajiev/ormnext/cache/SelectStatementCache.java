@@ -4,13 +4,19 @@ import ru.saidgadjiev.ormnext.core.dao.DatabaseEngine;
 import ru.saidgadjiev.ormnext.core.query.criteria.impl.SelectStatement;
 import ru.saidgadjiev.ormnext.core.table.internal.metamodel.MetaModel;
 import ru.saidgajiev.ormnext.cache.commons.DigestHelper;
+import ru.saidgajiev.ormnext.cache.commons.QueryKey;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
- * Select statement cache.
+ * Select statement cache. Each cached query key is recorded in {@link QueryDependencies}, so a written row
+ * evicts only queries whose result it may change.
  *
  * @author Said Gadjiev
  */
@@ -19,17 +25,37 @@ public class SelectStatementCache {
     /**
      * Select statement list results cache.
      */
-    private final Map<Class<?>, Map<String, List<Object>>> listCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<QueryKey, List<Object>>> listCache = new ConcurrentHashMap<>();
 
     /**
      * Limited select statement cache.
      */
-    private final Map<Class<?>, Map<String, List<Object>>> limitedListCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<QueryKey, List<Object>>> limitedListCache = new ConcurrentHashMap<>();
 
     /**
      * Long results cache.
      */
-    private final Map<Class<?>, Map<String, Long>> longCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<QueryKey, Long>> longCache = new ConcurrentHashMap<>();
+
+    /**
+     * Entity types whose table strings have binary collation.
+     */
+    private final Set<Class<?>> binaryCollation = ConcurrentHashMap.newKeySet();
+
+    /**
+     * List results dependencies.
+     */
+    private final QueryDependencies listDependencies = new QueryDependencies(binaryCollation::contains);
+
+    /**
+     * Limited list results dependencies.
+     */
+    private final QueryDependencies limitedListDependencies = new QueryDependencies(binaryCollation::contains);
+
+    /**
+     * Long results dependencies.
+     */
+    private final QueryDependencies longDependencies = new QueryDependencies(binaryCollation::contains);
 
     /**
      * Digest helper.
@@ -46,6 +72,41 @@ public class SelectStatementCache {
         digestHelper = new DigestHelper(metaModel, databaseEngine);
     }
 
+    /**
+     * Declare entity table string collation. String conditions of queries exclude rows only if collation is binary.
+     * Cached results of entity are evicted, because their dependencies were recorded for the prior collation.
+     *
+     * @param entityType target entity type
+     * @param binary     true if database compares strings as binary values
+     */
+    public void setBinaryCollation(Class<?> entityType, boolean binary) {
+        if (binary) {
+            binaryCollation.add(entityType);
+        } else {
+            binaryCollation.remove(entityType);
+        }
+        evictAll(entityType);
+    }
+
+    /**
+     * Return digest helper. It exposes sql template cache counters.
+     *
+     * @return digest helper
+     */
+    public DigestHelper getDigestHelper() {
+        return digestHelper;
+    }
+
+    /**
+     * Digest select statement to cache key.
+     *
+     * @param selectStatement target select statement
+     * @return cache key
+     */
+    public QueryKey digest(SelectStatement<?> selectStatement) {
+        return digestHelper.digest(selectStatement);
+    }
+
     /**
      * Put list result object ids to cache.
      *
@@ -53,9 +114,19 @@ public class SelectStatementCache {
      * @param resultObjectIds target result object ids.
      */
     public void putList(SelectStatement<?> selectStatement, List<Object> resultObjectIds) {
-        listCache.putIfAbsent(selectStatement.getEntityClass(), new ConcurrentHashMap<>());
+        putList(digest(selectStatement), resultObjectIds);
+    }
 
-        listCache.get(selectStatement.getEntityClass()).put(digestHelper.digest(selectStatement), resultObjectIds);
+    /**
+     * Put list result object ids to cache.
+     *
+     * @param queryKey        target query key
+     * @param resultObjectIds target result object ids.
+     */
+    public void putList(QueryKey queryKey, List<Object> resultObjectIds) {
+        listCache.computeIfAbsent(queryKey.getEntityType(), k -> new ConcurrentHashMap<>())
+                .put(queryKey, resultObjectIds);
+        listDependencies.add(queryKey, resultObjectIds);
     }
 
     /**
@@ -65,9 +136,43 @@ public class SelectStatementCache {
      * @return result ids
      */
     public List<Object> getList(SelectStatement<?> selectStatement) {
-        Map<String, List<Object>> cache = listCache.get(selectStatement.getEntityClass());
+        return getList(digest(selectStatement));
+    }
+
+    /**
+     * Retrieve cached result ids.
+     *
+     * @param queryKey target query key
+     * @return result ids
+     */
+    public List<Object> getList(QueryKey queryKey) {
+        Map<QueryKey, List<Object>> cache = listCache.get(queryKey.getEntityType());
 
-        return cache == null ? null : cache.get(digestHelper.digest(selectStatement));
+        return cache == null ? null : cache.get(queryKey);
+    }
+
+    /**
+     * Evict cached list result ids by query key.
+     *
+     * @param queryKey target query key
+     */
+    public void evictList(QueryKey queryKey) {
+        Map<QueryKey, List<Object>> cache = listCache.get(queryKey.getEntityType());
+
+        if (cache != null) {
+            cache.remove(queryKey);
+        }
+        listDependencies.remove(queryKey);
+    }
+
+    /**
+     * Evict cached list result ids by query key if they are not replaced.
+     *
+     * @param queryKey target query key
+     * @param ids      target evicted result ids
+     */
+    public void evictList(QueryKey queryKey, List<Object> ids) {
+        evictIfSame(listCache, listDependencies, queryKey, ids, current -> current);
     }
 
     /**
@@ -77,6 +182,7 @@ public class SelectStatementCache {
      */
     public void evictList(Class<?> entityType) {
         listCache.remove(entityType);
+        listDependencies.removeAll(entityType);
     }
 
     /**
@@ -84,6 +190,7 @@ public class SelectStatementCache {
      */
     public void evictList() {
         listCache.clear();
+        listDependencies.clear();
     }
 
     /**
@@ -93,9 +200,18 @@ public class SelectStatementCache {
      * @param result          target long result
      */
     public void putLong(SelectStatement<?> selectStatement, Long result) {
-        longCache.putIfAbsent(selectStatement.getEntityClass(), new ConcurrentHashMap<>());
+        putLong(digest(selectStatement), result);
+    }
 
-        longCache.get(selectStatement.getEntityClass()).put(digestHelper.digest(selectStatement), result);
+    /**
+     * Cache long result.
+     *
+     * @param queryKey target query key
+     * @param result   target long result
+     */
+    public void putLong(QueryKey queryKey, Long result) {
+        longCache.computeIfAbsent(queryKey.getEntityType(), k -> new ConcurrentHashMap<>()).put(queryKey, result);
+        longDependencies.add(queryKey);
     }
 
     /**
@@ -105,9 +221,43 @@ public class SelectStatementCache {
      * @return long result
      */
     public Long getLong(SelectStatement<?> selectStatement) {
-        Map<String, Long> cache = longCache.get(selectStatement.getEntityClass());
+        return getLong(digest(selectStatement));
+    }
+
+    /**
+     * Retrieve long result.
+     *
+     * @param queryKey target query key
+     * @return long result
+     */
+    public Long getLong(QueryKey queryKey) {
+        Map<QueryKey, Long> cache = longCache.get(queryKey.getEntityType());
+
+        return cache == null ? null : cache.get(queryKey);
+    }
 
-        return cache == null ? null : cache.get(digestHelper.digest(selectStatement));
+    /**
+     * Evict long result by query key.
+     *
+     * @param queryKey target query key
+     */
+    public void evictLong(QueryKey queryKey) {
+        Map<QueryKey, Long> cache = longCache.get(queryKey.getEntityType());
+
+        if (cache != null) {
+            cache.remove(queryKey);
+        }
+        longDependencies.remove(queryKey);
+    }
+
+    /**
+     * Evict long result by query key if it is not replaced.
+     *
+     * @param queryKey target query key
+     * @param result   target evicted result
+     */
+    public void evictLong(QueryKey queryKey, Long result) {
+        evictIfSame(longCache, longDependencies, queryKey, result, current -> null);
     }
 
     /**
@@ -117,6 +267,7 @@ public class SelectStatementCache {
      */
     public void evictLong(Class<?> entityType) {
         longCache.remove(entityType);
+        longDependencies.removeAll(entityType);
     }
 
     /**
@@ -124,6 +275,7 @@ public class SelectStatementCache {
      */
     public void evictLong() {
         longCache.clear();
+        longDependencies.clear();
     }
 
     /**
@@ -133,9 +285,18 @@ public class SelectStatementCache {
      * @param list            target limited result ids
      */
     public void putLimitedList(SelectStatement<?> selectStatement, List<Object> list) {
-        limitedListCache.putIfAbsent(selectStatement.getEntityClass(), new ConcurrentHashMap<>());
+        putLimitedList(digest(selectStatement), list);
+    }
 
-        limitedListCache.get(selectStatement.getEntityClass()).put(digestHelper.digest(selectStatement), list);
+    /**
+     * Put limited result to cache.
+     *
+     * @param queryKey target query key
+     * @param list     target limited result ids
+     */
+    public void putLimitedList(QueryKey queryKey, List<Object> list) {
+        limitedListCache.computeIfAbsent(queryKey.getEntityType(), k -> new ConcurrentHashMap<>()).put(queryKey, list);
+        limitedListDependencies.add(queryKey, list);
     }
 
     /**
@@ -145,9 +306,43 @@ public class SelectStatementCache {
      * @return limited list results
      */
     public List<Object> getLimitedList(SelectStatement<?> selectStatement) {
-        Map<String, List<Object>> cache = limitedListCache.get(selectStatement.getEntityClass());
+        return getLimitedList(digest(selectStatement));
+    }
 
-        return cache == null ? null : cache.get(digestHelper.digest(selectStatement));
+    /**
+     * Retrieve limited list results.
+     *
+     * @param queryKey target query key
+     * @return limited list results
+     */
+    public List<Object> getLimitedList(QueryKey queryKey) {
+        Map<QueryKey, List<Object>> cache = limitedListCache.get(queryKey.getEntityType());
+
+        return cache == null ? null : cache.get(queryKey);
+    }
+
+    /**
+     * Evict limited list by query key.
+     *
+     * @param queryKey target query key
+     */
+    public void evictLimitedList(QueryKey queryKey) {
+        Map<QueryKey, List<Object>> cache = limitedListCache.get(queryKey.getEntityType());
+
+        if (cache != null) {
+            cache.remove(queryKey);
+        }
+        limitedListDependencies.remove(queryKey);
+    }
+
+    /**
+     * Evict limited list by query key if it is not replaced.
+     *
+     * @param queryKey target query key
+     * @param ids      target evicted result ids
+     */
+    public void evictLimitedList(QueryKey queryKey, List<Object> ids) {
+        evictIfSame(limitedListCache, limitedListDependencies, queryKey, ids, current -> current);
     }
 
     /**
@@ -157,6 +352,7 @@ public class SelectStatementCache {
      */
     public void evictLimitedList(Class<?> entityType) {
         limitedListCache.remove(entityType);
+        limitedListDependencies.removeAll(entityType);
     }
 
     /**
@@ -164,6 +360,49 @@ public class SelectStatementCache {
      */
     public void evictLimitedList() {
         limitedListCache.clear();
+        limitedListDependencies.clear();
+    }
+
+    /**
+     * Evict list results which written row may belong to or which contain row id.
+     *
+     * @param entityType target entity type
+     * @param row        target row values by lower case column name
+     * @param id         target changed row id, null for new row
+     * @return evicted query keys
+     */
+    public Collection<QueryKey> evictAffectedList(Class<?> entityType, Map<String, Object> row, Object id) {
+        return evictAffected(listCache, listDependencies, entityType, row, id);
+    }
+
+    /**
+     * Evict limited list results which written row may belong to or which contain row id.
+     *
+     * @param entityType target entity type
+     * @param row        target row values by lower case column name
+     * @param id         target changed row id, null for new row
+     * @return evicted query keys
+     */
+    public Collection<QueryKey> evictAffectedLimitedList(Class<?> entityType, Map<String, Object> row, Object id) {
+        return evictAffected(limitedListCache, limitedListDependencies, entityType, row, id);
+    }
+
+    /**
+     * Evict long results which new row may change.
+     *
+     * @param entityType target entity type
+     * @param row        target row values by lower case column name
+     * @return evicted query keys
+     */
+    public Collection<QueryKey> evictAffectedLong(Class<?> entityType, Map<String, Object> row) {
+        Collection<QueryKey> affected = longDependencies.removeAffected(entityType, row);
+        Map<QueryKey, Long> cache = longCache.get(entityType);
+
+        if (cache != null) {
+            affected.forEach(cache::remove);
+        }
+
+        return affected;
     }
 
     /**
@@ -176,7 +415,83 @@ public class SelectStatementCache {
             listCache.remove(entityType);
             longCache.remove(entityType);
             limitedListCache.remove(entityType);
+            listDependencies.removeAll(entityType);
+            longDependencies.removeAll(entityType);
+            limitedListDependencies.removeAll(entityType);
+        }
+    }
+
+    /**
+     * Return list results of entity type.
+     *
+     * @param entityType target entity type
+     * @return copy of list result ids by query key
+     */
+    Map<QueryKey, List<Object>> getLists(Class<?> entityType) {
+        return copy(listCache, entityType);
+    }
+
+    /**
+     * Return limited list results of entity type.
+     *
+     * @param entityType target entity type
+     * @return copy of limited list result ids by query key
+     */
+    Map<QueryKey, List<Object>> getLimitedLists(Class<?> entityType) {
+        return copy(limitedListCache, entityType);
+    }
+
+    /**
+     * Return long results of entity type.
+     *
+     * @param entityType target entity type
+     * @return copy of long results by query key
+     */
+    Map<QueryKey, Long> getLongs(Class<?> entityType) {
+        return copy(longCache, entityType);
+    }
+
+    /**
+     * Evict list results affected by written row.
+     *
+     * @param listCache    target list cache
+     * @param dependencies target list cache dependencies
+     * @param entityType   target entity type
+     * @param row          target row values
+     * @param id           target changed row id or null
+     * @return evicted query keys
+     */
+    private static Collection<QueryKey> evictAffected(Map<Class<?>, Map<QueryKey, List<Object>>> listCache,
+                                                      QueryDependencies dependencies,
+                                                      Class<?> entityType,
+                                                      Map<String, Object> row,
+                                                      Object id) {
+        Collection<QueryKey> affected = dependencies.removeAffected(entityType, row);
+        Map<QueryKey, List<Object>> cache = listCache.get(entityType);
+
+        if (cache == null) {
+            return affected;
+        }
+        if (id != null) {
+            affected.addAll(dependencies.removeContaining(entityType, id));
         }
+        affected.forEach(cache::remove);
+
+        return affected;
+    }
+
+    /**
+     * Copy results of entity type.
+     *
+     * @param cache      target results by entity type
+     * @param entityType target entity type
+     * @param <T>        result type
+     * @return copy of results
+     */
+    private static <T> Map<QueryKey, T> copy(Map<Class<?>, Map<QueryKey, T>> cache, Class<?> entityType) {
+        Map<QueryKey, T> results = cache.get(entityType);
+
+        return results == null ? new HashMap<>() : new HashMap<>(results);
     }
 
     /**
@@ -187,6 +502,39 @@ public class SelectStatementCache {
             listCache.clear();
             longCache.clear();
             limitedListCache.clear();
+            listDependencies.clear();
+            longDependencies.clear();
+            limitedListDependencies.clear();
         }
     }
+
+    /**
+     * Remove result if it is not replaced and forget its dependencies. Dependencies of result put concurrently
+     * are recorded again.
+     *
+     * @param cache        target results by entity type
+     * @param dependencies target results dependencies
+     * @param queryKey     target query key
+     * @param result       target evicted result
+     * @param ids          target function which returns result ids or null
+     * @param <V>          result type
+     */
+    private static <V> void evictIfSame(Map<Class<?>, Map<QueryKey, V>> cache,
+                                        QueryDependencies dependencies,
+                                        QueryKey queryKey,
+                                        V result,
+                                        Function<V, Collection<?>> ids) {
+        Map<QueryKey, V> results = cache.get(queryKey.getEntityType());
+
+        if (results != null && results.remove(queryKey, result)) {
+            dependencies.remove(queryKey);
+
+            V current = results.get(queryKey);
+
+            if (current != null) {
+                dependencies.add(queryKey, ids.apply(current));
+            }
+        }
+    }
+
 }
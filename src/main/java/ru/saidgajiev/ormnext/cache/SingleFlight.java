@@ -0,0 +1,128 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key. The first caller runs the loader, callers arriving while it runs wait
+ * for its {@link CompletableFuture} and get the same result or exception. Loads are keyed with the entity generation
+ * observed before load, so a caller which missed after a write never waits for a load started before it.
+ *
+ * @author Said Gadjiev
+ */
+class SingleFlight {
+
+    /**
+     * In flight loads.
+     */
+    private final Map<FlightKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Load value once for all concurrent callers.
+     *
+     * @param key        target load key
+     * @param generation target entity generation observed before load
+     * @param loader     target loader
+     * @param <T>        value type
+     * @return loaded value
+     */
+    @SuppressWarnings("unchecked")
+    <T> T load(EntryKey key, long generation, Supplier<T> loader) {
+        FlightKey flightKey = new FlightKey(key, generation);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(flightKey, future);
+
+        if (running != null) {
+            return (T) await(running);
+        }
+        try {
+            T value = loader.get();
+
+            future.complete(value);
+
+            return value;
+        } catch (RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+
+            throw ex;
+        } finally {
+            inFlight.remove(flightKey, future);
+        }
+    }
+
+    /**
+     * Wait for running load.
+     *
+     * @param running target running load
+     * @return loaded value
+     */
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Load key.
+     */
+    private static final class FlightKey {
+
+        /**
+         * Hash multiplier.
+         */
+        private static final int HASH_MULTIPLIER = 31;
+
+        /**
+         * Entry key.
+         */
+        private final EntryKey key;
+
+        /**
+         * Entity generation.
+         */
+        private final long generation;
+
+        /**
+         * Create a new instance.
+         *
+         * @param key        target entry key
+         * @param generation target entity generation
+         */
+        private FlightKey(EntryKey key, long generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FlightKey flightKey = (FlightKey) o;
+
+            return generation == flightKey.generation && key.equals(flightKey.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return HASH_MULTIPLIER * key.hashCode() + Long.hashCode(generation);
+        }
+    }
+}
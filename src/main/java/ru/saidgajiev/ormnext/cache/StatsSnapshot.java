@@ -0,0 +1,205 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Point in time statistics of sub cache or their sum.
+ *
+ * @author Said Gadjiev
+ */
+public final class StatsSnapshot {
+
+    /**
+     * Hits count.
+     */
+    private final long hitCount;
+
+    /**
+     * Misses count.
+     */
+    private final long missCount;
+
+    /**
+     * Successful loads count.
+     */
+    private final long loadSuccessCount;
+
+    /**
+     * Failed loads count.
+     */
+    private final long loadFailureCount;
+
+    /**
+     * Total load nanoseconds.
+     */
+    private final long totalLoadNanos;
+
+    /**
+     * Eviction counts by cause.
+     */
+    private final Map<EvictionCause, Long> evictionCounts;
+
+    /**
+     * Create a new instance.
+     *
+     * @param hitCount         target hits count
+     * @param missCount        target misses count
+     * @param loadSuccessCount target successful loads count
+     * @param loadFailureCount target failed loads count
+     * @param totalLoadNanos   target total load nanoseconds
+     * @param evictionCounts   target eviction counts by cause
+     */
+    StatsSnapshot(long hitCount,
+                  long missCount,
+                  long loadSuccessCount,
+                  long loadFailureCount,
+                  long totalLoadNanos,
+                  Map<EvictionCause, Long> evictionCounts) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadNanos = totalLoadNanos;
+        this.evictionCounts = new EnumMap<>(EvictionCause.class);
+        for (EvictionCause cause : EvictionCause.values()) {
+            this.evictionCounts.put(cause, evictionCounts.getOrDefault(cause, 0L));
+        }
+    }
+
+    /**
+     * Return hits count.
+     *
+     * @return hits count
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Return misses count.
+     *
+     * @return misses count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Return lookups count.
+     *
+     * @return hits and misses count
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Return hit rate.
+     *
+     * @return hits ratio to lookups or 1 if there were no lookups
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+
+        return requestCount == 0 ? 1 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * Return successful loads count.
+     *
+     * @return successful loads count
+     */
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Return failed loads count.
+     *
+     * @return failed loads count
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Return total load nanoseconds.
+     *
+     * @return total load nanoseconds
+     */
+    public long getTotalLoadNanos() {
+        return totalLoadNanos;
+    }
+
+    /**
+     * Return mean load time.
+     *
+     * @return mean load nanoseconds or zero if nothing was loaded
+     */
+    public double getAverageLoadPenaltyNanos() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+
+        return loadCount == 0 ? 0 : (double) totalLoadNanos / loadCount;
+    }
+
+    /**
+     * Return evictions count of cause.
+     *
+     * @param cause target eviction cause
+     * @return evictions count
+     */
+    public long getEvictionCount(EvictionCause cause) {
+        return evictionCounts.get(cause);
+    }
+
+    /**
+     * Return evictions count of all causes.
+     *
+     * @return evictions count
+     */
+    public long getEvictionCount() {
+        long sum = 0;
+
+        for (long count : evictionCounts.values()) {
+            sum += count;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Sum this and other statistics.
+     *
+     * @param other target other statistics
+     * @return sum
+     */
+    public StatsSnapshot plus(StatsSnapshot other) {
+        Map<EvictionCause, Long> sum = new EnumMap<>(EvictionCause.class);
+
+        for (EvictionCause cause : EvictionCause.values()) {
+            sum.put(cause, getEvictionCount(cause) + other.getEvictionCount(cause));
+        }
+
+        return new StatsSnapshot(
+                hitCount + other.hitCount,
+                missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount,
+                loadFailureCount + other.loadFailureCount,
+                totalLoadNanos + other.totalLoadNanos,
+                sum
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "StatsSnapshot{"
+                + "hitCount=" + hitCount
+                + ", missCount=" + missCount
+                + ", loadSuccessCount=" + loadSuccessCount
+                + ", loadFailureCount=" + loadFailureCount
+                + ", totalLoadNanos=" + totalLoadNanos
+                + ", evictionCounts=" + evictionCounts
+                + '}';
+    }
+}
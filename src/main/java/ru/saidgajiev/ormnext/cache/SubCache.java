@@ -0,0 +1,44 @@
+package ru.saidgajiev.ormnext.cache;
+
+/**
+ * Sub caches of {@link CacheLayer}.
+ *
+ * @author Said Gadjiev
+ */
+public enum SubCache {
+
+    /**
+     * Entity objects by id.
+     */
+    OBJECT,
+
+    /**
+     * Select statement list result ids.
+     */
+    LIST,
+
+    /**
+     * Limited select statement list result ids.
+     */
+    LIMITED_LIST,
+
+    /**
+     * Select statement long results.
+     */
+    LONG,
+
+    /**
+     * Count off results.
+     */
+    COUNT_OFF,
+
+    /**
+     * Exist results.
+     */
+    EXIST,
+
+    /**
+     * Query for all result ids.
+     */
+    QUERY_FOR_ALL
+}
@@ -0,0 +1,72 @@
+package ru.saidgajiev.ormnext.cache;
+
+/**
+ * JMX view of entity sub cache statistics.
+ *
+ * @author Said Gadjiev
+ */
+public interface SubCacheStatsMXBean {
+
+    /**
+     * Return hits count.
+     *
+     * @return hits count
+     */
+    long getHitCount();
+
+    /**
+     * Return misses count.
+     *
+     * @return misses count
+     */
+    long getMissCount();
+
+    /**
+     * Return hit rate.
+     *
+     * @return hits ratio to lookups
+     */
+    double getHitRate();
+
+    /**
+     * Return successful loads count.
+     *
+     * @return successful loads count
+     */
+    long getLoadSuccessCount();
+
+    /**
+     * Return failed loads count.
+     *
+     * @return failed loads count
+     */
+    long getLoadFailureCount();
+
+    /**
+     * Return mean load time.
+     *
+     * @return mean load nanoseconds
+     */
+    double getAverageLoadPenaltyNanos();
+
+    /**
+     * Return expired entries count.
+     *
+     * @return expired entries count
+     */
+    long getExpiredCount();
+
+    /**
+     * Return evicted by memory budget entries count.
+     *
+     * @return evicted entries count
+     */
+    long getBudgetEvictionCount();
+
+    /**
+     * Return discarded stale entries count.
+     *
+     * @return discarded entries count
+     */
+    long getStaleCount();
+}
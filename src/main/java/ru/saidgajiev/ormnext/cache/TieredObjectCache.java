@@ -0,0 +1,537 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.codec.EntityCodec;
+import ru.saidgajiev.ormnext.cache.codec.SerializableCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Two tier cache. Hot entities are kept on heap in LRU order, entities evicted from heap are spilled to
+ * {@link LogSegmentStore} on local disk and promoted back on read. Eviction only moves entity to pending tier, it is
+ * encoded and written by background thread which also compacts disk tier. Pending tier is bounded by heap size,
+ * entities evicted while it is full are spilled by request thread, so requests wait for disk writes only when
+ * background thread falls behind.
+ * <p>
+ * Disk tier survives restarts only if replay max age is given: on open records written within it with the same
+ * schema fingerprint of their entity type and codec are replayed, and {@link #close()} spills heap tier, so a
+ * restarted application starts with warm cache. By default disk tier is cleared on open. Entity which can't be
+ * decoded is removed from disk tier, reported to {@link EvictionListener} and treated as a miss.
+ * <p>
+ * Disk tier never holds a stale copy: put and invalidate append remove record of id if disk tier has it.
+ *
+ * @author Said Gadjiev
+ */
+public class TieredObjectCache implements BulkObjectCache, Closeable {
+
+    /**
+     * Default heap tier size per entity type.
+     */
+    private static final int DEFAULT_HEAP_SIZE = 1024;
+
+    /**
+     * Default segment size, 64 MiB.
+     */
+    private static final long DEFAULT_SEGMENT_SIZE = 1L << 26;
+
+    /**
+     * Heap tier initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Heap tier load factor.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Close timeout of background thread in seconds.
+     */
+    private static final long CLOSE_TIMEOUT = 30;
+
+    /**
+     * Heap tiers by entity type.
+     */
+    private final Map<Class<?>, Map<Object, Object>> heap = new ConcurrentHashMap<>();
+
+    /**
+     * Entities evicted from heap tier and not yet written to disk tier by entity type. Guarded by heap tier lock.
+     */
+    private final Map<Class<?>, Map<Object, Object>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Disk tier.
+     */
+    private final LogSegmentStore disk;
+
+    /**
+     * Entity codec.
+     */
+    private final EntityCodec codec;
+
+    /**
+     * Heap tier size per entity type.
+     */
+    private final int heapSize;
+
+    /**
+     * Background thread which spills pending entities and compacts disk tier.
+     */
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ormnext-cache-spill");
+
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    /**
+     * Maintenance is scheduled and not yet started.
+     */
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean();
+
+    /**
+     * Undecodable entries listener.
+     */
+    private volatile EvictionListener evictionListener = (entityType, id) -> { };
+
+    /**
+     * Create a new instance which replays disk tier records not older than max age.
+     *
+     * @param heapSize     target heap tier size per entity type
+     * @param directory    target disk tier directory
+     * @param segmentSize  target disk segment size, it must fit int
+     * @param codec        target entity codec
+     * @param replayMaxAge target max age of replayed records, non positive clears disk tier on open
+     * @param unit         target max age unit
+     * @throws java.io.UncheckedIOException if disk tier can't be opened
+     */
+    public TieredObjectCache(int heapSize,
+                             Path directory,
+                             long segmentSize,
+                             EntityCodec codec,
+                             long replayMaxAge,
+                             TimeUnit unit) {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be positive int");
+        }
+        this.heapSize = heapSize;
+        this.codec = codec;
+        this.disk = new LogSegmentStore(
+                directory,
+                segmentSize,
+                unit.toMillis(replayMaxAge),
+                entityType -> CacheSnapshot.fingerprint(Collections.singleton(entityType), codec)
+        );
+    }
+
+    /**
+     * Create a new instance which clears disk tier on open.
+     *
+     * @param heapSize    target heap tier size per entity type
+     * @param directory   target disk tier directory
+     * @param segmentSize target disk segment size, it must fit int
+     * @param codec       target entity codec
+     * @throws java.io.UncheckedIOException if disk tier can't be opened
+     */
+    public TieredObjectCache(int heapSize, Path directory, long segmentSize, EntityCodec codec) {
+        this(heapSize, directory, segmentSize, codec, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new instance with default heap size, segment size and {@link SerializableCodec}. Disk tier is
+     * cleared on open.
+     *
+     * @param directory target disk tier directory
+     * @throws java.io.UncheckedIOException if disk tier can't be opened
+     */
+    public TieredObjectCache(Path directory) {
+        this(DEFAULT_HEAP_SIZE, directory, DEFAULT_SEGMENT_SIZE, new SerializableCodec());
+    }
+
+    /**
+     * Return disk tier size.
+     *
+     * @return size in bytes
+     */
+    public long getDiskSize() {
+        return disk.getDiskSize();
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    @Override
+    public void registerClass(Class<?> tClass) {
+        pending.computeIfAbsent(tClass, k -> new ConcurrentHashMap<>());
+        heap.computeIfAbsent(tClass, k -> createHeapTier(k));
+    }
+
+    @Override
+    public void put(Class<?> tClass, Object id, Object data) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+
+        if (heapTier == null) {
+            return;
+        }
+        synchronized (heapTier) {
+            pending.get(tClass).remove(id);
+            disk.remove(tClass, id);
+            heapTier.put(id, data);
+        }
+        scheduleMaintenance();
+    }
+
+    @Override
+    public Object get(Class<?> tClass, Object id) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+
+        if (heapTier == null) {
+            return null;
+        }
+        synchronized (heapTier) {
+            Object object = heapTier.get(id);
+
+            if (object == null) {
+                object = pending.get(tClass).remove(id);
+                if (object != null) {
+                    heapTier.put(id, object);
+                }
+            }
+            if (object != null) {
+                return object;
+            }
+        }
+        LogSegmentStore.Location location = disk.locate(tClass, id);
+        Object object = decode(tClass, id, location);
+
+        if (object == null) {
+            return null;
+        }
+        synchronized (heapTier) {
+            if (!heapTier.containsKey(id) && disk.locate(tClass, id) == location) {
+                heapTier.put(id, object);
+            }
+        }
+
+        return object;
+    }
+
+    @Override
+    public Collection<Object> getAll(Class<?> tClass) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+        List<Object> result = new ArrayList<>();
+
+        if (heapTier == null) {
+            return result;
+        }
+        Map<Object, Object> pendingTier = pending.get(tClass);
+        List<Object> diskIds;
+
+        synchronized (heapTier) {
+            result.addAll(heapTier.values());
+            result.addAll(pendingTier.values());
+            diskIds = new ArrayList<>();
+            for (Object id : disk.ids(tClass)) {
+                if (!heapTier.containsKey(id) && !pendingTier.containsKey(id)) {
+                    diskIds.add(id);
+                }
+            }
+        }
+        for (Object id : diskIds) {
+            Object object = decode(tClass, id, disk.locate(tClass, id));
+
+            if (object != null) {
+                result.add(object);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean contains(Class<?> tClass, Object id) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+
+        if (heapTier == null) {
+            return false;
+        }
+        synchronized (heapTier) {
+            return heapTier.containsKey(id) || pending.get(tClass).containsKey(id) || disk.contains(tClass, id);
+        }
+    }
+
+    @Override
+    public void invalidate(Class<?> tClass, Object id) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+
+        if (heapTier == null) {
+            return;
+        }
+        synchronized (heapTier) {
+            heapTier.remove(id);
+            pending.get(tClass).remove(id);
+            disk.remove(tClass, id);
+        }
+        scheduleMaintenance();
+    }
+
+    /**
+     * Invalidate object if it is still cached under id. Heap and pending tier object is compared by identity, disk
+     * tier keeps serialized copy which can't be compared, so it is invalidated unconditionally.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @param data   target evicted object or null if it is garbage collected
+     */
+    @Override
+    public void invalidate(Class<?> tClass, Object id, Object data) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+
+        if (heapTier == null) {
+            return;
+        }
+        Map<Object, Object> pendingTier = pending.get(tClass);
+
+        synchronized (heapTier) {
+            Object cached = heapTier.get(id);
+
+            if (cached == null) {
+                cached = pendingTier.get(id);
+                if (cached == null) {
+                    disk.remove(tClass, id);
+                } else if (cached == data) {
+                    pendingTier.remove(id);
+                }
+            } else if (cached == data) {
+                heapTier.remove(id);
+            }
+        }
+        scheduleMaintenance();
+    }
+
+    @Override
+    public void invalidateAll(Class<?> tClass) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+
+        if (heapTier == null) {
+            return;
+        }
+        synchronized (heapTier) {
+            heapTier.clear();
+            pending.get(tClass).clear();
+            disk.removeAll(tClass);
+        }
+        scheduleMaintenance();
+    }
+
+    @Override
+    public void invalidateAll() {
+        heap.forEach((tClass, heapTier) -> invalidateAll(tClass));
+    }
+
+    @Override
+    public void clear() {
+        heap.clear();
+        pending.clear();
+        disk.clear();
+    }
+
+    @Override
+    public long size(Class<?> tClass) {
+        Map<Object, Object> heapTier = heap.get(tClass);
+
+        if (heapTier == null) {
+            return 0;
+        }
+        synchronized (heapTier) {
+            long size = disk.ids(tClass).size();
+
+            for (Object id : heapTier.keySet()) {
+                if (!disk.contains(tClass, id)) {
+                    ++size;
+                }
+            }
+            for (Object id : pending.get(tClass).keySet()) {
+                if (!disk.contains(tClass, id)) {
+                    ++size;
+                }
+            }
+
+            return size;
+        }
+    }
+
+    /**
+     * Stop background thread, spill pending and heap tiers to disk and close disk tier.
+     *
+     * @throws IOException if disk tier can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for (Map.Entry<Class<?>, Map<Object, Object>> entry : heap.entrySet()) {
+            Map<Object, Object> heapTier = entry.getValue();
+            Map<Object, Object> pendingTier = pending.get(entry.getKey());
+
+            synchronized (heapTier) {
+                for (Map.Entry<Object, Object> object : pendingTier.entrySet()) {
+                    spill(entry.getKey(), object.getKey(), object.getValue());
+                }
+                pendingTier.clear();
+                for (Map.Entry<Object, Object> object : heapTier.entrySet()) {
+                    spill(entry.getKey(), object.getKey(), object.getValue());
+                }
+            }
+        }
+        disk.close();
+    }
+
+    /**
+     * Spill pending entities to disk and compact disk tier. Entities are encoded outside of heap tier lock.
+     */
+    void maintain() {
+        maintenanceScheduled.set(false);
+        for (Map.Entry<Class<?>, Map<Object, Object>> entry : heap.entrySet()) {
+            Class<?> tClass = entry.getKey();
+            Map<Object, Object> heapTier = entry.getValue();
+            Map<Object, Object> pendingTier = pending.get(tClass);
+
+            for (Object id : new ArrayList<>(pendingTier.keySet())) {
+                Object object = pendingTier.get(id);
+
+                if (object == null) {
+                    continue;
+                }
+                byte[] bytes;
+
+                try {
+                    bytes = codec.encode(object);
+                } catch (IllegalArgumentException ex) {
+                    synchronized (heapTier) {
+                        if (pendingTier.get(id) == object) {
+                            pendingTier.remove(id);
+                            evictionListener.onEviction(tClass, id);
+                        }
+                    }
+                    continue;
+                }
+                synchronized (heapTier) {
+                    if (pendingTier.get(id) == object) {
+                        pendingTier.remove(id);
+                        if (!disk.contains(tClass, id)) {
+                            disk.write(tClass, id, bytes);
+                        }
+                    }
+                }
+            }
+        }
+        disk.compact();
+    }
+
+    /**
+     * Schedule maintenance on background thread unless it is already scheduled or cache is closed.
+     */
+    private void scheduleMaintenance() {
+        if (maintenanceScheduled.compareAndSet(false, true)) {
+            try {
+                maintenance.execute(this::maintain);
+            } catch (RejectedExecutionException ex) {
+                maintenanceScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Read and decode entity from disk. Entity which can't be decoded is removed from disk.
+     *
+     * @param tClass   target entity type
+     * @param id       target id
+     * @param location target record location
+     * @return entity or null if disk doesn't have it
+     */
+    private Object decode(Class<?> tClass, Object id, LogSegmentStore.Location location) {
+        byte[] bytes = location == null ? null : disk.read(location);
+
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return codec.decode(tClass, bytes);
+        } catch (IllegalArgumentException ex) {
+            Map<Object, Object> heapTier = heap.get(tClass);
+
+            if (heapTier != null) {
+                synchronized (heapTier) {
+                    if (disk.locate(tClass, id) == location) {
+                        disk.remove(tClass, id);
+                        evictionListener.onEviction(tClass, id);
+                    }
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Create heap tier which moves eldest entry to pending tier or spills it if pending tier is full.
+     *
+     * @param tClass target entity type
+     * @return LRU map
+     */
+    private Map<Object, Object> createHeapTier(Class<?> tClass) {
+        Map<Object, Object> pendingTier = pending.get(tClass);
+
+        return new LinkedHashMap<Object, Object>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                if (size() > heapSize) {
+                    if (pendingTier.size() < heapSize) {
+                        pendingTier.put(eldest.getKey(), eldest.getValue());
+                        scheduleMaintenance();
+                    } else {
+                        spill(tClass, eldest.getKey(), eldest.getValue());
+                    }
+
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Write entity to disk unless disk already has it.
+     *
+     * @param tClass target entity type
+     * @param id     target id
+     * @param object target entity
+     */
+    private void spill(Class<?> tClass, Object id, Object object) {
+        if (!disk.contains(tClass, id)) {
+            disk.write(tClass, id, codec.encode(object));
+        }
+    }
+}
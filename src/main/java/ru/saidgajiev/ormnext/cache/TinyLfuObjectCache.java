@@ -0,0 +1,648 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgajiev.ormnext.cache.commons.FrequencySketch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent cache with W-TinyLFU eviction algorithm. Entries are stored in {@link ConcurrentHashMap},
+ * reads are recorded to striped lossy buffers and replayed against the policy by a single thread which
+ * holds the eviction lock, so {@link #get(Class, Object)} never blocks. New entries go to a small LRU window
+ * and are admitted to the main segmented LRU only if their frequency estimated by {@link FrequencySketch}
+ * is higher than the frequency of the main space victim.
+ *
+ * @author Said Gadjiev
+ */
+public class TinyLfuObjectCache implements BulkObjectCache {
+
+    /**
+     * Default cache size.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 16;
+
+    /**
+     * Window size percent of max size.
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Protected segment percent of main space.
+     */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * Percent base.
+     */
+    private static final int PERCENTS = 100;
+
+    /**
+     * Cached classes map.
+     */
+    private final Map<Class<?>, Region> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Max cache size per class.
+     */
+    private final int maxSize;
+
+    /**
+     * Evicted by policy entries listener.
+     */
+    private volatile EvictionListener evictionListener = (entityType, id) -> { };
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxSize target max size
+     */
+    public TinyLfuObjectCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Create a new instance with default max size.
+     */
+    public TinyLfuObjectCache() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    @Override
+    public void registerClass(Class<?> tClass) {
+        cache.computeIfAbsent(tClass, this::createRegion);
+    }
+
+    @Override
+    public void put(Class<?> tClass, Object id, Object data) {
+        Region region = cache.get(tClass);
+
+        if (region != null) {
+            region.put(id, data);
+        }
+    }
+
+    @Override
+    public Object get(Class<?> tClass, Object id) {
+        Region region = cache.get(tClass);
+
+        if (region == null) {
+            return null;
+        }
+
+        return region.get(id);
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Class<?> tClass, Collection<?> ids) {
+        Region region = cache.get(tClass);
+        Map<Object, Object> result = new HashMap<>();
+
+        if (region == null) {
+            return result;
+        }
+        for (Object id : ids) {
+            Object object = region.get(id);
+
+            if (object != null) {
+                result.put(id, object);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(Class<?> tClass, Map<?, ?> objects) {
+        Region region = cache.get(tClass);
+
+        if (region != null) {
+            objects.forEach(region::put);
+        }
+    }
+
+    @Override
+    public Collection<Object> getAll(Class<?> tClass) {
+        Region region = cache.get(tClass);
+
+        if (region == null) {
+            return Collections.emptyList();
+        }
+        List<Object> result = new ArrayList<>();
+
+        for (Node node : region.data.values()) {
+            result.add(node.value);
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean contains(Class<?> tClass, Object id) {
+        Region region = cache.get(tClass);
+
+        return region != null && region.data.containsKey(id);
+    }
+
+    @Override
+    public void invalidate(Class<?> tClass, Object id) {
+        Region region = cache.get(tClass);
+
+        if (region == null) {
+            return;
+        }
+        region.remove(id);
+    }
+
+    @Override
+    public void invalidateAll(Class<?> tClass) {
+        cache.computeIfPresent(tClass, (key, value) -> createRegion(key));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.replaceAll((key, value) -> createRegion(key));
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    @Override
+    public long size(Class<?> tClass) {
+        Region region = cache.get(tClass);
+
+        if (region == null) {
+            return 0;
+        }
+
+        return region.data.size();
+    }
+
+    /**
+     * Create empty entity cache.
+     *
+     * @param tClass target entity type
+     * @return entity cache
+     */
+    private Region createRegion(Class<?> tClass) {
+        return new Region(maxSize, id -> evictionListener.onEviction(tClass, id));
+    }
+
+    /**
+     * Cache of one entity type.
+     */
+    private static final class Region {
+
+        /**
+         * Cached entries.
+         */
+        private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<>();
+
+        /**
+         * Striped read buffer.
+         */
+        private final ReadBuffer<Node> readBuffer = new ReadBuffer<>();
+
+        /**
+         * Pending policy updates of writes.
+         */
+        private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Lock of single policy maintainer.
+         */
+        private final ReentrantLock evictionLock = new ReentrantLock();
+
+        /**
+         * Window LRU.
+         */
+        private final NodeDeque window = new NodeDeque();
+
+        /**
+         * Main space probation segment.
+         */
+        private final NodeDeque probation = new NodeDeque();
+
+        /**
+         * Main space protected segment.
+         */
+        private final NodeDeque protectedSegment = new NodeDeque();
+
+        /**
+         * Frequency sketch.
+         */
+        private final FrequencySketch sketch;
+
+        /**
+         * Max entries count.
+         */
+        private final int maximum;
+
+        /**
+         * Max window entries count.
+         */
+        private final int windowMaximum;
+
+        /**
+         * Max protected entries count.
+         */
+        private final int protectedMaximum;
+
+        /**
+         * Evicted by policy ids listener.
+         */
+        private final Consumer<Object> evictionListener;
+
+        /**
+         * Create a new instance.
+         *
+         * @param maximum          target max entries count
+         * @param evictionListener target evicted ids listener
+         */
+        private Region(int maximum, Consumer<Object> evictionListener) {
+            this.maximum = maximum;
+            this.evictionListener = evictionListener;
+            this.windowMaximum = Math.max(1, maximum * WINDOW_PERCENT / PERCENTS);
+            this.protectedMaximum = (maximum - windowMaximum) * PROTECTED_PERCENT / PERCENTS;
+            this.sketch = new FrequencySketch(maximum);
+        }
+
+        /**
+         * Retrieve value and record access.
+         *
+         * @param id target id
+         * @return value or null
+         */
+        private Object get(Object id) {
+            Node node = data.get(id);
+
+            if (node == null) {
+                return null;
+            }
+            if (!readBuffer.offer(node)) {
+                drain();
+            }
+
+            return node.value;
+        }
+
+        /**
+         * Put value and schedule policy update.
+         *
+         * @param id    target id
+         * @param value target value
+         */
+        private void put(Object id, Object value) {
+            Node[] added = new Node[1];
+            Node node = data.compute(id, (key, prior) -> {
+                if (prior == null) {
+                    added[0] = new Node(key, value);
+
+                    return added[0];
+                }
+                prior.value = value;
+
+                return prior;
+            });
+
+            if (added[0] == null) {
+                afterWrite(() -> onAccess(node));
+            } else {
+                afterWrite(() -> onAdd(node));
+            }
+        }
+
+        /**
+         * Remove value and schedule policy update.
+         *
+         * @param id target id
+         */
+        private void remove(Object id) {
+            Node node = data.remove(id);
+
+            if (node != null) {
+                afterWrite(() -> onRemove(node));
+            }
+        }
+
+        /**
+         * Enqueue write task and run maintenance.
+         *
+         * @param task target task
+         */
+        private void afterWrite(Runnable task) {
+            writeBuffer.add(task);
+            drain();
+        }
+
+        /**
+         * Run maintenance if no other thread does it. The thread which holds the lock rechecks
+         * write buffer after unlock so tasks enqueued during its maintenance are not lost.
+         */
+        private void drain() {
+            do {
+                if (!evictionLock.tryLock()) {
+                    return;
+                }
+                try {
+                    readBuffer.drainTo(this::onAccess);
+                    Runnable task;
+
+                    while ((task = writeBuffer.poll()) != null) {
+                        task.run();
+                    }
+                    evict();
+                } finally {
+                    evictionLock.unlock();
+                }
+            } while (!writeBuffer.isEmpty());
+        }
+
+        /**
+         * Link added node to window.
+         *
+         * @param node target node
+         */
+        private void onAdd(Node node) {
+            if (node.queue != Node.NONE) {
+                return;
+            }
+            sketch.increment(node.key);
+            window.addLast(node);
+            node.queue = Node.WINDOW;
+        }
+
+        /**
+         * Update policy on node access.
+         *
+         * @param node target node
+         */
+        private void onAccess(Node node) {
+            sketch.increment(node.key);
+
+            switch (node.queue) {
+                case Node.WINDOW:
+                    window.moveToBack(node);
+                    break;
+                case Node.PROBATION:
+                    probation.remove(node);
+                    protectedSegment.addLast(node);
+                    node.queue = Node.PROTECTED;
+
+                    while (protectedSegment.size > protectedMaximum) {
+                        Node demoted = protectedSegment.pollFirst();
+
+                        probation.addLast(demoted);
+                        demoted.queue = Node.PROBATION;
+                    }
+                    break;
+                case Node.PROTECTED:
+                    protectedSegment.moveToBack(node);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Unlink removed node.
+         *
+         * @param node target node
+         */
+        private void onRemove(Node node) {
+            unlink(node);
+            node.queue = Node.DEAD;
+        }
+
+        /**
+         * Move window overflow to probation and evict entries while size exceeds maximum.
+         * Newest probation entry is candidate, oldest is victim, the less frequent of them is evicted.
+         */
+        private void evict() {
+            while (window.size > windowMaximum) {
+                Node node = window.pollFirst();
+
+                probation.addLast(node);
+                node.queue = Node.PROBATION;
+            }
+            while (window.size + probation.size + protectedSegment.size > maximum) {
+                Node victim = probation.first;
+                Node candidate = probation.last;
+
+                if (victim == null) {
+                    victim = protectedSegment.size > 0 ? protectedSegment.first : window.first;
+                    evictNode(victim);
+                } else if (victim == candidate || sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    evictNode(victim);
+                } else {
+                    evictNode(candidate);
+                }
+            }
+        }
+
+        /**
+         * Evict node from policy and data.
+         *
+         * @param node target node
+         */
+        private void evictNode(Node node) {
+            unlink(node);
+            node.queue = Node.DEAD;
+            if (data.remove(node.key, node)) {
+                evictionListener.accept(node.key);
+            }
+        }
+
+        /**
+         * Unlink node from its deque.
+         *
+         * @param node target node
+         */
+        private void unlink(Node node) {
+            switch (node.queue) {
+                case Node.WINDOW:
+                    window.remove(node);
+                    break;
+                case Node.PROBATION:
+                    probation.remove(node);
+                    break;
+                case Node.PROTECTED:
+                    protectedSegment.remove(node);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Node {
+
+        /**
+         * Node is not linked yet.
+         */
+        private static final int NONE = 0;
+
+        /**
+         * Node in window.
+         */
+        private static final int WINDOW = 1;
+
+        /**
+         * Node in probation segment.
+         */
+        private static final int PROBATION = 2;
+
+        /**
+         * Node in protected segment.
+         */
+        private static final int PROTECTED = 3;
+
+        /**
+         * Node is removed.
+         */
+        private static final int DEAD = 4;
+
+        /**
+         * Entry key.
+         */
+        private final Object key;
+
+        /**
+         * Entry value.
+         */
+        private volatile Object value;
+
+        /**
+         * Current queue. Guarded by eviction lock.
+         */
+        private int queue = NONE;
+
+        /**
+         * Previous node. Guarded by eviction lock.
+         */
+        private Node prev;
+
+        /**
+         * Next node. Guarded by eviction lock.
+         */
+        private Node next;
+
+        /**
+         * Create a new instance.
+         *
+         * @param key   target key
+         * @param value target value
+         */
+        private Node(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list of nodes. Not thread safe.
+     */
+    private static final class NodeDeque {
+
+        /**
+         * Head.
+         */
+        private Node first;
+
+        /**
+         * Tail.
+         */
+        private Node last;
+
+        /**
+         * Nodes count.
+         */
+        private int size;
+
+        /**
+         * Append node.
+         *
+         * @param node target node
+         */
+        private void addLast(Node node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            ++size;
+        }
+
+        /**
+         * Remove and return head.
+         *
+         * @return head node or null
+         */
+        private Node pollFirst() {
+            Node node = first;
+
+            if (node != null) {
+                remove(node);
+            }
+
+            return node;
+        }
+
+        /**
+         * Unlink node.
+         *
+         * @param node target node
+         */
+        private void remove(Node node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            --size;
+        }
+
+        /**
+         * Move node to tail.
+         *
+         * @param node target node
+         */
+        private void moveToBack(Node node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+}
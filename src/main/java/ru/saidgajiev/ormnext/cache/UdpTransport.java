@@ -0,0 +1,148 @@
+package ru.saidgajiev.ormnext.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * UDP {@link InvalidationTransport}. Every message is one datagram sent to each peer address. A multicast peer
+ * address is joined, so one datagram reaches all nodes of the group; unicast peers let nodes talk without
+ * multicast routing. Datagrams may be lost, {@link InvalidationBus} detects it by sequence numbers.
+ *
+ * @author Said Gadjiev
+ */
+public class UdpTransport implements InvalidationTransport {
+
+    /**
+     * Max UDP payload size.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /**
+     * Socket.
+     */
+    private final MulticastSocket socket;
+
+    /**
+     * Peer addresses.
+     */
+    private final List<InetSocketAddress> peers;
+
+    /**
+     * Receiver thread. Null until started.
+     */
+    private Thread receiverThread;
+
+    /**
+     * Receiver failures count.
+     */
+    private final LongAdder receiverFailureCount = new LongAdder();
+
+    /**
+     * Create a new instance.
+     *
+     * @param bindAddress target local address
+     * @param peers       target peer unicast or multicast addresses
+     * @throws IOException if socket can't be bound or multicast group can't be joined
+     */
+    public UdpTransport(InetSocketAddress bindAddress, Collection<InetSocketAddress> peers) throws IOException {
+        this.peers = new ArrayList<>(peers);
+        this.socket = new MulticastSocket(null);
+        try {
+            socket.setReuseAddress(true);
+            socket.bind(bindAddress);
+            for (InetSocketAddress peer : this.peers) {
+                if (peer.getAddress().isMulticastAddress()) {
+                    socket.joinGroup(peer.getAddress());
+                }
+            }
+        } catch (IOException ex) {
+            socket.close();
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Return bound local address.
+     *
+     * @return local address
+     */
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    /**
+     * Return count of received messages which receiver failed with unchecked exception.
+     *
+     * @return failures count
+     */
+    public long getReceiverFailureCount() {
+        return receiverFailureCount.sum();
+    }
+
+    @Override
+    public synchronized void start(Consumer<byte[]> receiver) {
+        if (receiverThread != null) {
+            throw new IllegalStateException("Transport is already started");
+        }
+        receiverThread = new Thread(() -> receive(receiver), "ormnext-invalidation-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        if (message.length > MAX_DATAGRAM_SIZE) {
+            throw new IOException("Message size " + message.length + " exceeds datagram size");
+        }
+        for (InetSocketAddress peer : peers) {
+            socket.send(new DatagramPacket(message, message.length, peer));
+        }
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return MAX_DATAGRAM_SIZE;
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    /**
+     * Receive datagrams until socket is closed. Receiver failure is counted and does not stop receiving.
+     *
+     * @param receiver target messages receiver
+     */
+    private void receive(Consumer<byte[]> receiver) {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+            try {
+                socket.receive(packet);
+            } catch (SocketException ex) {
+                return;
+            } catch (IOException ex) {
+                continue;
+            }
+            try {
+                receiver.accept(Arrays.copyOfRange(buffer, packet.getOffset(),
+                        packet.getOffset() + packet.getLength()));
+            } catch (RuntimeException ex) {
+                receiverFailureCount.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.saidgajiev.ormnext.cache;
+
+/**
+ * Estimates memory weight of {@link CacheLayer} entries for {@link MemoryBudget}.
+ *
+ * @author Said Gadjiev
+ */
+@FunctionalInterface
+public interface Weigher {
+
+    /**
+     * Return entry weight. Weight of an entry must not change while it is cached.
+     *
+     * @param subCache   target sub cache
+     * @param entityType target entity type
+     * @param key        target entry key
+     * @param value      target entry value, it is object for {@link SubCache#OBJECT}, id list for
+     *                   {@link SubCache#LIST}, {@link SubCache#LIMITED_LIST} and {@link SubCache#QUERY_FOR_ALL},
+     *                   long for {@link SubCache#LONG} and {@link SubCache#COUNT_OFF}, boolean for
+     *                   {@link SubCache#EXIST}
+     * @return non negative weight
+     */
+    long weigh(SubCache subCache, Class<?> entityType, Object key, Object value);
+}
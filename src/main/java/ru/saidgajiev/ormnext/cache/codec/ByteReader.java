@@ -0,0 +1,197 @@
+package ru.saidgajiev.ormnext.cache.codec;
+
+import java.util.Arrays;
+
+/**
+ * Reads bytes written by {@link ByteWriter}.
+ *
+ * @author Said Gadjiev
+ */
+public final class ByteReader {
+
+    /**
+     * Varint payload bits per byte.
+     */
+    private static final int VARINT_SHIFT = 7;
+
+    /**
+     * Varint payload mask.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Varint continuation bit.
+     */
+    private static final int VARINT_CONTINUE = 0x80;
+
+    /**
+     * Byte bits.
+     */
+    private static final int BYTE_SHIFT = 8;
+
+    /**
+     * Byte mask.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Source bytes.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Read position.
+     */
+    private int position;
+
+    /**
+     * Create a new instance.
+     *
+     * @param buffer target source bytes
+     */
+    public ByteReader(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Read unsigned byte.
+     *
+     * @return byte value
+     */
+    public int readByte() {
+        check(1);
+
+        return buffer[position++] & BYTE_MASK;
+    }
+
+    /**
+     * Read unsigned varint.
+     *
+     * @return value
+     */
+    public long readVarLong() {
+        long value = 0;
+
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_SHIFT) {
+            int next = readByte();
+
+            value |= (long) (next & VARINT_MASK) << shift;
+            if ((next & VARINT_CONTINUE) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint at " + position);
+    }
+
+    /**
+     * Read zig-zag varint.
+     *
+     * @return signed value
+     */
+    public long readZigZag() {
+        long value = readVarLong();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read fixed 8 bytes.
+     *
+     * @return value
+     */
+    public long readFixedLong() {
+        check(Long.BYTES);
+        long value = 0;
+
+        for (int i = 0; i < Long.BYTES; i++) {
+            value |= (long) (buffer[position++] & BYTE_MASK) << (i * BYTE_SHIFT);
+        }
+
+        return value;
+    }
+
+    /**
+     * Read fixed 4 bytes.
+     *
+     * @return value
+     */
+    public int readFixedInt() {
+        check(Integer.BYTES);
+        int value = 0;
+
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value |= (buffer[position++] & BYTE_MASK) << (i * BYTE_SHIFT);
+        }
+
+        return value;
+    }
+
+    /**
+     * Read length prefixed bytes.
+     *
+     * @return bytes
+     */
+    public byte[] readBytes() {
+        long length = readVarLong();
+
+        if (length < 0 || length > buffer.length - position) {
+            throw new IllegalArgumentException("Malformed length " + length + " at " + position);
+        }
+        int from = position;
+
+        position += (int) length;
+
+        return Arrays.copyOfRange(buffer, from, position);
+    }
+
+    /**
+     * Read value written by {@link ByteWriter#writeValue(Object)}.
+     *
+     * @return value or null
+     * @throws IllegalArgumentException if tag is unknown
+     */
+    public Object readValue() {
+        int tag = readByte();
+
+        if (tag == 0) {
+            return null;
+        }
+        CompactCodec.ValueType[] valueTypes = CompactCodec.ValueType.values();
+
+        if (tag > valueTypes.length || valueTypes[tag - 1] == CompactCodec.ValueType.ENUM) {
+            throw new IllegalArgumentException("Unknown value tag " + tag + " at " + position);
+        }
+
+        return valueTypes[tag - 1].read(this, null);
+    }
+
+    /**
+     * Return unread bytes count.
+     *
+     * @return count
+     */
+    public int remaining() {
+        return buffer.length - position;
+    }
+
+    /**
+     * Check if all bytes are read.
+     *
+     * @return true if nothing left
+     */
+    public boolean isExhausted() {
+        return position == buffer.length;
+    }
+
+    /**
+     * Throw if buffer has less bytes than requested.
+     *
+     * @param count target bytes count
+     */
+    private void check(int count) {
+        if (position + count > buffer.length) {
+            throw new IllegalArgumentException("Unexpected end of bytes at " + position);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package ru.saidgajiev.ormnext.cache.codec;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with varint encoding. Tagged values of {@link CompactCodec} column types are written with
+ * their type, so they are read back without schema.
+ *
+ * @author Said Gadjiev
+ */
+public final class ByteWriter {
+
+    /**
+     * Initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Varint payload bits per byte.
+     */
+    private static final int VARINT_SHIFT = 7;
+
+    /**
+     * Varint payload mask.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Varint continuation bit.
+     */
+    private static final int VARINT_CONTINUE = 0x80;
+
+    /**
+     * Byte bits.
+     */
+    private static final int BYTE_SHIFT = 8;
+
+    /**
+     * Written bytes.
+     */
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Written bytes count.
+     */
+    private int size;
+
+    /**
+     * Reserve bytes and return their offset.
+     *
+     * @param count target bytes count
+     * @return offset of reserved bytes
+     */
+    int reserve(int count) {
+        ensure(count);
+        int offset = size;
+
+        size += count;
+
+        return offset;
+    }
+
+    /**
+     * Set reserved byte.
+     *
+     * @param offset target offset
+     * @param value  target value
+     */
+    void set(int offset, int value) {
+        buffer[offset] = (byte) value;
+    }
+
+    /**
+     * Write byte.
+     *
+     * @param value target value
+     */
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Write unsigned varint.
+     *
+     * @param value target value
+     */
+    public void writeVarLong(long value) {
+        ensure(Long.BYTES + 2);
+        long remaining = value;
+
+        while ((remaining & ~VARINT_MASK) != 0) {
+            buffer[size++] = (byte) ((remaining & VARINT_MASK) | VARINT_CONTINUE);
+            remaining >>>= VARINT_SHIFT;
+        }
+        buffer[size++] = (byte) remaining;
+    }
+
+    /**
+     * Write signed value as zig-zag varint.
+     *
+     * @param value target value
+     */
+    public void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> (Long.SIZE - 1)));
+    }
+
+    /**
+     * Write fixed 8 bytes.
+     *
+     * @param value target value
+     */
+    public void writeFixedLong(long value) {
+        ensure(Long.BYTES);
+        for (int i = 0; i < Long.BYTES; i++) {
+            buffer[size++] = (byte) (value >>> (i * BYTE_SHIFT));
+        }
+    }
+
+    /**
+     * Write fixed 4 bytes.
+     *
+     * @param value target value
+     */
+    public void writeFixedInt(int value) {
+        ensure(Integer.BYTES);
+        for (int i = 0; i < Integer.BYTES; i++) {
+            buffer[size++] = (byte) (value >>> (i * BYTE_SHIFT));
+        }
+    }
+
+    /**
+     * Write length prefixed bytes.
+     *
+     * @param bytes target bytes
+     */
+    public void writeBytes(byte[] bytes) {
+        writeVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Check if value can be written by {@link #writeValue(Object)}.
+     *
+     * @param value target value
+     * @return true if value is null or of column type other than enum
+     */
+    public static boolean isValue(Object value) {
+        return value == null || CompactCodec.ValueType.ofValue(value) != null;
+    }
+
+    /**
+     * Write tagged value: zero for null, otherwise type tag followed by value.
+     *
+     * @param value target value
+     * @throws IllegalArgumentException if value type is not supported
+     */
+    public void writeValue(Object value) {
+        if (value == null) {
+            writeByte(0);
+
+            return;
+        }
+        CompactCodec.ValueType valueType = CompactCodec.ValueType.ofValue(value);
+
+        if (valueType == null) {
+            throw new IllegalArgumentException("Unsupported value type " + value.getClass());
+        }
+        writeByte(valueType.ordinal() + 1);
+        valueType.write(this, value);
+    }
+
+    /**
+     * Return written bytes.
+     *
+     * @return copy of written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Grow buffer if it can't fit more bytes.
+     *
+     * @param count target more bytes count
+     */
+    private void ensure(int count) {
+        if (size + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + count));
+        }
+    }
+}
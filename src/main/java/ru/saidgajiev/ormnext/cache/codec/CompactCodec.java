@@ -0,0 +1,671 @@
+package ru.saidgajiev.ormnext.cache.codec;
+
+import ru.saidgadjiev.ormnext.core.field.DatabaseColumn;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Compact binary codec of {@link DatabaseColumn} fields. Layout is a null bitmap followed by non null column values:
+ * integral numbers are zig-zag varints, strings are length prefixed UTF-8, enums are ordinals. Column accessors are
+ * resolved once per entity type, so encoding does no reflection per field. Public bean getters and setters of public
+ * entity types are bound by {@link LambdaMetafactory} to plain functions which JIT inlines like direct calls, other
+ * columns are accessed by field method handles. Entities need a no args constructor and non final column fields.
+ *
+ * @author Said Gadjiev
+ */
+public class CompactCodec implements EntityCodec {
+
+    /**
+     * Bitmap bits per byte.
+     */
+    private static final int BITS_PER_BYTE = 8;
+
+    /**
+     * Entity schemas.
+     */
+    private static final ClassValue<Schema> SCHEMAS = new ClassValue<Schema>() {
+        @Override
+        protected Schema computeValue(Class<?> type) {
+            return new Schema(type);
+        }
+    };
+
+    @Override
+    public byte[] encode(Object entity) {
+        Schema schema = SCHEMAS.get(entity.getClass());
+        Column[] columns = schema.columns;
+        ByteWriter writer = new ByteWriter();
+        int bitmap = writer.reserve(schema.bitmapSize);
+
+        try {
+            int nulls = 0;
+
+            for (int i = 0; i < columns.length; i++) {
+                Object value = columns[i].getter.apply(entity);
+
+                if (value == null) {
+                    nulls |= 1 << (i % BITS_PER_BYTE);
+                } else {
+                    columns[i].valueType.write(writer, value);
+                }
+                if (i % BITS_PER_BYTE == BITS_PER_BYTE - 1 || i == columns.length - 1) {
+                    writer.set(bitmap + i / BITS_PER_BYTE, nulls);
+                    nulls = 0;
+                }
+            }
+        } catch (Throwable ex) {
+            throw new IllegalArgumentException("Can't encode " + entity.getClass(), ex);
+        }
+
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Object decode(Class<?> entityType, byte[] bytes) {
+        Schema schema = SCHEMAS.get(entityType);
+        Column[] columns = schema.columns;
+        ByteReader reader = new ByteReader(bytes);
+
+        try {
+            int[] bitmap = new int[schema.bitmapSize];
+
+            for (int i = 0; i < bitmap.length; i++) {
+                bitmap[i] = reader.readByte();
+            }
+            Object entity = (Object) schema.constructor.invokeExact();
+
+            for (int i = 0; i < columns.length; i++) {
+                if ((bitmap[i / BITS_PER_BYTE] & (1 << (i % BITS_PER_BYTE))) == 0) {
+                    Column column = columns[i];
+
+                    column.setter.accept(entity, column.valueType.read(reader, column.enumConstants));
+                }
+            }
+            if (!reader.isExhausted()) {
+                throw new IllegalArgumentException("Trailing bytes");
+            }
+
+            return entity;
+        } catch (Throwable ex) {
+            throw new IllegalArgumentException("Can't decode " + entityType, ex);
+        }
+    }
+
+    /**
+     * Encoded column types.
+     */
+    enum ValueType {
+
+        /**
+         * Boolean.
+         */
+        BOOLEAN {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeByte((Boolean) value ? 1 : 0);
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return reader.readByte() != 0;
+            }
+        },
+
+        /**
+         * Byte.
+         */
+        BYTE {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeByte((Byte) value);
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return (byte) reader.readByte();
+            }
+        },
+
+        /**
+         * Short.
+         */
+        SHORT {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeZigZag((Short) value);
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return (short) reader.readZigZag();
+            }
+        },
+
+        /**
+         * Char.
+         */
+        CHAR {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeVarLong((Character) value);
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return (char) reader.readVarLong();
+            }
+        },
+
+        /**
+         * Int.
+         */
+        INT {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeZigZag((Integer) value);
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return (int) reader.readZigZag();
+            }
+        },
+
+        /**
+         * Long.
+         */
+        LONG {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeZigZag((Long) value);
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return reader.readZigZag();
+            }
+        },
+
+        /**
+         * Float.
+         */
+        FLOAT {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeFixedInt(Float.floatToRawIntBits((Float) value));
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return Float.intBitsToFloat(reader.readFixedInt());
+            }
+        },
+
+        /**
+         * Double.
+         */
+        DOUBLE {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return Double.longBitsToDouble(reader.readFixedLong());
+            }
+        },
+
+        /**
+         * String as UTF-8.
+         */
+        STRING {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return new String(reader.readBytes(), StandardCharsets.UTF_8);
+            }
+        },
+
+        /**
+         * Byte array.
+         */
+        BYTES {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeBytes((byte[]) value);
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return reader.readBytes();
+            }
+        },
+
+        /**
+         * Big integer as two's complement bytes.
+         */
+        BIG_INTEGER {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeBytes(((BigInteger) value).toByteArray());
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return new BigInteger(reader.readBytes());
+            }
+        },
+
+        /**
+         * Big decimal as scale and unscaled value.
+         */
+        BIG_DECIMAL {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                BigDecimal decimal = (BigDecimal) value;
+
+                writer.writeZigZag(decimal.scale());
+                writer.writeBytes(decimal.unscaledValue().toByteArray());
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                int scale = (int) reader.readZigZag();
+
+                return new BigDecimal(new BigInteger(reader.readBytes()), scale);
+            }
+        },
+
+        /**
+         * Date as epoch millis.
+         */
+        DATE {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeZigZag(((Date) value).getTime());
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                return new Date(reader.readZigZag());
+            }
+        },
+
+        /**
+         * Enum as ordinal.
+         */
+        ENUM {
+            @Override
+            void write(ByteWriter writer, Object value) {
+                writer.writeVarLong(((Enum<?>) value).ordinal());
+            }
+
+            @Override
+            Object read(ByteReader reader, Object[] enumConstants) {
+                long ordinal = reader.readVarLong();
+
+                if (ordinal < 0 || ordinal >= enumConstants.length) {
+                    throw new IllegalArgumentException("Unknown ordinal " + ordinal);
+                }
+
+                return enumConstants[(int) ordinal];
+            }
+        };
+
+        /**
+         * Value types by exact field type.
+         */
+        private static final Map<Class<?>, ValueType> BY_TYPE = new HashMap<>();
+
+        static {
+            BY_TYPE.put(boolean.class, BOOLEAN);
+            BY_TYPE.put(Boolean.class, BOOLEAN);
+            BY_TYPE.put(byte.class, BYTE);
+            BY_TYPE.put(Byte.class, BYTE);
+            BY_TYPE.put(short.class, SHORT);
+            BY_TYPE.put(Short.class, SHORT);
+            BY_TYPE.put(char.class, CHAR);
+            BY_TYPE.put(Character.class, CHAR);
+            BY_TYPE.put(int.class, INT);
+            BY_TYPE.put(Integer.class, INT);
+            BY_TYPE.put(long.class, LONG);
+            BY_TYPE.put(Long.class, LONG);
+            BY_TYPE.put(float.class, FLOAT);
+            BY_TYPE.put(Float.class, FLOAT);
+            BY_TYPE.put(double.class, DOUBLE);
+            BY_TYPE.put(Double.class, DOUBLE);
+            BY_TYPE.put(String.class, STRING);
+            BY_TYPE.put(byte[].class, BYTES);
+            BY_TYPE.put(BigInteger.class, BIG_INTEGER);
+            BY_TYPE.put(BigDecimal.class, BIG_DECIMAL);
+            BY_TYPE.put(Date.class, DATE);
+        }
+
+        /**
+         * Write non null value.
+         *
+         * @param writer target writer
+         * @param value  target value
+         */
+        abstract void write(ByteWriter writer, Object value);
+
+        /**
+         * Read value.
+         *
+         * @param reader        target reader
+         * @param enumConstants target enum constants of column or null if column is not enum
+         * @return value
+         */
+        abstract Object read(ByteReader reader, Object[] enumConstants);
+
+        /**
+         * Resolve value type of field.
+         *
+         * @param type target field type
+         * @return value type
+         * @throws IllegalArgumentException if type is not supported
+         */
+        static ValueType of(Class<?> type) {
+            if (type.isEnum()) {
+                return ENUM;
+            }
+            ValueType valueType = BY_TYPE.get(type);
+
+            if (valueType == null) {
+                throw new IllegalArgumentException("Unsupported column type " + type);
+            }
+
+            return valueType;
+        }
+
+        /**
+         * Resolve value type of value by its exact class. Enums are not resolved, they need column to be read.
+         *
+         * @param value target value
+         * @return value type or null if value is null or not supported
+         */
+        static ValueType ofValue(Object value) {
+            return value == null ? null : BY_TYPE.get(value.getClass());
+        }
+    }
+
+    /**
+     * Encoded column.
+     */
+    private static final class Column {
+
+        /**
+         * Getter.
+         */
+        private final Function<Object, Object> getter;
+
+        /**
+         * Setter.
+         */
+        private final BiConsumer<Object, Object> setter;
+
+        /**
+         * Value type.
+         */
+        private final ValueType valueType;
+
+        /**
+         * Enum constants or null.
+         */
+        private final Object[] enumConstants;
+
+        /**
+         * Create a new instance.
+         *
+         * @param field target accessible field
+         * @throws IllegalAccessException if field is final
+         */
+        private Column(Field field) throws IllegalAccessException {
+            this.getter = getter(field);
+            this.setter = setter(field);
+            this.valueType = ValueType.of(field.getType());
+            this.enumConstants = field.getType().getEnumConstants();
+        }
+
+        /**
+         * Create column getter. Bean getter is bound if it can be, otherwise field is read by method handle.
+         *
+         * @param field target accessible field
+         * @return getter
+         * @throws IllegalAccessException if field can't be read
+         */
+        @SuppressWarnings("unchecked")
+        private static Function<Object, Object> getter(Field field) throws IllegalAccessException {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            String prefix = field.getType() == boolean.class ? "is" : "get";
+            Method method = beanMethod(field, prefix + capitalize(field.getName()), field.getType());
+
+            if (method != null) {
+                try {
+                    CallSite site = LambdaMetafactory.metafactory(
+                            lookup,
+                            "apply",
+                            MethodType.methodType(Function.class),
+                            MethodType.methodType(Object.class, Object.class),
+                            lookup.unreflect(method),
+                            MethodType.methodType(field.getType(), field.getDeclaringClass()).wrap()
+                    );
+
+                    return (Function<Object, Object>) site.getTarget().invoke();
+                } catch (Throwable ex) {
+                    return fieldGetter(lookup, field);
+                }
+            }
+
+            return fieldGetter(lookup, field);
+        }
+
+        /**
+         * Create column getter which reads field by method handle.
+         *
+         * @param lookup target lookup
+         * @param field  target accessible field
+         * @return getter
+         * @throws IllegalAccessException if field can't be read
+         */
+        private static Function<Object, Object> fieldGetter(MethodHandles.Lookup lookup,
+                                                            Field field) throws IllegalAccessException {
+            MethodHandle handle = lookup.unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+
+            return entity -> {
+                try {
+                    return (Object) handle.invokeExact(entity);
+                } catch (Throwable ex) {
+                    throw new IllegalStateException(ex);
+                }
+            };
+        }
+
+        /**
+         * Create column setter. Bean setter is bound if it can be, otherwise field is written by method handle.
+         *
+         * @param field target accessible field
+         * @return setter
+         * @throws IllegalAccessException if field is final
+         */
+        @SuppressWarnings("unchecked")
+        private static BiConsumer<Object, Object> setter(Field field) throws IllegalAccessException {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Method method = beanMethod(field, "set" + capitalize(field.getName()), void.class, field.getType());
+
+            if (method != null) {
+                try {
+                    CallSite site = LambdaMetafactory.metafactory(
+                            lookup,
+                            "accept",
+                            MethodType.methodType(BiConsumer.class),
+                            MethodType.methodType(void.class, Object.class, Object.class),
+                            lookup.unreflect(method),
+                            MethodType.methodType(
+                                    void.class,
+                                    field.getDeclaringClass(),
+                                    MethodType.methodType(field.getType()).wrap().returnType()
+                            )
+                    );
+
+                    return (BiConsumer<Object, Object>) site.getTarget().invoke();
+                } catch (Throwable ex) {
+                    return fieldSetter(lookup, field);
+                }
+            }
+
+            return fieldSetter(lookup, field);
+        }
+
+        /**
+         * Create column setter which writes field by method handle.
+         *
+         * @param lookup target lookup
+         * @param field  target accessible field
+         * @return setter
+         * @throws IllegalAccessException if field is final
+         */
+        private static BiConsumer<Object, Object> fieldSetter(MethodHandles.Lookup lookup,
+                                                              Field field) throws IllegalAccessException {
+            MethodHandle handle = lookup.unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+            return (entity, value) -> {
+                try {
+                    handle.invokeExact(entity, value);
+                } catch (Throwable ex) {
+                    throw new IllegalStateException(ex);
+                }
+            };
+        }
+
+        /**
+         * Find public bean method of field declaring class which generated function can call. Class must be public
+         * and visible from codec class loader.
+         *
+         * @param field          target field
+         * @param name           target method name
+         * @param returnType     target return type
+         * @param parameterTypes target parameter types
+         * @return method or null
+         */
+        private static Method beanMethod(Field field, String name, Class<?> returnType, Class<?>... parameterTypes) {
+            Class<?> type = field.getDeclaringClass();
+
+            try {
+                Method method = type.getMethod(name, parameterTypes);
+
+                if (method.getReturnType() != returnType
+                        || Modifier.isStatic(method.getModifiers())
+                        || !Modifier.isPublic(method.getDeclaringClass().getModifiers())
+                        || !Modifier.isPublic(type.getModifiers())
+                        || Class.forName(type.getName(), false, CompactCodec.class.getClassLoader()) != type) {
+                    return null;
+                }
+
+                return method;
+            } catch (NoSuchMethodException | ClassNotFoundException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * Capitalize field name.
+         *
+         * @param name target field name
+         * @return capitalized name
+         */
+        private static String capitalize(String name) {
+            return name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1);
+        }
+    }
+
+    /**
+     * Entity columns and constructor.
+     */
+    private static final class Schema {
+
+        /**
+         * Columns ordered by declaring class from base and by name.
+         */
+        private final Column[] columns;
+
+        /**
+         * Null bitmap size in bytes.
+         */
+        private final int bitmapSize;
+
+        /**
+         * No args constructor typed as ()Object.
+         */
+        private final MethodHandle constructor;
+
+        /**
+         * Create a new instance.
+         *
+         * @param type target entity type
+         * @throws IllegalArgumentException if entity can't be encoded
+         */
+        private Schema(Class<?> type) {
+            List<Class<?>> hierarchy = new ArrayList<>();
+            Class<?> current = type;
+
+            while (current != null && current != Object.class) {
+                hierarchy.add(0, current);
+                current = current.getSuperclass();
+            }
+            List<Column> resolved = new ArrayList<>();
+
+            try {
+                for (Class<?> declaring : hierarchy) {
+                    Field[] fields = declaring.getDeclaredFields();
+
+                    Arrays.sort(fields, Comparator.comparing(Field::getName));
+                    for (Field field : fields) {
+                        if (!Modifier.isStatic(field.getModifiers())
+                                && field.isAnnotationPresent(DatabaseColumn.class)) {
+                            field.setAccessible(true);
+                            resolved.add(new Column(field));
+                        }
+                    }
+                }
+                Constructor<?> noArgs = type.getDeclaredConstructor();
+
+                noArgs.setAccessible(true);
+                this.constructor = MethodHandles.lookup().unreflectConstructor(noArgs)
+                        .asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                throw new IllegalArgumentException("Can't build codec of " + type, ex);
+            }
+            this.columns = resolved.toArray(new Column[0]);
+            this.bitmapSize = (columns.length + BITS_PER_BYTE - 1) / BITS_PER_BYTE;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.saidgajiev.ormnext.cache.codec;
+
+/**
+ * Encodes entities to bytes and back for caches which do not keep live objects.
+ *
+ * @author Said Gadjiev
+ */
+public interface EntityCodec {
+
+    /**
+     * Encode entity.
+     *
+     * @param entity target entity
+     * @return encoded bytes
+     * @throws IllegalArgumentException if entity can not be encoded
+     */
+    byte[] encode(Object entity);
+
+    /**
+     * Decode entity to a new instance.
+     *
+     * @param entityType target entity type
+     * @param bytes      target encoded bytes
+     * @return decoded entity
+     * @throws IllegalArgumentException if bytes can not be decoded
+     */
+    Object decode(Class<?> entityType, byte[] bytes);
+}
@@ -0,0 +1,37 @@
+package ru.saidgajiev.ormnext.cache.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Codec based on java serialization. Entities must implement {@link java.io.Serializable}.
+ *
+ * @author Said Gadjiev
+ */
+public class SerializableCodec implements EntityCodec {
+
+    @Override
+    public byte[] encode(Object entity) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+            outputStream.writeObject(entity);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Can't encode " + entity.getClass(), ex);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(Class<?> entityType, byte[] bytes) {
+        try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return entityType.cast(inputStream.readObject());
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalArgumentException("Can't decode " + entityType, ex);
+        }
+    }
+}
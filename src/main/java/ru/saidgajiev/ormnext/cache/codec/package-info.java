@@ -0,0 +1,4 @@
+/**
+ * This package contains entity codecs for serialized cache tiers.
+ */
+package ru.saidgajiev.ormnext.cache.codec;
@@ -0,0 +1,86 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import ru.saidgadjiev.ormnext.core.field.DatabaseColumn;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads entity column values for {@link QueryPredicate}. Columns are fields annotated with
+ * {@link DatabaseColumn} named by lower case field name. Fields are resolved once per entity type.
+ *
+ * @author Said Gadjiev
+ */
+public final class ColumnValues {
+
+    /**
+     * Column fields by entity type.
+     */
+    private static final ClassValue<Field[]> COLUMNS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            Class<?> current = type;
+
+            while (current != null && current != Object.class) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && field.isAnnotationPresent(DatabaseColumn.class)) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+                current = current.getSuperclass();
+            }
+
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    /**
+     * Utility class.
+     */
+    private ColumnValues() {
+    }
+
+    /**
+     * Read entity column values.
+     *
+     * @param entity target entity
+     * @return values by lower case column name
+     */
+    public static Map<String, Object> read(Object entity) {
+        Field[] fields = COLUMNS.get(entity.getClass());
+        Map<String, Object> values = new HashMap<>();
+
+        for (Field field : fields) {
+            try {
+                values.putIfAbsent(field.getName().toLowerCase(Locale.ROOT), field.get(entity));
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Resolve entity primary key type. It is type of column field marked as id.
+     *
+     * @param entityType target entity type
+     * @return primary key type or null if entity has no id column
+     */
+    public static Class<?> idType(Class<?> entityType) {
+        for (Field field : COLUMNS.get(entityType)) {
+            if (field.getAnnotation(DatabaseColumn.class).id()) {
+                return field.getType();
+            }
+        }
+
+        return null;
+    }
+}
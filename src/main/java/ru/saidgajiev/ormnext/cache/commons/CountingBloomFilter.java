@@ -0,0 +1,205 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counting Bloom filter with 4-bit counters. It answers that element is surely absent or may be present, and
+ * supports removal of added elements. Saturated counters are never decremented, so removal can't produce false
+ * negatives. False positive rate is about one percent while elements count is at most expected insertions.
+ * The filter is thread safe, counters are updated by CAS.
+ *
+ * @author Said Gadjiev
+ */
+public final class CountingBloomFilter {
+
+    /**
+     * Counters per expected element.
+     */
+    private static final int COUNTERS_PER_ELEMENT = 10;
+
+    /**
+     * Hash functions count.
+     */
+    private static final int HASHES = 7;
+
+    /**
+     * Max counter value.
+     */
+    private static final long COUNTER_MASK = 0xfL;
+
+    /**
+     * Counters per long as shift.
+     */
+    private static final int COUNTERS_SHIFT = 4;
+
+    /**
+     * Bits per counter as shift.
+     */
+    private static final int COUNTER_SHIFT = 2;
+
+    /**
+     * Max counters count.
+     */
+    private static final int MAX_COUNTERS = 1 << 30;
+
+    /**
+     * Hash multiplier.
+     */
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Half of long bits.
+     */
+    private static final int HALF_LONG = 32;
+
+    /**
+     * Counters table. Each long holds sixteen 4-bit counters.
+     */
+    private final AtomicLongArray table;
+
+    /**
+     * Counter index mask.
+     */
+    private final int counterMask;
+
+    /**
+     * Expected insertions.
+     */
+    private final long expectedInsertions;
+
+    /**
+     * Added and not removed elements count.
+     */
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Create a new instance.
+     *
+     * @param expectedInsertions target expected max elements count
+     */
+    public CountingBloomFilter(long expectedInsertions) {
+        long counters = Math.max(1, Math.min(expectedInsertions * COUNTERS_PER_ELEMENT, MAX_COUNTERS));
+
+        this.counterMask = FrequencySketch.ceilingPowerOfTwo((int) counters) - 1;
+        this.table = new AtomicLongArray(Math.max(1, (counterMask + 1) >>> COUNTERS_SHIFT));
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+    }
+
+    /**
+     * Add element.
+     *
+     * @param element target element
+     */
+    public void add(Object element) {
+        long hash = hash(element);
+
+        for (int i = 0; i < HASHES; i++) {
+            update(index(hash, i), 1);
+        }
+        size.increment();
+    }
+
+    /**
+     * Remove element. Element must be added before, otherwise other elements may be reported absent.
+     *
+     * @param element target element
+     */
+    public void remove(Object element) {
+        long hash = hash(element);
+
+        for (int i = 0; i < HASHES; i++) {
+            update(index(hash, i), -1);
+        }
+        size.decrement();
+    }
+
+    /**
+     * Check element presence.
+     *
+     * @param element target element
+     * @return false if element is surely absent
+     */
+    public boolean mightContain(Object element) {
+        long hash = hash(element);
+
+        for (int i = 0; i < HASHES; i++) {
+            int index = index(hash, i);
+
+            if (counter(table.get(index >>> COUNTERS_SHIFT), index) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Return true if more than expected elements are added, so false positive rate is higher than designed.
+     *
+     * @return true if filter is overloaded
+     */
+    public boolean isOverloaded() {
+        return size.sum() > expectedInsertions;
+    }
+
+    /**
+     * Increment or decrement counter. Saturated and zero counters are left as is.
+     *
+     * @param index target counter index
+     * @param delta target delta, 1 or -1
+     */
+    private void update(int index, int delta) {
+        int slot = index >>> COUNTERS_SHIFT;
+        int offset = (index & ((1 << COUNTERS_SHIFT) - 1)) << COUNTER_SHIFT;
+
+        while (true) {
+            long current = table.get(slot);
+            long count = counter(current, index);
+
+            if (count == COUNTER_MASK || (count == 0 && delta < 0)) {
+                return;
+            }
+            if (table.compareAndSet(slot, current, current + ((long) delta << offset))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return counter value.
+     *
+     * @param word  target table word
+     * @param index target counter index
+     * @return counter value
+     */
+    private static long counter(long word, int index) {
+        return (word >>> ((index & ((1 << COUNTERS_SHIFT) - 1)) << COUNTER_SHIFT)) & COUNTER_MASK;
+    }
+
+    /**
+     * Return counter index of hash function.
+     *
+     * @param hash target element hash
+     * @param i    target hash function
+     * @return counter index
+     */
+    private int index(long hash, int i) {
+        int first = (int) hash;
+        int second = (int) (hash >>> HALF_LONG) | 1;
+
+        return (first + i * second) & counterMask;
+    }
+
+    /**
+     * Return 64-bit element hash.
+     *
+     * @param element target element
+     * @return hash
+     */
+    private static long hash(Object element) {
+        long hash = element.hashCode() * MULTIPLIER;
+
+        return hash ^ ((hash >>> HALF_LONG) * MULTIPLIER);
+    }
+}
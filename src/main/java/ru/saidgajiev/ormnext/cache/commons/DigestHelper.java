@@ -7,24 +7,105 @@ import ru.saidgadjiev.ormnext.core.query.space.EntityQuerySpace;
 import ru.saidgadjiev.ormnext.core.query.visitor.element.SelectQuery;
 import ru.saidgadjiev.ormnext.core.table.internal.metamodel.MetaModel;
 
-import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Digest helper.
+ * Digest helper. Prepared sql templates are memoized by statement shape, so statements which differ only in
+ * parameter values are rendered only once, whether they are distinct instances built per call or one instance
+ * re-executed via {@link SelectStatement#setObject(int, Object)}. Shape is a structural fingerprint of statement
+ * object graph: entity, criteria tree with properties and operators, ordering, limit and offset, with argument
+ * values replaced by their count. Core exposes no criteria tree accessors, so fields of core types are read by
+ * method handles bound once per type, and shape is written to a per thread buffer which is looked up by hash
+ * without allocation. Statement with a node which is neither core object, container nor literal has no shape and
+ * is rendered without memoization. Templates are kept in {@link ConcurrentHashMap}, when it outgrows max size
+ * least recently used quarter is evicted by one thread.
  *
  * @author Said Gadjiev
  */
 public final class DigestHelper {
 
     /**
-     * Hex suffix.
+     * Default max sql templates count.
      */
-    private static final int SUFFIX = 255;
+    private static final int DEFAULT_TEMPLATE_CACHE_SIZE = 1024;
+
+    /**
+     * Template access time resolution. Access time of hot template is not rewritten on every hit.
+     */
+    private static final long ACCESS_RESOLUTION_NANOS = 1_000_000;
+
+    /**
+     * Evicted part of max templates count.
+     */
+    private static final int EVICTED_PART = 4;
+
+    /**
+     * FNV-1a 64 bit offset basis.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a 64 bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Max statement graph nodes in shape. Bigger statements are rendered without memoization.
+     */
+    private static final int MAX_SHAPE_NODES = 4096;
+
+    /**
+     * Core package prefix. Objects of other packages are argument values and are not walked.
+     */
+    private static final String CORE_PACKAGE = "ru.saidgadjiev.ormnext.";
+
+    /**
+     * Field getters by core type. Type which fields can't be read has null getters.
+     */
+    private static final ClassValue<MethodHandle[]> GETTERS = new ClassValue<MethodHandle[]>() {
+        @Override
+        protected MethodHandle[] computeValue(Class<?> type) {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            List<MethodHandle> getters = new ArrayList<>();
+            Class<?> current = type;
+
+            try {
+                while (current != null && current != Object.class) {
+                    for (Field field : current.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                            field.setAccessible(true);
+                            getters.add(lookup.unreflectGetter(field)
+                                    .asType(MethodType.methodType(Object.class, Object.class)));
+                        }
+                    }
+                    current = current.getSuperclass();
+                }
+            } catch (IllegalAccessException | RuntimeException ex) {
+                return null;
+            }
+
+            return getters.toArray(new MethodHandle[0]);
+        }
+    };
+
+    /**
+     * Shape buffers of threads.
+     */
+    private static final ThreadLocal<Shape> SHAPES = ThreadLocal.withInitial(Shape::new);
 
     /**
      * Meta model.
@@ -36,6 +117,31 @@ public final class DigestHelper {
      */
     private DatabaseEngine<?> databaseEngine;
 
+    /**
+     * Prepared sql templates by statement shape hash.
+     */
+    private final Map<Long, Template> templateCache = new ConcurrentHashMap<>();
+
+    /**
+     * Max sql templates count.
+     */
+    private final int templateCacheSize;
+
+    /**
+     * Eviction of templates is running.
+     */
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Template cache hits.
+     */
+    private final LongAdder templateHits = new LongAdder();
+
+    /**
+     * Template cache misses.
+     */
+    private final LongAdder templateMisses = new LongAdder();
+
     /**
      * Create a new instance.
      *
@@ -43,66 +149,409 @@ public final class DigestHelper {
      * @param databaseEngine target database engine
      */
     public DigestHelper(MetaModel metaModel, DatabaseEngine<?> databaseEngine) {
+        this(metaModel, databaseEngine, DEFAULT_TEMPLATE_CACHE_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param metaModel         target meta model
+     * @param databaseEngine    target database engine
+     * @param templateCacheSize target max sql templates count
+     */
+    public DigestHelper(MetaModel metaModel, DatabaseEngine<?> databaseEngine, int templateCacheSize) {
         this.metaModel = metaModel;
         this.databaseEngine = databaseEngine;
+        this.templateCacheSize = templateCacheSize;
     }
 
     /**
-     * Digest {@link SelectStatement}.
+     * Digest {@link SelectStatement} to structural cache key.
      *
      * @param selectStatement target statement.
-     * @return digest string
+     * @return query key
+     */
+    public QueryKey digest(SelectStatement<?> selectStatement) {
+        return new QueryKey(
+                selectStatement.getEntityClass(),
+                template(selectStatement),
+                collectArgs(selectStatement)
+        );
+    }
+
+    /**
+     * Return template cache hits count.
+     *
+     * @return template cache hits count
+     */
+    public long getTemplateCacheHits() {
+        return templateHits.sum();
+    }
+
+    /**
+     * Return template cache misses count.
+     *
+     * @return template cache misses count
+     */
+    public long getTemplateCacheMisses() {
+        return templateMisses.sum();
+    }
+
+    /**
+     * Return template cache size.
+     *
+     * @return template cache size
+     */
+    public int getTemplateCacheSize() {
+        return templateCache.size();
+    }
+
+    /**
+     * Return memoized prepared sql for statement shape.
+     *
+     * @param selectStatement target statement
+     * @return prepared sql
      */
-    public String digest(SelectStatement<?> selectStatement) {
+    private String template(SelectStatement<?> selectStatement) {
+        Shape shape = SHAPES.get();
+        boolean known = shape.build(selectStatement);
+        long hash = known ? shape.hash() : 0;
+        Template template = known ? templateCache.get(hash) : null;
+
+        if (template != null && template.shape.contentEquals(shape.fingerprint)) {
+            templateHits.increment();
+            template.touch();
+
+            return template.sql;
+        }
+        templateMisses.increment();
+        String fingerprint = known ? shape.fingerprint.toString() : null;
         EntityQuerySpace entityQuerySpace = metaModel.getPersister(
                 selectStatement.getEntityClass()
         ).getEntityQuerySpace();
 
         SelectQuery selectQuery = entityQuerySpace.getSelectQuery(selectStatement);
-        StringBuilder digestQuery = new StringBuilder(databaseEngine.prepareQuery(selectQuery));
-        AtomicInteger index = new AtomicInteger();
-        Map<Integer, Object> resultArgs = new HashMap<>();
+        String sql = databaseEngine.prepareQuery(selectQuery);
 
-        for (CriterionArgument argument : selectStatement.getArgs()) {
-            argument.getValues().forEach(arg -> resultArgs.put(index.incrementAndGet(), arg));
+        if (known) {
+            templateCache.put(hash, new Template(fingerprint, sql));
+            if (templateCache.size() > templateCacheSize) {
+                evictTemplates();
+            }
         }
-        selectStatement.getUserProvidedArgs().forEach(resultArgs::put);
-        digestQuery.append(resultArgs);
 
-        return digest(digestQuery.toString());
+        return sql;
     }
 
     /**
-     * Digest string.
-     *
-     * @param str target string
-     * @return digest string
+     * Evict least recently used quarter of templates if no other thread does it.
      */
-    private String digest(String str) {
+    private void evictTemplates() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            MessageDigest digest = MessageDigest.getInstance("MD5");
-
-            digest.update(str.getBytes(Charset.forName("UTF-8")));
+            List<Map.Entry<Long, Template>> entries = new ArrayList<>(templateCache.entrySet());
+            int excess = entries.size() - (templateCacheSize - templateCacheSize / EVICTED_PART);
 
-            return toHash(digest.digest());
-        } catch (NoSuchAlgorithmException ex) {
-            throw new RuntimeException(ex);
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().accessed));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                templateCache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+        } finally {
+            evicting.set(false);
         }
     }
 
     /**
-     * Convert bytes to string.
+     * Collect statement argument values ordered by parameter index. User provided args override criteria args.
      *
-     * @param bytes target bytes
-     * @return converted string
+     * @param selectStatement target statement
+     * @return argument values
+     */
+    private Object[] collectArgs(SelectStatement<?> selectStatement) {
+        int count = 0;
+
+        for (CriterionArgument argument : selectStatement.getArgs()) {
+            count += argument.getValues().size();
+        }
+        Map<Integer, Object> userProvidedArgs = selectStatement.getUserProvidedArgs();
+
+        for (Integer index : userProvidedArgs.keySet()) {
+            count = Math.max(count, index);
+        }
+        Object[] args = new Object[count];
+        int index = 0;
+
+        for (CriterionArgument argument : selectStatement.getArgs()) {
+            for (Object value : argument.getValues()) {
+                args[index++] = value;
+            }
+        }
+        for (Map.Entry<Integer, Object> entry : userProvidedArgs.entrySet()) {
+            args[entry.getKey() - 1] = entry.getValue();
+        }
+
+        return args;
+    }
+
+    /**
+     * Memoized prepared sql.
+     */
+    private static final class Template {
+
+        /**
+         * Statement shape.
+         */
+        private final String shape;
+
+        /**
+         * Prepared sql.
+         */
+        private final String sql;
+
+        /**
+         * Last access time.
+         */
+        private volatile long accessed = System.nanoTime();
+
+        /**
+         * Create a new instance.
+         *
+         * @param shape target statement shape
+         * @param sql   target prepared sql
+         */
+        private Template(String shape, String sql) {
+            this.shape = shape;
+            this.sql = sql;
+        }
+
+        /**
+         * Record access.
+         */
+        private void touch() {
+            long now = System.nanoTime();
+
+            if (now - accessed > ACCESS_RESOLUTION_NANOS) {
+                accessed = now;
+            }
+        }
+    }
+
+    /**
+     * Reusable statement graph walker which writes structure and replaces argument values by their count.
      */
-    private String toHash(byte[] bytes) {
-        StringBuilder out = new StringBuilder();
+    private static final class Shape {
+
+        /**
+         * Fingerprint.
+         */
+        private final StringBuilder fingerprint = new StringBuilder();
+
+        /**
+         * Walked objects by identity with their node number, shared objects are written as back references.
+         */
+        private final Map<Object, Integer> visited = new IdentityHashMap<>();
+
+        /**
+         * Argument value lists.
+         */
+        private final List<Object> valueLists = new ArrayList<>();
 
-        for (byte b : bytes) {
-            out.append(Integer.toHexString(b & SUFFIX));
+        /**
+         * User provided argument values.
+         */
+        private Object userProvidedArgs;
+
+        /**
+         * Write statement shape.
+         *
+         * @param statement target statement
+         * @return false if statement has unknown node or more than max nodes
+         */
+        private boolean build(SelectStatement<?> statement) {
+            fingerprint.setLength(0);
+            visited.clear();
+            valueLists.clear();
+            for (CriterionArgument argument : statement.getArgs()) {
+                valueLists.add(argument.getValues());
+            }
+            userProvidedArgs = statement.getUserProvidedArgs();
+
+            try {
+                return walk(statement);
+            } finally {
+                visited.clear();
+                valueLists.clear();
+                userProvidedArgs = null;
+            }
         }
 
-        return out.toString();
+        /**
+         * Return fingerprint hash.
+         *
+         * @return hash
+         */
+        private long hash() {
+            long hash = FNV_OFFSET;
+
+            for (int i = 0; i < fingerprint.length(); i++) {
+                hash = (hash ^ fingerprint.charAt(i)) * FNV_PRIME;
+            }
+
+            return hash;
+        }
+
+        /**
+         * Write object structure.
+         *
+         * @param node target object
+         * @return false if node is unknown or graph has more than max nodes
+         */
+        private boolean walk(Object node) {
+            if (visited.size() > MAX_SHAPE_NODES) {
+                return false;
+            }
+            if (node == null) {
+                fingerprint.append('~');
+
+                return true;
+            }
+            if (node == userProvidedArgs) {
+                fingerprint.append('$');
+
+                return true;
+            }
+            for (Object values : valueLists) {
+                if (node == values) {
+                    fingerprint.append("?[").append(((Collection<?>) node).size()).append(']');
+
+                    return true;
+                }
+            }
+            if (isLiteral(node)) {
+                fingerprint.append(node.getClass().getName()).append('\'').append(node).append('\'');
+
+                return true;
+            }
+            Integer reference = visited.get(node);
+
+            if (reference != null) {
+                fingerprint.append('^').append(reference);
+
+                return true;
+            }
+            visited.put(node, visited.size());
+
+            return walkComposite(node);
+        }
+
+        /**
+         * Write array, collection, map or core object structure.
+         *
+         * @param node target not literal object
+         * @return false if node is unknown or graph has more than max nodes
+         */
+        private boolean walkComposite(Object node) {
+            if (node instanceof Object[]) {
+                fingerprint.append('[');
+                for (Object element : (Object[]) node) {
+                    if (!walk(element)) {
+                        return false;
+                    }
+                    fingerprint.append(',');
+                }
+                fingerprint.append(']');
+
+                return true;
+            }
+            if (node.getClass().isArray()) {
+                fingerprint.append('[');
+                for (int i = 0; i < Array.getLength(node); i++) {
+                    fingerprint.append(Array.get(node, i)).append(',');
+                }
+                fingerprint.append(']');
+
+                return true;
+            }
+            if (node instanceof Collection) {
+                fingerprint.append('[');
+                for (Object element : (Collection<?>) node) {
+                    if (!walk(element)) {
+                        return false;
+                    }
+                    fingerprint.append(',');
+                }
+                fingerprint.append(']');
+
+                return true;
+            }
+            if (node instanceof Map) {
+                fingerprint.append('{');
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+                    if (!walk(entry.getKey())) {
+                        return false;
+                    }
+                    fingerprint.append(':');
+                    if (!walk(entry.getValue())) {
+                        return false;
+                    }
+                    fingerprint.append(',');
+                }
+                fingerprint.append('}');
+
+                return true;
+            }
+
+            return walkCore(node);
+        }
+
+        /**
+         * Write core object fields. Objects of other packages may change sql in unknown way, so they have no shape.
+         *
+         * @param node target object
+         * @return false if node is unknown or graph has more than max nodes
+         */
+        private boolean walkCore(Object node) {
+            MethodHandle[] getters = node.getClass().getName().startsWith(CORE_PACKAGE)
+                    ? GETTERS.get(node.getClass())
+                    : null;
+
+            if (getters == null) {
+                return false;
+            }
+            fingerprint.append(node.getClass().getName()).append('{');
+            for (MethodHandle getter : getters) {
+                Object value;
+
+                try {
+                    value = (Object) getter.invokeExact(node);
+                } catch (Throwable ex) {
+                    throw new IllegalStateException(ex);
+                }
+                if (!walk(value)) {
+                    return false;
+                }
+                fingerprint.append(';');
+            }
+            fingerprint.append('}');
+
+            return true;
+        }
+
+        /**
+         * Return true if object is written by value: column names, operators, limit and offset.
+         *
+         * @param node target object
+         * @return true if object is literal
+         */
+        private static boolean isLiteral(Object node) {
+            return node instanceof CharSequence
+                    || node instanceof Number
+                    || node instanceof Boolean
+                    || node instanceof Character
+                    || node instanceof Enum
+                    || node instanceof Class;
+        }
     }
 }
@@ -0,0 +1,212 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+/**
+ * Count-min sketch with 4-bit counters used as a popularity estimator for TinyLFU admission.
+ * Counters are periodically halved so that the history ages out. The sketch is not thread safe,
+ * callers must guard it with their own lock.
+ *
+ * @author Said Gadjiev
+ */
+public final class FrequencySketch {
+
+    /**
+     * Hash seeds, one per sketch row.
+     */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    /**
+     * Mask which clears the high bit of each counter after shift.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * Mask of the low bit of each counter.
+     */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /**
+     * Max counter value.
+     */
+    private static final long COUNTER_MASK = 0xfL;
+
+    /**
+     * Rows count.
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * Bits per counter as shift.
+     */
+    private static final int COUNTER_SHIFT = 2;
+
+    /**
+     * Sample size multiplier.
+     */
+    private static final int SAMPLE_FACTOR = 10;
+
+    /**
+     * Max table length.
+     */
+    private static final int MAX_TABLE_LENGTH = 1 << 30;
+
+    /**
+     * Spread multiplier.
+     */
+    private static final int SPREAD = 0x45d9f3b;
+
+    /**
+     * Half of int bits.
+     */
+    private static final int HALF_INT = 16;
+
+    /**
+     * Half of long bits.
+     */
+    private static final int HALF_LONG = 32;
+
+    /**
+     * Counters table. Each long holds sixteen 4-bit counters.
+     */
+    private final long[] table;
+
+    /**
+     * Table index mask.
+     */
+    private final int tableMask;
+
+    /**
+     * Increments count after which counters are halved.
+     */
+    private final int sampleSize;
+
+    /**
+     * Increments since last reset.
+     */
+    private int size;
+
+    /**
+     * Create a new instance.
+     *
+     * @param maximumSize target expected max cache size
+     */
+    public FrequencySketch(int maximumSize) {
+        int maximum = Math.max(1, Math.min(maximumSize, MAX_TABLE_LENGTH));
+
+        table = new long[ceilingPowerOfTwo(maximum)];
+        tableMask = table.length - 1;
+        sampleSize = SAMPLE_FACTOR * maximum;
+    }
+
+    /**
+     * Return estimated frequency of element. Max value is 15.
+     *
+     * @param element target element
+     * @return estimated frequency
+     */
+    public int frequency(Object element) {
+        int hash = spread(element.hashCode());
+        int start = (hash & (DEPTH - 1)) << COUNTER_SHIFT;
+        int frequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << COUNTER_SHIFT)) & COUNTER_MASK);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Increment element popularity.
+     *
+     * @param element target element
+     */
+    public void increment(Object element) {
+        int hash = spread(element.hashCode());
+        int start = (hash & (DEPTH - 1)) << COUNTER_SHIFT;
+        boolean added = false;
+
+        for (int i = 0; i < DEPTH; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Increment counter if it is not saturated.
+     *
+     * @param index   target table index
+     * @param counter target counter index inside long
+     * @return true if counter incremented
+     */
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << COUNTER_SHIFT;
+        long mask = COUNTER_MASK << offset;
+
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Halve all counters.
+     */
+    private void reset() {
+        int count = 0;
+
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> COUNTER_SHIFT);
+    }
+
+    /**
+     * Return table index for row.
+     *
+     * @param item target spread hash
+     * @param row  target row
+     * @return table index
+     */
+    private int indexOf(int item, int row) {
+        long hash = (item + SEEDS[row]) * SEEDS[row];
+
+        hash += hash >>> HALF_LONG;
+
+        return ((int) hash) & tableMask;
+    }
+
+    /**
+     * Spread hash code bits.
+     *
+     * @param x target hash code
+     * @return spread hash
+     */
+    private static int spread(int x) {
+        int h = ((x >>> HALF_INT) ^ x) * SPREAD;
+
+        h = ((h >>> HALF_INT) ^ h) * SPREAD;
+
+        return (h >>> HALF_INT) ^ h;
+    }
+
+    /**
+     * Return closest power of two greater or equal to value.
+     *
+     * @param value target value
+     * @return power of two
+     */
+    public static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,776 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of cached result ids without boxing. Int and long ids are packed to primitive arrays, sorted
+ * non negative ids are delta and varint encoded in blocks, so a block is decoded on positional access and delta
+ * lists are not {@link RandomAccess}. Ids of other types are kept in the original list. Appended and removed ids
+ * are kept as a patch over shared packed ids, which is packed again only when it outgrows square root of ids count,
+ * so single id updates of large lists cost amortized O(sqrt(n)) instead of packing the whole list.
+ *
+ * @author Said Gadjiev
+ */
+public abstract class IdList extends AbstractList<Object> {
+
+    /**
+     * Array header and reference size estimate.
+     */
+    private static final long ARRAY_OVERHEAD = 24;
+
+    /**
+     * Ids count in delta block.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * Block index shift.
+     */
+    private static final int BLOCK_SHIFT = 6;
+
+    /**
+     * Varint payload bits of byte.
+     */
+    private static final int VARINT_BITS = 7;
+
+    /**
+     * Varint payload mask.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Varint continuation bit.
+     */
+    private static final int VARINT_CONTINUE = 0x80;
+
+    /**
+     * Return estimated heap size.
+     *
+     * @return bytes
+     */
+    public abstract long getByteSize();
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Pack ids of primary key type. Delta encoding is chosen if ids are sorted and it takes less than half
+     * of packed array.
+     *
+     * @param ids    target ids
+     * @param idType target primary key type or null if unknown
+     * @return packed ids or original list if ids are not int or long
+     */
+    public static List<Object> compact(List<Object> ids, Class<?> idType) {
+        if (ids instanceof IdList || ids.isEmpty()) {
+            return ids;
+        }
+        boolean intIds = idType == int.class || idType == Integer.class;
+        boolean longIds = idType == long.class || idType == Long.class;
+
+        if (!intIds && !longIds) {
+            return ids;
+        }
+        long[] values = new long[ids.size()];
+        boolean sorted = true;
+        int i = 0;
+
+        for (Object id : ids) {
+            if (intIds && id instanceof Integer) {
+                values[i] = (Integer) id;
+            } else if (longIds && id instanceof Long) {
+                values[i] = (Long) id;
+            } else {
+                return ids;
+            }
+            sorted = sorted && values[i] >= 0 && (i == 0 || values[i] >= values[i - 1]);
+            ++i;
+        }
+        if (sorted && values.length >= BLOCK_SIZE) {
+            DeltaIdList delta = new DeltaIdList(values, intIds);
+
+            if (delta.getByteSize() * 2 < (long) values.length * (intIds ? Integer.BYTES : Long.BYTES)) {
+                return delta;
+            }
+        }
+
+        return intIds ? new IntIdList(values) : new LongIdList(values);
+    }
+
+    /**
+     * Return ids with ids appended. Packed ids are shared and appended ids are kept in patch.
+     *
+     * @param ids    target ids
+     * @param added  target appended ids
+     * @param idType target primary key type or null if unknown
+     * @return ids with appended ids
+     */
+    public static List<Object> append(List<Object> ids, Collection<Object> added, Class<?> idType) {
+        if (added.isEmpty()) {
+            return ids;
+        }
+        PatchedIdList patched = PatchedIdList.of(ids, idType);
+
+        if (patched != null) {
+            long[] values = patched.unbox(added);
+
+            if (values != null) {
+                long[] tail = Arrays.copyOf(patched.tail, patched.tail.length + values.length);
+
+                System.arraycopy(values, 0, tail, patched.tail.length, values.length);
+
+                return new PatchedIdList(patched.base, tail, patched.removed, patched.intIds).packIfOutgrown(idType);
+            }
+        }
+        List<Object> result = new ArrayList<>(ids.size() + added.size());
+
+        result.addAll(ids);
+        result.addAll(added);
+
+        return compact(result, idType);
+    }
+
+    /**
+     * Return ids without first occurrence of id. Packed ids are shared and removed position is kept in patch.
+     *
+     * @param ids    target ids
+     * @param id     target removed id
+     * @param idType target primary key type or null if unknown
+     * @return ids without id or target ids if they do not contain it
+     */
+    public static List<Object> remove(List<Object> ids, Object id, Class<?> idType) {
+        int index = ids.indexOf(id);
+
+        if (index < 0) {
+            return ids;
+        }
+        PatchedIdList patched = PatchedIdList.of(ids, idType);
+
+        if (patched != null) {
+            int position = patched.position(index);
+            int insertion = -Arrays.binarySearch(patched.removed, position) - 1;
+            int[] removed = new int[patched.removed.length + 1];
+
+            System.arraycopy(patched.removed, 0, removed, 0, insertion);
+            removed[insertion] = position;
+            System.arraycopy(patched.removed, insertion, removed, insertion + 1, patched.removed.length - insertion);
+
+            return new PatchedIdList(patched.base, patched.tail, removed, patched.intIds).packIfOutgrown(idType);
+        }
+        List<Object> result = new ArrayList<>(ids);
+
+        result.remove(index);
+
+        return compact(result, idType);
+    }
+
+    /**
+     * Packed int ids.
+     */
+    private static final class IntIdList extends IdList implements RandomAccess {
+
+        /**
+         * Ids.
+         */
+        private final int[] values;
+
+        /**
+         * Create a new instance.
+         *
+         * @param ids target ids which fit int
+         */
+        private IntIdList(long[] ids) {
+            values = new int[ids.length];
+            int i = 0;
+
+            while (i < ids.length) {
+                values[i] = (int) ids[i];
+                ++i;
+            }
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!(o instanceof Integer)) {
+                return -1;
+            }
+            int value = (Integer) o;
+            int i = 0;
+
+            while (i < values.length) {
+                if (values[i] == value) {
+                    return i;
+                }
+                ++i;
+            }
+
+            return -1;
+        }
+
+        @Override
+        public long getByteSize() {
+            return ARRAY_OVERHEAD + (long) Integer.BYTES * values.length;
+        }
+    }
+
+    /**
+     * Packed long ids.
+     */
+    private static final class LongIdList extends IdList implements RandomAccess {
+
+        /**
+         * Ids.
+         */
+        private final long[] values;
+
+        /**
+         * Create a new instance.
+         *
+         * @param values target ids
+         */
+        private LongIdList(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!(o instanceof Long)) {
+                return -1;
+            }
+            long value = (Long) o;
+            int i = 0;
+
+            while (i < values.length) {
+                if (values[i] == value) {
+                    return i;
+                }
+                ++i;
+            }
+
+            return -1;
+        }
+
+        @Override
+        public long getByteSize() {
+            return ARRAY_OVERHEAD + (long) Long.BYTES * values.length;
+        }
+    }
+
+    /**
+     * Sorted non negative ids encoded as varint deltas in blocks. Every block starts with absolute id kept in
+     * block bases.
+     */
+    private static final class DeltaIdList extends IdList {
+
+        /**
+         * Encoded deltas.
+         */
+        private final byte[] data;
+
+        /**
+         * First id of every block.
+         */
+        private final long[] blockBases;
+
+        /**
+         * Data offset of every block deltas.
+         */
+        private final int[] blockOffsets;
+
+        /**
+         * Ids count.
+         */
+        private final int size;
+
+        /**
+         * Ids are int.
+         */
+        private final boolean intIds;
+
+        /**
+         * Create a new instance.
+         *
+         * @param values target sorted non negative ids
+         * @param intIds true if ids are int
+         */
+        private DeltaIdList(long[] values, boolean intIds) {
+            int blocks = (values.length + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+            byte[] buffer = new byte[values.length * (Long.BYTES + 2)];
+            int position = 0;
+            int i = 0;
+
+            this.blockBases = new long[blocks];
+            this.blockOffsets = new int[blocks];
+            while (i < values.length) {
+                if ((i & (BLOCK_SIZE - 1)) == 0) {
+                    blockBases[i >>> BLOCK_SHIFT] = values[i];
+                    blockOffsets[i >>> BLOCK_SHIFT] = position;
+                } else {
+                    long delta = values[i] - values[i - 1];
+
+                    while ((delta & ~VARINT_MASK) != 0) {
+                        buffer[position++] = (byte) ((delta & VARINT_MASK) | VARINT_CONTINUE);
+                        delta >>>= VARINT_BITS;
+                    }
+                    buffer[position++] = (byte) delta;
+                }
+                ++i;
+            }
+            this.data = new byte[position];
+            System.arraycopy(buffer, 0, data, 0, position);
+            this.size = values.length;
+            this.intIds = intIds;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            Cursor cursor = new Cursor(index >>> BLOCK_SHIFT);
+            int skip = index & (BLOCK_SIZE - 1);
+
+            while (skip > 0) {
+                cursor.next();
+                --skip;
+            }
+
+            return box(cursor.next());
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return new Iterator<Object>() {
+
+                /**
+                 * Block decoder.
+                 */
+                private final Cursor cursor = new Cursor(0);
+
+                /**
+                 * Next id index.
+                 */
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+
+                @Override
+                public Object next() {
+                    if (index >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    if ((index & (BLOCK_SIZE - 1)) == 0) {
+                        cursor.seek(index >>> BLOCK_SHIFT);
+                    }
+                    ++index;
+
+                    return box(cursor.next());
+                }
+            };
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!(intIds ? o instanceof Integer : o instanceof Long)) {
+                return -1;
+            }
+            long value = ((Number) o).longValue();
+            int low = 0;
+            int high = blockBases.length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (blockBases[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            int block = Math.max(low - 1, 0);
+            Cursor cursor = new Cursor(block);
+            int index = block << BLOCK_SHIFT;
+
+            while (index < size) {
+                if ((index & (BLOCK_SIZE - 1)) == 0) {
+                    cursor.seek(index >>> BLOCK_SHIFT);
+                }
+                long current = cursor.next();
+
+                if (current == value) {
+                    return index;
+                }
+                if (current > value) {
+                    return -1;
+                }
+                ++index;
+            }
+
+            return -1;
+        }
+
+        @Override
+        public long getByteSize() {
+            return ARRAY_OVERHEAD * 3 + data.length + (long) (Long.BYTES + Integer.BYTES) * blockBases.length;
+        }
+
+        /**
+         * Box id.
+         *
+         * @param value target id
+         * @return boxed id of list type
+         */
+        private Object box(long value) {
+            return intIds ? (Object) (int) value : (Object) value;
+        }
+
+        /**
+         * Sequential decoder of block ids.
+         */
+        private final class Cursor {
+
+            /**
+             * Next delta offset.
+             */
+            private int position;
+
+            /**
+             * Last decoded id.
+             */
+            private long value;
+
+            /**
+             * Block start is not returned yet.
+             */
+            private boolean atBase;
+
+            /**
+             * Create a new instance.
+             *
+             * @param block target block
+             */
+            private Cursor(int block) {
+                seek(block);
+            }
+
+            /**
+             * Move to block start.
+             *
+             * @param block target block
+             */
+            private void seek(int block) {
+                position = blockOffsets[block];
+                value = blockBases[block];
+                atBase = true;
+            }
+
+            /**
+             * Decode next id of block.
+             *
+             * @return id
+             */
+            private long next() {
+                if (atBase) {
+                    atBase = false;
+
+                    return value;
+                }
+                long delta = 0;
+                int shift = 0;
+                byte current;
+
+                do {
+                    current = data[position++];
+                    delta |= (long) (current & VARINT_MASK) << shift;
+                    shift += VARINT_BITS;
+                } while ((current & VARINT_CONTINUE) != 0);
+                value += delta;
+
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Packed ids with appended ids and removed positions. Positions index packed ids followed by appended ids.
+     */
+    private static final class PatchedIdList extends IdList {
+
+        /**
+         * Empty ids.
+         */
+        private static final long[] NO_IDS = new long[0];
+
+        /**
+         * Empty positions.
+         */
+        private static final int[] NO_POSITIONS = new int[0];
+
+        /**
+         * Shared packed ids.
+         */
+        private final IdList base;
+
+        /**
+         * Appended ids.
+         */
+        private final long[] tail;
+
+        /**
+         * Sorted removed positions.
+         */
+        private final int[] removed;
+
+        /**
+         * Ids are int.
+         */
+        private final boolean intIds;
+
+        /**
+         * Create a new instance.
+         *
+         * @param base    target packed ids
+         * @param tail    target appended ids
+         * @param removed target sorted removed positions
+         * @param intIds  true if ids are int
+         */
+        private PatchedIdList(IdList base, long[] tail, int[] removed, boolean intIds) {
+            this.base = base;
+            this.tail = tail;
+            this.removed = removed;
+            this.intIds = intIds;
+        }
+
+        /**
+         * Return patch over packed ids.
+         *
+         * @param ids    target ids
+         * @param idType target primary key type or null if unknown
+         * @return patch or null if ids are not packed
+         */
+        private static PatchedIdList of(List<Object> ids, Class<?> idType) {
+            if (ids instanceof PatchedIdList) {
+                return (PatchedIdList) ids;
+            }
+            if (!(ids instanceof IdList)) {
+                return null;
+            }
+
+            boolean intIds = idType == int.class || idType == Integer.class;
+
+            return new PatchedIdList((IdList) ids, NO_IDS, NO_POSITIONS, intIds);
+        }
+
+        /**
+         * Unbox ids of list type.
+         *
+         * @param ids target ids
+         * @return unboxed ids or null if some id is not of list type
+         */
+        private long[] unbox(Collection<Object> ids) {
+            long[] values = new long[ids.size()];
+            int i = 0;
+
+            for (Object id : ids) {
+                if (!(intIds ? id instanceof Integer : id instanceof Long)) {
+                    return null;
+                }
+                values[i++] = ((Number) id).longValue();
+            }
+
+            return values;
+        }
+
+        /**
+         * Pack ids again if patch outgrows square root of ids count.
+         *
+         * @param idType target primary key type
+         * @return this list or packed ids
+         */
+        private List<Object> packIfOutgrown(Class<?> idType) {
+            int limit = Math.max(BLOCK_SIZE, (int) Math.sqrt(base.size()));
+
+            if (tail.length + removed.length <= limit) {
+                return this;
+            }
+
+            return compact(new ArrayList<>(this), idType);
+        }
+
+        /**
+         * Return position of index. It is index plus count of removed positions before result.
+         *
+         * @param index target index
+         * @return position
+         */
+        private int position(int index) {
+            int low = 0;
+            int high = removed.length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (removed[middle] - middle <= index) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return index + low;
+        }
+
+        /**
+         * Return id at position.
+         *
+         * @param position target position
+         * @return id
+         */
+        private Object at(int position) {
+            int baseSize = base.size();
+
+            if (position < baseSize) {
+                return base.get(position);
+            }
+            long value = tail[position - baseSize];
+
+            return intIds ? (Object) (int) value : (Object) value;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+
+            return at(position(index));
+        }
+
+        @Override
+        public int size() {
+            return base.size() + tail.length - removed.length;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return new Iterator<Object>() {
+
+                /**
+                 * Packed ids iterator.
+                 */
+                private final Iterator<Object> baseIterator = base.iterator();
+
+                /**
+                 * Next position.
+                 */
+                private int position;
+
+                /**
+                 * Next removed position index.
+                 */
+                private int nextRemoved;
+
+                @Override
+                public boolean hasNext() {
+                    skipRemoved();
+
+                    return position < base.size() + tail.length;
+                }
+
+                @Override
+                public Object next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Object id = position < base.size() ? baseIterator.next() : at(position);
+
+                    ++position;
+
+                    return id;
+                }
+
+                /**
+                 * Move past removed positions.
+                 */
+                private void skipRemoved() {
+                    while (nextRemoved < removed.length && removed[nextRemoved] == position) {
+                        if (position < base.size()) {
+                            baseIterator.next();
+                        }
+                        ++position;
+                        ++nextRemoved;
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!(intIds ? o instanceof Integer : o instanceof Long)) {
+                return -1;
+            }
+            int position = base.indexOf(o);
+
+            if (position >= 0 && Arrays.binarySearch(removed, position) >= 0) {
+                return super.indexOf(o);
+            }
+            if (position < 0) {
+                long value = ((Number) o).longValue();
+                int i = 0;
+
+                while (i < tail.length && (tail[i] != value || Arrays.binarySearch(removed, base.size() + i) >= 0)) {
+                    ++i;
+                }
+                if (i == tail.length) {
+                    return -1;
+                }
+                position = base.size() + i;
+            }
+
+            return position + Arrays.binarySearch(removed, position) + 1;
+        }
+
+        @Override
+        public long getByteSize() {
+            return base.getByteSize() + ARRAY_OVERHEAD * 2 + (long) Long.BYTES * tail.length
+                    + (long) Integer.BYTES * removed.length;
+        }
+    }
+}
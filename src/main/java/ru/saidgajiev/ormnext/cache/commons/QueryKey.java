@@ -0,0 +1,113 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import java.util.Arrays;
+
+/**
+ * Select statement cache key. Consist of entity type, prepared sql and argument values.
+ * Hash is computed once on creation.
+ *
+ * @author Said Gadjiev
+ */
+public final class QueryKey {
+
+    /**
+     * Hash multiplier.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * Entity type.
+     */
+    private final Class<?> entityType;
+
+    /**
+     * Prepared sql query.
+     */
+    private final String query;
+
+    /**
+     * Query arguments ordered by parameter index.
+     */
+    private final Object[] args;
+
+    /**
+     * Precomputed hash.
+     */
+    private final int hash;
+
+    /**
+     * Create a new instance.
+     *
+     * @param entityType target entity type
+     * @param query      target prepared sql query
+     * @param args       target query arguments
+     */
+    public QueryKey(Class<?> entityType, String query, Object[] args) {
+        this.entityType = entityType;
+        this.query = query;
+        this.args = args;
+
+        int result = entityType.hashCode();
+
+        result = HASH_MULTIPLIER * result + query.hashCode();
+        result = HASH_MULTIPLIER * result + Arrays.deepHashCode(args);
+        this.hash = result;
+    }
+
+    /**
+     * Return entity type.
+     *
+     * @return entity type
+     */
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * Return prepared sql query.
+     *
+     * @return prepared sql query
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Return query argument values ordered by parameter index.
+     *
+     * @return query argument values
+     */
+    public Object[] getArgs() {
+        return args.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        QueryKey queryKey = (QueryKey) o;
+
+        return hash == queryKey.hash
+                && entityType == queryKey.entityType
+                && query.equals(queryKey.query)
+                && Arrays.deepEquals(args, queryKey.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryKey{"
+                + "entityType=" + entityType.getName()
+                + ", query='" + query + '\''
+                + ", args=" + Arrays.toString(args)
+                + '}';
+    }
+}
@@ -0,0 +1,872 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where clause of prepared select sql reduced to a conjunction of simple column conditions. It tells whether
+ * a row may belong to the query result, so a write invalidates only queries it can affect. Sql which is not
+ * a plain conjunction over one table (joins, OR, NOT, subqueries) is not analyzed and may match any row.
+ * Unsupported conditions, unknown columns and values of different types never exclude a row. Strings are
+ * compared only if column collation is declared binary, otherwise database may consider different strings
+ * equal (case or accent insensitive collation, trailing spaces), so string conditions never exclude a row.
+ *
+ * @author Said Gadjiev
+ */
+public final class QueryPredicate {
+
+    /**
+     * Predicate which may match any row.
+     */
+    private static final QueryPredicate ANY = new QueryPredicate(Collections.emptyList(), -1, false);
+
+    /**
+     * Keywords which make sql not analyzable.
+     */
+    private static final Set<String> UNSUPPORTED = new HashSet<>(Arrays.asList(
+            "JOIN", "UNION", "INTERSECT", "EXCEPT", "MINUS"
+    ));
+
+    /**
+     * Keywords which make where clause not analyzable.
+     */
+    private static final Set<String> WHERE_UNSUPPORTED = new HashSet<>(Arrays.asList(
+            "JOIN", "UNION", "INTERSECT", "EXCEPT", "MINUS", "OR", "NOT", "SELECT", "EXISTS"
+    ));
+
+    /**
+     * Keywords which end where clause.
+     */
+    private static final Set<String> WHERE_END = new HashSet<>(Arrays.asList(
+            "GROUP", "ORDER", "LIMIT", "OFFSET", "HAVING", "FETCH", "FOR", "WINDOW"
+    ));
+
+    /**
+     * Conditions which all must hold.
+     */
+    private final List<Condition> conditions;
+
+    /**
+     * Sql parameters count, negative if sql is not analyzed.
+     */
+    private final int paramCount;
+
+    /**
+     * Strings are compared as binary values.
+     */
+    private final boolean binaryCollation;
+
+    /**
+     * Create a new instance.
+     *
+     * @param conditions      target conditions
+     * @param paramCount      target sql parameters count
+     * @param binaryCollation target binary collation flag
+     */
+    private QueryPredicate(List<Condition> conditions, int paramCount, boolean binaryCollation) {
+        this.conditions = conditions;
+        this.paramCount = paramCount;
+        this.binaryCollation = binaryCollation;
+    }
+
+    /**
+     * Parse where clause of prepared select sql. String conditions may match any row.
+     *
+     * @param sql target prepared sql
+     * @return predicate, it may match any row if sql is not analyzable
+     */
+    public static QueryPredicate parse(String sql) {
+        return parse(sql, false);
+    }
+
+    /**
+     * Parse where clause of prepared select sql.
+     *
+     * @param sql             target prepared sql
+     * @param binaryCollation true if database compares strings of queried table as binary values
+     * @return predicate, it may match any row if sql is not analyzable
+     */
+    public static QueryPredicate parse(String sql, boolean binaryCollation) {
+        List<Token> tokens;
+
+        try {
+            tokens = tokenize(sql);
+        } catch (NumberFormatException ex) {
+            return ANY;
+        }
+        int paramCount = 0;
+        int depth = 0;
+        int where = -1;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+
+            if (token.type == TokenType.PARAM) {
+                ++paramCount;
+            } else if (token.isSymbol("(")) {
+                ++depth;
+            } else if (token.isSymbol(")")) {
+                --depth;
+            } else if (token.type == TokenType.WORD && where < 0) {
+                if (UNSUPPORTED.contains(token.text) || depth > 0 && token.isWord("SELECT")) {
+                    return ANY;
+                }
+                if (depth == 0 && token.isWord("WHERE")) {
+                    where = i + 1;
+                }
+            }
+        }
+        if (where < 0) {
+            return new QueryPredicate(Collections.emptyList(), paramCount, binaryCollation);
+        }
+        List<Condition> conditions = new ArrayList<>();
+        List<Token> conjunct = new ArrayList<>();
+        boolean between = false;
+
+        depth = 0;
+        for (int i = where; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+
+            if (token.type == TokenType.WORD && WHERE_UNSUPPORTED.contains(token.text)
+                    && !(token.isWord("NOT") && tokens.get(i - 1).isWord("IS"))) {
+                return ANY;
+            }
+            if (token.isSymbol("(")) {
+                ++depth;
+            } else if (token.isSymbol(")")) {
+                --depth;
+            }
+            if (depth <= 0 && token.type == TokenType.WORD && WHERE_END.contains(token.text)) {
+                break;
+            }
+            if (token.isWord("BETWEEN")) {
+                between = true;
+            } else if (token.isWord("AND")) {
+                if (between) {
+                    between = false;
+                } else {
+                    parseCondition(conjunct, conditions);
+                    conjunct.clear();
+
+                    continue;
+                }
+            }
+            conjunct.add(token);
+        }
+        parseCondition(conjunct, conditions);
+
+        return new QueryPredicate(conditions, paramCount, binaryCollation);
+    }
+
+    /**
+     * Check if row may belong to query result.
+     *
+     * @param args target query argument values ordered by parameter index
+     * @param row  target row values by lower case column name
+     * @return false only if row surely does not belong to result
+     */
+    public boolean mayMatch(Object[] args, Map<String, Object> row) {
+        if (args.length != paramCount) {
+            return true;
+        }
+        for (Condition condition : conditions) {
+            if (!condition.mayMatch(args, row, binaryCollation)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Return column of the first equality condition. Query may match only rows with equal value in it.
+     *
+     * @return lower case column name or null
+     */
+    public String getIndexColumn() {
+        Condition condition = indexCondition();
+
+        return condition == null ? null : condition.column;
+    }
+
+    /**
+     * Return normalized value of the first equality condition. String value is returned only for binary
+     * collation, otherwise rows with other strings may match.
+     *
+     * @param args target query argument values ordered by parameter index
+     * @return normalized value or null
+     */
+    public Object getIndexValue(Object[] args) {
+        Condition condition = indexCondition();
+
+        if (condition == null || args.length != paramCount) {
+            return null;
+        }
+        Object value = normalize(condition.operand(0, args));
+
+        return value instanceof String && !binaryCollation ? null : value;
+    }
+
+    /**
+     * Normalize value for comparison. Numbers of any type become decimals without trailing zeros.
+     *
+     * @param value target value
+     * @return normalized value
+     */
+    public static Object normalize(Object value) {
+        if (!(value instanceof Number)) {
+            return value;
+        }
+        BigDecimal decimal = toDecimal((Number) value);
+
+        return decimal == null ? value : decimal.stripTrailingZeros();
+    }
+
+    /**
+     * Return the first equality condition.
+     *
+     * @return condition or null
+     */
+    private Condition indexCondition() {
+        for (Condition condition : conditions) {
+            if (condition.operator == Operator.EQ) {
+                return condition;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Parse conjunct to condition. Unsupported conjunct is skipped.
+     *
+     * @param tokens     target conjunct tokens
+     * @param conditions target conditions
+     */
+    private static void parseCondition(List<Token> tokens, List<Condition> conditions) {
+        int i = 0;
+
+        while (i < tokens.size() && tokens.get(i).isSymbol("(")) {
+            ++i;
+        }
+        String column = null;
+
+        while (i < tokens.size() && tokens.get(i).isName()) {
+            column = tokens.get(i++).name();
+            if (i < tokens.size() && tokens.get(i).isSymbol(".")) {
+                ++i;
+            } else {
+                break;
+            }
+        }
+        if (column == null || i >= tokens.size()) {
+            return;
+        }
+        String name = column.toLowerCase(Locale.ROOT);
+        Token token = tokens.get(i++);
+        List<Object> operands = new ArrayList<>();
+        Operator operator;
+
+        if (token.isWord("IS")) {
+            operator = Operator.IS_NULL;
+            if (i < tokens.size() && tokens.get(i).isWord("NOT")) {
+                operator = Operator.IS_NOT_NULL;
+                ++i;
+            }
+            if (i >= tokens.size() || !tokens.get(i++).isWord("NULL")) {
+                return;
+            }
+        } else if (token.isWord("IN")) {
+            operator = Operator.IN;
+            if (i >= tokens.size() || !tokens.get(i++).isSymbol("(")) {
+                return;
+            }
+            i = parseOperands(tokens, i, operands);
+            if (i < 0) {
+                return;
+            }
+        } else if (token.isWord("BETWEEN")) {
+            i = parseOperand(tokens, i, operands);
+            if (i < 0 || i >= tokens.size() || !tokens.get(i++).isWord("AND")) {
+                return;
+            }
+            i = parseOperand(tokens, i, operands);
+            if (i < 0 || !closesConjunct(tokens, i)) {
+                return;
+            }
+            conditions.add(new Condition(name, Operator.GE, new Object[]{operands.get(0)}));
+            conditions.add(new Condition(name, Operator.LE, new Object[]{operands.get(1)}));
+
+            return;
+        } else {
+            operator = Operator.of(token);
+            if (operator == null) {
+                return;
+            }
+            i = parseOperand(tokens, i, operands);
+            if (i < 0) {
+                return;
+            }
+        }
+        if (closesConjunct(tokens, i)) {
+            conditions.add(new Condition(name, operator, operands.toArray()));
+        }
+    }
+
+    /**
+     * Parse comma separated operands up to closing parenthesis.
+     *
+     * @param tokens   target tokens
+     * @param start    target first operand index
+     * @param operands target operands
+     * @return index after closing parenthesis or -1
+     */
+    private static int parseOperands(List<Token> tokens, int start, List<Object> operands) {
+        int i = start;
+
+        while (true) {
+            i = parseOperand(tokens, i, operands);
+            if (i < 0 || i >= tokens.size()) {
+                return -1;
+            }
+            Token token = tokens.get(i++);
+
+            if (token.isSymbol(")")) {
+                return i;
+            }
+            if (!token.isSymbol(",")) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Parse parameter or literal operand.
+     *
+     * @param tokens   target tokens
+     * @param start    target operand index
+     * @param operands target operands
+     * @return index after operand or -1
+     */
+    private static int parseOperand(List<Token> tokens, int start, List<Object> operands) {
+        if (start >= tokens.size()) {
+            return -1;
+        }
+        Token token = tokens.get(start);
+
+        if (token.isSymbol("-") && start + 1 < tokens.size() && tokens.get(start + 1).type == TokenType.NUMBER) {
+            operands.add(((BigDecimal) tokens.get(start + 1).value).negate());
+
+            return start + 2;
+        }
+        switch (token.type) {
+            case PARAM:
+            case STRING:
+            case NUMBER:
+                operands.add(token.value);
+
+                return start + 1;
+            case WORD:
+                if (token.isWord("TRUE") || token.isWord("FALSE")) {
+                    operands.add(Boolean.valueOf(token.text.toLowerCase(Locale.ROOT)));
+
+                    return start + 1;
+                }
+                if (token.isWord("NULL")) {
+                    operands.add(null);
+
+                    return start + 1;
+                }
+
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Check that only closing parentheses remain in conjunct.
+     *
+     * @param tokens target conjunct tokens
+     * @param start  target index after condition
+     * @return true if condition spans whole conjunct
+     */
+    private static boolean closesConjunct(List<Token> tokens, int start) {
+        for (int i = start; i < tokens.size(); i++) {
+            if (!tokens.get(i).isSymbol(")")) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Split sql to tokens.
+     *
+     * @param sql target sql
+     * @return tokens
+     */
+    private static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int paramIndex = 0;
+        int i = 0;
+
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (c == '"' || c == '`' || c == '\'') {
+                StringBuilder text = new StringBuilder();
+                int end = i + 1;
+
+                while (end < sql.length()) {
+                    if (sql.charAt(end) == c) {
+                        if (end + 1 < sql.length() && sql.charAt(end + 1) == c) {
+                            ++end;
+                        } else {
+                            break;
+                        }
+                    }
+                    text.append(sql.charAt(end++));
+                }
+                TokenType type = c == '\'' ? TokenType.STRING : TokenType.IDENTIFIER;
+
+                tokens.add(new Token(type, text.toString(), text.toString()));
+                i = end + 1;
+            } else if (Character.isDigit(c)) {
+                int end = i;
+
+                while (end < sql.length() && isNumberPart(sql, end)) {
+                    ++end;
+                }
+                String text = sql.substring(i, end);
+
+                tokens.add(new Token(TokenType.NUMBER, text, new BigDecimal(text)));
+                i = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i;
+
+                while (end < sql.length()
+                        && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_'
+                        || sql.charAt(end) == '$')) {
+                    ++end;
+                }
+                String text = sql.substring(i, end);
+
+                tokens.add(new Token(TokenType.WORD, text.toUpperCase(Locale.ROOT), text));
+                i = end;
+            } else if (c == '?') {
+                tokens.add(new Token(TokenType.PARAM, "?", new Param(paramIndex++)));
+                ++i;
+            } else {
+                String text = i + 1 < sql.length() ? sql.substring(i, i + 2) : "";
+
+                if (Operator.isTwoCharSymbol(text)) {
+                    ++i;
+                } else {
+                    text = String.valueOf(c);
+                }
+                tokens.add(new Token(TokenType.SYMBOL, text, text));
+                ++i;
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Check if char continues number literal.
+     *
+     * @param sql   target sql
+     * @param index target char index
+     * @return true if char is part of number
+     */
+    private static boolean isNumberPart(String sql, int index) {
+        char c = sql.charAt(index);
+
+        if (Character.isDigit(c) || c == '.' || c == 'e' || c == 'E') {
+            return true;
+        }
+        char prev = sql.charAt(index - 1);
+
+        return (c == '+' || c == '-') && (prev == 'e' || prev == 'E');
+    }
+
+    /**
+     * Convert number to decimal.
+     *
+     * @param number target number
+     * @return decimal or null if number is not finite
+     */
+    private static BigDecimal toDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        if (number instanceof Double || number instanceof Float) {
+            double value = number.doubleValue();
+
+            return Double.isNaN(value) || Double.isInfinite(value) ? null : BigDecimal.valueOf(value);
+        }
+
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    /**
+     * Compare normalized values.
+     *
+     * @param left  target left value
+     * @param right target right value
+     * @return comparison result or null if values are not comparable
+     */
+    @SuppressWarnings("unchecked")
+    private static Integer compare(Object left, Object right) {
+        if (left.getClass() != right.getClass() || !(left instanceof Comparable)) {
+            return null;
+        }
+
+        return ((Comparable<Object>) left).compareTo(right);
+    }
+
+    /**
+     * Condition operators.
+     */
+    private enum Operator {
+
+        /**
+         * Equal.
+         */
+        EQ,
+
+        /**
+         * Not equal.
+         */
+        NE,
+
+        /**
+         * Less.
+         */
+        LT,
+
+        /**
+         * Less or equal.
+         */
+        LE,
+
+        /**
+         * Greater.
+         */
+        GT,
+
+        /**
+         * Greater or equal.
+         */
+        GE,
+
+        /**
+         * Is null.
+         */
+        IS_NULL,
+
+        /**
+         * Is not null.
+         */
+        IS_NOT_NULL,
+
+        /**
+         * In list.
+         */
+        IN;
+
+        /**
+         * Resolve comparison operator.
+         *
+         * @param token target symbol token
+         * @return operator or null
+         */
+        private static Operator of(Token token) {
+            if (token.type != TokenType.SYMBOL) {
+                return null;
+            }
+            switch (token.text) {
+                case "=":
+                    return EQ;
+                case "<>":
+                case "!=":
+                    return NE;
+                case "<":
+                    return LT;
+                case "<=":
+                    return LE;
+                case ">":
+                    return GT;
+                case ">=":
+                    return GE;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Check if text is two char operator.
+         *
+         * @param text target text
+         * @return true if text is operator
+         */
+        private static boolean isTwoCharSymbol(String text) {
+            return "<>".equals(text) || "!=".equals(text) || "<=".equals(text) || ">=".equals(text);
+        }
+
+        /**
+         * Check comparison result.
+         *
+         * @param comparison target comparison result
+         * @return true if operator holds
+         */
+        private boolean test(int comparison) {
+            switch (this) {
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                case GE:
+                    return comparison >= 0;
+                default:
+                    return comparison == 0;
+            }
+        }
+    }
+
+    /**
+     * Column condition.
+     */
+    private static final class Condition {
+
+        /**
+         * Lower case column name.
+         */
+        private final String column;
+
+        /**
+         * Operator.
+         */
+        private final Operator operator;
+
+        /**
+         * Operands, {@link Param} or literal values.
+         */
+        private final Object[] operands;
+
+        /**
+         * Create a new instance.
+         *
+         * @param column   target column
+         * @param operator target operator
+         * @param operands target operands
+         */
+        private Condition(String column, Operator operator, Object[] operands) {
+            this.column = column;
+            this.operator = operator;
+            this.operands = operands;
+        }
+
+        /**
+         * Return operand value.
+         *
+         * @param index target operand index
+         * @param args  target query argument values
+         * @return operand value
+         */
+        private Object operand(int index, Object[] args) {
+            Object operand = operands[index];
+
+            return operand instanceof Param ? args[((Param) operand).index] : operand;
+        }
+
+        /**
+         * Check if row may satisfy condition. Sql comparison with null is never true.
+         *
+         * @param args            target query argument values
+         * @param row             target row values
+         * @param binaryCollation target binary collation flag
+         * @return false only if row surely does not satisfy condition
+         */
+        private boolean mayMatch(Object[] args, Map<String, Object> row, boolean binaryCollation) {
+            if (!row.containsKey(column)) {
+                return true;
+            }
+            Object value = normalize(row.get(column));
+
+            if (operator == Operator.IS_NULL) {
+                return value == null;
+            }
+            if (operator == Operator.IS_NOT_NULL) {
+                return value != null;
+            }
+            if (value == null) {
+                return false;
+            }
+            if (value instanceof String && !binaryCollation) {
+                return true;
+            }
+            for (int i = 0; i < operands.length; i++) {
+                Object operand = normalize(operand(i, args));
+
+                if (operand == null) {
+                    continue;
+                }
+                Integer comparison = compare(value, operand);
+
+                if (comparison == null || operator.test(comparison)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Sql parameter reference.
+     */
+    private static final class Param {
+
+        /**
+         * Zero based parameter index.
+         */
+        private final int index;
+
+        /**
+         * Create a new instance.
+         *
+         * @param index target parameter index
+         */
+        private Param(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Token types.
+     */
+    private enum TokenType {
+
+        /**
+         * Keyword or bare identifier.
+         */
+        WORD,
+
+        /**
+         * Quoted identifier.
+         */
+        IDENTIFIER,
+
+        /**
+         * String literal.
+         */
+        STRING,
+
+        /**
+         * Number literal.
+         */
+        NUMBER,
+
+        /**
+         * Parameter placeholder.
+         */
+        PARAM,
+
+        /**
+         * Operator or punctuation.
+         */
+        SYMBOL
+    }
+
+    /**
+     * Sql token.
+     */
+    private static final class Token {
+
+        /**
+         * Token type.
+         */
+        private final TokenType type;
+
+        /**
+         * Token text, upper case for words.
+         */
+        private final String text;
+
+        /**
+         * Token value.
+         */
+        private final Object value;
+
+        /**
+         * Create a new instance.
+         *
+         * @param type  target type
+         * @param text  target text
+         * @param value target value
+         */
+        private Token(TokenType type, String text, Object value) {
+            this.type = type;
+            this.text = text;
+            this.value = value;
+        }
+
+        /**
+         * Check if token is symbol.
+         *
+         * @param symbol target symbol
+         * @return true if token is symbol
+         */
+        private boolean isSymbol(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+
+        /**
+         * Check if token is keyword.
+         *
+         * @param keyword target upper case keyword
+         * @return true if token is keyword
+         */
+        private boolean isWord(String keyword) {
+            return type == TokenType.WORD && text.equals(keyword);
+        }
+
+        /**
+         * Check if token may be column name part.
+         *
+         * @return true if token is identifier
+         */
+        private boolean isName() {
+            return type == TokenType.WORD || type == TokenType.IDENTIFIER;
+        }
+
+        /**
+         * Return identifier as written in sql.
+         *
+         * @return identifier
+         */
+        private String name() {
+            return (String) value;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel. Timers are put to buckets of the wheel whose span covers their delay,
+ * so scheduling and expiration are O(1). On advance buckets whose time passed are emptied, due timers
+ * are fired and the rest are moved to finer wheels. The wheel is not thread safe, callers must guard it
+ * with their own lock. Times are nanoseconds.
+ *
+ * @author Said Gadjiev
+ */
+public final class TimingWheel {
+
+    /**
+     * Buckets count on each wheel.
+     */
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+
+    /**
+     * Bucket span of each wheel: ~1.07s, ~1.14m, ~1.22h, ~1.63d, ~6.5d, ~6.5d.
+     */
+    private static final long[] SPANS = {
+            ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+            BUCKETS[BUCKETS.length - 2] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+            BUCKETS[BUCKETS.length - 2] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1))
+    };
+
+    /**
+     * Bucket span of each wheel as shift.
+     */
+    private static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4])
+    };
+
+    /**
+     * Wheels with sentinels of bucket lists.
+     */
+    private final Timer[][] wheel = new Timer[BUCKETS.length][];
+
+    /**
+     * Current time.
+     */
+    private long nanos;
+
+    /**
+     * Create a new instance.
+     *
+     * @param nanos target current time
+     */
+    public TimingWheel(long nanos) {
+        this.nanos = nanos;
+
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Timer[BUCKETS[i]];
+
+            for (int j = 0; j < wheel[i].length; j++) {
+                Timer sentinel = new Timer(null);
+
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedule timer by its deadline. Rescheduled timer is moved.
+     *
+     * @param timer target timer
+     */
+    public void schedule(Timer timer) {
+        deschedule(timer);
+        link(findBucket(timer.getDeadline()), timer);
+    }
+
+    /**
+     * Remove timer from wheel.
+     *
+     * @param timer target timer
+     */
+    public void deschedule(Timer timer) {
+        if (timer.next != null) {
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.next = null;
+            timer.prev = null;
+        }
+    }
+
+    /**
+     * Advance wheel to current time and fire due timers.
+     *
+     * @param currentTimeNanos target current time
+     */
+    public void advance(long currentTimeNanos) {
+        long previousTimeNanos = nanos;
+
+        nanos = currentTimeNanos;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTimeNanos >>> SHIFT[i];
+            long currentTicks = currentTimeNanos >>> SHIFT[i];
+
+            if (currentTicks - previousTicks <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks);
+        }
+    }
+
+    /**
+     * Empty passed buckets of wheel, fire due timers and reschedule others.
+     *
+     * @param index         target wheel index
+     * @param previousTicks target previous ticks of wheel
+     * @param delta         target passed ticks
+     */
+    private void expire(int index, long previousTicks, long delta) {
+        Timer[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+        int steps = (int) Math.min(1 + delta, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+
+        for (int i = start; i < end; i++) {
+            Timer sentinel = timerWheel[i & mask];
+            Timer timer = sentinel.next;
+
+            sentinel.next = sentinel;
+            sentinel.prev = sentinel;
+            while (timer != sentinel) {
+                Timer next = timer.next;
+
+                timer.next = null;
+                timer.prev = null;
+                if (timer.getDeadline() - nanos <= 0L) {
+                    timer.action.run();
+                } else {
+                    link(findBucket(timer.getDeadline()), timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * Find bucket sentinel for deadline.
+     *
+     * @param deadline target deadline
+     * @return bucket sentinel
+     */
+    private Timer findBucket(long deadline) {
+        long duration = deadline - nanos;
+        int length = wheel.length - 1;
+
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = deadline >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+
+                return wheel[i][index];
+            }
+        }
+
+        return wheel[length][0];
+    }
+
+    /**
+     * Append timer to bucket.
+     *
+     * @param sentinel target bucket sentinel
+     * @param timer    target timer
+     */
+    private static void link(Timer sentinel, Timer timer) {
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    /**
+     * Return closest power of two greater or equal to value.
+     *
+     * @param value target value
+     * @return power of two
+     */
+    private static long ceilingPowerOfTwo(long value) {
+        return 1L << (Long.SIZE - Long.numberOfLeadingZeros(value - 1));
+    }
+
+    /**
+     * Timer. Deadline may be moved forward without lock, the wheel reschedules the timer when
+     * its old bucket expires.
+     */
+    public static final class Timer {
+
+        /**
+         * Expire action.
+         */
+        private final Runnable action;
+
+        /**
+         * Deadline.
+         */
+        private volatile long deadline;
+
+        /**
+         * Previous timer in bucket. Guarded by wheel owner lock.
+         */
+        private Timer prev;
+
+        /**
+         * Next timer in bucket. Guarded by wheel owner lock.
+         */
+        private Timer next;
+
+        /**
+         * Create a new instance.
+         *
+         * @param action target expire action
+         */
+        public Timer(Runnable action) {
+            this.action = action;
+        }
+
+        /**
+         * Return deadline.
+         *
+         * @return deadline
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Set deadline.
+         *
+         * @param deadline target deadline
+         */
+        public void setDeadline(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
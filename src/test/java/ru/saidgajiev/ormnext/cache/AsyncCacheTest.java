@@ -0,0 +1,82 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncCacheTest {
+
+    @Test
+    public void hitDoesNotLoad() throws Exception {
+        CacheLayer cacheLayer = CacheLayerTest.cacheLayer();
+        AsyncCache asyncCache = new AsyncCache(cacheLayer, Runnable::run);
+        CachedEntity entity = new CachedEntity(1, "a");
+        AtomicInteger loads = new AtomicInteger();
+
+        cacheLayer.cacheQueryForId(1, entity, cacheLayer.getGeneration(CachedEntity.class));
+
+        Object result = asyncCache.queryForId(CachedEntity.class, 1, () -> {
+            loads.incrementAndGet();
+
+            return CompletableFuture.completedFuture(new CachedEntity(1, "b"));
+        }).get();
+
+        Assert.assertSame(entity, result);
+        Assert.assertEquals(0, loads.get());
+    }
+
+    @Test
+    public void missLoadsAndPopulates() throws Exception {
+        CacheLayer cacheLayer = CacheLayerTest.cacheLayer();
+        AsyncCache asyncCache = new AsyncCache(cacheLayer, Runnable::run);
+        List<Object> entities = Arrays.asList(new CachedEntity(1, "a"), new CachedEntity(2, "b"));
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            List<Object> result = asyncCache.queryForAll(CachedEntity.class, () -> {
+                loads.incrementAndGet();
+
+                return CompletableFuture.completedFuture(entities);
+            }).get();
+
+            Assert.assertEquals(entities, result);
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(Optional.of(entities), cacheLayer.queryForAll(CachedEntity.class));
+    }
+
+    @Test
+    public void writeDuringLoadDiscardsPopulation() throws Exception {
+        CacheLayer cacheLayer = CacheLayerTest.cacheLayer();
+        AsyncCache asyncCache = new AsyncCache(cacheLayer, Runnable::run);
+        List<Object> entities = Collections.singletonList(new CachedEntity(1, "a"));
+
+        List<Object> result = asyncCache.queryForAll(CachedEntity.class, () -> {
+            cacheLayer.create(new CachedEntity(2, "b"));
+
+            return CompletableFuture.completedFuture(entities);
+        }).get();
+
+        Assert.assertEquals(entities, result);
+        Assert.assertFalse(cacheLayer.queryForAll(CachedEntity.class).isPresent());
+    }
+
+    @Test
+    public void nullLoadIsNotCached() throws Exception {
+        CacheLayer cacheLayer = CacheLayerTest.cacheLayer();
+        AsyncCache asyncCache = new AsyncCache(cacheLayer, Runnable::run);
+
+        Assert.assertNull(asyncCache.queryForAll(CachedEntity.class, () -> CompletableFuture.completedFuture(null))
+                .get());
+        Assert.assertNull(asyncCache.countOff(CachedEntity.class, () -> CompletableFuture.completedFuture(null))
+                .get());
+        Assert.assertFalse(cacheLayer.queryForAll(CachedEntity.class).isPresent());
+        Assert.assertFalse(cacheLayer.countOff(CachedEntity.class).isPresent());
+    }
+}
@@ -0,0 +1,236 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.saidgadjiev.ormnext.core.dao.DefaultDatabaseEngine;
+import ru.saidgadjiev.ormnext.core.dialect.H2Dialect;
+import ru.saidgadjiev.ormnext.core.table.internal.metamodel.MetaModel;
+import ru.saidgajiev.ormnext.cache.codec.CompactCodec;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+public class CacheLayerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void incrementalAggregatesFollowCreatesAndDeletes() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+        MemoryBudget budget = new MemoryBudget(
+                Long.MAX_VALUE,
+                (subCache, entityType, key, value) -> value instanceof List ? ((List<?>) value).size() : 0
+        );
+        CachedEntity first = new CachedEntity(1, "a");
+        CachedEntity second = new CachedEntity(2, "b");
+        CachedEntity third = new CachedEntity(3, "c");
+        CachedEntity fourth = new CachedEntity(4, "d");
+
+        cacheLayer.setMemoryBudget(budget);
+        cacheLayer.setIncrementalAggregates(CachedEntity.class, true);
+        cacheLayer.cacheQueryForAll(Arrays.asList(first, second));
+        cacheLayer.cacheCountOff(CachedEntity.class, 2);
+        Assert.assertEquals(2, budget.getWeight());
+
+        cacheLayer.create(Arrays.asList(third, fourth));
+
+        Assert.assertEquals(
+                Optional.of(Arrays.<Object>asList(first, second, third, fourth)),
+                cacheLayer.queryForAll(CachedEntity.class)
+        );
+        Assert.assertEquals(Optional.of(4L), cacheLayer.countOff(CachedEntity.class));
+        Assert.assertEquals(4, budget.getWeight());
+
+        cacheLayer.deleteById(CachedEntity.class, 1);
+
+        Assert.assertEquals(
+                Optional.of(Arrays.<Object>asList(second, third, fourth)),
+                cacheLayer.queryForAll(CachedEntity.class)
+        );
+        Assert.assertEquals(Optional.of(3L), cacheLayer.countOff(CachedEntity.class));
+        Assert.assertEquals(3, budget.getWeight());
+
+        cacheLayer.deleteById(CachedEntity.class, 5);
+
+        Assert.assertFalse(cacheLayer.queryForAll(CachedEntity.class).isPresent());
+        Assert.assertFalse(cacheLayer.countOff(CachedEntity.class).isPresent());
+        Assert.assertEquals(0, budget.getWeight());
+    }
+
+    @Test
+    public void createEvictsAggregatesByDefault() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+
+        cacheLayer.cacheQueryForAll(Collections.singletonList(new CachedEntity(1, "a")));
+        cacheLayer.cacheCountOff(CachedEntity.class, 1);
+        Assert.assertTrue(cacheLayer.countOff(CachedEntity.class).isPresent());
+        cacheLayer.create(new CachedEntity(2, "b"));
+
+        Assert.assertFalse(cacheLayer.queryForAll(CachedEntity.class).isPresent());
+        Assert.assertFalse(cacheLayer.countOff(CachedEntity.class).isPresent());
+    }
+
+    @Test
+    public void populationWithoutLookupIsCached() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+        CachedEntity entity = new CachedEntity(1, "a");
+
+        cacheLayer.cacheQueryForId(1, entity);
+
+        Assert.assertEquals(Optional.of(entity), cacheLayer.queryForId(CachedEntity.class, 1));
+    }
+
+    @Test
+    public void populationOfOtherIdTakesLastObservedGeneration() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+        CachedEntity entity = new CachedEntity(2, "b");
+
+        Assert.assertFalse(cacheLayer.queryForId(CachedEntity.class, 1).isPresent());
+        cacheLayer.cacheQueryForId(2, entity);
+        Assert.assertEquals(Optional.of(entity), cacheLayer.queryForId(CachedEntity.class, 2));
+
+        Assert.assertFalse(cacheLayer.queryForId(CachedEntity.class, 3).isPresent());
+        cacheLayer.update(new CachedEntity(4, "d"));
+        cacheLayer.cacheQueryForId(5, new CachedEntity(5, "e"));
+
+        Assert.assertFalse(cacheLayer.queryForId(CachedEntity.class, 5).isPresent());
+    }
+
+    @Test
+    public void populationWithIdOfOtherBoxedTypeTakesObservation() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+
+        Assert.assertFalse(cacheLayer.queryForId(CachedEntity.class, 1L).isPresent());
+        cacheLayer.update(new CachedEntity(2, "b"));
+        cacheLayer.cacheQueryForId(1, new CachedEntity(1, "a"));
+
+        Assert.assertFalse(cacheLayer.queryForId(CachedEntity.class, 1).isPresent());
+    }
+
+    @Test
+    public void populationAfterWriteIsDiscarded() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+        CachedEntity entity = new CachedEntity(1, "a");
+
+        Assert.assertFalse(cacheLayer.queryForId(CachedEntity.class, 1).isPresent());
+        cacheLayer.update(new CachedEntity(1, "b"));
+        cacheLayer.evictApi().evict(CachedEntity.class, 1);
+        cacheLayer.cacheQueryForId(1, entity);
+
+        Assert.assertFalse(cacheLayer.queryForId(CachedEntity.class, 1).isPresent());
+    }
+
+    @Test
+    public void restoredEntryKeepsRemainingTtl() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("cache.snapshot");
+        ExpirationPolicy policy = ExpirationPolicy.builder().expireAfterWrite(300, TimeUnit.MILLISECONDS).build();
+        CacheLayer saved = cacheLayer();
+
+        saved.setExpirationPolicy(CachedEntity.class, policy);
+        saved.setSnapshot(file, new CompactCodec());
+        Assert.assertFalse(saved.queryForId(CachedEntity.class, 1).isPresent());
+        saved.cacheQueryForId(1, new CachedEntity(1, "a"));
+        Thread.sleep(200);
+        saved.saveSnapshot();
+
+        CacheLayer restored = cacheLayer();
+
+        restored.setExpirationPolicy(CachedEntity.class, policy);
+        restored.setSnapshot(file, new CompactCodec());
+        Assert.assertTrue(restored.restoreSnapshot());
+        Assert.assertTrue(restored.queryForId(CachedEntity.class, 1).isPresent());
+        Thread.sleep(150);
+
+        Assert.assertFalse(restored.queryForId(CachedEntity.class, 1).isPresent());
+    }
+
+    @Test
+    public void existFilterExpiresWithQueryForAll() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+
+        cacheLayer.setExpirationPolicy(
+                CachedEntity.class,
+                ExpirationPolicy.builder().expireAfterWrite(100, TimeUnit.MILLISECONDS).build()
+        );
+        cacheLayer.setIncrementalAggregates(CachedEntity.class, true);
+        Assert.assertFalse(cacheLayer.queryForAll(CachedEntity.class).isPresent());
+        cacheLayer.cacheQueryForAll(Arrays.asList(new CachedEntity(1, "a"), new CachedEntity(2, "b")));
+
+        Assert.assertEquals(Optional.of(false), cacheLayer.exist(CachedEntity.class, 3));
+        Thread.sleep(150);
+
+        Assert.assertFalse(cacheLayer.exist(CachedEntity.class, 3).isPresent());
+    }
+
+    @Test
+    public void existFilterIsNotRestoredFromSnapshot() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("cache.snapshot");
+        CacheLayer saved = cacheLayer();
+
+        saved.setIncrementalAggregates(CachedEntity.class, true);
+        saved.setSnapshot(file, new CompactCodec());
+        Assert.assertFalse(saved.queryForAll(CachedEntity.class).isPresent());
+        saved.cacheQueryForAll(Arrays.asList(new CachedEntity(1, "a"), new CachedEntity(2, "b")));
+        Assert.assertEquals(Optional.of(false), saved.exist(CachedEntity.class, 3));
+        saved.saveSnapshot();
+
+        CacheLayer restored = cacheLayer();
+
+        restored.setIncrementalAggregates(CachedEntity.class, true);
+        restored.setSnapshot(file, new CompactCodec());
+        Assert.assertTrue(restored.restoreSnapshot());
+        Assert.assertTrue(restored.queryForAll(CachedEntity.class).isPresent());
+
+        Assert.assertFalse(restored.exist(CachedEntity.class, 3).isPresent());
+    }
+
+    @Test
+    public void existFilterFollowsDeletes() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+        CachedEntity first = new CachedEntity(1, "a");
+
+        cacheLayer.setIncrementalAggregates(CachedEntity.class, true);
+        Assert.assertFalse(cacheLayer.queryForAll(CachedEntity.class).isPresent());
+        cacheLayer.cacheQueryForAll(Arrays.asList(first, new CachedEntity(2, "b")));
+
+        cacheLayer.deleteById(CachedEntity.class, 1);
+        cacheLayer.deleteById(CachedEntity.class, 1);
+
+        Assert.assertEquals(Optional.of(false), cacheLayer.exist(CachedEntity.class, 1));
+        Assert.assertNotEquals(Optional.of(false), cacheLayer.exist(CachedEntity.class, 2));
+
+        cacheLayer.create(first);
+
+        Assert.assertEquals(Optional.of(true), cacheLayer.exist(CachedEntity.class, 1));
+        Assert.assertNotEquals(Optional.of(false), cacheLayer.exist(CachedEntity.class, 2));
+    }
+
+    @Test
+    public void existFilterIsBuiltOnlyForIncrementalAggregates() throws Exception {
+        CacheLayer cacheLayer = cacheLayer();
+
+        Assert.assertFalse(cacheLayer.queryForAll(CachedEntity.class).isPresent());
+        cacheLayer.cacheQueryForAll(Arrays.asList(new CachedEntity(1, "a"), new CachedEntity(2, "b")));
+
+        Assert.assertFalse(cacheLayer.exist(CachedEntity.class, 3).isPresent());
+    }
+
+    static CacheLayer cacheLayer() {
+        CacheLayer cacheLayer = new CacheLayer();
+
+        cacheLayer.init(
+                new MetaModel(Collections.singletonList(CachedEntity.class)),
+                new DefaultDatabaseEngine(new H2Dialect())
+        );
+        cacheLayer.enableDefaultCache();
+
+        return cacheLayer;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.saidgajiev.ormnext.cache.codec.SerializableCodec;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class CacheSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeRead() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("cache.snapshot");
+        SerializableCodec codec = new SerializableCodec();
+        long fingerprint = CacheSnapshot.fingerprint(Collections.singletonList(String.class), codec);
+        CacheSnapshot.Section section = new CacheSnapshot.Section();
+
+        section.getObjects().put(1, new CacheSnapshot.Aged<>("one", 10));
+        section.getObjects().put(2, new CacheSnapshot.Aged<>("two", 20));
+        section.setQueryForAll(new CacheSnapshot.Aged<>(Arrays.asList(1, 2), 30));
+        section.setCountOff(new CacheSnapshot.Aged<>(2L, 40));
+        section.getLists().add(new CacheSnapshot.Query<>("SELECT 1", new Object[] {"a"}, Arrays.asList(1), 50));
+        section.getLongs().add(new CacheSnapshot.Query<>("SELECT 2", new Object[] {new Object()}, 1L, 60));
+        section.getLongs().add(new CacheSnapshot.Query<>("SELECT 3", new Object[] {null, 1L}, 3L, 70));
+        CacheSnapshot.write(file, fingerprint, Collections.singletonMap(String.class, section.encode(codec)));
+
+        Map<String, Class<?>> entityTypes = Collections.singletonMap(String.class.getName(), String.class);
+
+        Assert.assertNull(CacheSnapshot.read(file, fingerprint + 1, entityTypes));
+
+        CacheSnapshot.Contents contents = CacheSnapshot.read(file, fingerprint, entityTypes);
+        CacheSnapshot.Section restored = CacheSnapshot.Section.decode(
+                String.class,
+                contents.getSections().get(String.class),
+                codec,
+                100
+        );
+
+        Assert.assertEquals("one", restored.getObjects().get(1).getValue());
+        Assert.assertEquals(110, restored.getObjects().get(1).getAge());
+        Assert.assertEquals("two", restored.getObjects().get(2).getValue());
+        Assert.assertEquals(Arrays.asList(1, 2), restored.getQueryForAll().getValue());
+        Assert.assertEquals(130, restored.getQueryForAll().getAge());
+        Assert.assertEquals(Long.valueOf(2), restored.getCountOff().getValue());
+        Assert.assertEquals(140, restored.getCountOff().getAge());
+        Assert.assertEquals(1, restored.getLists().size());
+        Assert.assertEquals("SELECT 1", restored.getLists().get(0).getQuery());
+        Assert.assertArrayEquals(new Object[] {"a"}, restored.getLists().get(0).getArgs());
+        Assert.assertEquals(150, restored.getLists().get(0).getAge());
+        Assert.assertEquals(1, restored.getLongs().size());
+        Assert.assertArrayEquals(new Object[] {null, 1L}, restored.getLongs().get(0).getArgs());
+        Assert.assertEquals(Long.valueOf(3), restored.getLongs().get(0).getResult());
+        Assert.assertEquals(170, restored.getLongs().get(0).getAge());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedSectionIsRejected() throws Exception {
+        CacheSnapshot.Section.decode(String.class, new byte[] {(byte) 0xFF, 1}, new SerializableCodec(), 0);
+    }
+}
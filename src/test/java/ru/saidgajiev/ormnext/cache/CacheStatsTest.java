@@ -0,0 +1,89 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class CacheStatsTest {
+
+    @Test
+    public void snapshotCounters() throws Exception {
+        CacheStats stats = new CacheStats();
+
+        stats.recordHits(SubCache.OBJECT, String.class, 3);
+        stats.recordMisses(SubCache.OBJECT, String.class, 1);
+        stats.recordHits(SubCache.LIST, String.class, 1);
+        stats.recordLoad(SubCache.OBJECT, String.class, 100, true);
+        stats.recordLoad(SubCache.OBJECT, String.class, 300, false);
+        stats.recordEvictions(SubCache.LIST, String.class, EvictionCause.EXPIRED, 2);
+        stats.recordEvictions(SubCache.LONG, Integer.class, EvictionCause.STALE, 1);
+
+        StatsSnapshot object = stats.snapshot(String.class, SubCache.OBJECT);
+
+        Assert.assertEquals(3, object.getHitCount());
+        Assert.assertEquals(1, object.getMissCount());
+        Assert.assertEquals(0.75, object.getHitRate(), 0);
+        Assert.assertEquals(1, object.getLoadSuccessCount());
+        Assert.assertEquals(1, object.getLoadFailureCount());
+        Assert.assertEquals(200, object.getAverageLoadPenaltyNanos(), 0);
+
+        StatsSnapshot entity = stats.snapshot(String.class);
+
+        Assert.assertEquals(4, entity.getHitCount());
+        Assert.assertEquals(2, entity.getEvictionCount(EvictionCause.EXPIRED));
+        Assert.assertEquals(0, entity.getEvictionCount(EvictionCause.STALE));
+
+        StatsSnapshot total = stats.snapshot();
+
+        Assert.assertEquals(3, total.getEvictionCount());
+        Assert.assertEquals(0, stats.snapshot(Long.class).getRequestCount());
+    }
+
+    @Test
+    public void latencyPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int i = 0;
+
+        while (i < 99) {
+            histogram.record(10);
+            ++i;
+        }
+        histogram.record(5000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(15, snapshot.getPercentileNanos(0.5));
+        Assert.assertEquals(15, snapshot.getPercentileNanos(0.99));
+        Assert.assertEquals(8191, snapshot.getPercentileNanos(1));
+        Assert.assertEquals(0, new LatencyHistogram().snapshot().getPercentileNanos(0.5));
+    }
+
+    @Test
+    public void registerMBeans() throws Exception {
+        CacheStats stats = new CacheStats();
+
+        stats.register(String.class);
+        stats.recordHits(SubCache.COUNT_OFF, String.class, 2);
+        stats.recordLookup(1000);
+        stats.registerMBeans("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName countOff = new ObjectName("ru.saidgajiev.ormnext.cache:type=CacheStats,name=\"test\","
+                    + "entity=java.lang.String,subCache=COUNT_OFF");
+            ObjectName lookup = new ObjectName("ru.saidgajiev.ormnext.cache:type=CacheLatency,name=\"test\","
+                    + "operation=lookup");
+
+            Assert.assertEquals(2L, server.getAttribute(countOff, "HitCount"));
+            Assert.assertEquals(1L, server.getAttribute(lookup, "Count"));
+        } finally {
+            stats.unregisterMBeans();
+        }
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer()
+                .queryNames(new ObjectName("ru.saidgajiev.ormnext.cache:*"), null)
+                .isEmpty());
+    }
+}
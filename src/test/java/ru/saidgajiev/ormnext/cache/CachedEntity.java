@@ -0,0 +1,37 @@
+package ru.saidgajiev.ormnext.cache;
+
+import ru.saidgadjiev.ormnext.core.field.DatabaseColumn;
+
+@Cacheable
+public class CachedEntity {
+
+    @DatabaseColumn(id = true)
+    private int id;
+
+    @DatabaseColumn
+    private String name;
+
+    public CachedEntity() {
+    }
+
+    public CachedEntity(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,109 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.saidgadjiev.ormnext.core.cache.ObjectCache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class EvictHelperTest {
+
+    private final Map<Class<?>, ObjectCache> objectCacheMap = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, List<Object>> queryForAllCache = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Long> countOffCache = new ConcurrentHashMap<>();
+
+    private final Map<Object, Boolean> exists = new ConcurrentHashMap<>();
+
+    private final CacheRegion region = new CacheRegion(String.class, null, exists, false);
+
+    private final Generations generations = new Generations();
+
+    private final EvictHelper evictHelper = createEvictHelper();
+
+    @Test
+    public void evictAllWaitsForPopulation() throws Exception {
+        long stamp = region.lockPopulation();
+        Thread eviction = new Thread(() -> evictHelper.evictAll(String.class));
+
+        eviction.start();
+        countOffCache.put(String.class, 1L);
+        queryForAllCache.put(String.class, Collections.singletonList("id"));
+        exists.put("id", true);
+        eviction.join(100);
+
+        Assert.assertTrue(eviction.isAlive());
+        Assert.assertEquals(0, generations.current(String.class));
+
+        region.unlock(stamp);
+        eviction.join();
+
+        Assert.assertEquals(1, generations.current(String.class));
+        Assert.assertTrue(countOffCache.isEmpty());
+        Assert.assertTrue(queryForAllCache.isEmpty());
+        Assert.assertTrue(exists.isEmpty());
+    }
+
+    @Test
+    public void evictionInvalidatesOptimisticRead() throws Exception {
+        long stamp = region.startRead();
+
+        Assert.assertTrue(region.validateRead(stamp));
+
+        evictHelper.evictCountOff(String.class);
+
+        Assert.assertFalse(region.validateRead(stamp));
+        Assert.assertTrue(region.validateRead(region.startRead()));
+    }
+
+    @Test
+    public void flushEntitiesWithoutObjectCacheOrRegion() throws Exception {
+        ObjectCache objectCache = new LRUObjectCache();
+        Map<Class<?>, CacheRegion> regions = new HashMap<>();
+
+        objectCache.registerClass(Long.class);
+        objectCache.put(Long.class, 1L, 1L);
+        objectCacheMap.put(Long.class, objectCache);
+        regions.put(String.class, region);
+        regions.put(Integer.class, new CacheRegion(Integer.class, null, new ConcurrentHashMap<>(), false));
+        countOffCache.put(Integer.class, 1L);
+
+        new EvictHelper(
+                objectCacheMap,
+                queryForAllCache,
+                countOffCache,
+                new ConcurrentHashMap<>(),
+                new SelectStatementCache(null, null),
+                regions,
+                generations
+        ).flush();
+
+        Assert.assertNull(objectCache.get(Long.class, 1L));
+        Assert.assertTrue(countOffCache.isEmpty());
+    }
+
+    private EvictHelper createEvictHelper() {
+        ObjectCache objectCache = new LRUObjectCache();
+        Map<Class<?>, Map<Object, Boolean>> existCache = new ConcurrentHashMap<>();
+
+        objectCache.registerClass(String.class);
+        objectCacheMap.put(String.class, objectCache);
+        region.setObjectCache(objectCache);
+        existCache.put(String.class, exists);
+
+        return new EvictHelper(
+                objectCacheMap,
+                queryForAllCache,
+                countOffCache,
+                existCache,
+                new SelectStatementCache(null, null),
+                Collections.singletonMap(String.class, region),
+                generations
+        );
+    }
+}
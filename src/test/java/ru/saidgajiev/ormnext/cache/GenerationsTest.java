@@ -0,0 +1,69 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GenerationsTest {
+
+    @Test
+    public void takeObservedGeneration() throws Exception {
+        Generations generations = new Generations();
+        EntryKey key = new EntryKey(SubCache.LIST, String.class, "query");
+
+        generations.observe(key);
+        generations.advance(String.class);
+
+        Assert.assertEquals(0, generations.take(key));
+        Assert.assertEquals(0, generations.current(Integer.class));
+    }
+
+    @Test
+    public void observationIsKeyedByEntry() throws Exception {
+        Generations generations = new Generations();
+
+        generations.observe(new EntryKey(SubCache.OBJECT, String.class, 1));
+        generations.advance(String.class);
+        generations.observe(new EntryKey(SubCache.OBJECT, String.class, 2));
+        generations.advance(String.class);
+
+        Assert.assertEquals(0, generations.take(new EntryKey(SubCache.OBJECT, String.class, 1)));
+        Assert.assertEquals(1, generations.take(new EntryKey(SubCache.OBJECT, String.class, 2)));
+    }
+
+    @Test
+    public void unobservedEntryTakesLastObservedGenerationOfEntity() throws Exception {
+        Generations generations = new Generations();
+
+        generations.observe(new EntryKey(SubCache.OBJECT, String.class, 1));
+        generations.advance(String.class);
+
+        Assert.assertEquals(0, generations.take(new EntryKey(SubCache.LIST, String.class, "query")));
+        Assert.assertEquals(0, generations.take(new EntryKey(SubCache.OBJECT, String.class, 1)));
+        Assert.assertEquals(0, generations.take(new EntryKey(SubCache.OBJECT, String.class, 1)));
+    }
+
+    @Test
+    public void observationOfOtherThreadIsNotTaken() throws Exception {
+        Generations generations = new Generations();
+        EntryKey key = new EntryKey(SubCache.LONG, String.class, "query");
+        Thread thread = new Thread(() -> generations.observe(key));
+
+        thread.start();
+        thread.join();
+        generations.advance(String.class);
+
+        Assert.assertEquals(1, generations.take(key));
+    }
+
+    @Test
+    public void forgetDropsObservations() throws Exception {
+        Generations generations = new Generations();
+        EntryKey key = new EntryKey(SubCache.COUNT_OFF, String.class, String.class);
+
+        generations.observe(key);
+        generations.advance(String.class);
+        generations.forget();
+
+        Assert.assertEquals(1, generations.take(key));
+    }
+}
@@ -0,0 +1,184 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InvalidationBusTest {
+
+    @Test
+    public void coalesceWrites() throws Exception {
+        LoopbackTransport transport = new LoopbackTransport();
+        InvalidationBus sender = createBus(transport, 2);
+        InvalidationBus receiver = createBus(transport.join(), 2);
+        RecordingInvalidator received = new RecordingInvalidator();
+
+        sender.bind(Arrays.asList(String.class, Integer.class), new RecordingInvalidator());
+        receiver.bind(Arrays.asList(String.class, Integer.class), received);
+
+        sender.publish(String.class, 1);
+        sender.publish(String.class, 1);
+        sender.publish(String.class, 2L);
+        sender.publish(Integer.class, "a");
+        sender.publish(Integer.class, "b");
+        sender.publish(Integer.class, "c");
+        sender.flush();
+
+        Assert.assertEquals(Arrays.asList("Integer:*", "String:1", "String:2"), received.events);
+        Assert.assertEquals(0, receiver.getGapCount());
+
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void evictAllOnGap() throws Exception {
+        LoopbackTransport transport = new LoopbackTransport();
+        List<byte[]> messages = new CopyOnWriteArrayList<>();
+
+        transport.join().start(messages::add);
+
+        InvalidationBus sender = new InvalidationBus(
+                transport,
+                TimeUnit.HOURS.toNanos(1),
+                1,
+                TimeUnit.NANOSECONDS,
+                16
+        );
+        InvalidationBus receiver = createBus(new LoopbackTransport(), 16);
+        RecordingInvalidator received = new RecordingInvalidator();
+
+        receiver.bind(Collections.singletonList(String.class), received);
+        sender.publish(String.class, 1);
+        sender.flush();
+        sender.publish(String.class, 2);
+        sender.flush();
+        Thread.sleep(1);
+        sender.flush();
+        Assert.assertEquals(3, messages.size());
+
+        receiver.receive(messages.get(1));
+        Assert.assertEquals(Arrays.asList("*", "String:2"), received.events);
+        Assert.assertEquals(1, receiver.getGapCount());
+
+        receiver.receive(messages.get(2));
+        receiver.receive(messages.get(0));
+        Assert.assertEquals(Arrays.asList("*", "String:2", "String:1"), received.events);
+        Assert.assertEquals(1, receiver.getGapCount());
+
+        receiver.close();
+    }
+
+    @Test
+    public void sendOverUdp() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        UdpTransport first = new UdpTransport(new InetSocketAddress(loopback, 0), Collections.emptyList());
+        UdpTransport second = new UdpTransport(
+                new InetSocketAddress(loopback, 0),
+                Collections.singletonList(first.getLocalAddress())
+        );
+        InvalidationBus receiver = createBus(first, 16);
+        InvalidationBus sender = createBus(second, 16);
+        RecordingInvalidator received = new RecordingInvalidator();
+
+        receiver.bind(Collections.singletonList(String.class), received);
+        sender.bind(Collections.singletonList(String.class), new RecordingInvalidator());
+        sender.publish(String.class, "id");
+        sender.publishAll(Integer.class);
+        sender.flush();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (received.events.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Collections.singletonList("String:id"), received.events);
+
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void evictAllOnInvalidatorFailure() throws Exception {
+        LoopbackTransport transport = new LoopbackTransport();
+        InvalidationBus sender = createBus(transport, 16);
+        InvalidationBus receiver = createBus(transport.join(), 16);
+        RecordingInvalidator received = new RecordingInvalidator() {
+            @Override
+            public void invalidate(Class<?> entityType, Object id) {
+                throw new IllegalStateException("Cache is broken");
+            }
+        };
+
+        sender.bind(Collections.singletonList(String.class), new RecordingInvalidator());
+        receiver.bind(Collections.singletonList(String.class), received);
+        sender.publish(String.class, 1);
+        sender.flush();
+
+        Assert.assertEquals(Collections.singletonList("*"), received.events);
+        Assert.assertEquals(1, receiver.getReceiveFailureCount());
+
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void scheduledFlushSurvivesUncheckedSendFailure() throws Exception {
+        AtomicInteger sends = new AtomicInteger();
+        LoopbackTransport transport = new LoopbackTransport() {
+            @Override
+            public void send(byte[] message) {
+                if (sends.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Transport is broken");
+                }
+                super.send(message);
+            }
+        };
+        InvalidationBus sender = new InvalidationBus(transport, 1, 1, TimeUnit.MILLISECONDS, 16);
+
+        sender.bind(Collections.singletonList(String.class), new RecordingInvalidator());
+        sender.publish(String.class, 1);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (sends.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(sends.get() >= 2);
+        Assert.assertEquals(1, sender.getSendFailureCount());
+
+        sender.close();
+    }
+
+    private static InvalidationBus createBus(InvalidationTransport transport, int maxIdsPerType) {
+        return new InvalidationBus(transport, 1, 1, TimeUnit.HOURS, maxIdsPerType);
+    }
+
+    private static class RecordingInvalidator implements InvalidationBus.Invalidator {
+
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void invalidate(Class<?> entityType, Object id) {
+            events.add(entityType.getSimpleName() + ":" + id);
+        }
+
+        @Override
+        public void invalidateAll(Class<?> entityType) {
+            events.add(entityType.getSimpleName() + ":*");
+        }
+
+        @Override
+        public void invalidateAll() {
+            events.add("*");
+        }
+    }
+}
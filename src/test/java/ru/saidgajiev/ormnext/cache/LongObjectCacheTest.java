@@ -0,0 +1,90 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongObjectCacheTest {
+
+    @Test
+    public void intAndLongIdsAreEqual() throws Exception {
+        LongObjectCache cache = new LongObjectCache();
+
+        cache.registerClass(String.class);
+        cache.put(String.class, 7, "seven");
+
+        Assert.assertEquals("seven", cache.get(String.class, 7L));
+        Assert.assertEquals("seven", cache.get(String.class, (Object) 7L));
+        Assert.assertNull(cache.get(String.class, "7"));
+
+        cache.invalidate(String.class, 7L);
+
+        Assert.assertEquals(0, cache.size(String.class));
+    }
+
+    @Test
+    public void matchHashMap() throws Exception {
+        LongObjectCache cache = new LongObjectCache(Integer.MAX_VALUE);
+        Map<Long, Object> expected = new HashMap<>();
+        Random random = new Random(1);
+        int i = 0;
+
+        cache.registerClass(String.class);
+        while (i < 100_000) {
+            long id = random.nextInt(512) - 256L;
+
+            if (random.nextBoolean()) {
+                cache.put(String.class, id, "v" + i);
+                expected.put(id, "v" + i);
+            } else {
+                cache.invalidate(String.class, id);
+                expected.remove(id);
+            }
+            ++i;
+        }
+        Assert.assertEquals(expected.size(), cache.size(String.class));
+        for (long id = -256; id < 256; ++id) {
+            Assert.assertEquals(expected.get(id), cache.get(String.class, id));
+        }
+    }
+
+    @Test
+    public void evictUnreadFirst() throws Exception {
+        LongObjectCache cache = new LongObjectCache(2);
+
+        cache.registerClass(String.class);
+        cache.put(String.class, 1L, "one");
+        cache.put(String.class, 2L, "two");
+        cache.get(String.class, 1L);
+        cache.put(String.class, 3L, "three");
+
+        Assert.assertEquals(2, cache.size(String.class));
+        Assert.assertEquals("one", cache.get(String.class, 1L));
+        Assert.assertNull(cache.get(String.class, 2L));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void evictionListenerAndConditionalInvalidate() throws Exception {
+        LongObjectCache cache = new LongObjectCache(1);
+        Map<Object, Class<?>> evicted = new HashMap<>();
+
+        cache.setEvictionListener((entityType, id) -> evicted.put(id, entityType));
+        cache.registerClass(String.class);
+        cache.put(String.class, 1L, "one");
+        cache.put(String.class, 2L, "two");
+
+        Assert.assertEquals(String.class, evicted.get(1L));
+        Assert.assertEquals(1, evicted.size());
+
+        cache.invalidate(String.class, 2L, new String("two"));
+        Assert.assertEquals("two", cache.get(String.class, 2L));
+
+        cache.invalidate(String.class, 2L, cache.get(String.class, 2L));
+        Assert.assertNull(cache.get(String.class, 2L));
+        Assert.assertEquals(1, evicted.size());
+    }
+}
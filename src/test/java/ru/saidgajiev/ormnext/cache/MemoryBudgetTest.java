@@ -0,0 +1,49 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void evictLeastRecentlyUsedOverBudget() throws Exception {
+        MemoryBudget budget = new MemoryBudget(3, (subCache, entityType, key, value) -> 1);
+        List<Object> evicted = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            int id = i;
+
+            budget.onWrite(new EntryKey(SubCache.OBJECT, String.class, id), "v", () -> evicted.add(id));
+        }
+        budget.onRead(new EntryKey(SubCache.OBJECT, String.class, 0));
+        budget.onWrite(new EntryKey(SubCache.LIST, String.class, "list"), "v", () -> evicted.add("list"));
+
+        Assert.assertEquals(1, evicted.size());
+        Assert.assertEquals(1, evicted.get(0));
+        Assert.assertEquals(3, budget.getWeight());
+        Assert.assertEquals(1, budget.getEvictionCount());
+    }
+
+    @Test
+    public void removeAllForgetsWeight() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100, (subCache, entityType, key, value) -> 10);
+
+        budget.onWrite(new EntryKey(SubCache.OBJECT, String.class, 1), "v", () -> { });
+        budget.onWrite(new EntryKey(SubCache.LIST, String.class, 1), "v", () -> { });
+        budget.onWrite(new EntryKey(SubCache.LIST, Integer.class, 1), "v", () -> { });
+        budget.removeAll(SubCache.LIST, String.class);
+
+        Assert.assertEquals(20, budget.getWeight());
+
+        budget.removeAll(Integer.class);
+
+        Assert.assertEquals(10, budget.getWeight());
+
+        budget.clear();
+
+        Assert.assertEquals(0, budget.getWeight());
+    }
+}
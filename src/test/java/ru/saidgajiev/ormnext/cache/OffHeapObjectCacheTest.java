@@ -0,0 +1,92 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.saidgajiev.ormnext.cache.codec.SerializableCodec;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OffHeapObjectCacheTest {
+
+    @Test
+    public void putGetInvalidate() throws Exception {
+        OffHeapObjectCache cache = new OffHeapObjectCache();
+
+        cache.put(String.class, 1, "notRegistered");
+        Assert.assertNull(cache.get(String.class, 1));
+
+        cache.registerClass(String.class);
+        cache.put(String.class, 1, "one");
+        cache.put(String.class, 2, "two");
+        Assert.assertEquals("one", cache.get(String.class, 1));
+        Assert.assertNotSame(cache.get(String.class, 1), cache.get(String.class, 1));
+        Assert.assertEquals(2, cache.size(String.class));
+
+        cache.put(String.class, 1, "newOne");
+        Assert.assertEquals("newOne", cache.get(String.class, 1));
+
+        cache.invalidate(String.class, 1);
+        Assert.assertNull(cache.get(String.class, 1));
+        Assert.assertEquals(1, cache.getAll(String.class).size());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getAllocatedBytes());
+    }
+
+    @Test
+    public void evictWhenFull() throws Exception {
+        OffHeapObjectCache cache = new OffHeapObjectCache(1 << 20, new SerializableCodec());
+        char[] value = new char[60000];
+
+        AtomicInteger reported = new AtomicInteger();
+
+        cache.setEvictionListener((entityType, id) -> reported.incrementAndGet());
+        cache.registerClass(String.class);
+        for (int i = 0; i < 100; i++) {
+            cache.put(String.class, i, new String(value));
+        }
+
+        Assert.assertEquals(1 << 20, cache.getAllocatedBytes());
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+        Assert.assertEquals(cache.getEvictionCount(), reported.get());
+        Assert.assertEquals(100 - cache.getEvictionCount(), cache.size(String.class));
+        Assert.assertNotNull(cache.get(String.class, 99));
+    }
+
+    @Test
+    public void reassignSlabToSizeClassWithoutChunks() throws Exception {
+        OffHeapObjectCache cache = new OffHeapObjectCache(1 << 20, new SerializableCodec());
+        AtomicInteger reported = new AtomicInteger();
+
+        cache.setEvictionListener((entityType, id) -> reported.incrementAndGet());
+        cache.registerClass(String.class);
+        for (int i = 0; i < 4; i++) {
+            cache.put(String.class, i, new String(new char[60000]));
+        }
+        cache.put(String.class, 4, "small");
+
+        Assert.assertEquals("small", cache.get(String.class, 4));
+        Assert.assertEquals(1, cache.getSlabReassignmentCount());
+        Assert.assertEquals(0, cache.getRejectedPutCount());
+        Assert.assertEquals(1 << 20, cache.getAllocatedBytes());
+        Assert.assertEquals(1, cache.size(String.class));
+        Assert.assertEquals(4, reported.get());
+
+        cache.put(String.class, 5, new String(new char[60000]));
+
+        Assert.assertNotNull(cache.get(String.class, 5));
+        Assert.assertNull(cache.get(String.class, 4));
+        Assert.assertEquals(2, cache.getSlabReassignmentCount());
+    }
+
+    @Test
+    public void countRejectedPuts() throws Exception {
+        OffHeapObjectCache cache = new OffHeapObjectCache();
+
+        cache.registerClass(String.class);
+        cache.put(String.class, 1, new String(new char[1 << 20]));
+
+        Assert.assertNull(cache.get(String.class, 1));
+        Assert.assertEquals(1, cache.getRejectedPutCount());
+    }
+}
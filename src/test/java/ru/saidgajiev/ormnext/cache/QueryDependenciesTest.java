@@ -0,0 +1,54 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.saidgajiev.ormnext.cache.commons.QueryKey;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class QueryDependenciesTest {
+
+    private static final String SQL = "SELECT * FROM t WHERE t.name = ?";
+
+    @Test
+    public void removeContainingFindsListsByResultId() throws Exception {
+        QueryDependencies dependencies = new QueryDependencies(type -> false);
+        QueryKey first = new QueryKey(String.class, SQL, new Object[]{"a"});
+        QueryKey second = new QueryKey(String.class, SQL, new Object[]{"b"});
+
+        dependencies.add(first, Arrays.asList(1, 2));
+        dependencies.add(second, Arrays.asList(2, 3));
+
+        Assert.assertEquals(Collections.singletonList(first), dependencies.removeContaining(String.class, 1));
+        Assert.assertEquals(Collections.singletonList(second), dependencies.removeContaining(String.class, 2));
+        Assert.assertTrue(dependencies.removeContaining(String.class, 3).isEmpty());
+    }
+
+    @Test
+    public void stringConditionExcludesRowOnlyForBinaryCollation() throws Exception {
+        QueryKey queryKey = new QueryKey(String.class, SQL, new Object[]{"a"});
+        QueryDependencies caseInsensitive = new QueryDependencies(type -> false);
+        QueryDependencies binary = new QueryDependencies(type -> true);
+
+        caseInsensitive.add(queryKey);
+        binary.add(queryKey);
+
+        Assert.assertEquals(
+                Collections.singletonList(queryKey),
+                caseInsensitive.removeAffected(String.class, row("A"))
+        );
+        Assert.assertTrue(binary.removeAffected(String.class, row("A")).isEmpty());
+        Assert.assertEquals(Collections.singletonList(queryKey), binary.removeAffected(String.class, row("a")));
+    }
+
+    private static Map<String, Object> row(String name) {
+        Map<String, Object> row = new HashMap<>();
+
+        row.put("name", name);
+
+        return row;
+    }
+}
@@ -0,0 +1,133 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ReferenceObjectCacheTest {
+
+    private static final long GC_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void putGetInvalidate() throws Exception {
+        ReferenceObjectCache cache = new ReferenceObjectCache();
+
+        cache.put(String.class, 1, "notRegistered");
+        Assert.assertNull(cache.get(String.class, 1));
+
+        cache.registerClass(String.class);
+        cache.put(String.class, 1, "one");
+        cache.put(String.class, 2, "two");
+        Assert.assertEquals("one", cache.get(String.class, 1));
+        Assert.assertTrue(cache.contains(String.class, 2));
+        Assert.assertEquals(2, cache.size(String.class));
+
+        cache.invalidate(String.class, 1);
+        Assert.assertNull(cache.get(String.class, 1));
+        Assert.assertEquals(1, cache.size(String.class));
+
+        cache.invalidateAll(String.class);
+        Assert.assertEquals(0, cache.size(String.class));
+    }
+
+    @Test
+    public void bulkPutGet() throws Exception {
+        ReferenceObjectCache cache = new ReferenceObjectCache(ReferenceObjectCache.ReferenceType.WEAK);
+        Map<Object, Object> objects = new HashMap<>();
+
+        objects.put(1, "one");
+        objects.put(2, "two");
+        cache.registerClass(String.class);
+        cache.putAll(String.class, objects);
+
+        Assert.assertEquals(objects, cache.getAll(String.class, Arrays.asList(1, 2, 3)));
+    }
+
+    @Test
+    public void weakValueClearedWhenUnreachable() throws Exception {
+        ReferenceObjectCache cache = new ReferenceObjectCache(ReferenceObjectCache.ReferenceType.WEAK);
+        Object reachable = new Object();
+
+        cache.registerClass(Object.class);
+        cache.put(Object.class, 1, reachable);
+        cache.put(Object.class, 2, new Object());
+
+        long deadline = System.nanoTime() + GC_TIMEOUT;
+
+        while (cache.get(Object.class, 2) != null && System.nanoTime() < deadline) {
+            System.gc();
+        }
+        Assert.assertNull(cache.get(Object.class, 2));
+        Assert.assertFalse(cache.contains(Object.class, 2));
+        Assert.assertSame(reachable, cache.get(Object.class, 1));
+        Assert.assertEquals(Arrays.asList(reachable), cache.getAll(Object.class));
+    }
+
+    @Test
+    public void sizeAfterPurgeOfCollectedEntries() throws Exception {
+        ReferenceObjectCache cache = new ReferenceObjectCache(ReferenceObjectCache.ReferenceType.WEAK);
+        List<Object> reachable = new ArrayList<>();
+
+        cache.registerClass(Object.class);
+        for (int i = 0; i < 100; i++) {
+            Object object = new Object();
+
+            if (i % 2 == 0) {
+                reachable.add(object);
+            }
+            cache.put(Object.class, i, object);
+        }
+        Assert.assertEquals(100, cache.size(Object.class));
+
+        long deadline = System.nanoTime() + GC_TIMEOUT;
+
+        while (cache.size(Object.class) != reachable.size() && System.nanoTime() < deadline) {
+            System.gc();
+        }
+        Assert.assertEquals(reachable.size(), cache.size(Object.class));
+        for (int i = 0; i < 100; i += 2) {
+            Assert.assertSame(reachable.get(i / 2), cache.get(Object.class, i));
+        }
+    }
+
+    @Test
+    public void purgeKeepsReplacedEntry() throws Exception {
+        ReferenceObjectCache cache = new ReferenceObjectCache(ReferenceObjectCache.ReferenceType.WEAK);
+
+        cache.registerClass(Object.class);
+        cache.put(Object.class, 1, new Object());
+
+        Object replacement = new Object();
+
+        cache.put(Object.class, 1, replacement);
+
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Assert.assertEquals(1, cache.size(Object.class));
+        }
+        Assert.assertSame(replacement, cache.get(Object.class, 1));
+    }
+
+    @Test
+    public void collectedEntryIsReported() throws Exception {
+        ReferenceObjectCache cache = new ReferenceObjectCache(ReferenceObjectCache.ReferenceType.WEAK);
+        List<Object> evicted = new ArrayList<>();
+
+        cache.setEvictionListener((entityType, id) -> evicted.add(id));
+        cache.registerClass(Object.class);
+        cache.put(Object.class, 1, new Object());
+
+        long deadline = System.nanoTime() + GC_TIMEOUT;
+
+        while (cache.size(Object.class) != 0 && System.nanoTime() < deadline) {
+            System.gc();
+        }
+        Assert.assertEquals(Arrays.asList(1), evicted);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RefreshAheadTest {
+
+    @Test
+    public void refreshHotKeysNearExpiry() throws Exception {
+        RefreshAhead refreshAhead = new RefreshAhead(RefreshAheadPolicy.builder()
+                .refreshWindow(1, TimeUnit.SECONDS)
+                .minFrequency(2)
+                .executor(Runnable::run)
+                .build());
+        EntryKey key = new EntryKey(SubCache.LIST, String.class, "query");
+        AtomicInteger refreshes = new AtomicInteger();
+        long nearExpiry = TimeUnit.MILLISECONDS.toNanos(500);
+
+        refreshAhead.onHit(key, nearExpiry, refreshes::incrementAndGet);
+        Assert.assertEquals(0, refreshes.get());
+
+        refreshAhead.onHit(key, TimeUnit.MINUTES.toNanos(1), refreshes::incrementAndGet);
+        Assert.assertEquals(0, refreshes.get());
+
+        refreshAhead.onHit(key, nearExpiry, refreshes::incrementAndGet);
+        Assert.assertEquals(1, refreshes.get());
+
+        refreshAhead.onHit(key, Long.MAX_VALUE, refreshes::incrementAndGet);
+        Assert.assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void skipRejectedRefresh() throws Exception {
+        AtomicInteger submits = new AtomicInteger();
+        RefreshAhead refreshAhead = new RefreshAhead(RefreshAheadPolicy.builder()
+                .refreshWindow(1, TimeUnit.SECONDS)
+                .minFrequency(0)
+                .executor(runnable -> {
+                    if (submits.incrementAndGet() == 1) {
+                        throw new RejectedExecutionException();
+                    }
+                    runnable.run();
+                })
+                .build());
+        EntryKey key = new EntryKey(SubCache.LONG, String.class, "query");
+        AtomicInteger refreshes = new AtomicInteger();
+
+        refreshAhead.onHit(key, 0, refreshes::incrementAndGet);
+        Assert.assertEquals(0, refreshes.get());
+
+        refreshAhead.onHit(key, 0, refreshes::incrementAndGet);
+        Assert.assertEquals(1, refreshes.get());
+    }
+}
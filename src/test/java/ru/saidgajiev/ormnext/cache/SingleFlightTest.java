@@ -0,0 +1,71 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    @Test
+    public void coalesceConcurrentLoads() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        EntryKey key = new EntryKey(SubCache.LIST, String.class, "query");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<>();
+
+        try {
+            futures.add(executorService.submit(() -> singleFlight.load(key, 0, () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                await(release);
+
+                return "result";
+            })));
+            started.await();
+            for (int i = 0; i < 7; i++) {
+                futures.add(executorService.submit(() -> singleFlight.load(key, 0, () -> {
+                    loads.incrementAndGet();
+
+                    return "other";
+                })));
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+            release.countDown();
+            for (Future<String> future : futures) {
+                Assert.assertEquals("result", future.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals("next", singleFlight.load(key, 0, () -> "next"));
+        Assert.assertEquals("newGeneration", singleFlight.load(key, 1, () -> "newGeneration"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagateLoadFailure() throws Exception {
+        new SingleFlight().load(new EntryKey(SubCache.LONG, String.class, "query"), 0, () -> {
+            throw new IllegalStateException();
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
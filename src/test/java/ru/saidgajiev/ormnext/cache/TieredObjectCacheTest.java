@@ -0,0 +1,146 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.saidgajiev.ormnext.cache.codec.SerializableCodec;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TieredObjectCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void spillAndPromote() throws Exception {
+        try (TieredObjectCache cache = new TieredObjectCache(folder.getRoot().toPath())) {
+            cache.registerClass(String.class);
+            for (int i = 0; i < 2000; i++) {
+                cache.put(String.class, i, "value" + i);
+            }
+
+            Assert.assertEquals(2000, cache.size(String.class));
+            cache.maintain();
+            Assert.assertTrue(cache.getDiskSize() > 0);
+            Assert.assertEquals("value0", cache.get(String.class, 0));
+
+            cache.put(String.class, 1, "newValue");
+            Assert.assertEquals("newValue", cache.get(String.class, 1));
+
+            cache.invalidate(String.class, 2);
+            Assert.assertNull(cache.get(String.class, 2));
+            Assert.assertEquals(1999, cache.getAll(String.class).size());
+        }
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        Path directory = folder.getRoot().toPath();
+
+        try (TieredObjectCache cache = reopen(directory, new SerializableCodec(), TimeUnit.HOURS.toMillis(1))) {
+            cache.registerClass(String.class);
+            for (int i = 0; i < 100; i++) {
+                cache.put(String.class, i, "value" + i);
+            }
+            for (int i = 0; i < 100; i += 2) {
+                cache.invalidate(String.class, i);
+            }
+            cache.put(String.class, 1, "newValue");
+        }
+        try (TieredObjectCache cache = reopen(directory, new SerializableCodec(), TimeUnit.HOURS.toMillis(1))) {
+            cache.registerClass(String.class);
+
+            Assert.assertEquals(50, cache.size(String.class));
+            Assert.assertNull(cache.get(String.class, 0));
+            Assert.assertEquals("newValue", cache.get(String.class, 1));
+            Assert.assertEquals("value99", cache.get(String.class, 99));
+        }
+    }
+
+    @Test
+    public void clearDiskTierOnOpenByDefault() throws Exception {
+        Path directory = folder.getRoot().toPath();
+
+        fill(reopen(directory, new SerializableCodec(), TimeUnit.HOURS.toMillis(1)));
+        try (TieredObjectCache cache = new TieredObjectCache(10, directory, 4096, new SerializableCodec())) {
+            cache.registerClass(String.class);
+
+            Assert.assertEquals(0, cache.size(String.class));
+            Assert.assertNull(cache.get(String.class, 1));
+        }
+    }
+
+    @Test
+    public void dropRecordsOfOtherCodecOnReplay() throws Exception {
+        Path directory = folder.getRoot().toPath();
+
+        fill(reopen(directory, new SerializableCodec(), TimeUnit.HOURS.toMillis(1)));
+        try (TieredObjectCache cache = reopen(directory, new OtherCodec(), TimeUnit.HOURS.toMillis(1))) {
+            cache.registerClass(String.class);
+
+            Assert.assertEquals(0, cache.size(String.class));
+            Assert.assertNull(cache.get(String.class, 1));
+        }
+    }
+
+    @Test
+    public void dropRecordsOlderThanMaxAgeOnReplay() throws Exception {
+        Path directory = folder.getRoot().toPath();
+
+        fill(reopen(directory, new SerializableCodec(), TimeUnit.HOURS.toMillis(1)));
+        Thread.sleep(20);
+        try (TieredObjectCache cache = reopen(directory, new SerializableCodec(), 10)) {
+            cache.registerClass(String.class);
+
+            Assert.assertEquals(0, cache.size(String.class));
+        }
+    }
+
+    @Test
+    public void undecodableEntityIsMiss() throws Exception {
+        List<Object> evicted = new ArrayList<>();
+
+        try (TieredObjectCache cache = new TieredObjectCache(1, folder.getRoot().toPath(), 4096, new FailingCodec())) {
+            cache.setEvictionListener((entityType, id) -> evicted.add(id));
+            cache.registerClass(String.class);
+            cache.put(String.class, 1, "one");
+            cache.put(String.class, 2, "two");
+            cache.maintain();
+
+            Assert.assertNull(cache.get(String.class, 1));
+            Assert.assertFalse(cache.contains(String.class, 1));
+            Assert.assertEquals(Collections.singletonList(1), evicted);
+            Assert.assertEquals("two", cache.get(String.class, 2));
+        }
+    }
+
+    private static TieredObjectCache reopen(Path directory, SerializableCodec codec, long replayMaxAge) {
+        return new TieredObjectCache(10, directory, 4096, codec, replayMaxAge, TimeUnit.MILLISECONDS);
+    }
+
+    private static void fill(TieredObjectCache cache) throws Exception {
+        try (TieredObjectCache target = cache) {
+            target.registerClass(String.class);
+            for (int i = 0; i < 100; i++) {
+                target.put(String.class, i, "value" + i);
+            }
+        }
+    }
+
+    private static class OtherCodec extends SerializableCodec {
+    }
+
+    private static class FailingCodec extends SerializableCodec {
+
+        @Override
+        public Object decode(Class<?> entityType, byte[] bytes) {
+            throw new IllegalArgumentException("Schema changed");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.saidgajiev.ormnext.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TinyLfuObjectCacheTest {
+
+    @Test
+    public void bulkPutGet() throws Exception {
+        TinyLfuObjectCache cache = new TinyLfuObjectCache(10);
+        Map<Object, Object> objects = new HashMap<>();
+
+        objects.put(1, "one");
+        objects.put(2, "two");
+        cache.registerClass(String.class);
+        cache.putAll(String.class, objects);
+
+        Map<Object, Object> hits = cache.getAll(String.class, Arrays.asList(1, 2, 3));
+
+        Assert.assertEquals(objects, hits);
+    }
+
+    @Test
+    public void putGetInvalidate() throws Exception {
+        TinyLfuObjectCache cache = new TinyLfuObjectCache(10);
+
+        cache.put(String.class, 1, "notRegistered");
+        Assert.assertNull(cache.get(String.class, 1));
+
+        cache.registerClass(String.class);
+        cache.put(String.class, 1, "one");
+        cache.put(String.class, 2, "two");
+        Assert.assertEquals("one", cache.get(String.class, 1));
+        Assert.assertTrue(cache.contains(String.class, 2));
+        Assert.assertEquals(2, cache.size(String.class));
+
+        cache.put(String.class, 1, "newOne");
+        Assert.assertEquals("newOne", cache.get(String.class, 1));
+
+        cache.invalidate(String.class, 1);
+        Assert.assertNull(cache.get(String.class, 1));
+        Assert.assertEquals(1, cache.size(String.class));
+
+        cache.invalidateAll(String.class);
+        Assert.assertEquals(0, cache.size(String.class));
+        cache.put(String.class, 3, "three");
+        Assert.assertEquals("three", cache.get(String.class, 3));
+    }
+
+    @Test
+    public void hotEntriesSurviveScan() throws Exception {
+        TinyLfuObjectCache cache = new TinyLfuObjectCache(100);
+
+        cache.registerClass(Integer.class);
+        for (int i = 0; i < 20; i++) {
+            cache.put(Integer.class, i, i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 20; i++) {
+                cache.get(Integer.class, i);
+            }
+        }
+        for (int i = 1000; i < 2000; i++) {
+            cache.put(Integer.class, i, i);
+        }
+        int hits = 0;
+
+        for (int i = 0; i < 20; i++) {
+            if (cache.get(Integer.class, i) != null) {
+                ++hits;
+            }
+        }
+        Assert.assertTrue(cache.size(Integer.class) <= 100);
+        Assert.assertTrue(hits >= 15);
+    }
+
+    @Test
+    public void concurrentAccessKeepsBound() throws Exception {
+        TinyLfuObjectCache cache = new TinyLfuObjectCache(50);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        cache.registerClass(Integer.class);
+        for (int t = 0; t < 8; t++) {
+            int seed = t;
+
+            futures.add(executorService.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    int key = (i * 31 + seed) % 500;
+
+                    if (cache.get(Integer.class, key) == null) {
+                        cache.put(Integer.class, key, key);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.SECONDS);
+
+        cache.put(Integer.class, -1, -1);
+        Assert.assertTrue(cache.size(Integer.class) <= 50);
+    }
+}
@@ -0,0 +1,139 @@
+package ru.saidgajiev.ormnext.cache.codec;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.saidgadjiev.ormnext.core.field.DatabaseColumn;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+public class CompactCodecTest {
+
+    @Test
+    public void encodeDecode() throws Exception {
+        CompactCodec codec = new CompactCodec();
+        TestEntity entity = new TestEntity();
+
+        entity.id = -1;
+        entity.name = "имя";
+        entity.price = new BigDecimal("12.50");
+        entity.created = new Date(1L);
+        entity.unit = TimeUnit.SECONDS;
+        entity.notColumn = 2;
+
+        TestEntity decoded = (TestEntity) codec.decode(TestEntity.class, codec.encode(entity));
+
+        Assert.assertEquals(-1, decoded.id);
+        Assert.assertEquals("имя", decoded.name);
+        Assert.assertEquals(new BigDecimal("12.50"), decoded.price);
+        Assert.assertEquals(new Date(1L), decoded.created);
+        Assert.assertEquals(TimeUnit.SECONDS, decoded.unit);
+        Assert.assertNull(decoded.count);
+        Assert.assertEquals(1, decoded.notColumn);
+    }
+
+    @Test
+    public void encodeIsCompact() throws Exception {
+        TestEntity entity = new TestEntity();
+
+        entity.id = 1;
+        entity.name = "a";
+
+        Assert.assertEquals(4, new CompactCodec().encode(entity).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeTruncated() throws Exception {
+        CompactCodec codec = new CompactCodec();
+        TestEntity entity = new TestEntity();
+
+        entity.name = "name";
+
+        byte[] bytes = codec.encode(entity);
+
+        codec.decode(TestEntity.class, Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test
+    public void encodeDecodeThroughBeanAccessors() throws Exception {
+        CompactCodec codec = new CompactCodec();
+        BeanEntity entity = new BeanEntity();
+
+        entity.setId(7L);
+        entity.setName("name");
+        entity.setActive(true);
+
+        BeanEntity decoded = (BeanEntity) codec.decode(BeanEntity.class, codec.encode(entity));
+
+        Assert.assertEquals(7L, decoded.getId());
+        Assert.assertEquals("name", decoded.getName());
+        Assert.assertTrue(decoded.isActive());
+        Assert.assertEquals(3, decoded.setterCalls);
+    }
+
+    public static class BeanEntity {
+
+        @DatabaseColumn(id = true)
+        private long id;
+
+        @DatabaseColumn
+        private String name;
+
+        @DatabaseColumn
+        private boolean active;
+
+        private int setterCalls;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+            ++setterCalls;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+            ++setterCalls;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+            ++setterCalls;
+        }
+    }
+
+    public static class TestEntity {
+
+        @DatabaseColumn(id = true)
+        private int id;
+
+        @DatabaseColumn
+        private String name;
+
+        @DatabaseColumn
+        private Long count;
+
+        @DatabaseColumn
+        private BigDecimal price;
+
+        @DatabaseColumn
+        private Date created;
+
+        @DatabaseColumn
+        private TimeUnit unit;
+
+        private int notColumn = 1;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CountingBloomFilterTest {
+
+    @Test
+    public void noFalseNegatives() throws Exception {
+        CountingBloomFilter filter = new CountingBloomFilter(10_000);
+        int falsePositives = 0;
+
+        for (long id = 0; id < 10_000; id++) {
+            filter.add(id);
+        }
+        for (long id = 0; id < 10_000; id++) {
+            Assert.assertTrue(filter.mightContain(id));
+        }
+        for (long id = 10_000; id < 20_000; id++) {
+            if (filter.mightContain(id)) {
+                ++falsePositives;
+            }
+        }
+        Assert.assertTrue(falsePositives < 300);
+        Assert.assertFalse(filter.isOverloaded());
+    }
+
+    @Test
+    public void remove() throws Exception {
+        CountingBloomFilter filter = new CountingBloomFilter(100);
+
+        filter.add("a");
+        filter.add("b");
+        filter.remove("a");
+
+        Assert.assertFalse(filter.mightContain("a"));
+        Assert.assertTrue(filter.mightContain("b"));
+    }
+}
@@ -78,4 +78,115 @@ public class DigestHelperTest {
 
         Assert.assertEquals(helper.digest(selectStatement1), helper.digest(selectStatement2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void templateCacheHitOnReexecutedStatement() throws Exception {
+        MetaModel metaModel = new MetaModel(Arrays.asList(TestEntity1.class, TestEntity2.class));
+
+        metaModel.init();
+        DigestHelper helper = new DigestHelper(metaModel, new DefaultDatabaseEngine(new H2Dialect()));
+
+        SelectStatement<TestEntity1> selectStatement = new SelectStatement<>(TestEntity1.class);
+
+        selectStatement.where(
+                new Criteria().add(Restrictions.eq("id", 1))
+        );
+        QueryKey first = helper.digest(selectStatement);
+
+        selectStatement.setObject(1, 3);
+        QueryKey second = helper.digest(selectStatement);
+
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(first.getQuery(), second.getQuery());
+        Assert.assertEquals(1, helper.getTemplateCacheMisses());
+        Assert.assertEquals(1, helper.getTemplateCacheHits());
+    }
+
+    @Test
+    public void templateCacheHitOnDistinctStatementsOfSameShape() throws Exception {
+        MetaModel metaModel = new MetaModel(Arrays.asList(TestEntity1.class, TestEntity2.class));
+
+        metaModel.init();
+        DigestHelper helper = new DigestHelper(metaModel, new DefaultDatabaseEngine(new H2Dialect()));
+
+        SelectStatement<TestEntity1> selectStatement1 = new SelectStatement<>(TestEntity1.class);
+
+        selectStatement1.where(
+                new Criteria().add(Restrictions.eq("id", 1))
+        );
+
+        SelectStatement<TestEntity1> selectStatement2 = new SelectStatement<>(TestEntity1.class);
+
+        selectStatement2.where(
+                new Criteria().add(Restrictions.eq("id", 2))
+        );
+        QueryKey first = helper.digest(selectStatement1);
+        QueryKey second = helper.digest(selectStatement2);
+
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(first.getQuery(), second.getQuery());
+        Assert.assertEquals(1, helper.getTemplateCacheMisses());
+        Assert.assertEquals(1, helper.getTemplateCacheHits());
+    }
+
+    @Test
+    public void renderRestructuredStatement() throws Exception {
+        MetaModel metaModel = new MetaModel(Arrays.asList(TestEntity1.class, TestEntity2.class));
+
+        metaModel.init();
+        DigestHelper helper = new DigestHelper(metaModel, new DefaultDatabaseEngine(new H2Dialect()));
+
+        SelectStatement<TestEntity1> selectStatement = new SelectStatement<>(TestEntity1.class);
+
+        selectStatement.where(
+                new Criteria().add(Restrictions.eq("id", 1))
+        );
+        QueryKey first = helper.digest(selectStatement);
+
+        selectStatement.where(
+                new Criteria().add(Restrictions.eq("name", "a"))
+        );
+        QueryKey second = helper.digest(selectStatement);
+
+        Assert.assertNotEquals(first.getQuery(), second.getQuery());
+        Assert.assertEquals(2, helper.getTemplateCacheMisses());
+    }
+
+    @Test
+    public void statementWithUnknownNodeIsNotMemoized() throws Exception {
+        MetaModel metaModel = new MetaModel(Arrays.asList(TestEntity1.class, TestEntity2.class));
+
+        metaModel.init();
+        DigestHelper helper = new DigestHelper(metaModel, new DefaultDatabaseEngine(new H2Dialect()));
+
+        helper.digest(new CustomSelectStatement());
+        helper.digest(new CustomSelectStatement());
+
+        Assert.assertEquals(2, helper.getTemplateCacheMisses());
+        Assert.assertEquals(0, helper.getTemplateCacheSize());
+    }
+
+    @Test
+    public void templateCacheIsBounded() throws Exception {
+        MetaModel metaModel = new MetaModel(Arrays.asList(TestEntity1.class, TestEntity2.class));
+
+        metaModel.init();
+        DigestHelper helper = new DigestHelper(metaModel, new DefaultDatabaseEngine(new H2Dialect()), 4);
+
+        for (int i = 1; i <= 10; i++) {
+            helper.digest(new SelectStatement<>(TestEntity1.class).limit(i));
+
+            Assert.assertTrue(helper.getTemplateCacheSize() <= 4);
+        }
+        helper.digest(new SelectStatement<>(TestEntity1.class).limit(10));
+
+        Assert.assertEquals(1, helper.getTemplateCacheHits());
+    }
+
+    private static final class CustomSelectStatement extends SelectStatement<TestEntity1> {
+
+        private CustomSelectStatement() {
+            super(TestEntity1.class);
+        }
+    }
+}
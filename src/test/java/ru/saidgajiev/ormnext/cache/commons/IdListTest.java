@@ -0,0 +1,139 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+public class IdListTest {
+
+    @Test
+    public void packInts() throws Exception {
+        List<Object> ids = new ArrayList<>(Arrays.asList(5, 3, 9));
+        List<Object> packed = IdList.compact(ids, int.class);
+
+        Assert.assertTrue(packed instanceof IdList);
+        Assert.assertTrue(packed instanceof RandomAccess);
+        Assert.assertEquals(ids, packed);
+        Assert.assertTrue(packed.contains(3));
+        Assert.assertFalse(packed.contains(3L));
+        Assert.assertEquals(2, packed.indexOf(9));
+    }
+
+    @Test
+    public void deltaSortedLongs() throws Exception {
+        List<Object> ids = new ArrayList<>();
+        long id = 1_000_000_000_000L;
+        int i = 0;
+
+        while (i < 1000) {
+            ids.add(id);
+            id += i % 7 + 1;
+            ++i;
+        }
+        IdList packed = (IdList) IdList.compact(ids, Long.class);
+
+        Assert.assertEquals(ids, packed);
+        Assert.assertEquals(ids.get(777), packed.get(777));
+        Assert.assertEquals(ids.get(999), packed.get(999));
+        Assert.assertEquals(640, packed.indexOf(ids.get(640)));
+        Assert.assertFalse(packed.contains(id + 1));
+        Assert.assertTrue(packed.getByteSize() * 2 < 1000 * Long.BYTES);
+    }
+
+    @Test
+    public void deltaIndexOfFindsFirstDuplicateAcrossBlocks() throws Exception {
+        List<Object> ids = new ArrayList<>();
+        int i = 0;
+
+        while (i < 300) {
+            ids.add(i < 60 ? i : i < 70 ? 60 : i);
+            ++i;
+        }
+        List<Object> packed = IdList.compact(ids, int.class);
+
+        Assert.assertFalse(packed instanceof RandomAccess);
+        Assert.assertEquals(ids, packed);
+        Assert.assertEquals(60, packed.indexOf(60));
+        Assert.assertEquals(0, packed.indexOf(0));
+        Assert.assertEquals(299, packed.indexOf(299));
+        Assert.assertEquals(128, packed.indexOf(128));
+        Assert.assertEquals(-1, packed.indexOf(65));
+        Assert.assertEquals(-1, packed.indexOf(300));
+        Assert.assertEquals(-1, packed.indexOf(-1));
+        Assert.assertTrue(packed.contains(70));
+        Assert.assertFalse(packed.contains(70L));
+    }
+
+    @Test
+    public void keepOtherIds() throws Exception {
+        List<Object> strings = Arrays.asList("a", "b");
+        List<Object> mixed = Arrays.asList(1, 2L);
+
+        Assert.assertSame(strings, IdList.compact(strings, String.class));
+        Assert.assertSame(mixed, IdList.compact(mixed, Integer.class));
+    }
+
+    @Test
+    public void appendAndRemoveKeepPackedIds() throws Exception {
+        List<Object> expected = new ArrayList<>();
+        int i = 0;
+
+        while (i < 1000) {
+            expected.add(i);
+            ++i;
+        }
+        List<Object> packed = IdList.compact(expected, int.class);
+        List<Object> patched = IdList.append(packed, Arrays.asList(1000, 1001, 7), int.class);
+
+        expected.addAll(Arrays.asList(1000, 1001, 7));
+        patched = IdList.remove(patched, 7, int.class);
+        expected.remove((Object) 7);
+        patched = IdList.remove(patched, 1000, int.class);
+        expected.remove((Object) 1000);
+
+        Assert.assertSame(patched, IdList.remove(patched, 5000, int.class));
+        Assert.assertEquals(expected, patched);
+        Assert.assertEquals(expected, new ArrayList<>(patched));
+        Assert.assertEquals(expected.indexOf(7), patched.indexOf(7));
+        Assert.assertEquals(expected.indexOf(1001), patched.indexOf(1001));
+        Assert.assertEquals(expected.get(500), patched.get(500));
+        Assert.assertFalse(patched.contains(1000));
+        Assert.assertFalse(patched.contains(7L));
+    }
+
+    @Test
+    public void outgrownPatchIsPacked() throws Exception {
+        Random random = new Random(1);
+        List<Object> expected = new ArrayList<>();
+        List<Object> ids = IdList.compact(new ArrayList<>(), long.class);
+        int i = 0;
+
+        while (i < 2000) {
+            if (random.nextInt(3) == 0 && !expected.isEmpty()) {
+                Object id = expected.get(random.nextInt(expected.size()));
+
+                expected.remove(id);
+                ids = IdList.remove(ids, id, long.class);
+            } else {
+                long id = random.nextInt(500);
+
+                expected.add(id);
+                ids = IdList.append(ids, Collections.singletonList(id), long.class);
+            }
+            ++i;
+        }
+
+        Assert.assertTrue(ids instanceof IdList);
+        Assert.assertEquals(expected, ids);
+        Assert.assertEquals(expected, new ArrayList<>(ids));
+        for (Object id : expected) {
+            Assert.assertEquals(expected.indexOf(id), ids.indexOf(id));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class QueryPredicateTest {
+
+    @Test
+    public void conjunctionExcludesRow() throws Exception {
+        QueryPredicate predicate = QueryPredicate.parse(
+                "SELECT \"t\".\"id\" FROM \"t\" WHERE (\"t\".\"name\" = ? AND \"t\".\"age\" > ?) ORDER BY \"t\".\"id\"",
+                true
+        );
+        Object[] args = {"a", 10};
+
+        Assert.assertEquals("name", predicate.getIndexColumn());
+        Assert.assertEquals("a", predicate.getIndexValue(args));
+        Assert.assertTrue(predicate.mayMatch(args, row("a", 11L)));
+        Assert.assertFalse(predicate.mayMatch(args, row("b", 11L)));
+        Assert.assertFalse(predicate.mayMatch(args, row("a", 10L)));
+        Assert.assertFalse(predicate.mayMatch(args, row(null, 11L)));
+    }
+
+    @Test
+    public void unsupportedSqlMayMatchAnyRow() throws Exception {
+        QueryPredicate predicate = QueryPredicate.parse("SELECT * FROM t WHERE t.name = ? OR t.age > ?");
+
+        Assert.assertNull(predicate.getIndexColumn());
+        Assert.assertTrue(predicate.mayMatch(new Object[]{"a", 10}, row("b", 1L)));
+        Assert.assertTrue(QueryPredicate.parse("SELECT * FROM t WHERE t.name = ?").mayMatch(new Object[0], row("b", 1L)));
+    }
+
+    @Test
+    public void inBetweenAndNullConditions() throws Exception {
+        QueryPredicate predicate = QueryPredicate.parse(
+                "SELECT * FROM t WHERE t.name IN (?, 'c') AND t.age BETWEEN 1 AND ? AND t.id IS NOT NULL LIMIT 10",
+                true
+        );
+        Object[] args = {"a", 5};
+
+        Assert.assertTrue(predicate.mayMatch(args, row("c", 5L)));
+        Assert.assertFalse(predicate.mayMatch(args, row("b", 5L)));
+        Assert.assertFalse(predicate.mayMatch(args, row("a", 6L)));
+    }
+
+    @Test
+    public void stringConditionsMayMatchUnlessCollationIsBinary() throws Exception {
+        QueryPredicate predicate = QueryPredicate.parse("SELECT * FROM t WHERE t.name = ? AND t.age > ?");
+        Object[] args = {"a", 10};
+
+        Assert.assertEquals("name", predicate.getIndexColumn());
+        Assert.assertNull(predicate.getIndexValue(args));
+        Assert.assertTrue(predicate.mayMatch(args, row("A", 11L)));
+        Assert.assertTrue(predicate.mayMatch(args, row("a ", 11L)));
+        Assert.assertFalse(predicate.mayMatch(args, row("A", 10L)));
+        Assert.assertFalse(predicate.mayMatch(args, row(null, 11L)));
+    }
+
+    private static Map<String, Object> row(String name, Long age) {
+        Map<String, Object> row = new HashMap<>();
+
+        row.put("id", 1);
+        row.put("name", name);
+        row.put("age", age);
+
+        return row;
+    }
+}
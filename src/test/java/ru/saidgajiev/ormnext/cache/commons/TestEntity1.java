@@ -7,6 +7,9 @@ public class TestEntity1 {
     @DatabaseColumn(id = true)
     private int id;
 
+    @DatabaseColumn
+    private String name;
+
     public int getId() {
         return id;
     }
@@ -14,4 +17,12 @@ public class TestEntity1 {
     public void setId(int id) {
         this.id = id;
     }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
 }
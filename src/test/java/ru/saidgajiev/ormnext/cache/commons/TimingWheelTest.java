@@ -0,0 +1,73 @@
+package ru.saidgajiev.ormnext.cache.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TimingWheelTest {
+
+    @Test
+    public void advanceFiresDueTimers() throws Exception {
+        long start = TimeUnit.DAYS.toNanos(3);
+        TimingWheel timingWheel = new TimingWheel(start);
+        List<String> fired = new ArrayList<>();
+
+        timingWheel.schedule(timer(fired, "second", start + TimeUnit.SECONDS.toNanos(1)));
+        timingWheel.schedule(timer(fired, "minute", start + TimeUnit.MINUTES.toNanos(5)));
+        timingWheel.schedule(timer(fired, "hour", start + TimeUnit.HOURS.toNanos(2)));
+        timingWheel.schedule(timer(fired, "days", start + TimeUnit.DAYS.toNanos(10)));
+
+        timingWheel.advance(start + TimeUnit.SECONDS.toNanos(3));
+        Assert.assertEquals(1, fired.size());
+
+        timingWheel.advance(start + TimeUnit.MINUTES.toNanos(10));
+        Assert.assertEquals(2, fired.size());
+
+        timingWheel.advance(start + TimeUnit.HOURS.toNanos(3));
+        Assert.assertEquals(3, fired.size());
+
+        timingWheel.advance(start + TimeUnit.DAYS.toNanos(11));
+        Assert.assertEquals(4, fired.size());
+        Assert.assertEquals("second", fired.get(0));
+        Assert.assertEquals("days", fired.get(3));
+    }
+
+    @Test
+    public void prolongedTimerIsRescheduled() throws Exception {
+        TimingWheel timingWheel = new TimingWheel(0);
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timer timer = timer(fired, "timer", TimeUnit.SECONDS.toNanos(2));
+
+        timingWheel.schedule(timer);
+        timer.setDeadline(TimeUnit.SECONDS.toNanos(30));
+
+        timingWheel.advance(TimeUnit.SECONDS.toNanos(5));
+        Assert.assertTrue(fired.isEmpty());
+
+        timingWheel.advance(TimeUnit.SECONDS.toNanos(40));
+        Assert.assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void descheduledTimerIsNotFired() throws Exception {
+        TimingWheel timingWheel = new TimingWheel(0);
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timer timer = timer(fired, "timer", TimeUnit.SECONDS.toNanos(2));
+
+        timingWheel.schedule(timer);
+        timingWheel.deschedule(timer);
+        timingWheel.advance(TimeUnit.SECONDS.toNanos(5));
+        Assert.assertTrue(fired.isEmpty());
+    }
+
+    private static TimingWheel.Timer timer(List<String> fired, String name, long deadline) {
+        TimingWheel.Timer timer = new TimingWheel.Timer(() -> fired.add(name));
+
+        timer.setDeadline(deadline);
+
+        return timer;
+    }
+}